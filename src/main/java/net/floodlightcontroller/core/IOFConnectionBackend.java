@@ -1,5 +1,8 @@
 package net.floodlightcontroller.core;
 
+import java.util.Collection;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.types.U64;
 
 import net.floodlightcontroller.core.internal.IOFConnectionListener;
@@ -20,6 +23,18 @@ public interface IOFConnectionBackend extends IOFConnection {
      */
     boolean isWritable();
 
+    /**
+     * Write a list of messages to the switch, handling them according to
+     * policy while the switch is not keeping up
+     *
+     * @param msgList list of messages to write
+     * @param policy what to do with the messages while the output stream
+     *  is not writeable
+     * @return list of failed messages; messages can fail if the channel is
+     *  disconnected, or if the policy drops them
+     */
+    Collection<OFMessage> write(Iterable<OFMessage> msgList, OFWritePolicy policy);
+
     /** set the message/closing listener for this connection */
     void setListener(IOFConnectionListener listener);
     
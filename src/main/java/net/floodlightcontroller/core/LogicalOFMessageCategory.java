@@ -14,8 +14,27 @@ public class LogicalOFMessageCategory {
 
     public static final LogicalOFMessageCategory MAIN =  new LogicalOFMessageCategory("MAIN", OFAuxId.MAIN);
 
+    /*
+     * Bulk traffic that may use an auxiliary connection of the switch, and
+     * that uses the main connection when the switch did not open it. The
+     * messages of different categories are not ordered with respect to each
+     * other, and a barrier only covers the messages of its own category.
+     */
+
+    /** PACKET_OUTs that do not depend on flows written just before them */
+    public static final LogicalOFMessageCategory PACKET_OUT =
+            new LogicalOFMessageCategory("PACKET_OUT", OFAuxId.of(1), OFWritePolicy.SHED_PACKET_OUT);
+    /** multipart statistics requests, whose replies can be large */
+    public static final LogicalOFMessageCategory STATS =
+            new LogicalOFMessageCategory("STATS", OFAuxId.of(2), OFWritePolicy.BLOCK);
+    /** bursts of FLOW_MODs, terminated by a barrier of the same category */
+    public static final LogicalOFMessageCategory FLOW_MOD =
+            new LogicalOFMessageCategory("FLOW_MOD", OFAuxId.of(3), OFWritePolicy.BLOCK);
+
     final private String name;
     final private OFAuxId auxId;
+    /** not part of the identity of the category */
+    final private OFWritePolicy writePolicy;
 
 
     public LogicalOFMessageCategory(@Nonnull String name, int auxId) {
@@ -23,10 +42,23 @@ public class LogicalOFMessageCategory {
     }
 
     public LogicalOFMessageCategory(@Nonnull String name, OFAuxId auxId) {
+        this(name, auxId, OFWritePolicy.SHED_PACKET_OUT);
+    }
+
+    public LogicalOFMessageCategory(@Nonnull String name, int auxId,
+                                    @Nonnull OFWritePolicy writePolicy) {
+        this(name, OFAuxId.of(auxId), writePolicy);
+    }
+
+    public LogicalOFMessageCategory(@Nonnull String name, OFAuxId auxId,
+                                    @Nonnull OFWritePolicy writePolicy) {
         if (name == null)
             throw new NullPointerException("name must not be null");
+        if (writePolicy == null)
+            throw new NullPointerException("writePolicy must not be null");
         this.name = name;
         this.auxId = auxId;
+        this.writePolicy = writePolicy;
     }
 
     public OFAuxId getAuxId(){
@@ -37,6 +69,14 @@ public class LogicalOFMessageCategory {
         return this.name;
     }
 
+    /**
+     * @return what to do with the messages of this category while the
+     * switch is not keeping up
+     */
+    public OFWritePolicy getWritePolicy(){
+        return this.writePolicy;
+    }
+
     @Override
     public String toString(){
         return "LogicalOFMessageCategory [name=" + getName() + " OFAuxId=" + getAuxId() + "]";
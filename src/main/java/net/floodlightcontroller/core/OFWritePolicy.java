@@ -0,0 +1,24 @@
+package net.floodlightcontroller.core;
+
+/**
+ * What a connection does with the messages of a
+ * {@link LogicalOFMessageCategory} written while the switch is not keeping
+ * up, that is while the outbound buffer of the channel is above its high
+ * water mark and has not yet drained below its low water mark.
+ */
+public enum OFWritePolicy {
+    /**
+     * Hold the messages in the queue of the connection until the channel
+     * drains. Nothing is lost, but the queue grows with the backlog.
+     */
+    BLOCK,
+    /**
+     * Drop the messages, and report them as unsent to the writer.
+     */
+    DROP,
+    /**
+     * Drop the PACKET_OUTs, and hold the other messages as {@link #BLOCK}
+     * does, so that flow and control messages still get through.
+     */
+    SHED_PACKET_OUT
+}
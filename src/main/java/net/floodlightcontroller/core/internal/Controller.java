@@ -470,14 +470,12 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                                 eth);
                     }
 
-                    // Get the starting time (overall and per-component) of
-                    // the processing chain for this packet if performance
-                    // monitoring is turned on
-                    pktinProcTimeService.bootstrap(listeners);
+                    // Get the starting time of the processing chain for
+                    // this packet if performance monitoring is turned on.
+                    // Each listener is timed from the end of the previous
                     pktinProcTimeService.recordStartTimePktIn();
                     Command cmd;
                     for (IOFMessageListener listener : listeners) {
-                        pktinProcTimeService.recordStartTimeComp(listener);
                         cmd = listener.receive(sw, m, bc);
                         pktinProcTimeService.recordEndTimeComp(listener);
 
@@ -763,6 +761,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
 
         // Switch Service Startup
         this.switchService.registerLogicalOFMessageCategory(LogicalOFMessageCategory.MAIN);
+        this.switchService.registerLogicalOFMessageCategory(LogicalOFMessageCategory.PACKET_OUT);
+        this.switchService.registerLogicalOFMessageCategory(LogicalOFMessageCategory.STATS);
+        this.switchService.registerLogicalOFMessageCategory(LogicalOFMessageCategory.FLOW_MOD);
         this.switchService.addOFSwitchListener(new NotificationSwitchListener());
 
         this.counters = new ControllerCounters(debugCounterService);
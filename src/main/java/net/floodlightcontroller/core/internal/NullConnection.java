@@ -7,6 +7,7 @@ import java.util.Date;
 
 import net.floodlightcontroller.core.IOFConnectionBackend;
 import net.floodlightcontroller.core.IOFMessageWriter;
+import net.floodlightcontroller.core.OFWritePolicy;
 import net.floodlightcontroller.core.SwitchDisconnectedException;
 import net.floodlightcontroller.util.IterableUtils;
 
@@ -55,6 +56,11 @@ public class NullConnection implements IOFConnectionBackend, IOFMessageWriter {
         return IterableUtils.toCollection(msgList);
     }
 
+    @Override
+    public Collection<OFMessage> write(Iterable<OFMessage> msgList, OFWritePolicy policy) {
+        return write(msgList);
+    }
+
     @Override
     public SocketAddress getRemoteInetAddress() {
         return null;
@@ -11,8 +11,12 @@ import java.util.concurrent.RejectedExecutionException;
 import javax.annotation.Nonnull;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.timeout.ReadTimeoutException;
@@ -73,6 +77,7 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 	private volatile OFConnection connection;
 	private final IDebugCounterService debugCounters;
 	private final List<U32> ofBitmaps;
+	private final EventLoopGroup auxGroup;
 
 	/** transaction Ids to use during handshake. Since only one thread
 	 * calls into the OFChannelHandler we don't need atomic.
@@ -439,10 +444,22 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 	 */
 	class CompleteState extends OFChannelState{
 
+		/** messages received while the channel moves to its event loop */
+		private List<OFMessage> deferred;
+
 		CompleteState() {
 			super(true);
 		}
 
+		@Override
+		void processOFMessage(OFMessage m) throws IOException {
+			if (deferred != null) {
+				deferred.add(m);
+			} else {
+				super.processOFMessage(m);
+			}
+		}
+
 		@Override
 		void enterState() throws IOException{
 
@@ -465,9 +482,63 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 			connection.updateLatency(U64.of(featuresLatency));
 			echoSendTime = 0;
 
+			// Serve aux connections off the loops of the main connections
+			if (auxGroup != null && !connection.getAuxId().equals(OFAuxId.MAIN)) {
+				moveToEventLoop(auxGroup.next());
+				return;
+			}
+
 			// Notify the connection broker
 			notifyConnectionOpened(connection);
 		}
+
+		/**
+		 * Re-register the channel with another event loop, then notify the
+		 * connection broker from there. The loop of a channel is chosen
+		 * when it is accepted, before its aux id is known. Reads stop
+		 * during the move, and messages already decoded are held and
+		 * handed over once the connection is opened.
+		 */
+		private void moveToEventLoop(final EventLoop eventLoop) {
+			final EventLoop oldLoop = channel.eventLoop();
+			deferred = new ArrayList<OFMessage>();
+			channel.config().setAutoRead(false);
+			channel.deregister().addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) {
+					if (!future.isSuccess()) {
+						log.error("Failed to deregister aux connection {} of switch {}: {}",
+								new Object[] { connection.getAuxId(), connection.getDatapathId(), future.cause() });
+						channel.close();
+						return;
+					}
+					// Let the read in progress on the old loop unwind first
+					oldLoop.execute(new Runnable() {
+						@Override
+						public void run() {
+							eventLoop.register(channel).addListener(new ChannelFutureListener() {
+								@Override
+								public void operationComplete(ChannelFuture future) throws Exception {
+									if (!future.isSuccess()) {
+										log.error("Failed to move aux connection {} of switch {}: {}",
+												new Object[] { connection.getAuxId(), connection.getDatapathId(), future.cause() });
+										channel.close();
+										return;
+									}
+									notifyConnectionOpened(connection);
+									List<OFMessage> msgs = deferred;
+									deferred = null;
+									for (OFMessage m : msgs) {
+										processOFMessage(m);
+									}
+									channel.config().setAutoRead(true);
+								}
+							});
+						}
+					});
+				}
+			});
+		}
 	};
 
 	/**
@@ -493,6 +564,25 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 			@Nonnull Timer timer,
 			@Nonnull List<U32> ofBitmaps,
 			@Nonnull OFFactory defaultFactory) {
+		this(switchManager, newConnectionListener, pipeline, debugCounters,
+				timer, ofBitmaps, defaultFactory, null);
+	}
+
+	/**
+	 * Creates a handler for interacting with the switch channel
+	 *
+	 * @param auxGroup
+	 *            the event loops to move aux connections to once their
+	 *            handshake completes, or null to keep them where they are
+	 */
+	OFChannelHandler(@Nonnull IOFSwitchManager switchManager,
+			@Nonnull INewOFConnectionListener newConnectionListener,
+			@Nonnull ChannelPipeline pipeline,
+			@Nonnull IDebugCounterService debugCounters,
+			@Nonnull Timer timer,
+			@Nonnull List<U32> ofBitmaps,
+			@Nonnull OFFactory defaultFactory,
+			EventLoopGroup auxGroup) {
 
 		Preconditions.checkNotNull(switchManager, "switchManager");
 		Preconditions.checkNotNull(newConnectionListener, "connectionOpenedListener");
@@ -508,6 +598,7 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 		this.timer = timer;
 		this.ofBitmaps = ofBitmaps;
 		this.factory = defaultFactory;
+		this.auxGroup = auxGroup;
 
 		log.debug("constructor on OFChannelHandler {}", String.format("%08x", System.identityHashCode(this)));
 	}
@@ -604,6 +695,15 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 		log.info("[{}] Disconnected connection", getConnectionInfoString());
 	}
 
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		// Let the connection resume flushing the messages it held back
+		if (this.connection != null) {
+			this.connection.writabilityChanged();
+		}
+		ctx.fireChannelWritabilityChanged();
+	}
+
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
 			throws Exception {
@@ -41,6 +41,7 @@ import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.timeout.ReadTimeoutHandler;
@@ -61,6 +62,7 @@ public class OFChannelInitializer extends ChannelInitializer<Channel> {
 	private String keyStorePassword;
 	private OFFactory defaultFactory;
 	private List<U32> ofBitmaps;
+	private EventLoopGroup auxGroup;
 
 	public OFChannelInitializer(IOFSwitchManager switchManager,
 			INewOFConnectionListener connectionListener,
@@ -69,7 +71,8 @@ public class OFChannelInitializer extends ChannelInitializer<Channel> {
 			List<U32> ofBitmaps,
 			OFFactory defaultFactory,
 			String keyStore, 
-			String keyStorePassword) {
+			String keyStorePassword,
+			EventLoopGroup auxGroup) {
 		super();
 		this.switchManager = switchManager;
 		this.connectionListener = connectionListener;
@@ -79,6 +82,7 @@ public class OFChannelInitializer extends ChannelInitializer<Channel> {
 		this.ofBitmaps = ofBitmaps;
 		this.keyStore = keyStore;
 		this.keyStorePassword = keyStorePassword;
+		this.auxGroup = auxGroup;
 	}
 
 	@Override
@@ -91,7 +95,8 @@ public class OFChannelInitializer extends ChannelInitializer<Channel> {
 				debugCounters,
 				timer,
 				ofBitmaps,
-				defaultFactory);
+				defaultFactory,
+				auxGroup);
 
 		if (keyStore != null && keyStorePassword != null) {
 			try {
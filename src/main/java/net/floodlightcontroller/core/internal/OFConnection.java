@@ -23,17 +23,22 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.util.Timeout;
 import io.netty.util.Timer;
 import io.netty.util.TimerTask;
+import io.netty.util.internal.PlatformDependent;
 
 import java.util.Date;
 
@@ -41,6 +46,7 @@ import net.floodlightcontroller.core.Deliverable;
 import net.floodlightcontroller.core.DeliverableListenableFuture;
 import net.floodlightcontroller.core.IOFConnection;
 import net.floodlightcontroller.core.IOFConnectionBackend;
+import net.floodlightcontroller.core.OFWritePolicy;
 import net.floodlightcontroller.core.SwitchDisconnectedException;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.util.IterableUtils;
@@ -52,6 +58,7 @@ import org.projectfloodlight.openflow.protocol.OFRequest;
 import org.projectfloodlight.openflow.protocol.OFStatsReply;
 import org.projectfloodlight.openflow.protocol.OFStatsReplyFlags;
 import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFAuxId;
 import org.projectfloodlight.openflow.types.U64;
@@ -81,7 +88,7 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	 * Netty4 does not guarantee order of messages that are written into the channel any more.
 	 * To ensure messages do not get reordered, never directly call {@link Channel#write(Object)}.
 	 *
-	 * Instead, use {@link #write(Iterable)}, which queue up write request on the EventLoop,
+	 * Instead, use {@link #write(Iterable)}, which queues up the messages for the EventLoop,
 	 * to make sure they are handled in order.
 	 */
 	private final Channel channel;
@@ -102,28 +109,41 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	private volatile U64 latency;
 
 	/**
-	 * Used to write messages to ensure order w/Netty4.
-	 * It also ensures we do not reuse the array, since
-	 * Netty4 will write the object, not the items.
+	 * The most messages handed to the channel in one flush, so that a backlog
+	 * does not hold up the other channels of the EventLoop.
 	 */
-	private class WriteMessageTask implements Runnable {
-		private final Iterable<OFMessage> msglist;
+	private static final int MAX_FLUSH_BATCH = 1024;
 
-		public WriteMessageTask(Iterable<OFMessage> msglist) {
-			this.msglist = msglist;
-		}
+	/**
+	 * The most messages written but not yet handed to the channel. A switch
+	 * that lets this many pile up has stalled and is disconnected, so that
+	 * the queue cannot grow without limit behind it.
+	 */
+	static final int MAX_QUEUED_MESSAGES = 64 * MAX_FLUSH_BATCH;
+
+	/**
+	 * Messages written but not yet handed to the channel. Any thread may add
+	 * to it; only the EventLoop of the channel takes from it.
+	 */
+	private final Queue<OFMessage> outbound = PlatformDependent.newMpscQueue();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final AtomicBoolean overflowed = new AtomicBoolean();
 
+	/**
+	 * Used to write messages to ensure order w/Netty4.
+	 * Hands the queued messages to the channel in a new list with a single
+	 * flush, so that a burst of writes costs one flush per EventLoop run.
+	 */
+	private class FlushTask implements Runnable {
 		@Override
 		public void run() {
-			for (OFMessage m : msglist) {
-				if (logger.isTraceEnabled())
-					logger.trace("{}: send {}", this, m);
-				counters.updateWriteStats(m);
-			}
-			channel.writeAndFlush(msglist);
+			flush();
 		}
 	}
 
+	private final FlushTask flushTask = new FlushTask();
+
 	public OFConnection(@Nonnull DatapathId dpid,
 			@Nonnull OFFactory factory,
 			@Nonnull Channel channel,
@@ -149,15 +169,34 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	}
 
 	/**
-	 * All write methods chain into this write() to use WriteMessageTask.
-	 * 
-	 * Write the list of messages to the switch
+	 * Write the list of messages to the switch. The messages are never
+	 * dropped while the switch is not keeping up, but a switch that stalls
+	 * until {@link #MAX_QUEUED_MESSAGES} are queued is disconnected.
 	 * 
 	 * @param msgList list of messages to write
 	 * @return list of failed messages; can only fail if channel disconnected
 	 */
 	@Override
 	public Collection<OFMessage> write(final Iterable<OFMessage> msgList) {
+		return write(msgList, OFWritePolicy.BLOCK);
+	}
+
+	/**
+	 * All write methods chain into this write() to use the FlushTask.
+	 * 
+	 * Write the list of messages to the switch. The switch is not keeping up
+	 * while the channel is above its high water mark, and the policy then
+	 * decides which messages are dropped. Whatever the policy, a switch that
+	 * stalls until {@link #MAX_QUEUED_MESSAGES} are queued is disconnected
+	 * and the messages that do not fit fail.
+	 * 
+	 * @param msgList list of messages to write
+	 * @param policy what to do with the messages while the switch is not keeping up
+	 * @return list of failed messages; messages fail if channel disconnected,
+	 * if the policy drops them or if the switch stalled
+	 */
+	@Override
+	public Collection<OFMessage> write(final Iterable<OFMessage> msgList, OFWritePolicy policy) {
 		if (!isConnected()) {
 			if (logger.isDebugEnabled())
 				logger.debug(this.toString() + " : not connected - dropping {} element msglist {} ",
@@ -165,14 +204,100 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 						String.valueOf(msgList).substring(0, 80));
 			return IterableUtils.toCollection(msgList);
 		}
-		for (OFMessage m : msgList) {			
-			if (logger.isTraceEnabled()) {
-				logger.trace("{}: send {}", this, m);
-				counters.updateWriteStats(m);
+		boolean congested = policy != OFWritePolicy.BLOCK && !channel.isWritable();
+		List<OFMessage> dropped = null;
+		for (OFMessage m : msgList) {
+			if ((congested && (policy == OFWritePolicy.DROP || m.getType() == OFType.PACKET_OUT))
+					|| queued.get() >= MAX_QUEUED_MESSAGES) {
+				if (dropped == null) {
+					dropped = new ArrayList<OFMessage>();
+				}
+				dropped.add(m);
+			} else {
+				outbound.offer(m);
+				queued.incrementAndGet();
 			}
 		}
-		this.channel.eventLoop().execute(new WriteMessageTask(msgList));
-		return Collections.emptyList();
+		scheduleFlush();
+		if (dropped == null) {
+			return Collections.emptyList();
+		}
+		if (queued.get() >= MAX_QUEUED_MESSAGES && overflowed.compareAndSet(false, true)) {
+			logger.warn("{}: {} messages queued, switch stalled - disconnecting",
+					this, queued.get());
+			this.channel.disconnect();
+		}
+		counters.updateDropStats(dropped.size());
+		if (logger.isDebugEnabled())
+			logger.debug("{}: not keeping up - dropping {} of {} messages",
+					new Object[] { this, dropped.size(), Iterables.size(msgList) });
+		return dropped;
+	}
+
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			this.channel.eventLoop().execute(flushTask);
+		}
+	}
+
+	/**
+	 * Hand the queued messages to the channel. Called on the EventLoop of
+	 * the channel only. While the channel is above its high water mark, the
+	 * messages wait for {@link #writabilityChanged()}.
+	 */
+	private void flush() {
+		// cleared first, so that a message queued meanwhile schedules another flush
+		flushScheduled.set(false);
+		if (!channel.isWritable() && channel.isActive()) {
+			counters.updateQueuedBytes(getQueuedBytes());
+			return;
+		}
+		List<OFMessage> batch = new ArrayList<OFMessage>(Math.min(queued.get(), MAX_FLUSH_BATCH));
+		OFMessage m;
+		while (batch.size() < MAX_FLUSH_BATCH && (m = outbound.poll()) != null) {
+			batch.add(m);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		queued.addAndGet(-batch.size());
+		for (OFMessage msg : batch) {
+			if (logger.isTraceEnabled())
+				logger.trace("{}: send {}", this, msg);
+			counters.updateWriteStats(msg);
+		}
+		counters.updateFlushStats(batch.size());
+		channel.writeAndFlush(batch);
+		counters.updateQueuedBytes(getQueuedBytes());
+		if (!outbound.isEmpty()) {
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Notify the connection that the channel crossed one of its water marks.
+	 * Called on the EventLoop of the channel.
+	 */
+	public void writabilityChanged() {
+		if (channel.isWritable() && !outbound.isEmpty()) {
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * @return the number of messages written but not yet handed to the channel
+	 */
+	public int getQueuedMessages() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of bytes handed to the channel but not yet written
+	 * to the socket, which the water marks of the channel apply to
+	 */
+	public long getQueuedBytes() {
+		ChannelOutboundBuffer buf = channel.unsafe().outboundBuffer();
+		return (buf == null) ? 0 : buf.totalPendingWriteBytes();
 	}
 
 	/**
@@ -243,6 +368,13 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 	}
 
 	public void disconnected() {
+		// called on the EventLoop, the only consumer of the queue
+		int discarded = 0;
+		while (outbound.poll() != null) {
+			discarded++;
+		}
+		queued.addAndGet(-discarded);
+
 		SwitchDisconnectedException exception = new SwitchDisconnectedException(getDatapathId());
 		for (Long xid : xidDeliverableMap.keySet()) {
 			// protect against other mechanisms running at the same time
@@ -61,6 +61,13 @@ public class OFConnectionCounters {
     private final IDebugCounter ctrWriteBundleControl;
     private final IDebugCounter ctrWriteBundleAdd;
 
+    // Write Queue Counters
+    //
+    private final IDebugCounter ctrWriteFlush;
+    private final IDebugCounter ctrWriteFlushedMessages;
+    private final IDebugCounter ctrWriteDropped;
+    private final IDebugCounter ctrWriteQueuedBytes;
+
     // Read Counters
     //
     private final IDebugCounter ctrReadHello;
@@ -327,6 +334,25 @@ public class OFConnectionCounters {
                                      stringId,
                                      OFType.TABLE_STATUS.toString());
 
+        // the mean flush batch size is flushed-messages / flush
+        ctrWriteFlush =
+                counters.registerCounter(COUNTER_MODULE,
+                                         stringId + hierarchy + "/flush",
+                                         "Number of flushes of queued messages in this connection");
+        ctrWriteFlushedMessages =
+                counters.registerCounter(COUNTER_MODULE,
+                                         stringId + hierarchy + "/flushed-messages",
+                                         "Number of queued messages flushed in this connection");
+        ctrWriteDropped =
+                counters.registerCounter(COUNTER_MODULE,
+                                         stringId + hierarchy + "/dropped-messages",
+                                         "Number of messages dropped by the write policy in this connection");
+        // a gauge rather than a count, set each time it is sampled
+        ctrWriteQueuedBytes =
+                counters.registerCounter(COUNTER_MODULE,
+                                         stringId + hierarchy + "/queued-bytes",
+                                         "Bytes handed to the channel but not yet written to the socket in this connection, sampled on flush");
+
         // Register Read Counters
         //
         hierarchy = "/read";
@@ -527,6 +553,34 @@ public class OFConnectionCounters {
     	return debugCounterService.removeCounterHierarchy(COUNTER_MODULE, dpidAndConnIdString);
     }
 
+   /**
+    * Update Write Queue Counters for a flush of queued messages
+    * @param batchSize the number of messages flushed
+    */
+   public void updateFlushStats(int batchSize) {
+       ctrWriteFlush.increment();
+       ctrWriteFlushedMessages.add(batchSize);
+   }
+
+   /**
+    * Update the Write Queue gauge of the bytes waiting in the channel. Only
+    * called from the EventLoop of the connection, so the reset and the add
+    * are not interleaved with another sample
+    * @param bytes the bytes handed to the channel but not yet written
+    */
+   public void updateQueuedBytes(long bytes) {
+       ctrWriteQueuedBytes.reset();
+       ctrWriteQueuedBytes.add(bytes);
+   }
+
+   /**
+    * Update Write Queue Counters for messages dropped by the write policy
+    * @param count the number of messages dropped
+    */
+   public void updateDropStats(int count) {
+       ctrWriteDropped.add(count);
+   }
+
    /**
     * Update Write Counters for Open flow messages
     * @param ofm openflow message
@@ -817,9 +817,19 @@ public class OFSwitch implements IOFSwitchBackend {
 		return connection;
 	}
 
+	/**
+	 * Gets the connection of a category. A category whose aux connection
+	 * the switch did not open uses the main connection.
+	 * @param category the registered category
+	 * @return the connection to write the messages of the category to
+	 */
 	public IOFConnection getConnection(LogicalOFMessageCategory category) {
 		if (switchManager.isCategoryRegistered(category)) {
-			return getConnection(category.getAuxId());
+			IOFConnection connection = this.connections.get(category.getAuxId());
+			if (connection == null) {
+				return getConnection(OFAuxId.MAIN);
+			}
+			return connection;
 		}
 		else{
 			throw new IllegalArgumentException(category + " is not registered with the floodlight provider service.");
@@ -859,7 +869,7 @@ public class OFSwitch implements IOFSwitchBackend {
 
 	@Override
 	public Collection<OFMessage> write(Iterable<OFMessage> msgList, LogicalOFMessageCategory category) {
-		IOFConnection conn = this.getConnection(category); /* do first to check for supported category */
+		IOFConnectionBackend conn = (IOFConnectionBackend) this.getConnection(category); /* do first to check for supported category */
 		Collection<OFMessage> validMsgs = new ArrayList<OFMessage>();
 		Collection<OFMessage> invalidMsgs = SwitchRoleMessageValidator.pruneInvalidMessages(
 				msgList, validMsgs, this.getOFFactory().getVersion(), this.isActive());
@@ -867,7 +877,7 @@ public class OFSwitch implements IOFSwitchBackend {
 			log.debug("MESSAGES: {}, VALID: {}, INVALID: {}", new Object[] { msgList, validMsgs, invalidMsgs});
 		}
 		/* Try to write all valid messages */
-		Collection<OFMessage> unsent = conn.write(validMsgs);
+		Collection<OFMessage> unsent = conn.write(validMsgs, category.getWritePolicy());
 		for (OFMessage m : validMsgs) {
 			if (!unsent.contains(m)) {
 				switchManager.handleOutgoingMessage(this, m);
@@ -877,7 +887,14 @@ public class OFSwitch implements IOFSwitchBackend {
 		/* Collect invalid and unsent messages */
 		Collection<OFMessage> ret = null;
 		if (!unsent.isEmpty()) {
-			log.warn("Could not send messages {} due to channel disconnection on switch {}", unsent, this.getId());
+			if (conn.isConnected()) {
+				/* shed by the write policy, already counted by the connection's drop counter */
+				if (log.isDebugEnabled()) {
+					log.debug("Dropped {} messages due to congestion on switch {}", unsent.size(), this.getId());
+				}
+			} else {
+				log.warn("Could not send messages {} due to channel disconnection on switch {}", unsent, this.getId());
+			}
 			ret = IterableUtils.toCollection(unsent);
 		}
 		if (!invalidMsgs.isEmpty()) {
@@ -17,6 +17,7 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.HAListenerTypeMarker;
@@ -40,6 +41,8 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.rest.SwitchRepresentation;
+import net.floodlightcontroller.core.util.EventLoopMonitor;
+import net.floodlightcontroller.core.util.NettyTransport;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugevent.IDebugEventService;
 import net.floodlightcontroller.debugevent.IDebugEventService.EventType;
@@ -77,9 +80,8 @@ import com.google.common.collect.ImmutableSet;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
 /**
@@ -114,6 +116,35 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	protected static List<U32> ofBitmaps;
 	protected static OFFactory defaultFactory;
 
+	/* 
+	 * Bytes pending in the outbound buffer of a switch channel at which
+	 * the switch is no longer keeping up, and at which it is again. 
+	 * Netty defaults.
+	 */
+	private static final int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 64 * 1024;
+	private static final int DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 32 * 1024;
+	protected static int writeBufferHighWaterMark = DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+	protected static int writeBufferLowWaterMark = DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+
+	/*
+	 * Threads of the event loops serving auxiliary connections, apart
+	 * from those of the main connections. Zero keeps auxiliary connections
+	 * on the worker loops.
+	 */
+	protected static int auxEventLoopThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	/*
+	 * Transport and socket options of switch channels. Zero worker threads
+	 * and receive buffer size keep the netty and OS defaults.
+	 */
+	protected static NettyTransport transport = new NettyTransport(NettyTransport.Type.AUTO);
+	protected static int workerThreads = 0;
+	protected static boolean tcpNoDelay = true;
+	protected static int receiveBufferSize = 0;
+
+	/** Seconds between samples of the event loop counters */
+	private static final int EVENT_LOOP_MONITOR_INTERVAL = 10;
+
 	private ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler> switchHandlers;
 	private ConcurrentHashMap<DatapathId, IOFSwitchBackend> switches;
 	private ConcurrentHashMap<DatapathId, IOFSwitch> syncedSwitches;
@@ -134,8 +165,9 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	private IDebugEventService debugEventService;
 	private IDebugCounterService debugCounterService;
 
-	private NioEventLoopGroup bossGroup;
-	private NioEventLoopGroup workerGroup;
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup workerGroup;
+	private EventLoopGroup auxGroup;
 	private DefaultChannelGroup cg;
 
 	/** IHAListener Implementation **/
@@ -813,6 +845,91 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		}
 		defaultFactory = computeInitialFactory(ofVersions);
 		ofBitmaps = computeOurVersionBitmaps(ofVersions);
+
+		/*
+		 * Get the water marks of the outbound buffer of switch channels,
+		 * between which the write policy of a message category applies.
+		 */
+		String highWaterMark = configParams.get("writeBufferHighWaterMark");
+		String lowWaterMark = configParams.get("writeBufferLowWaterMark");
+		try {
+			int high = (highWaterMark == null || highWaterMark.isEmpty()) 
+					? DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK : Integer.parseInt(highWaterMark.trim());
+			int low = (lowWaterMark == null || lowWaterMark.isEmpty()) 
+					? Math.min(high / 2, DEFAULT_WRITE_BUFFER_LOW_WATER_MARK) : Integer.parseInt(lowWaterMark.trim());
+			if (low < 0 || low > high) {
+				throw new IllegalArgumentException("low water mark must be between 0 and the high water mark");
+			}
+			writeBufferHighWaterMark = high;
+			writeBufferLowWaterMark = low;
+		} catch (IllegalArgumentException e) {
+			log.error("Invalid write buffer water marks {} and {}. Using {} and {}", 
+					new Object[] { highWaterMark, lowWaterMark, writeBufferHighWaterMark, writeBufferLowWaterMark });
+		}
+		log.info("Switch write buffer water marks set to {} and {} bytes", writeBufferHighWaterMark, writeBufferLowWaterMark);
+
+		/*
+		 * Get the number of event loop threads for auxiliary connections.
+		 */
+		String auxThreads = configParams.get("auxEventLoopThreads");
+		if (auxThreads != null && !auxThreads.isEmpty()) {
+			try {
+				int threads = Integer.parseInt(auxThreads.trim());
+				if (threads < 0) {
+					throw new NumberFormatException("negative thread count");
+				}
+				auxEventLoopThreads = threads;
+			} catch (NumberFormatException e) {
+				log.error("Invalid auxiliary event loop thread count {}. Using {}", auxThreads, auxEventLoopThreads);
+			}
+		}
+		if (auxEventLoopThreads > 0) {
+			log.info("Auxiliary connections served by {} event loop threads", auxEventLoopThreads);
+		} else {
+			log.info("Auxiliary connections served by the worker event loops");
+		}
+
+		/*
+		 * Get the netty transport, and the threads and socket options of
+		 * switch channels.
+		 */
+		try {
+			transport = NettyTransport.fromString(configParams.get("transport"));
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException("Invalid transport " + configParams.get("transport") 
+					+ ". Must be one of " + Arrays.toString(NettyTransport.Type.values()), e);
+		}
+		workerThreads = parseNonNegative(configParams, "workerThreads", workerThreads);
+		receiveBufferSize = parseNonNegative(configParams, "receiveBufferSize", receiveBufferSize);
+		String noDelay = configParams.get("tcpNoDelay");
+		if (noDelay != null && !noDelay.isEmpty()) {
+			tcpNoDelay = noDelay.trim().equalsIgnoreCase("yes") || noDelay.trim().equalsIgnoreCase("true");
+		}
+		log.info("Switch connections use the {} transport with {} worker threads, TCP_NODELAY {}, SO_RCVBUF {}", 
+				new Object[] { transport, workerThreads == 0 ? "default" : workerThreads, tcpNoDelay, 
+						receiveBufferSize == 0 ? "default" : receiveBufferSize });
+	}
+
+	/**
+	 * Parse a count from the configuration.
+	 * @param configParams the module configuration
+	 * @param key the key of the count
+	 * @param defaultValue the value used when the count is missing or invalid
+	 * @return the count
+	 */
+	private static int parseNonNegative(Map<String, String> configParams, String key, int defaultValue) {
+		String value = configParams.get(key);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			int i = Integer.parseInt(value.trim());
+			if (i >= 0) {
+				return i;
+			}
+		} catch (NumberFormatException e) { }
+		log.error("Invalid {} {}. Using {}", new Object[] { key, value, defaultValue });
+		return defaultValue;
 	}
 
 	/**
@@ -983,16 +1100,42 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	 */
 	public void bootstrapNetty() {
 		try {
-			bossGroup = new NioEventLoopGroup();
-			workerGroup = new NioEventLoopGroup();
+			/* Accepting switch connections takes little; one thread will do */
+			bossGroup = transport.newEventLoopGroup(1, null);
+			workerGroup = transport.newEventLoopGroup(workerThreads, null);
+			if (auxEventLoopThreads > 0) {
+				auxGroup = transport.newEventLoopGroup(auxEventLoopThreads, null);
+			}
 
+			/* 
+			 * Socket options of the switch channels are child options; those
+			 * of the server channel do not carry over to accepted channels.
+			 */
 			ServerBootstrap bootstrap = new ServerBootstrap()
 			.group(bossGroup, workerGroup)
-			.channel(NioServerSocketChannel.class)
+			.channel(transport.getServerChannelClass())
 			.option(ChannelOption.SO_REUSEADDR, true)
-			.option(ChannelOption.SO_KEEPALIVE, true)
-			.option(ChannelOption.TCP_NODELAY, true)
-			.option(ChannelOption.SO_SNDBUF, Controller.SEND_BUFFER_SIZE);
+			.option(ChannelOption.ALLOCATOR, transport.getAllocator())
+			.childOption(ChannelOption.ALLOCATOR, transport.getAllocator())
+			.childOption(ChannelOption.SO_KEEPALIVE, true)
+			.childOption(ChannelOption.TCP_NODELAY, tcpNoDelay)
+			.childOption(ChannelOption.SO_SNDBUF, Controller.SEND_BUFFER_SIZE);
+			if (receiveBufferSize > 0) {
+				bootstrap.option(ChannelOption.SO_RCVBUF, receiveBufferSize)
+				.childOption(ChannelOption.SO_RCVBUF, receiveBufferSize);
+			}
+
+			/* 
+			 * Netty checks each water mark against the other as it is set,
+			 * so the one moving away from the default pair goes first.
+			 */
+			if (writeBufferLowWaterMark > DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK) {
+				bootstrap.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, writeBufferHighWaterMark)
+				.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, writeBufferLowWaterMark);
+			} else {
+				bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, writeBufferLowWaterMark)
+				.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, writeBufferHighWaterMark);
+			}
 
 
 			OFChannelInitializer initializer = new OFChannelInitializer(
@@ -1003,10 +1146,18 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 					ofBitmaps, 
 					defaultFactory, 
 					keyStore, 
-					keyStorePassword);
+					keyStorePassword,
+					auxGroup);
 
 			bootstrap.childHandler(initializer);
 
+			EventLoopMonitor monitor = new EventLoopMonitor(debugCounterService, counters.prefix);
+			monitor.addGroup("worker", workerGroup);
+			if (auxGroup != null) {
+				monitor.addGroup("aux", auxGroup);
+			}
+			monitor.start(bossGroup, EVENT_LOOP_MONITOR_INTERVAL, TimeUnit.SECONDS);
+
 			cg = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
 
 			Set<InetSocketAddress> addrs = new HashSet<InetSocketAddress>();
@@ -0,0 +1,140 @@
+package net.floodlightcontroller.core.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publish how busy the event loops of netty event loop groups are. For
+ * each loop, the counter "[group]/loop-[n]/cpu-time" adds up the CPU time
+ * of its thread in ms, so that its rate is the utilization of the loop,
+ * and "[group]/loop-[n]/pending-tasks" adds up the tasks found waiting
+ * at each sample.
+ */
+public class EventLoopMonitor implements Runnable {
+    protected static final Logger logger =
+            LoggerFactory.getLogger(EventLoopMonitor.class);
+
+    private static final ThreadMXBean threads =
+            ManagementFactory.getThreadMXBean();
+
+    private final IDebugCounterService debugCounters;
+    private final String moduleName;
+    private final List<Loop> loops = new ArrayList<Loop>();
+    private long lastSample = System.nanoTime();
+
+    private class Loop {
+        final String name;
+        final EventExecutor executor;
+        final IDebugCounter cpuTime;
+        final IDebugCounter pendingTasks;
+        /** written from the loop, read from the monitor */
+        volatile long threadId = -1;
+        long lastCpuTime;
+
+        Loop(String name, EventExecutor executor) {
+            this.name = name;
+            this.executor = executor;
+            debugCounters.registerCounter(moduleName, name,
+                                          "Event loop " + name);
+            this.cpuTime = debugCounters.registerCounter(moduleName,
+                    name + "/cpu-time",
+                    "CPU time of the event loop thread, in ms");
+            this.pendingTasks = debugCounters.registerCounter(moduleName,
+                    name + "/pending-tasks",
+                    "Tasks waiting for the event loop, summed over samples");
+        }
+    }
+
+    /**
+     * Create a monitor
+     * @param debugCounters the counter service
+     * @param moduleName the registered module to add the counters to
+     */
+    public EventLoopMonitor(IDebugCounterService debugCounters,
+                            String moduleName) {
+        this.debugCounters = debugCounters;
+        this.moduleName = moduleName;
+    }
+
+    /**
+     * Monitor the loops of a group
+     * @param groupName the name of the group in the counter hierarchy
+     * @param group the group
+     */
+    public void addGroup(String groupName, EventExecutorGroup group) {
+        if (!threads.isThreadCpuTimeSupported()) {
+            logger.debug("Thread CPU time not supported; not monitoring {}",
+                         groupName);
+            return;
+        }
+        // the counter service wants every level of the hierarchy
+        debugCounters.registerCounter(moduleName, groupName,
+                                      "Event loops of " + groupName);
+        int i = 0;
+        for (EventExecutor executor : group) {
+            final Loop loop = new Loop(groupName + "/loop-" + i++, executor);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loop.threadId = Thread.currentThread().getId();
+                }
+            });
+            synchronized (loops) {
+                loops.add(loop);
+            }
+        }
+    }
+
+    /**
+     * Sample the loops at a fixed rate
+     * @param executor the executor to sample from
+     * @param period the sampling period
+     * @param unit the unit of the period
+     */
+    public void start(EventExecutorGroup executor, long period,
+                      TimeUnit unit) {
+        executor.scheduleAtFixedRate(this, period, period, unit);
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - lastSample);
+        lastSample = now;
+        List<Loop> current;
+        synchronized (loops) {
+            current = new ArrayList<Loop>(loops);
+        }
+        for (Loop loop : current) {
+            if (loop.threadId < 0 || loop.executor.isShuttingDown())
+                continue;
+            long cpuTime = threads.getThreadCpuTime(loop.threadId);
+            if (cpuTime < 0)
+                continue;
+            long delta = cpuTime - loop.lastCpuTime;
+            // count whole ms only, leaving the rest for the next sample
+            loop.cpuTime.add(TimeUnit.NANOSECONDS.toMillis(delta));
+            loop.lastCpuTime = cpuTime - delta % 1000000;
+            if (loop.executor instanceof SingleThreadEventExecutor) {
+                loop.pendingTasks.add(((SingleThreadEventExecutor)
+                        loop.executor).pendingTasks());
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace("{} utilization {}%", loop.name,
+                             delta * 100 / elapsed);
+            }
+        }
+    }
+}
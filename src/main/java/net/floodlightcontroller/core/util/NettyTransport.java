@@ -0,0 +1,143 @@
+package net.floodlightcontroller.core.util;
+
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.internal.PlatformDependent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The netty transport of the controller's servers: the JDK NIO selector,
+ * or the native epoll transport, which is only available on Linux.
+ * Event loop groups and channels of a server must all come from the same
+ * transport.
+ */
+public class NettyTransport {
+    protected static final Logger logger =
+            LoggerFactory.getLogger(NettyTransport.class);
+
+    public enum Type {
+        NIO,
+        EPOLL,
+        /** epoll when available, else NIO */
+        AUTO
+    }
+
+    private final Type type;
+
+    /**
+     * Create a transport
+     * @param type the transport type. {@link Type#AUTO}, and
+     * {@link Type#EPOLL} when the native library cannot be loaded, resolve
+     * to {@link Type#NIO}
+     */
+    public NettyTransport(Type type) {
+        if (type == Type.NIO) {
+            this.type = Type.NIO;
+        } else if (isEpollUsable()) {
+            this.type = Type.EPOLL;
+        } else {
+            if (type == Type.EPOLL) {
+                logger.warn("Native epoll transport not available, " +
+                            "using NIO");
+            }
+            this.type = Type.NIO;
+        }
+    }
+
+    /**
+     * Check whether epoll event loops can be created. Besides the native
+     * library, they allocate their event arrays through sun.misc.Unsafe,
+     * which not every JVM lets netty use
+     * @return true if the epoll transport works here
+     */
+    private static boolean isEpollUsable() {
+        if (!Epoll.isAvailable()) {
+            logger.debug("Native epoll library not loaded",
+                         Epoll.unavailabilityCause());
+            return false;
+        }
+        if (!PlatformDependent.hasUnsafe()) {
+            logger.debug("sun.misc.Unsafe not available to netty");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Create a transport from a configuration value
+     * @param value "nio", "epoll" or "auto"; null or empty is "auto"
+     * @return the transport
+     * @throws IllegalArgumentException if the value is not a transport
+     */
+    public static NettyTransport fromString(String value) {
+        if (value == null || value.trim().isEmpty())
+            return new NettyTransport(Type.AUTO);
+        return new NettyTransport(Type.valueOf(value.trim().toUpperCase()));
+    }
+
+    /**
+     * Get the transport in use
+     * @return {@link Type#NIO} or {@link Type#EPOLL}
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Create an event loop group
+     * @param threads the number of threads, 0 for the netty default
+     * @param threadFactory the thread factory, or null for the default
+     * @return the group
+     */
+    public EventLoopGroup newEventLoopGroup(int threads,
+                                            ThreadFactory threadFactory) {
+        if (type == Type.EPOLL) {
+            return threadFactory == null
+                    ? new EpollEventLoopGroup(threads)
+                    : new EpollEventLoopGroup(threads, threadFactory);
+        }
+        return threadFactory == null
+                ? new NioEventLoopGroup(threads)
+                : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public Class<? extends ServerChannel> getServerChannelClass() {
+        return type == Type.EPOLL
+                ? EpollServerSocketChannel.class
+                : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends Channel> getChannelClass() {
+        return type == Type.EPOLL
+                ? EpollSocketChannel.class
+                : NioSocketChannel.class;
+    }
+
+    /**
+     * Get the buffer allocator for the channels. Pooled buffers, direct
+     * when the platform allows it, instead of netty 4.0's unpooled default
+     * @return the allocator
+     */
+    public ByteBufAllocator getAllocator() {
+        return PooledByteBufAllocator.DEFAULT;
+    }
+
+    @Override
+    public String toString() {
+        return type.toString();
+    }
+}
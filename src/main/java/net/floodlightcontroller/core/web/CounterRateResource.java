@@ -0,0 +1,34 @@
+package net.floodlightcontroller.core.web;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.debugcounter.DebugCounterResource;
+
+import org.restlet.resource.Get;
+
+/**
+ * Return the rates of counters, in increments per second, as
+ * {@link CounterResource} returns their values
+ */
+public class CounterRateResource extends CounterResourceBase {
+    @Get("json")
+    public Map<String, Object> retrieve() {
+        String counterTitle = (String) getRequestAttributes().get(CoreWebRoutable.STR_CTR_TITLE);
+        String counterModule = (String) getRequestAttributes().get(CoreWebRoutable.STR_CTR_MODULE);
+        List<DebugCounterResource> counters;
+        if (counterModule.equalsIgnoreCase(CoreWebRoutable.STR_ALL)) {
+            counters = this.debugCounterService.getAllCounterValues();
+        } else if (counterTitle.equalsIgnoreCase(CoreWebRoutable.STR_ALL)) {
+            counters = this.debugCounterService.getModuleCounterValues(counterModule);
+        } else {
+            counters = this.debugCounterService.getCounterHierarchy(counterModule, counterTitle);
+        }
+        Map<String, Object> model = new HashMap<String, Object>();
+        for (DebugCounterResource dcr : counters) {
+            model.put(dcr.getCounterHierarchy(), dcr.getCounterRate());
+        }
+        return model;
+    }
+}
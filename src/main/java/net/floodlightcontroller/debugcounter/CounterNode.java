@@ -5,7 +5,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -25,6 +25,9 @@ import com.google.common.collect.ImmutableList;
  * <li> The root and the first level of the tree (root and module) are a shim
  * layers that con't have an actual counter value. We represent this with a
  * null counter.
+ * <li> Changes to the tree must be serialized by the caller. Lookups and
+ * iteration need no lock: they see a weakly consistent snapshot of the
+ * tree while it changes.
  *
  * @author gregor
  */
@@ -45,7 +48,8 @@ class CounterNode implements Iterable<DebugCounterImpl> {
      * root level and module level.
      */
     private final DebugCounterImpl counter;
-    private final TreeMap<String, CounterNode> children = new TreeMap<>();
+    private final ConcurrentSkipListMap<String, CounterNode> children =
+            new ConcurrentSkipListMap<>();
 
     /**
      * convert module name and counter hierarchy into list of
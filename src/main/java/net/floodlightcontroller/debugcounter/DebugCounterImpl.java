@@ -1,8 +1,8 @@
 package net.floodlightcontroller.debugcounter;
 
 import java.util.Collection;
-import java.util.Date;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.Nonnull;
 
@@ -12,15 +12,25 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
 
+/**
+ * A counter incremented from many threads at once, such as the packet-in
+ * counters the netty workers all update. The value is a LongAdder, whose
+ * padded cells spread contended updates over several cache lines.
+ */
 class DebugCounterImpl implements IDebugCounter {
     private final String moduleName;
     private final String counterHierarchy;
     private final String description;
     private final ImmutableSet<IDebugCounterService.MetaData> metaData;
 
-    private final AtomicLong value = new AtomicLong();
+    private final LongAdder value = new LongAdder();
 
-    private final Date lastModified = new Date(); // should return long ms to ensure immutability
+    private volatile long lastModified;
+
+    // written by the thread sampling the rate only
+    private long lastSampleValue;
+    private long lastSampleTimeNs;
+    private volatile long rate;
 
     DebugCounterImpl(@Nonnull String moduleName,
                      @Nonnull String counterHierarchy,
@@ -30,7 +40,8 @@ class DebugCounterImpl implements IDebugCounter {
         this.counterHierarchy = counterHierarchy;
         this.description = description;
         this.metaData = Sets.immutableEnumSet(metaData);
-        this.lastModified.setTime(System.currentTimeMillis());
+        this.lastModified = System.currentTimeMillis();
+        this.lastSampleTimeNs = System.nanoTime();
     }
 
     @Nonnull
@@ -55,16 +66,50 @@ class DebugCounterImpl implements IDebugCounter {
         return metaData;
     }
 
+    /**
+     * Update the last modified time. Only written when it changes, so that
+     * the threads updating a counter do not keep stealing its cache line
+     */
+    private void touch() {
+        long now = System.currentTimeMillis();
+        if (now != lastModified)
+            lastModified = now;
+    }
+
+    /**
+     * Compute the rate of the counter since the previous sample. Must only
+     * be called from one thread at a time
+     * @param nowNs the current System.nanoTime()
+     */
+    void sampleRate(long nowNs) {
+        long v = value.sum();
+        long elapsedNs = nowNs - lastSampleTimeNs;
+        if (elapsedNs <= 0)
+            return;
+        // after a reset, count from 0
+        long delta = v >= lastSampleValue ? v - lastSampleValue : v;
+        rate = delta * TimeUnit.SECONDS.toNanos(1) / elapsedNs;
+        lastSampleValue = v;
+        lastSampleTimeNs = nowNs;
+    }
+
+    /**
+     * @return the increments per second between the last two samples
+     */
+    long getCounterRate() {
+        return rate;
+    }
+
     @Override
     public void reset() {
-        value.set(0);
-        lastModified.setTime(System.currentTimeMillis());
+        value.reset();
+        touch();
     }
 
     @Override
     public void increment() {
-        value.incrementAndGet();
-        lastModified.setTime(System.currentTimeMillis());
+        value.increment();
+        touch();
     }
 
     @Override
@@ -73,18 +118,18 @@ class DebugCounterImpl implements IDebugCounter {
             throw new IllegalArgumentException("increment must be > 0. Was "
                     + increment);
         }
-        value.addAndGet(increment);
-        lastModified.setTime(System.currentTimeMillis());
+        value.add(increment);
+        touch();
     }
 
     @Override
     public long getCounterValue() {
-        return value.get();
+        return value.sum();
     }
     
 	@Override
 	public long getLastModified() {
-		return lastModified.getTime();
+		return lastModified;
 	}
 
     @Override
@@ -101,7 +146,6 @@ class DebugCounterImpl implements IDebugCounter {
                  + ((metaData == null) ? 0 : metaData.hashCode());
         result = prime * result
                  + ((moduleName == null) ? 0 : moduleName.hashCode());
-        result = prime * result + ((value == null) ? 0 : value.hashCode());
         return result;
     }
 
@@ -126,7 +170,7 @@ class DebugCounterImpl implements IDebugCounter {
         } else if (!moduleName.equals(other.moduleName)) return false;
         if (value == null) {
             if (other.value != null) return false;
-        } else if (value.get() != other.value.get()) return false;
+        } else if (value.sum() != other.value.sum()) return false;
         return true;
     }
 
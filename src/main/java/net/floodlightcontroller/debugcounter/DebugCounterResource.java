@@ -22,6 +22,7 @@ public class DebugCounterResource {
 
 
     private final Long counterValue;
+    private final Long counterRate;
     private final Long lastModified;
     private final String counterDesc;
     private final String counterHierarchy;
@@ -35,6 +36,7 @@ public class DebugCounterResource {
         this.counterDesc = counter.getDescription();
         this.metadata = counter.getMetaData();
         this.counterValue = counter.getCounterValue();
+        this.counterRate = counter.getCounterRate();
         this.metadataString = joiner.join(metadata);
         this.lastModified = counter.getLastModified();
     }
@@ -43,6 +45,13 @@ public class DebugCounterResource {
         return counterValue;
     }
     
+    /**
+     * @return the increments per second over the last sampling period
+     */
+    public Long getCounterRate() {
+        return counterRate;
+    }
+    
     public Long getCounterLastModified() {
         return lastModified;
     }
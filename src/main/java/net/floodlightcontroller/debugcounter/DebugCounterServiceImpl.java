@@ -7,7 +7,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
@@ -17,6 +18,7 @@ import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,11 +33,16 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
     private final CounterNode root = CounterNode.newTree();
 
     /**
-     * protects the counter hierarchy tree. The writeLock is required to
-     * change to hierarchy, i.e., adding nodes. The readLock is required
-     * to query the counters or to reset them.
+     * serializes changes to the counter hierarchy tree, i.e., adding and
+     * removing nodes. Querying the counters or resetting them needs no
+     * lock.
      */
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * How often the rates of the counters are computed
+     */
+    protected static final int RATE_INTERVAL_SECONDS = 1;
 
     static void verifyStringSanity(String str, String name) {
         if (str == null) {
@@ -64,11 +71,11 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
     @Override
     public boolean registerModule(String moduleName) {
         verifyModuleNameSanity(moduleName);
-        lock.writeLock().lock();
+        lock.lock();
         try {
             return root.addModule(moduleName);
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
 
@@ -95,7 +102,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
                 new DebugCounterImpl(moduleName, counterHierarchy,
                                      counterDescription,
                                      Arrays.asList(metaData));
-        lock.writeLock().lock();
+        lock.lock();
         try {
         	/* addCounter(counter) will return null if counter is accepted as a new counter
         	 * or it will return a reference to the existing DebugCounterImpl if the counter
@@ -112,12 +119,11 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
              */
             counter = (oldCounter == null ? counter : oldCounter);
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
         return counter;
     }
 
-    @GuardedBy("lock.readLock")
     private boolean resetInternal(List<String> hierarchyElements) {
         CounterNode node = root.lookup(hierarchyElements);
         if (node == null) {
@@ -127,7 +133,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
         return true;
     }
     
-    @GuardedBy("lock.readLock")
+    @GuardedBy("lock")
     private boolean removeInternal(List<String> hierarchyElements) {
         CounterNode node = root.lookup(hierarchyElements); // returns e.g. root/module-name/counter-node-to-remove
         if (node == null) {
@@ -142,34 +148,19 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
                                          String counterHierarchy) {
         verifyModuleNameSanity(moduleName);
         verifyStringSanity(counterHierarchy, "counterHierarchy");
-        lock.readLock().lock();
-        try {
-            return resetInternal(CounterNode.getHierarchyElements(moduleName, counterHierarchy));
-        } finally {
-            lock.readLock().unlock();
-        }
+        return resetInternal(CounterNode.getHierarchyElements(moduleName, counterHierarchy));
     }
 
     @Override
     public void resetAllCounters() {
-        lock.readLock().lock();
-        try {
-            root.resetHierarchy();
-        } finally {
-            lock.readLock().unlock();
-        }
+        root.resetHierarchy();
     }
 
 
     @Override
     public boolean resetAllModuleCounters(String moduleName) {
         verifyModuleNameSanity(moduleName);
-        lock.readLock().lock();
-        try {
-            return resetInternal(Collections.singletonList(moduleName));
-        } finally {
-            lock.readLock().unlock();
-        }
+        return resetInternal(Collections.singletonList(moduleName));
     }
     
     @Override
@@ -177,15 +168,14 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
                                          String counterHierarchy) {
         verifyModuleNameSanity(moduleName);
         verifyStringSanity(counterHierarchy, "counterHierarchy");
-        lock.readLock().lock();
+        lock.lock();
         try {
             return removeInternal(CounterNode.getHierarchyElements(moduleName, counterHierarchy));
         } finally {
-            lock.readLock().unlock();
+            lock.unlock();
         }
     }
 
-    @GuardedBy("lock.readLock")
     private List<DebugCounterResource> getCountersFromNode(CounterNode node) {
         if (node == null) {
             return Collections.emptyList();
@@ -204,33 +194,28 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
         verifyStringSanity(counterHierarchy, "counterHierarchy");
         List<String> hierarchyElements =
                 CounterNode.getHierarchyElements(moduleName, counterHierarchy);
-        lock.readLock().lock();
-        try {
-            return getCountersFromNode(root.lookup(hierarchyElements));
-        } finally {
-            lock.readLock().unlock();
-        }
+        return getCountersFromNode(root.lookup(hierarchyElements));
     }
 
     @Override
     public List<DebugCounterResource> getAllCounterValues() {
-        lock.readLock().lock();
-        try {
-            return getCountersFromNode(root);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return getCountersFromNode(root);
     }
 
     @Override
     public List<DebugCounterResource> getModuleCounterValues(String moduleName) {
         verifyModuleNameSanity(moduleName);
         List<String> hierarchyElements = Collections.singletonList(moduleName);
-        lock.readLock().lock();
-        try {
-            return getCountersFromNode(root.lookup(hierarchyElements));
-        } finally {
-            lock.readLock().unlock();
+        return getCountersFromNode(root.lookup(hierarchyElements));
+    }
+
+    /**
+     * Compute the rates of all counters
+     */
+    void sampleRates() {
+        long now = System.nanoTime();
+        for (DebugCounterImpl counter: root.getCountersInHierarchy()) {
+            counter.sampleRate(now);
         }
     }
 
@@ -271,6 +256,7 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
        ArrayList<Class<? extends IFloodlightService>> deps =
                new ArrayList<Class<? extends IFloodlightService>>();
        deps.add(IShutdownService.class);
+       deps.add(IThreadPoolService.class);
        return deps;
    }
 
@@ -283,6 +269,18 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
        IShutdownService shutdownService =
                context.getServiceImpl(IShutdownService.class);
        shutdownService.registerShutdownListener(new ShutdownListenenerDelegate());
+       IThreadPoolService threadPool =
+               context.getServiceImpl(IThreadPoolService.class);
+       threadPool.getScheduledExecutor().scheduleAtFixedRate(new Runnable() {
+           @Override
+           public void run() {
+               try {
+                   sampleRates();
+               } catch (Exception e) {
+                   logger.error("Exception sampling the counter rates", e);
+               }
+           }
+       }, RATE_INTERVAL_SECONDS, RATE_INTERVAL_SECONDS, TimeUnit.SECONDS);
    }
 
 }
@@ -0,0 +1,109 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A timing wheel of device keys, ordered by the time the oldest entity of
+ * the device may expire.
+ *
+ * Entity timestamps are refreshed on every packet-in without touching the
+ * wheel, so a due device has to be checked again: its expired entities are
+ * removed and it is scheduled again at the expiry of its oldest remaining
+ * entity. A run of {@link DeviceManagerImpl#cleanupEntities()} thus only
+ * looks at devices that may have expired entities, not at every device.
+ *
+ * A device is in at most one slot. Times before the last {@link #expire(long)}
+ * go into the next slot, times beyond the wheel into its last slot.
+ */
+public class DeviceAgingWheel {
+    private final long tickMs;
+    private final Set<Long>[] slots;
+    private final Map<Long, Long> ticks = new HashMap<Long, Long>();
+    /**
+     * First tick that has not expired yet
+     */
+    private long cursor;
+
+    /**
+     * @param tickMs width of a slot in milliseconds
+     * @param horizonMs longest time ahead that gets its own slot
+     * @param now the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public DeviceAgingWheel(long tickMs, long horizonMs, long now) {
+        this.tickMs = tickMs;
+        this.slots = new Set[(int) (horizonMs / tickMs) + 2];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new HashSet<Long>();
+        }
+        this.cursor = now / tickMs;
+    }
+
+    /**
+     * Schedule a device.  If it is already scheduled earlier it is left
+     * there, it will be scheduled again when it is checked.
+     * @param deviceKey the device key
+     * @param time time in milliseconds at which the device should be checked
+     */
+    public synchronized void schedule(Long deviceKey, long time) {
+        long tick = Math.min(Math.max(time / tickMs, cursor),
+                             cursor + slots.length - 1);
+        Long old = ticks.get(deviceKey);
+        if (old != null) {
+            if (old.longValue() <= tick) return;
+            slots[slot(old)].remove(deviceKey);
+        }
+        ticks.put(deviceKey, tick);
+        slots[slot(tick)].add(deviceKey);
+    }
+
+    /**
+     * Remove a device from the wheel
+     * @param deviceKey the device key
+     */
+    public synchronized void cancel(Long deviceKey) {
+        Long old = ticks.remove(deviceKey);
+        if (old != null)
+            slots[slot(old)].remove(deviceKey);
+    }
+
+    /**
+     * Remove the devices due at or before the given time from the wheel
+     * @param now the current time in milliseconds
+     * @return the keys of the due devices
+     */
+    public synchronized List<Long> expire(long now) {
+        List<Long> due = new ArrayList<Long>();
+        long last = now / tickMs;
+        // no need to visit a slot twice if the wheel turned more than once
+        long first = Math.max(cursor, last - slots.length + 1);
+        for (long tick = first; tick <= last; tick++) {
+            Set<Long> slot = slots[slot(tick)];
+            if (slot.isEmpty()) continue;
+            due.addAll(slot);
+            for (Long deviceKey : slot) {
+                ticks.remove(deviceKey);
+            }
+            slot.clear();
+        }
+        if (last >= cursor)
+            cursor = last + 1;
+        return due;
+    }
+
+    /**
+     * @return the number of scheduled devices
+     */
+    public synchronized int size() {
+        return ticks.size();
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % slots.length);
+    }
+}
@@ -32,6 +32,11 @@ public abstract class DeviceIndex {
      */
     protected EnumSet<DeviceField> keyFields;
 
+    /**
+     * Whether the key fields fit in a long, see {@link #indexKey(Entity)}
+     */
+    protected final boolean packed;
+
     /**
      * Construct a new device index using the provided key fields
      * @param keyFields the key fields to use
@@ -39,6 +44,7 @@ public abstract class DeviceIndex {
     public DeviceIndex(EnumSet<DeviceField> keyFields) {
         super();
         this.keyFields = keyFields;
+        this.packed = packedWidth(keyFields) <= 64;
     }
 
     /**
@@ -98,10 +104,9 @@ public abstract class DeviceIndex {
      */
     public void removeEntityIfNeeded(Entity entity, Long deviceKey,
                                      Collection<Entity> others) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
+        Object ie = indexKey(entity);
         for (Entity o : others) {
-            IndexedEntity oio = new IndexedEntity(keyFields, o);
-            if (oio.equals(ie)) return;
+            if (indexKey(o).equals(ie)) return;
         }
 
         Iterator<Long> keyiter = this.queryByEntity(entity);
@@ -114,4 +119,75 @@ public abstract class DeviceIndex {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Get the key of the given entity in this index.  If the key fields
+     * fit in 64 bits, e.g. MAC and VLAN or IPv4 and VLAN, the key is their
+     * packed value, so that a lookup allocates no wrapper and hashes and
+     * compares a single long.  Otherwise it is an {@link IndexedEntity}.
+     * @param entity the entity
+     * @return the key, a {@link Long} or an {@link IndexedEntity}
+     */
+    protected Object indexKey(Entity entity) {
+        if (!packed) return new IndexedEntity(keyFields, entity);
+
+        long key = 0;
+        for (DeviceField f : keyFields) {
+            switch (f) {
+                case MAC:
+                    key = (key << 48) | entity.macAddress.getLong();
+                    break;
+                case IPv4:
+                    key = (key << 33) | ((entity.ipv4Address == null)
+                            ? 0
+                            : (1L << 32) | (entity.ipv4Address.getInt() & 0xffffffffL));
+                    break;
+                case PORT:
+                    key = (key << 33) | ((entity.switchPort == null)
+                            ? 0
+                            : (1L << 32) | (entity.switchPort.getPortNumber() & 0xffffffffL));
+                    break;
+                case VLAN:
+                    // null (don't care) must differ from VlanVid.ZERO (untagged)
+                    key = (key << 13) | ((entity.vlan == null)
+                            ? 0
+                            : 0x1000 | (entity.vlan.getVlan() & 0xfff));
+                    break;
+                default:
+                    throw new IllegalStateException("Field " + f + " cannot be packed");
+            }
+        }
+        return Long.valueOf(key);
+    }
+
+    /**
+     * Check whether the entity has non-'zero' values in any of the key
+     * fields, see {@link IndexedEntity#hasNonZeroOrNonNullKeys()}
+     * @param entity the entity
+     * @return true if any key fields have a non-null value
+     */
+    protected boolean hasNonZeroOrNonNullKeys(Entity entity) {
+        return IndexedEntity.hasNonZeroOrNonNullKeys(keyFields, entity);
+    }
+
+    private static int packedWidth(EnumSet<DeviceField> keyFields) {
+        int width = 0;
+        for (DeviceField f : keyFields) {
+            switch (f) {
+                case MAC:
+                    width += 48;
+                    break;
+                case IPv4:
+                case PORT:
+                    // 32 bits and whether the field is set
+                    width += 33;
+                    break;
+                case VLAN:
+                    width += 13;
+                    break;
+                default:
+                    return Integer.MAX_VALUE;
+            }
+        }
+        return width;
+    }
+}
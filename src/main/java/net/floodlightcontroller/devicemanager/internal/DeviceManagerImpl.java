@@ -19,7 +19,6 @@ package net.floodlightcontroller.devicemanager.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -152,6 +151,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	public IDebugCounter cntDeviceMoved;
 	public IDebugCounter cntCleanupEntitiesRuns;
 	public IDebugCounter cntEntityRemovedTimeout;
+	public IDebugCounter cntCleanupDevicesScanned;
+	public IDebugCounter cntCleanupEntitiesScanned;
 	public IDebugCounter cntDeviceDeleted;
 	public IDebugCounter cntDeviceReclassifyDelete;
 	public IDebugCounter cntDeviceStrored;
@@ -208,17 +209,37 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 */
 	protected static final int ENTITY_CLEANUP_INTERVAL = 60*60;
 
+	/**
+	 * Time in milliseconds covered by a slot of the entity aging wheel
+	 */
+	protected static final int ENTITY_AGING_TICK = 60*1000;
+
 	/**
 	 * This is the master device map that maps device IDs to {@link Device}
 	 * objects.
 	 */
 	protected ConcurrentHashMap<Long, Device> deviceMap;
 
+	/**
+	 * Devices ordered by the time their oldest entity may expire
+	 */
+	protected DeviceAgingWheel entityAging;
+
 	/**
 	 * Counter used to generate device keys
 	 */
 	protected AtomicLong deviceKeyCounter = new AtomicLong(0);
 
+	/**
+	 * Number of locks serializing entity updates of the same device
+	 */
+	protected static final int DEVICE_LOCK_STRIPES = 256;
+
+	/**
+	 * Striped locks, see {@link #deviceLock(Long)}
+	 */
+	protected final Object[] deviceLocks = newDeviceLocks();
+
 	/**
 	 * This is the primary entity index that contains all entities
 	 */
@@ -957,6 +978,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		secondaryIndexMap = new HashMap<EnumSet<DeviceField>, DeviceIndex>();
 
 		deviceMap = new ConcurrentHashMap<Long, Device>();
+		entityAging = new DeviceAgingWheel(ENTITY_AGING_TICK, ENTITY_TIMEOUT,
+				System.currentTimeMillis());
 		classStateMap =
 				new ConcurrentHashMap<String, ClassState>();
 		apComparator = new AttachmentPointComparator();
@@ -1082,6 +1105,13 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				"entity-removed-timeout",
 				"Number of times entities have been removed due to timeout " +
 						"(entity has been inactive for " + ENTITY_TIMEOUT/1000 + "s)");
+		cntCleanupDevicesScanned = debugCounters.registerCounter(PACKAGE,
+				"cleanup-devices-scanned",
+				"Number of devices checked for expired entities by the entity " +
+				"cleanup task");
+		cntCleanupEntitiesScanned = debugCounters.registerCounter(PACKAGE,
+				"cleanup-entities-scanned",
+				"Number of entities checked for expiry by the entity cleanup task");
 		cntDeviceDeleted = debugCounters.registerCounter(PACKAGE, "device-deleted",
 				"Number of devices that have been removed due to inactivity");
 		cntDeviceReclassifyDelete = debugCounters.registerCounter(PACKAGE,
@@ -1603,6 +1633,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				}
 				// generate new device update
 				deviceUpdates = updateUpdates(deviceUpdates, new DeviceUpdate(device, ADD, null));
+				scheduleAging(device);
 
 				break;
 			}
@@ -1632,20 +1663,38 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 					lastSeen = new Date();
 					entity.setLastSeenTimestamp(lastSeen);
 				}
+				Date oldLastSeen = device.entities[entityindex].getLastSeenTimestamp();
 				device.entities[entityindex].setLastSeenTimestamp(lastSeen);
+				if (oldLastSeen.equals(Entity.NO_DATE)) {
+					// the entity can expire from now on
+					scheduleAging(device);
+				}
 				// we break the loop after checking for changes to the AP
 			} else {
 				// New entity for this device
 				// compute the insertion point for the entity.
 				// see Arrays.binarySearch()
 				entityindex = -(entityindex + 1);
-				Device newDevice = allocateDevice(device, entity, entityindex);
+				Device newDevice;
+				EnumSet<DeviceField> changedFields;
+				boolean res;
+				// Learners of the same device take turns here instead of
+				// all copying the device and all but one failing the
+				// replace below.
+				synchronized (deviceLock(deviceKey)) {
+					if (deviceMap.get(deviceKey) != device) {
+						// Another thread updated this Device since the
+						// lookup, restart with its current version
+						continue;
+					}
+					newDevice = allocateDevice(device, entity, entityindex);
 
-				// generate updates
-				EnumSet<DeviceField> changedFields = findChangedFields(device, entity);
+					// generate updates
+					changedFields = findChangedFields(device, entity);
 
-				// update the device map with a replace call
-				boolean res = deviceMap.replace(deviceKey, device, newDevice);
+					// update the device map with a replace call
+					res = deviceMap.replace(deviceKey, device, newDevice);
+				}
 				// If replace returns false, restart the process from the
 				// beginning (this implies another thread concurrently
 				// modified this Device).
@@ -1660,6 +1709,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				updateSecondaryIndices(entity,
 						device.getEntityClass(),
 						deviceKey);
+				scheduleAging(device);
 
 				// We need to count here after all the possible "continue"
 				// statements in this branch
@@ -1711,6 +1761,24 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		return device;
 	}
 
+	private static Object[] newDeviceLocks() {
+		Object[] locks = new Object[DEVICE_LOCK_STRIPES];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+		return locks;
+	}
+
+	/**
+	 * Get the lock serializing entity updates of a device
+	 * @param deviceKey the device key
+	 * @return the lock of the stripe of the device
+	 */
+	protected Object deviceLock(Long deviceKey) {
+		long h = deviceKey.longValue() * 0x9E3779B97F4A7C15L;
+		return deviceLocks[(int)(h >>> 56) & (DEVICE_LOCK_STRIPES - 1)];
+	}
+
 	protected boolean isEntityAllowed(Entity entity, IEntityClass entityClass) {
 		return true;
 	}
@@ -1935,29 +2003,37 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 }
 
 	 /**
-	  * Clean up expired entities/devices
+	  * Clean up expired entities/devices. Only the devices due in
+	  * {@link #entityAging} are checked.
 	  */
 	 protected void cleanupEntities () {
 		 cntCleanupEntitiesRuns.increment();
 
-		 Calendar c = Calendar.getInstance();
-		 c.add(Calendar.MILLISECOND, -ENTITY_TIMEOUT);
-		 Date cutoff = c.getTime();
+		 long now = System.currentTimeMillis();
+		 Date cutoff = new Date(now - ENTITY_TIMEOUT);
 
 		 ArrayList<Entity> toRemove = new ArrayList<Entity>();
 		 ArrayList<Entity> toKeep = new ArrayList<Entity>();
 
-		 Iterator<Device> diter = deviceMap.values().iterator();
+		 List<Long> due = entityAging.expire(now);
+		 long devicesScanned = 0;
+		 long entitiesScanned = 0;
 		 LinkedList<DeviceUpdate> deviceUpdates =
 				 new LinkedList<DeviceUpdate>();
 
-		 while (diter.hasNext()) {
-			 Device d = diter.next();
+		 for (Long deviceKey : due) {
+			 Device d = deviceMap.get(deviceKey);
+			 if (d == null) {
+				 // already deleted
+				 continue;
+			 }
 
 			 while (true) {
 				 deviceUpdates.clear();
 				 toRemove.clear();
 				 toKeep.clear();
+				 devicesScanned++;
+				 entitiesScanned += d.entities.length;
 				 for (Entity e : d.getEntities()) {
 					 if (!e.getLastSeenTimestamp().equals(Entity.NO_DATE) &&
 							 0 > e.getLastSeenTimestamp().compareTo(cutoff)) {
@@ -1968,6 +2044,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 					 }
 				 }
 				 if (toRemove.size() == 0) {
+					 // refreshed since it was scheduled
+					 scheduleAging(d);
 					 break;
 				 }
 
@@ -2003,6 +2081,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 						 d = deviceMap.get(d.getDeviceKey());
 								 if (null != d)
 									 continue;
+					 } else {
+						 scheduleAging(newDevice);
 					 }
 					 if (update != null) {
 						 // need to count after all possibly continue stmts in
@@ -2027,11 +2107,33 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				 break;
 			 }
 		 }
+		 cntCleanupDevicesScanned.add(devicesScanned);
+		 cntCleanupEntitiesScanned.add(entitiesScanned);
+		 if (logger.isDebugEnabled()) {
+			 logger.debug("Entity cleanup checked {} of {} devices, {} entities",
+					 new Object[] { devicesScanned, deviceMap.size(), entitiesScanned });
+		 }
 		 // Since cleanupEntities() is not called in the packet-in pipeline,
 		 // debugEvents need to be flushed explicitly
 		 debugEventService.flushEvents();
 	 }
 
+	 /**
+	  * Schedule the next expiry check of a device, at the time its oldest
+	  * entity times out. Entities without a timestamp never time out.
+	  * @param device the device
+	  */
+	 protected void scheduleAging(Device device) {
+		 long oldest = Long.MAX_VALUE;
+		 for (Entity e : device.entities) {
+			 Date lastSeen = e.getLastSeenTimestamp();
+			 if (!lastSeen.equals(Entity.NO_DATE))
+				 oldest = Math.min(oldest, lastSeen.getTime());
+		 }
+		 if (oldest != Long.MAX_VALUE)
+			 entityAging.schedule(device.getDeviceKey(), oldest + ENTITY_TIMEOUT);
+	 }
+
 	 protected void removeEntity(Entity removed,
 			 IEntityClass entityClass,
 			 Long deviceKey,
@@ -2074,6 +2176,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			 if (logger.isDebugEnabled())
 				 logger.debug("device map does not have this device -" +
 						 device.toString());
+		 } else {
+			 entityAging.cancel(device.getDeviceKey());
 		 }
 	 }
 
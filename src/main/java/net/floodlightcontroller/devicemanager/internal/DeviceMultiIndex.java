@@ -33,16 +33,20 @@ import net.floodlightcontroller.util.IterableIterator;
  */
 public class DeviceMultiIndex extends DeviceIndex {
     /**
-     * The index
+     * The index, keyed by {@link DeviceIndex#indexKey(Entity)}
      */
-    private ConcurrentHashMap<IndexedEntity, Collection<Long>> index;
+    private ConcurrentHashMap<Object, Collection<Long>> index;
+
+    @SuppressWarnings("rawtypes")
+    private static final Class<? extends Collection> SINGLETON_CLASS =
+            Collections.singleton(0L).getClass();
 
     /**
      * @param keyFields
      */
     public DeviceMultiIndex(EnumSet<DeviceField> keyFields) {
         super(keyFields);
-        index = new ConcurrentHashMap<IndexedEntity, Collection<Long>>();
+        index = new ConcurrentHashMap<Object, Collection<Long>>();
     }
 
     // ***********
@@ -51,8 +55,7 @@ public class DeviceMultiIndex extends DeviceIndex {
 
     @Override
     public Iterator<Long> queryByEntity(Entity entity) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        Collection<Long> devices = index.get(ie);
+        Collection<Long> devices = index.get(indexKey(entity));
         if (devices != null)
             return devices.iterator();
         
@@ -75,35 +78,52 @@ public class DeviceMultiIndex extends DeviceIndex {
     
     @Override
     public boolean updateIndex(Entity entity, Long deviceKey) {
-        Collection<Long> devices = null;
-
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        if (!ie.hasNonZeroOrNonNullKeys()) return false;
+        if (!hasNonZeroOrNonNullKeys(entity)) return false;
 
-        devices = index.get(ie);
-        if (devices == null) {
+        // Nearly every key maps to a single device, which is kept in an
+        // immutable singleton. A second device replaces it with a
+        // concurrent set, which is never replaced again.
+        Object key = indexKey(entity);
+        Collection<Long> singleton = Collections.singleton(deviceKey);
+        while (true) {
+            Collection<Long> devices = index.putIfAbsent(key, singleton);
+            if (devices == null || devices.contains(deviceKey))
+                return true;
+            if (!isSingleton(devices)) {
+                devices.add(deviceKey);
+                return true;
+            }
             Map<Long,Boolean> chm = new ConcurrentHashMap<Long,Boolean>();
-            devices = Collections.newSetFromMap(chm);
-            Collection<Long> r = index.putIfAbsent(ie, devices);
-            if (r != null)
-                devices = r;
+            Collection<Long> set = Collections.newSetFromMap(chm);
+            set.addAll(devices);
+            set.add(deviceKey);
+            if (index.replace(key, devices, set))
+                return true;
         }
-        
-        devices.add(deviceKey);
-        return true;
     }
 
     @Override
     public void removeEntity(Entity entity) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        index.remove(ie);        
+        index.remove(indexKey(entity));
     }
 
     @Override
     public void removeEntity(Entity entity, Long deviceKey) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        Collection<Long> devices = index.get(ie);
-        if (devices != null)
-            devices.remove(deviceKey);
+        Object key = indexKey(entity);
+        while (true) {
+            Collection<Long> devices = index.get(key);
+            if (devices == null)
+                return;
+            if (!isSingleton(devices)) {
+                devices.remove(deviceKey);
+                return;
+            }
+            if (!devices.contains(deviceKey) || index.remove(key, devices))
+                return;
+        }
+    }
+
+    private static boolean isSingleton(Collection<Long> devices) {
+        return devices.getClass() == SINGLETON_CLASS;
     }
-}
\ No newline at end of file
+}
@@ -29,9 +29,9 @@ import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
  */
 public class DeviceUniqueIndex extends DeviceIndex {
     /**
-     * The index
+     * The index, keyed by {@link DeviceIndex#indexKey(Entity)}
      */
-    private final ConcurrentHashMap<IndexedEntity, Long> index;
+    private final ConcurrentHashMap<Object, Long> index;
 
     /**
      * Construct a new device index using the provided key fields
@@ -39,7 +39,7 @@ public class DeviceUniqueIndex extends DeviceIndex {
      */
     public DeviceUniqueIndex(EnumSet<DeviceField> keyFields) {
         super(keyFields);
-        index = new ConcurrentHashMap<IndexedEntity, Long>();
+        index = new ConcurrentHashMap<Object, Long>();
     }
 
     // ***********
@@ -63,10 +63,9 @@ public class DeviceUniqueIndex extends DeviceIndex {
     @Override
     public boolean updateIndex(Device device, Long deviceKey) {
         for (Entity e : device.entities) {
-            IndexedEntity ie = new IndexedEntity(keyFields, e);
-            if (!ie.hasNonZeroOrNonNullKeys()) continue;
+            if (!hasNonZeroOrNonNullKeys(e)) continue;
 
-            Long ret = index.putIfAbsent(ie, deviceKey);
+            Long ret = index.putIfAbsent(indexKey(e), deviceKey);
             if (ret != null && !ret.equals(deviceKey)) {
                 // If the return value is non-null, then fail the insert
                 // (this implies that a device using this entity has
@@ -79,22 +78,19 @@ public class DeviceUniqueIndex extends DeviceIndex {
 
     @Override
     public boolean updateIndex(Entity entity, Long deviceKey) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        if (!ie.hasNonZeroOrNonNullKeys()) return false;
-        index.put(ie, deviceKey);
+        if (!hasNonZeroOrNonNullKeys(entity)) return false;
+        index.put(indexKey(entity), deviceKey);
         return true;
     }
 
     @Override
     public void removeEntity(Entity entity) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        index.remove(ie);
+        index.remove(indexKey(entity));
     }
 
     @Override
     public void removeEntity(Entity entity, Long deviceKey) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        index.remove(ie, deviceKey);
+        index.remove(indexKey(entity), deviceKey);
     }
 
     // **************
@@ -107,10 +103,6 @@ public class DeviceUniqueIndex extends DeviceIndex {
      * @return The key for the {@link Device} object if found
      */
     public Long findByEntity(Entity entity) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        Long deviceKey = index.get(ie);
-        if (deviceKey == null)
-            return null;
-        return deviceKey;
+        return index.get(indexKey(entity));
     }
 }
\ No newline at end of file
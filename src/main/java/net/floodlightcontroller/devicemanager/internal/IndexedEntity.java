@@ -59,6 +59,18 @@ public class IndexedEntity {
      * @return true if any key fields have a non-null value
      */
     public boolean hasNonZeroOrNonNullKeys() {
+        return hasNonZeroOrNonNullKeys(keyFields, entity);
+    }
+
+    /**
+     * Check whether the entity has non-'zero' values in any of the given
+     * key fields, without wrapping it
+     * @param keyFields the key fields
+     * @param entity the entity
+     * @return true if any key fields have a non-null value
+     */
+    public static boolean hasNonZeroOrNonNullKeys(EnumSet<DeviceField> keyFields,
+                                                  Entity entity) {
         for (DeviceField f : keyFields) {
             switch (f) {
                 case MAC: /* We assume operation over Ethernet, thus all devices must have a MAC */
@@ -0,0 +1,137 @@
+package net.floodlightcontroller.linkdiscovery.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * Spreads the periodic discovery messages of the switches evenly over the
+ * discovery period, instead of sending them all at once when the period
+ * starts again.
+ *
+ * Each switch has a token bucket filled at the rate of its number of ports
+ * per period, and a cursor over its ports in port number order. Whenever
+ * the pacer is asked, a switch gets as many ports from its cursor on as it
+ * has whole tokens, so that every port is probed once per period. The
+ * bucket holds at most the tokens of maxBurst milliseconds, so that a late
+ * call does not send a burst. Tokens are counted in port milliseconds, a
+ * port taking period of them, so that no probe is lost to rounding.
+ *
+ * The ports are only looked at when a probe is due, and the sorted ports
+ * of a switch are kept until the switch reports different ports.
+ */
+public class DiscoveryPacer {
+	private static final Comparator<OFPort> PORT_ORDER = new Comparator<OFPort>() {
+		@Override
+		public int compare(OFPort p1, OFPort p2) {
+			return Integer.compare(p1.getPortNumber(), p2.getPortNumber());
+		}
+	};
+
+	private static class Bucket {
+		long tokens;
+		long last;
+		int cursor;
+		/** the ports as last passed in, and sorted */
+		List<OFPort> ports = Collections.emptyList();
+		List<OFPort> sorted = Collections.emptyList();
+
+		Bucket(long now) {
+			this.last = now;
+		}
+	}
+
+	private final long period;
+	private final long maxBurst;
+	private final ConcurrentHashMap<DatapathId, Bucket> buckets =
+			new ConcurrentHashMap<DatapathId, Bucket>();
+
+	/**
+	 * @param period time in ms in which every port is probed once
+	 * @param maxBurst time in ms whose probes may be sent at once
+	 */
+	public DiscoveryPacer(long period, long maxBurst) {
+		this.period = Math.max(1, period);
+		this.maxBurst = Math.max(1, maxBurst);
+	}
+
+	/**
+	 * Get the ports of a switch to probe now. A switch seen for the first
+	 * time starts with an empty bucket.
+	 *
+	 * @param sw
+	 * @param ports the ports of the switch that may be probed
+	 * @param now current time in ms
+	 * @return the ports to probe, possibly none
+	 */
+	public List<OFPort> getDuePorts(DatapathId sw, Collection<OFPort> ports, long now) {
+		Bucket b = buckets.get(sw);
+		if (b == null) {
+			Bucket nb = new Bucket(now);
+			b = buckets.putIfAbsent(sw, nb);
+			if (b == null) {
+				b = nb;
+			}
+		}
+		int n = ports.size();
+		if (n == 0) {
+			return Collections.emptyList();
+		}
+
+		List<OFPort> due;
+		synchronized (b) {
+			// the probes of maxBurst, and the part of the next one earned
+			long capacity = n * maxBurst + period - 1;
+			b.tokens = Math.min(capacity, b.tokens + n * Math.max(0, now - b.last));
+			b.last = now;
+			if (b.tokens < period) {
+				return Collections.emptyList();
+			}
+
+			if (!sameOrder(ports, b.ports)) {
+				b.ports = new ArrayList<OFPort>(ports);
+				List<OFPort> sorted = new ArrayList<OFPort>(ports);
+				Collections.sort(sorted, PORT_ORDER);
+				b.sorted = sorted;
+			}
+			List<OFPort> sorted = b.sorted;
+			int count = (int) Math.min(n, b.tokens / period);
+			b.tokens -= count * period;
+			due = new ArrayList<OFPort>(count);
+			int cursor = b.cursor % n;
+			for (int i = 0; i < count; i++) {
+				due.add(sorted.get(cursor));
+				cursor = (cursor + 1) % n;
+			}
+			b.cursor = cursor;
+		}
+		return due;
+	}
+
+	private static boolean sameOrder(Collection<OFPort> ports, List<OFPort> known) {
+		if (ports.size() != known.size()) {
+			return false;
+		}
+		int i = 0;
+		for (OFPort p : ports) {
+			if (!p.equals(known.get(i++))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void removeSwitch(DatapathId sw) {
+		buckets.remove(sw);
+	}
+
+	public void clear() {
+		buckets.clear();
+	}
+}
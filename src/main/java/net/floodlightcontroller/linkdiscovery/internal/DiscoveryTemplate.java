@@ -0,0 +1,57 @@
+package net.floodlightcontroller.linkdiscovery.internal;
+
+import java.nio.ByteBuffer;
+
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * A serialized discovery message of one switch, as built by
+ * LinkDiscoveryManager.generateLLDPMessage(). The message of any port of
+ * the switch differs only in the source MAC address, the port id TLV and
+ * the timestamp TLV, which are patched into a copy of the template instead
+ * of building and serializing the packet again.
+ */
+public class DiscoveryTemplate {
+	private static final int SRC_MAC_OFFSET = 6;
+	private static final int ETHERNET_HEADER_LENGTH = 14;
+	// magic, type and version of the BSN header around a BDDP
+	private static final int BSN_HEADER_LENGTH = 8;
+	// the end of LLDPDU TLV
+	private static final int END_TLV_LENGTH = 2;
+
+	private final byte[] frame;
+	private final int portOffset;
+	private final int timestampOffset;
+
+	/**
+	 * @param frame the Ethernet frame of an untagged forward discovery message
+	 * @param isStandard whether it is an LLDP or a BDDP
+	 */
+	public DiscoveryTemplate(byte[] frame, boolean isStandard) {
+		this.frame = frame.clone();
+		int lldpOffset = ETHERNET_HEADER_LENGTH + (isStandard ? 0 : BSN_HEADER_LENGTH);
+		// the chassis id TLV comes first, its length in the low 9 bits of its header
+		int chassisLength = ((frame[lldpOffset] & 0x01) << 8) | (frame[lldpOffset + 1] & 0xff);
+		// then the port id TLV, whose value starts with a subtype byte
+		this.portOffset = lldpOffset + 2 + chassisLength + 2 + 1;
+		// the timestamp ends the last TLV before the end of LLDPDU
+		this.timestampOffset = frame.length - END_TLV_LENGTH - Long.SIZE / 8;
+	}
+
+	/**
+	 * @param srcMac the hardware address of the port
+	 * @param port
+	 * @param timestamp time in ms, including the switch latency
+	 * @return the frame of the port
+	 */
+	public byte[] build(MacAddress srcMac, OFPort port, long timestamp) {
+		byte[] data = frame.clone();
+		ByteBuffer bb = ByteBuffer.wrap(data);
+		bb.position(SRC_MAC_OFFSET);
+		bb.put(srcMac.getBytes());
+		bb.putShort(portOffset, port.getShortPortNumber());
+		bb.putLong(timestampOffset, timestamp);
+		return data;
+	}
+}
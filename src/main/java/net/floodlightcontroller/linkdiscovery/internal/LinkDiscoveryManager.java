@@ -53,6 +53,7 @@ import net.floodlightcontroller.core.IInfoProvider;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -196,13 +197,23 @@ IFloodlightModule, IInfoProvider {
 	protected final int DISCOVERY_TASK_INTERVAL = 1;
 	protected final int LINK_TIMEOUT = 35; // timeout as part of LLDP process.
 	protected final int LLDP_TO_ALL_INTERVAL = 15; // 15 seconds.
-	protected long lldpClock = 0;
 	// This value is intentionally kept higher than LLDP_TO_ALL_INTERVAL.
 	// If we want to identify link failures faster, we could decrease this
 	// value to a small number, say 1 or 2 sec.
 	protected final int LLDP_TO_KNOWN_INTERVAL = 20; // LLDP frequency for known
 	// links
 
+	/**
+	 * The LLDPs to all ports are spread over LLDP_TO_ALL_INTERVAL, a few
+	 * ports of each switch every LLDP_PACING_INTERVAL, sent in one batch
+	 * per switch and patched from a template of the switch.
+	 */
+	protected SingletonTask lldpTask;
+	protected final int LLDP_PACING_INTERVAL = 100; // 100 ms.
+	protected DiscoveryPacer lldpPacer;
+	protected ConcurrentHashMap<DatapathId, DiscoveryTemplate> lldpTemplates;
+	protected ConcurrentHashMap<DatapathId, DiscoveryTemplate> bddpTemplates;
+
 	protected LLDPTLV controllerTLV;
 	protected ReentrantReadWriteLock lock;
 	int lldpTimeCount = 0;
@@ -253,12 +264,11 @@ IFloodlightModule, IInfoProvider {
 	/**
 	 * A list of ports that are quarantined for discovering links through them.
 	 * Data traffic from these ports are not allowed until the ports are
-	 * released from quarantine.
+	 * released from quarantine. Ports on which a link is seen while queued
+	 * are flagged and released without a discovery message.
 	 */
-	protected LinkedBlockingQueue<NodePortTuple> quarantineQueue;
-	protected LinkedBlockingQueue<NodePortTuple> maintenanceQueue;
-	protected LinkedBlockingQueue<NodePortTuple> toRemoveFromQuarantineQueue;
-	protected LinkedBlockingQueue<NodePortTuple> toRemoveFromMaintenanceQueue;
+	protected PortQueue quarantineQueue;
+	protected PortQueue maintenanceQueue;
 
 	/**
 	 * Quarantine task
@@ -279,6 +289,7 @@ IFloodlightModule, IInfoProvider {
 	 * Debug Counters
 	 */
 	private IDebugCounter ctrQuarantineDrops;
+	private IDebugCounter ctrQuarantineReleased;
 	private IDebugCounter ctrIgnoreSrcMacDrops;
 	private IDebugCounter ctrIncoming;
 	private IDebugCounter ctrLinkLocalDrops;
@@ -496,16 +507,7 @@ IFloodlightModule, IInfoProvider {
 
 	@Override
 	public Set<OFPort> getQuarantinedPorts(DatapathId sw) {
-		Set<OFPort> qPorts = new HashSet<OFPort>();
-
-		Iterator<NodePortTuple> iter = quarantineQueue.iterator();
-		while (iter.hasNext()) {
-			NodePortTuple npt = iter.next();
-			if (npt.getNodeId().equals(sw)) {
-				qPorts.add(npt.getPortId());
-			}
-		}
-		return qPorts;
+		return quarantineQueue.getPorts(sw);
 	}
 
 	@Override
@@ -843,7 +845,7 @@ IFloodlightModule, IInfoProvider {
 			addOrUpdateLink(reverseLink, reverseInfo);
 		}
 
-		// Queue removal of the node ports from the quarantine and maintenance queues.
+		// Flag the node ports in the quarantine and maintenance queues.
 		NodePortTuple nptSrc = new NodePortTuple(lt.getSrc(),
 				lt.getSrcPort());
 		NodePortTuple nptDst = new NodePortTuple(lt.getDst(),
@@ -935,15 +937,6 @@ IFloodlightModule, IInfoProvider {
 
 		// timeout known links.
 		timeoutLinks();
-
-		// increment LLDP clock
-		lldpClock = (lldpClock + 1) % LLDP_TO_ALL_INTERVAL;
-
-		if (lldpClock == 0) {
-			if (log.isTraceEnabled())
-				log.trace("Sending LLDP out on all ports.");
-			discoverOnAllPorts();
-		}
 	}
 
 	/**
@@ -970,22 +963,26 @@ IFloodlightModule, IInfoProvider {
 	 * @param npt
 	 */
 	protected void addToQuarantineQueue(NodePortTuple npt) {
-		if (quarantineQueue.contains(npt) == false) {
-			quarantineQueue.add(npt);
-		}
+		quarantineQueue.add(npt);
 	}
 
 	/**
 	 * Remove a switch port from the quarantine queue.
 	 *
+	 * @param npt
+	 */
 	protected void removeFromQuarantineQueue(NodePortTuple npt) {
-		// Remove all occurrences of the node port tuple from the list.
-		while (quarantineQueue.remove(npt));
-	}*/
+		quarantineQueue.remove(npt);
+	}
+
+	/**
+	 * Flag a quarantined switch port on which a link was discovered, so that
+	 * it is released without sending a discovery message.
+	 *
+	 * @param npt
+	 */
 	protected void flagToRemoveFromQuarantineQueue(NodePortTuple npt) {
-		if (toRemoveFromQuarantineQueue.contains(npt) == false) {
-			toRemoveFromQuarantineQueue.add(npt);
-		}
+		quarantineQueue.markDiscovered(npt);
 	}
 
 	/**
@@ -994,24 +991,48 @@ IFloodlightModule, IInfoProvider {
 	 * @param npt
 	 */
 	protected void addToMaintenanceQueue(NodePortTuple npt) {
-		if (maintenanceQueue.contains(npt) == false) {
-			maintenanceQueue.add(npt);
-		}
+		maintenanceQueue.add(npt);
 	}
 
 	/**
 	 * Remove a switch port from maintenance queue.
 	 *
 	 * @param npt
-	 *
+	 */
 	protected void removeFromMaintenanceQueue(NodePortTuple npt) {
-		// Remove all occurrences of the node port tuple from the queue.
-		while (maintenanceQueue.remove(npt));
-	} */
+		maintenanceQueue.remove(npt);
+	}
+
 	protected void flagToRemoveFromMaintenanceQueue(NodePortTuple npt) {
-		if (toRemoveFromMaintenanceQueue.contains(npt) == false) {
-			toRemoveFromMaintenanceQueue.add(npt);
-		}
+		maintenanceQueue.markDiscovered(npt);
+	}
+
+	/**
+	 * @return number of quarantined switch ports
+	 */
+	public int getQuarantineQueueSize() {
+		return quarantineQueue.size();
+	}
+
+	/**
+	 * @return how long the oldest quarantined switch port has waited, in ms
+	 */
+	public long getQuarantineQueueAge() {
+		return quarantineQueue.getOldestAge(System.currentTimeMillis());
+	}
+
+	/**
+	 * @return number of switch ports waiting for a maintenance discovery
+	 */
+	public int getMaintenanceQueueSize() {
+		return maintenanceQueue.size();
+	}
+
+	/**
+	 * @return how long the oldest switch port in maintenance has waited, in ms
+	 */
+	public long getMaintenanceQueueAge() {
+		return maintenanceQueue.getOldestAge(System.currentTimeMillis());
 	}
 
 	/**
@@ -1021,12 +1042,12 @@ IFloodlightModule, IInfoProvider {
 	 * the switch ports, the ports are removed from the quarantine list.
 	 */
 	protected void processBDDPLists() {
-		int count = 0;
+		List<PortQueue.Entry> batch = new ArrayList<PortQueue.Entry>(BDDP_TASK_SIZE);
 		Set<NodePortTuple> nptList = new HashSet<NodePortTuple>();
 
-		while (count < BDDP_TASK_SIZE && quarantineQueue.peek() != null) {
-			NodePortTuple npt;
-			npt = quarantineQueue.remove();
+		quarantineQueue.drainTo(batch, BDDP_TASK_SIZE);
+		for (PortQueue.Entry e : batch) {
+			NodePortTuple npt = e.getNodePortTuple();
 			/*
 			 * Do not send a discovery message if we already have received one
 			 * from another switch on this same port. In other words, if
@@ -1038,7 +1059,7 @@ IFloodlightModule, IInfoProvider {
 			 * PORT_STATUS update is generated and dispatched below by
 			 * generateSwitchPortStatusUpdate().
 			 */
-			if (!toRemoveFromQuarantineQueue.remove(npt)) {
+			if (!e.isDiscovered()) {
 				sendDiscoveryMessage(npt.getNodeId(), npt.getPortId(), false, false);
 			}
 			/*
@@ -1046,21 +1067,20 @@ IFloodlightModule, IInfoProvider {
 			 * is generated below at the end of this function.
 			 */
 			nptList.add(npt);
-			count++;
 		}
+		ctrQuarantineReleased.add(batch.size());
 
-		count = 0;
-		while (count < BDDP_TASK_SIZE && maintenanceQueue.peek() != null) {
-			NodePortTuple npt;
-			npt = maintenanceQueue.remove();
+		batch.clear();
+		maintenanceQueue.drainTo(batch, BDDP_TASK_SIZE);
+		for (PortQueue.Entry e : batch) {
+			NodePortTuple npt = e.getNodePortTuple();
 			/*
 			 * Same as above, except we don't care about the PORT_STATUS message; 
 			 * we only want to avoid sending the discovery message again.
 			 */
-			if (!toRemoveFromMaintenanceQueue.remove(npt)) {
+			if (!e.isDiscovered()) {
 				sendDiscoveryMessage(npt.getNodeId(), npt.getPortId(), false, false);
 			}
-			count++;
 		}
 
 		for (NodePortTuple npt : nptList) {
@@ -1206,19 +1226,73 @@ IFloodlightModule, IInfoProvider {
 		if (iofSwitch == null)             //fix dereference violations in case race conditions
 			return;
 		OFPortDesc ofpPort = iofSwitch.getPort(port);
+		if (ofpPort == null)
+			return;
 
-		OFPacketOut po = generateLLDPMessage(iofSwitch, port, isStandard, isReverse);
-		OFPacketOut.Builder pob = po.createBuilder();
+		// send
+		// no more try-catch. switch will silently fail
+		iofSwitch.write(buildDiscoveryMessage(iofSwitch, port, ofpPort, isStandard, isReverse),
+				LogicalOFMessageCategory.PACKET_OUT);
+	}
 
-		// Add actions
-		List<OFAction> actions = getDiscoveryActions(iofSwitch, ofpPort.getPortNo());
-		pob.setActions(actions);
+	/**
+	 * Send standard LLDPs out of some ports of a switch, in one batch.
+	 * The ports are added to the maintenance queue.
+	 *
+	 * @param iofSwitch
+	 * @param ports
+	 */
+	protected void sendDiscoveryMessages(IOFSwitch iofSwitch, Collection<OFPort> ports) {
+		DatapathId sw = iofSwitch.getId();
+		List<OFMessage> msgs = new ArrayList<OFMessage>(ports.size());
+		for (OFPort ofp : ports) {
+			if (!isOutgoingDiscoveryAllowed(sw, ofp, true, false))
+				continue;
+			OFPortDesc ofpPort = iofSwitch.getPort(ofp);
+			if (ofpPort == null)
+				continue;
+			log.trace("Enabled port: {}", ofp);
+			msgs.add(buildDiscoveryMessage(iofSwitch, ofp, ofpPort, true, false));
 
-		// no need to set length anymore
+			// If the switch port is not already in the maintenance
+			// queue, add it.
+			addToMaintenanceQueue(new NodePortTuple(sw, ofp));
+		}
+		if (!msgs.isEmpty()) {
+			iofSwitch.write(msgs, LogicalOFMessageCategory.PACKET_OUT);
+		}
+	}
 
-		// send
-		// no more try-catch. switch will silently fail
-		iofSwitch.write(pob.build());
+	/**
+	 * Build the packet out of a discovery message. A forward message is
+	 * patched from the template of the switch, built from the first
+	 * message generated for it.
+	 */
+	protected OFPacketOut buildDiscoveryMessage(IOFSwitch iofSwitch, OFPort port,
+			OFPortDesc ofpPort, boolean isStandard, boolean isReverse) {
+		byte[] data;
+		if (isReverse) {
+			data = generateLLDPMessage(iofSwitch, port, isStandard, isReverse).getData();
+		} else {
+			ConcurrentHashMap<DatapathId, DiscoveryTemplate> templates =
+					isStandard ? lldpTemplates : bddpTemplates;
+			DiscoveryTemplate template = templates.get(iofSwitch.getId());
+			if (template == null) {
+				data = generateLLDPMessage(iofSwitch, port, isStandard, isReverse).getData();
+				templates.put(iofSwitch.getId(), new DiscoveryTemplate(data, isStandard));
+			} else {
+				long time = System.currentTimeMillis() + iofSwitch.getLatency().getValue();
+				data = template.build(ofpPort.getHwAddr(), port, time);
+			}
+		}
+
+		OFPacketOut.Builder pob = iofSwitch.getOFFactory().buildPacketOut();
+		pob.setBufferId(OFBufferId.NO_BUFFER);
+		pob.setInPort(OFPort.ANY);
+		pob.setData(data);
+		// Add actions
+		pob.setActions(getDiscoveryActions(iofSwitch, ofpPort.getPortNo()));
+		return pob.build();
 	}
 
 	/**
@@ -1233,18 +1307,27 @@ IFloodlightModule, IInfoProvider {
 			if (!iofSwitch.isActive()) continue; /* can't do anything if the switch is SLAVE */
 			Collection<OFPort> c = iofSwitch.getEnabledPortNumbers();
 			if (c != null) {
-				for (OFPort ofp : c) {
-					if (isLinkDiscoverySuppressed(sw, ofp)) {			
-						continue;
-					}
-					log.trace("Enabled port: {}", ofp);
-					sendDiscoveryMessage(sw, ofp, true, false);
+				sendDiscoveryMessages(iofSwitch, c);
+			}
+		}
+	}
 
-					// If the switch port is not already in the maintenance
-					// queue, add it.
-					NodePortTuple npt = new NodePortTuple(sw, ofp);
-					addToMaintenanceQueue(npt);
-				}
+	/**
+	 * Send LLDPs to the switch-ports whose turn it is, so that all ports
+	 * get one every LLDP_TO_ALL_INTERVAL.
+	 */
+	protected void discoverOnDuePorts() {
+		long now = System.currentTimeMillis();
+		for (DatapathId sw : switchService.getAllSwitchDpids()) {
+			IOFSwitch iofSwitch = switchService.getSwitch(sw);
+			if (iofSwitch == null) continue;
+			if (!iofSwitch.isActive()) continue; /* can't do anything if the switch is SLAVE */
+			Collection<OFPort> c = iofSwitch.getEnabledPortNumbers();
+			if (c == null) continue;
+			// suppressed ports keep their turn, sendDiscoveryMessages skips them
+			List<OFPort> due = lldpPacer.getDuePorts(sw, c, now);
+			if (!due.isEmpty()) {
+				sendDiscoveryMessages(iofSwitch, due);
 			}
 		}
 	}
@@ -1746,6 +1829,10 @@ IFloodlightModule, IInfoProvider {
 
 	@Override
 	public void switchRemoved(DatapathId sw) {
+		lldpPacer.removeSwitch(sw);
+		lldpTemplates.remove(sw);
+		bddpTemplates.remove(sw);
+
 		List<Link> eraseList = new ArrayList<Link>();
 		lock.writeLock().lock();
 		try {
@@ -2044,10 +2131,11 @@ IFloodlightModule, IInfoProvider {
 		this.portLinks = new HashMap<NodePortTuple, Set<Link>>();
 		this.suppressLinkDiscovery = Collections.synchronizedSet(new HashSet<NodePortTuple>());
 		this.switchLinks = new HashMap<DatapathId, Set<Link>>();
-		this.quarantineQueue = new LinkedBlockingQueue<NodePortTuple>();
-		this.maintenanceQueue = new LinkedBlockingQueue<NodePortTuple>();
-		this.toRemoveFromQuarantineQueue = new LinkedBlockingQueue<NodePortTuple>();
-		this.toRemoveFromMaintenanceQueue = new LinkedBlockingQueue<NodePortTuple>();
+		this.quarantineQueue = new PortQueue();
+		this.maintenanceQueue = new PortQueue();
+		this.lldpPacer = new DiscoveryPacer(LLDP_TO_ALL_INTERVAL * 1000L, 1000);
+		this.lldpTemplates = new ConcurrentHashMap<DatapathId, DiscoveryTemplate>();
+		this.bddpTemplates = new ConcurrentHashMap<DatapathId, DiscoveryTemplate>();
 
 		this.ignoreMACSet = Collections.newSetFromMap(
 				new ConcurrentHashMap<MACRange,Boolean>());
@@ -2114,11 +2202,28 @@ IFloodlightModule, IInfoProvider {
 			}
 		});
 
+		lldpTask = new SingletonTask(ses, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					discoverOnDuePorts();
+				} catch (Exception e) {
+					log.error("Exception in LLDP pacing timer.", e);
+				} finally {
+					if (!shuttingDown && (role == null || role == HARole.ACTIVE)) {
+						lldpTask.reschedule(LLDP_PACING_INTERVAL,
+								TimeUnit.MILLISECONDS);
+					}
+				}
+			}
+		});
+
 		// null role implies HA mode is not enabled.
 		if (role == null || role == HARole.ACTIVE) {
 			log.trace("Setup: Rescheduling discovery task. role = {}", role);
 			discoveryTask.reschedule(DISCOVERY_TASK_INTERVAL,
 					TimeUnit.SECONDS);
+			lldpTask.reschedule(LLDP_PACING_INTERVAL, TimeUnit.MILLISECONDS);
 		} else {
 			log.trace("Setup: Not scheduling LLDP as role = {}.", role);
 		}
@@ -2173,6 +2278,8 @@ IFloodlightModule, IInfoProvider {
 				"All packets whose srcmac is configured to be dropped by this module");
 		ctrQuarantineDrops = debugCounterService.registerCounter(PACKAGE, "quarantine-drops",
 				"All packets arriving on quarantined ports dropped by this module", IDebugCounterService.MetaData.WARN);
+		ctrQuarantineReleased = debugCounterService.registerCounter(PACKAGE, "quarantine-released",
+				"All switch ports released from quarantine");
 	}
 
 	private void registerLinkDiscoveryDebugEvents() throws FloodlightModuleException {
@@ -2237,6 +2344,9 @@ IFloodlightModule, IInfoProvider {
 		}
 		info.put("# inter-switch links", numDirectLinks / 2);
 		info.put("# quarantine ports", quarantineQueue.size());
+		info.put("quarantine age (ms)", getQuarantineQueueAge());
+		info.put("# maintenance ports", maintenanceQueue.size());
+		info.put("maintenance age (ms)", getMaintenanceQueueAge());
 		return info;
 	}
 
@@ -2256,6 +2366,7 @@ IFloodlightModule, IInfoProvider {
 			readTopologyConfigFromStorage();
 			log.debug("Role Change to Master: Rescheduling discovery task.");
 			discoveryTask.reschedule(1, TimeUnit.MICROSECONDS);
+			lldpTask.reschedule(1, TimeUnit.MICROSECONDS);
 		}
 
 		@Override
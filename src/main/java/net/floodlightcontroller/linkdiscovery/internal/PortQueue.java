@@ -0,0 +1,178 @@
+package net.floodlightcontroller.linkdiscovery.internal;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.topology.NodePortTuple;
+
+/**
+ * A FIFO queue of switch ports waiting for a discovery message, without
+ * duplicates, such as the quarantine and maintenance queues of the link
+ * discovery manager.
+ *
+ * The ports are indexed by a hash map, so that membership, insertion and
+ * removal are constant time: the quarantine check runs on every
+ * PACKET_IN. A removed port is only dropped from the index; its stale
+ * entry is skipped when it reaches the head of the FIFO.
+ *
+ * A queued port can be flagged as discovered, when a link was seen on it
+ * before its turn. It is then dequeued without sending anything.
+ *
+ * All methods are thread safe and do not block.
+ */
+public class PortQueue {
+
+	public static class Entry {
+		private final NodePortTuple npt;
+		private final long enqueueTime;
+		private volatile boolean discovered;
+
+		Entry(NodePortTuple npt, long enqueueTime) {
+			this.npt = npt;
+			this.enqueueTime = enqueueTime;
+		}
+
+		public NodePortTuple getNodePortTuple() {
+			return npt;
+		}
+
+		/**
+		 * @return when the port was queued, in milliseconds
+		 */
+		public long getEnqueueTime() {
+			return enqueueTime;
+		}
+
+		/**
+		 * @return true if a link was discovered on the port while queued
+		 */
+		public boolean isDiscovered() {
+			return discovered;
+		}
+	}
+
+	private final ConcurrentHashMap<NodePortTuple, Entry> index =
+			new ConcurrentHashMap<NodePortTuple, Entry>();
+	private final ConcurrentLinkedQueue<Entry> order =
+			new ConcurrentLinkedQueue<Entry>();
+
+	/**
+	 * Queue a port at the tail, unless it is queued already
+	 * @param npt
+	 * @return true if the port was queued
+	 */
+	public boolean add(NodePortTuple npt) {
+		Entry e = new Entry(npt, System.currentTimeMillis());
+		if (index.putIfAbsent(npt, e) != null) {
+			return false;
+		}
+		order.add(e);
+		return true;
+	}
+
+	public boolean contains(NodePortTuple npt) {
+		return index.containsKey(npt);
+	}
+
+	/**
+	 * @param npt
+	 * @return true if the port was queued
+	 */
+	public boolean remove(NodePortTuple npt) {
+		return index.remove(npt) != null;
+	}
+
+	/**
+	 * Flag a queued port as discovered
+	 * @param npt
+	 * @return true if the port is queued
+	 */
+	public boolean markDiscovered(NodePortTuple npt) {
+		Entry e = index.get(npt);
+		if (e == null) {
+			return false;
+		}
+		e.discovered = true;
+		return true;
+	}
+
+	/**
+	 * Dequeue the port at the head
+	 * @return null if the queue is empty
+	 */
+	public Entry poll() {
+		Entry e;
+		while ((e = order.poll()) != null) {
+			// a port removed, or removed and queued again since
+			if (index.remove(e.npt, e)) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Dequeue up to max ports from the head
+	 * @param c receives the entries in FIFO order
+	 * @param max
+	 * @return the number of entries dequeued
+	 */
+	public int drainTo(Collection<? super Entry> c, int max) {
+		int count = 0;
+		Entry e;
+		while (count < max && (e = poll()) != null) {
+			c.add(e);
+			count++;
+		}
+		return count;
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	public boolean isEmpty() {
+		return index.isEmpty();
+	}
+
+	/**
+	 * @param now current time in milliseconds
+	 * @return how long the port at the head has been queued, 0 if none
+	 */
+	public long getOldestAge(long now) {
+		Entry e;
+		while ((e = order.peek()) != null) {
+			if (index.get(e.npt) == e) {
+				return Math.max(0, now - e.enqueueTime);
+			}
+			// drop the stale head, unless a poll took it meanwhile
+			order.remove(e);
+		}
+		return 0;
+	}
+
+	/**
+	 * @param sw
+	 * @return the queued ports of a switch
+	 */
+	public Set<OFPort> getPorts(DatapathId sw) {
+		Set<OFPort> ports = new HashSet<OFPort>();
+		for (NodePortTuple npt : index.keySet()) {
+			if (npt.getNodeId().equals(sw)) {
+				ports.add(npt.getPortId());
+			}
+		}
+		return ports;
+	}
+
+	public void clear() {
+		index.clear();
+		order.clear();
+	}
+}
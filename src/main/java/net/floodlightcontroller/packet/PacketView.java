@@ -0,0 +1,220 @@
+package net.floodlightcontroller.packet;
+
+/**
+ * Flyweight, offset based view of an Ethernet frame. {@link #wrap(byte[])}
+ * only locates the layer offsets; every accessor reads the requested field
+ * straight from the backing array, so classifying a frame allocates nothing.
+ * A view is reusable and not thread-safe, keep one per thread.
+ *
+ * Accessors of a layer the frame does not carry, or that is truncated,
+ * return -1 (or false).
+ */
+public class PacketView {
+
+	public static final int TYPE_VLAN = 0x8100;
+	public static final int TYPE_QINQ = 0x88a8;
+
+	public static final int PROTO_UDP = 17;
+	public static final int PROTO_ICMPv6 = 58;
+
+	private static final int ETH_HEADER_LENGTH = 14;
+	private static final int IPv6_HEADER_LENGTH = 40;
+	private static final int UDP_HEADER_LENGTH = 8;
+
+	private byte[] data;
+	private int offset;
+	private int end;
+
+	private int etherType;
+	// offset of the network and transport headers, -1 if absent
+	private int l3;
+	private int l4;
+	private int l4Protocol;
+
+	/**
+	 * Point the view at a new frame.
+	 * @param data
+	 * @return this
+	 */
+	public PacketView wrap(byte[] data) {
+		return wrap(data, 0, data.length);
+	}
+
+	public PacketView wrap(byte[] data, int offset, int length) {
+		this.data = data;
+		this.offset = offset;
+		this.end = offset + length;
+		this.etherType = -1;
+		this.l3 = -1;
+		this.l4 = -1;
+		this.l4Protocol = -1;
+
+		int pos = offset + 12;
+		if(pos + 2 > end) {
+			return this;
+		}
+		int type = u16(pos);
+		while((type == TYPE_VLAN || type == TYPE_QINQ) && pos + 6 <= end) {
+			pos += 4;
+			type = u16(pos);
+		}
+		if(type == TYPE_VLAN || type == TYPE_QINQ) {
+			return this;
+		}
+		etherType = type;
+		l3 = pos + 2;
+
+		if(etherType == (Ethernet.TYPE_IPv4 & 0xffff)) {
+			if(l3 + 20 <= end) {
+				int ihl = (data[l3] & 0x0f) * 4;
+				boolean fragment = (u16(l3 + 6) & 0x1fff) != 0;
+				if(ihl >= 20 && l3 + ihl <= end && !fragment) {
+					l4 = l3 + ihl;
+					l4Protocol = data[l3 + 9] & 0xff;
+				}
+			}
+		}
+		else if(etherType == (Ethernet.TYPE_IPv6 & 0xffff)) {
+			if(l3 + IPv6_HEADER_LENGTH <= end) {
+				l4 = l3 + IPv6_HEADER_LENGTH;
+				l4Protocol = data[l3 + 6] & 0xff;
+			}
+		}
+		return this;
+	}
+
+	public int getEtherType() {
+		return etherType;
+	}
+
+	public boolean isIPv4() {
+		return etherType == (Ethernet.TYPE_IPv4 & 0xffff);
+	}
+
+	public boolean isIPv6() {
+		return etherType == (Ethernet.TYPE_IPv6 & 0xffff);
+	}
+
+	public boolean isARP() {
+		return etherType == (Ethernet.TYPE_ARP & 0xffff);
+	}
+
+	public long getDestinationMac() {
+		return offset + ETH_HEADER_LENGTH <= end ? u48(offset) : -1;
+	}
+
+	public long getSourceMac() {
+		return offset + ETH_HEADER_LENGTH <= end ? u48(offset + 6) : -1;
+	}
+
+	public boolean isBroadcast() {
+		return getDestinationMac() == 0xffffffffffffL;
+	}
+
+	public boolean isMulticast() {
+		return offset < end && (data[offset] & 0x01) != 0 && !isBroadcast();
+	}
+
+	/**
+	 * @return IPv4 source address, only meaningful if {@link #isIPv4()}
+	 */
+	public int getIPv4Source() {
+		return isIPv4() && l3 + 20 <= end ? s32(l3 + 12) : -1;
+	}
+
+	public int getIPv4Destination() {
+		return isIPv4() && l3 + 20 <= end ? s32(l3 + 16) : -1;
+	}
+
+	/**
+	 * @return sender protocol address of an IPv4 ARP packet
+	 */
+	public int getARPSenderProtocolAddress() {
+		return isARP() && l3 + 28 <= end ? s32(l3 + 14) : -1;
+	}
+
+	/**
+	 * @return protocol of the transport header (IPv4 protocol or IPv6 next header)
+	 */
+	public int getL4Protocol() {
+		return l4Protocol;
+	}
+
+	public long getIPv6SourceHigh() {
+		return ipv6Word(8);
+	}
+
+	public long getIPv6SourceLow() {
+		return ipv6Word(16);
+	}
+
+	public long getIPv6DestinationHigh() {
+		return ipv6Word(24);
+	}
+
+	public long getIPv6DestinationLow() {
+		return ipv6Word(32);
+	}
+
+	public boolean isIPv6SourceUnspecified() {
+		return isIPv6() && l4 >= 0 && getIPv6SourceHigh() == 0 && getIPv6SourceLow() == 0;
+	}
+
+	public boolean isIPv6DestinationBroadcast() {
+		return isIPv6() && l4 >= 0 && getIPv6DestinationHigh() == -1 && getIPv6DestinationLow() == -1;
+	}
+
+	public int getUDPSourcePort() {
+		return l4Protocol == PROTO_UDP && l4 + UDP_HEADER_LENGTH <= end ? u16(l4) : -1;
+	}
+
+	public int getUDPDestinationPort() {
+		return l4Protocol == PROTO_UDP && l4 + UDP_HEADER_LENGTH <= end ? u16(l4 + 2) : -1;
+	}
+
+	/**
+	 * @return ICMPv6 type as an unsigned value, compare with (type & 0xff)
+	 */
+	public int getICMPv6Type() {
+		return isIPv6() && l4Protocol == PROTO_ICMPv6 && l4 + 4 <= end ? data[l4] & 0xff : -1;
+	}
+
+	/**
+	 * Target address of a neighbor solicitation or advertisement.
+	 * @return upper 64 bits, 0 if the message carries no target
+	 */
+	public long getNDTargetHigh() {
+		return hasNDTarget() ? s64(l4 + 8) : 0;
+	}
+
+	public long getNDTargetLow() {
+		return hasNDTarget() ? s64(l4 + 16) : 0;
+	}
+
+	private boolean hasNDTarget() {
+		int type = getICMPv6Type();
+		return (type == (ICMPv6.NEIGHBOR_SOLICITATION & 0xff) || type == (ICMPv6.NEIGHBOR_ADVERTISEMENT & 0xff))
+				&& l4 + 24 <= end;
+	}
+
+	private long ipv6Word(int pos) {
+		return isIPv6() && l3 + IPv6_HEADER_LENGTH <= end ? s64(l3 + pos) : 0;
+	}
+
+	private int u16(int pos) {
+		return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+	}
+
+	private int s32(int pos) {
+		return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16)
+				| ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+	}
+
+	private long u48(int pos) {
+		return ((long)u16(pos) << 32) | (s32(pos + 2) & 0xffffffffL);
+	}
+
+	private long s64(int pos) {
+		return ((long)s32(pos) << 32) | (s32(pos + 4) & 0xffffffffL);
+	}
+}
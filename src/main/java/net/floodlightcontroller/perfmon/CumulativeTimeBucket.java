@@ -16,123 +16,81 @@
 
 package net.floodlightcontroller.perfmon;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map.Entry;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
-import net.floodlightcontroller.core.IOFMessageListener;
-
+/**
+ * The processing times of the OF messages dispatched over a period, in
+ * total and for each listener. All times in nanoseconds.
+ */
 @JsonSerialize(using=CumulativeTimeBucketJSONSerializer.class)
 public class CumulativeTimeBucket {
-    private long startTime_ns; // First pkt time-stamp in this bucket
-    private Map<Integer, OneComponentTime> compStats;
-    private long totalPktCnt;
-    private long totalProcTimeNs; // total processing time for one pkt in
-    private long sumSquaredProcTimeNs2;
-    private long maxTotalProcTimeNs;
-    private long minTotalProcTimeNs;
-    private long avgTotalProcTimeNs;
-    private long sigmaTotalProcTimeNs; // std. deviation
+    private final long startTimeMs; // wall clock time the period began
+    private final long endTimeMs;
+    private final LatencyHistogram total;
+    private final List<OneComponentTime> compStats;
+
+    /**
+     * Create a bucket
+     * @param startTimeMs the wall clock time the period began
+     * @param endTimeMs the wall clock time the period ended
+     * @param total the times of whole messages
+     * @param components the times of each listener, by name
+     */
+    public CumulativeTimeBucket(long startTimeMs, long endTimeMs,
+                                LatencyHistogram total,
+                                Map<String, LatencyHistogram> components) {
+        this.startTimeMs = startTimeMs;
+        this.endTimeMs = endTimeMs;
+        this.total = total;
+        this.compStats = new ArrayList<OneComponentTime>(components.size());
+        for (Entry<String, LatencyHistogram> e : components.entrySet()) {
+            compStats.add(new OneComponentTime(e.getKey(), e.getValue()));
+        }
+    }
+
+    public long getStartTimeMs() {
+        return startTimeMs;
+    }
 
-    public long getStartTimeNs() {
-        return startTime_ns;
+    public long getEndTimeMs() {
+        return endTimeMs;
     }
 
     public long getTotalPktCnt() {
-        return totalPktCnt;
+        return total.getCount();
     }
     
     public long getAverageProcTimeNs() {
-        return avgTotalProcTimeNs;
+        return total.getAverage();
     }
 
     public long getMinTotalProcTimeNs() {
-        return minTotalProcTimeNs;
+        return total.getMin();
     }
     
     public long getMaxTotalProcTimeNs() {
-        return maxTotalProcTimeNs;
+        return total.getMax();
     }
     
     public long getTotalSigmaProcTimeNs() {
-        return sigmaTotalProcTimeNs;
-    }
-    
-    public int getNumComps() {
-        return compStats.values().size();
-    }
-    
-    public Collection<OneComponentTime> getModules() {
-        return compStats.values();
-    }
-
-    public CumulativeTimeBucket(List<IOFMessageListener> listeners) {
-        compStats = new ConcurrentHashMap<Integer, OneComponentTime>(listeners.size());
-        for (IOFMessageListener l : listeners) {
-            OneComponentTime oct = new OneComponentTime(l);
-            compStats.put(oct.hashCode(), oct);
-        }
-        startTime_ns = System.nanoTime();
+        return total.getStdDev();
     }
 
-    private void updateSquaredProcessingTime(long curTimeNs) {
-        sumSquaredProcTimeNs2 += (Math.pow(curTimeNs, 2));
-    }
-    
-    /**
-     * Resets all counters and counters for each component time
-     */
-    public void reset() {
-        startTime_ns = System.nanoTime();
-        totalPktCnt = 0;
-        totalProcTimeNs = 0;
-        avgTotalProcTimeNs = 0;
-        sumSquaredProcTimeNs2 = 0;
-        maxTotalProcTimeNs = Long.MIN_VALUE;
-        minTotalProcTimeNs = Long.MAX_VALUE;
-        sigmaTotalProcTimeNs = 0;
-        for (OneComponentTime oct : compStats.values()) {
-            oct.resetAllCounters();
-        }
-    }
-    
-    private void computeSigma() {
-        // Computes std. deviation from the sum of count numbers and from
-        // the sum of the squares of count numbers
-        double temp = totalProcTimeNs;
-        temp = Math.pow(temp, 2) / totalPktCnt;
-        temp = (sumSquaredProcTimeNs2 - temp) / totalPktCnt;
-        sigmaTotalProcTimeNs = (long) Math.sqrt(temp);
-    }
-    
-    public void computeAverages() {
-        // Must be called last to, needs latest info
-        computeSigma();
-        
-        for (OneComponentTime oct : compStats.values()) {
-            oct.computeSigma();
-        }
+    public long getPercentileProcTimeNs(double percentile) {
+        return total.getPercentile(percentile);
     }
     
-    public void updatePerPacketCounters(long procTimeNs) {
-        totalPktCnt++;
-        totalProcTimeNs += procTimeNs;
-        avgTotalProcTimeNs = totalProcTimeNs / totalPktCnt;
-        updateSquaredProcessingTime(procTimeNs);
-        
-        if (procTimeNs > maxTotalProcTimeNs) {
-            maxTotalProcTimeNs = procTimeNs;
-        }
-        
-        if (procTimeNs < minTotalProcTimeNs) {
-            minTotalProcTimeNs = procTimeNs;
-        }
+    public int getNumComps() {
+        return compStats.size();
     }
     
-    public void updateOneComponent(IOFMessageListener l, long procTimeNs) {
-        compStats.get(l.hashCode()).updatePerPacketCounters(procTimeNs);
+    public Collection<OneComponentTime> getModules() {
+        return compStats;
     }
-}
\ No newline at end of file
+}
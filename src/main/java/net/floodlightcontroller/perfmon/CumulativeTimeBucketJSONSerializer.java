@@ -36,15 +36,18 @@ public class CumulativeTimeBucketJSONSerializer
                    SerializerProvider serializer) 
                    throws IOException, JsonProcessingException {
        jGen.writeStartObject();
-       Timestamp ts = new Timestamp(ctb.getStartTimeNs()/1000000);
-       jGen.writeStringField("start-time", ts.toString());
-       jGen.writeStringField("current-time", 
-         new Timestamp(System.currentTimeMillis()).toString());
+       jGen.writeStringField("start-time", 
+         new Timestamp(ctb.getStartTimeMs()).toString());
+       jGen.writeStringField("end-time", 
+         new Timestamp(ctb.getEndTimeMs()).toString());
        jGen.writeNumberField("total-packets", ctb.getTotalPktCnt());
        jGen.writeNumberField("average", ctb.getAverageProcTimeNs());
        jGen.writeNumberField("min", ctb.getMinTotalProcTimeNs());
        jGen.writeNumberField("max", ctb.getMaxTotalProcTimeNs());
        jGen.writeNumberField("std-dev", ctb.getTotalSigmaProcTimeNs());
+       jGen.writeNumberField("p50", ctb.getPercentileProcTimeNs(50));
+       jGen.writeNumberField("p99", ctb.getPercentileProcTimeNs(99));
+       jGen.writeNumberField("p999", ctb.getPercentileProcTimeNs(99.9));
        jGen.writeArrayFieldStart("modules");
        for (OneComponentTime oct : ctb.getModules()) {
            serializer.defaultSerializeValue(oct, jGen);
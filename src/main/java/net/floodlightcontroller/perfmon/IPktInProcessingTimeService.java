@@ -28,19 +28,18 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 public interface IPktInProcessingTimeService extends IFloodlightService {
 
     /**
-     * Creates time buckets for a set of modules to measure their performance
-     * @param listeners The message listeners to create time buckets for
+     * Records the time a listener finished handling an OF message. The
+     * listener is charged the time since the previous listener finished,
+     * or since the message started being processed. Only records if the
+     * service is enabled. Must be called on the thread processing the
+     * message.
      */
-    public void bootstrap(List<IOFMessageListener> listeners);
+    public void recordEndTimeComp(IOFMessageListener listener);
     
     /**
-     * Stores a timestamp in ns. Used right before a service handles an
-     * OF message. Only stores if the service is enabled.
+     * Records the time an OF message starts being processed by the
+     * listeners. Must be called on the thread processing the message.
      */
-    public void recordStartTimeComp(IOFMessageListener listener);
-    
-    public void recordEndTimeComp(IOFMessageListener listener);
-    
     public void recordStartTimePktIn();
     
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx);
@@ -49,5 +48,20 @@ public interface IPktInProcessingTimeService extends IFloodlightService {
     
     public void setEnabled(boolean enabled);
     
+    /**
+     * Get the processing times since the service was enabled or last reset
+     * @return the times
+     */
     public CumulativeTimeBucket getCtb();
+
+    /**
+     * Get the processing times of the last few fixed length periods
+     * @return the times of each period, oldest first
+     */
+    public List<CumulativeTimeBucket> getHistory();
+
+    /**
+     * Start recording the times returned by {@link #getCtb()} afresh
+     */
+    public void reset();
 }
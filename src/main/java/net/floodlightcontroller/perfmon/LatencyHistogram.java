@@ -0,0 +1,163 @@
+package net.floodlightcontroller.perfmon;
+
+/**
+ * A histogram of processing times in ns. As in HdrHistogram, buckets grow
+ * exponentially in width: times below 2^SUB_BUCKET_BITS ns are counted
+ * exactly, and larger ones to within 1/2^SUB_BUCKET_BITS, about 3%.
+ * Times beyond 2^MAX_MAGNITUDE ns, about a minute, count as that.
+ *
+ * Not thread-safe. Packet processing threads record into a
+ * {@link LatencyRecorder} each, which are added up into histograms.
+ */
+public class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_MAGNITUDE = 36;
+    static final int BUCKETS =
+            (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+
+    /**
+     * Get the bucket counting a time
+     * @param ns the time
+     * @return the bucket
+     */
+    static int getBucket(long ns) {
+        if (ns < SUB_BUCKETS)
+            return ns < 0 ? 0 : (int)ns;
+        int magnitude = 63 - Long.numberOfLeadingZeros(ns);
+        if (magnitude >= MAX_MAGNITUDE)
+            return BUCKETS - 1;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) +
+                (int)((ns >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Get the smallest time counted by a bucket
+     */
+    static long getLowestValue(int bucket) {
+        int group = bucket >>> SUB_BUCKET_BITS;
+        if (group == 0)
+            return bucket;
+        return (long)(SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) <<
+                (group - 1);
+    }
+
+    /**
+     * Get the largest time counted by a bucket
+     */
+    static long getHighestValue(int bucket) {
+        int group = bucket >>> SUB_BUCKET_BITS;
+        if (group == 0)
+            return bucket;
+        return getLowestValue(bucket) + (1L << (group - 1)) - 1;
+    }
+
+    void add(int bucket, long n) {
+        counts[bucket] += n;
+        count += n;
+    }
+
+    void addSum(long ns) {
+        sum += ns;
+    }
+
+    /**
+     * Add the times of another histogram to this one
+     * @param other the other histogram
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+    }
+
+    /**
+     * Get the times recorded since an earlier copy of this histogram
+     * @param earlier the earlier copy, or null
+     * @return a new histogram of the times since
+     */
+    public LatencyHistogram since(LatencyHistogram earlier) {
+        LatencyHistogram h = new LatencyHistogram();
+        h.add(this);
+        if (earlier != null) {
+            for (int i = 0; i < BUCKETS; i++) {
+                h.counts[i] -= earlier.counts[i];
+            }
+            h.count -= earlier.count;
+            h.sum -= earlier.sum;
+        }
+        return h;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getAverage() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public long getMin() {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0)
+                return getLowestValue(i);
+        }
+        return 0;
+    }
+
+    public long getMax() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts[i] > 0)
+                return getHighestValue(i);
+        }
+        return 0;
+    }
+
+    /**
+     * Get a percentile of the times
+     * @param percentile between 0 and 100
+     * @return the largest time of the bucket holding the percentile,
+     * 0 if the histogram is empty
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+        long rank = (long)Math.ceil(percentile / 100 * count);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return getHighestValue(i);
+        }
+        return getMax();
+    }
+
+    /**
+     * Get the standard deviation of the times, taking the middle of each
+     * bucket for its times
+     */
+    public long getStdDev() {
+        if (count == 0)
+            return 0;
+        double mean = (double)sum / count;
+        double squares = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] == 0) continue;
+            double mid = (getLowestValue(i) + getHighestValue(i)) / 2.0;
+            squares += counts[i] * (mid - mean) * (mid - mean);
+        }
+        return (long)Math.sqrt(squares / count);
+    }
+}
@@ -0,0 +1,39 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The live counts of a {@link LatencyHistogram}, written by a single
+ * thread and read by any. The writer neither locks nor does atomic
+ * read-modify-writes; readers see each count at some recent value.
+ */
+public class LatencyRecorder {
+    private static final int SUM = LatencyHistogram.BUCKETS;
+
+    private final AtomicLongArray counts =
+            new AtomicLongArray(LatencyHistogram.BUCKETS + 1);
+
+    /**
+     * Record a time. Only to be called by the owning thread
+     * @param ns the time
+     */
+    public void record(long ns) {
+        if (ns < 0) ns = 0;
+        int bucket = LatencyHistogram.getBucket(ns);
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        counts.lazySet(SUM, counts.get(SUM) + ns);
+    }
+
+    /**
+     * Add the times recorded so far to a histogram
+     * @param histogram the histogram
+     */
+    public void addTo(LatencyHistogram histogram) {
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long n = counts.get(i);
+            if (n != 0)
+                histogram.add(i, n);
+        }
+        histogram.addSum(counts.get(SUM));
+    }
+}
@@ -18,6 +18,7 @@ package net.floodlightcontroller.perfmon;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,8 +43,9 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 public class NullPktInProcessingTime 
     implements IFloodlightModule, IPktInProcessingTimeService {
     
-    private CumulativeTimeBucket ctb;
-    private boolean inited = false;
+    private final CumulativeTimeBucket ctb = new CumulativeTimeBucket(0, 0,
+            new LatencyHistogram(),
+            Collections.<String, LatencyHistogram>emptyMap());
     
     public Collection<Class<? extends IFloodlightService>> getModuleServices() {
         Collection<Class<? extends IFloodlightService>> l = 
@@ -86,17 +88,6 @@ public class NullPktInProcessingTime
         return false;
     }
 
-    @Override
-    public void bootstrap(List<IOFMessageListener> listeners) {
-        if (!inited)
-            ctb = new CumulativeTimeBucket(listeners);
-    }
-
-    @Override
-    public void recordStartTimeComp(IOFMessageListener listener) {
-
-    }
-
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
 
@@ -122,4 +113,14 @@ public class NullPktInProcessingTime
     public CumulativeTimeBucket getCtb() {
         return ctb;
     }
+
+    @Override
+    public List<CumulativeTimeBucket> getHistory() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void reset() {
+        
+    }
 }
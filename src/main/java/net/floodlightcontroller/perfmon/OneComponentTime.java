@@ -18,38 +18,17 @@ package net.floodlightcontroller.perfmon;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import net.floodlightcontroller.core.IOFMessageListener;
-
 /**
  * Holds OF message processing time information for one IFloodlightModule.
  * @author Subrata
  */
 public class OneComponentTime {
-    private int compId; // hascode of IOFMessageListener
-    private String compName;
-    private int pktCnt;
-    // all times in nanoseconds
-    private long totalProcTimeNs;
-    private long sumSquaredProcTimeNs2; // squared
-    private long maxProcTimeNs;
-    private long minProcTimeNs;
-    private long avgProcTimeNs;
-    private long sigmaProcTimeNs;  // std. deviation
+    private final String compName;
+    private final LatencyHistogram times;
 
-    public OneComponentTime(IOFMessageListener module) {
-        compId = module.hashCode();
-        compName = module.getClass().getCanonicalName();
-        resetAllCounters();
-    }
-    
-    public void resetAllCounters() {
-        maxProcTimeNs = Long.MIN_VALUE;
-        minProcTimeNs = Long.MAX_VALUE;
-        pktCnt = 0;
-        totalProcTimeNs = 0;
-        sumSquaredProcTimeNs2 = 0;
-        avgProcTimeNs = 0;
-        sigmaProcTimeNs = 0;
+    public OneComponentTime(String compName, LatencyHistogram times) {
+        this.compName = compName;
+        this.times = times;
     }
     
     @JsonProperty("module-name")
@@ -58,88 +37,47 @@ public class OneComponentTime {
     }
 
     @JsonProperty("num-packets")
-    public int getPktCnt() {
-        return pktCnt;
+    public long getPktCnt() {
+        return times.getCount();
     }
 
     @JsonProperty("total")
     public long getSumProcTimeNs() {
-        return totalProcTimeNs;
+        return times.getSum();
     }
 
     @JsonProperty("max")
     public long getMaxProcTimeNs() {
-        return maxProcTimeNs;
+        return times.getMax();
     }
 
     @JsonProperty("min")
     public long getMinProcTimeNs() {
-        return minProcTimeNs;
+        return times.getMin();
     }
 
     @JsonProperty("average")
     public long getAvgProcTimeNs() {
-        return avgProcTimeNs;
+        return times.getAverage();
     }
 
     @JsonProperty("std-dev")
     public long getSigmaProcTimeNs() {
-        return sigmaProcTimeNs;
-    }
-    
-    @JsonProperty("average-squared")
-    public long getSumSquaredProcTimeNs() {
-        return sumSquaredProcTimeNs2;
+        return times.getStdDev();
     }
 
-    // Methods used to update the counters
-    
-    private void increasePktCount() {
-        pktCnt++;
-    }
-    
-    private void updateTotalProcessingTime(long procTimeNs) {
-        totalProcTimeNs += procTimeNs;
-    }
-    
-    private void updateAvgProcessTime() {
-        avgProcTimeNs = totalProcTimeNs / pktCnt;
-    }
-    
-    private void updateSquaredProcessingTime(long procTimeNs) {
-        sumSquaredProcTimeNs2 += (Math.pow(procTimeNs, 2));
-    }
-    
-    private void calculateMinProcTime(long curTimeNs) {
-        if (curTimeNs < minProcTimeNs)
-            minProcTimeNs = curTimeNs;
+    @JsonProperty("p50")
+    public long getP50ProcTimeNs() {
+        return times.getPercentile(50);
     }
-    
-    private void calculateMaxProcTime(long curTimeNs) {
-        if (curTimeNs > maxProcTimeNs)
-            maxProcTimeNs = curTimeNs;
-    }
-    
-    public void computeSigma() {
-        // Computes std. deviation from the sum of count numbers and from
-        // the sum of the squares of count numbers
-        double temp = totalProcTimeNs;
-        temp = Math.pow(temp, 2) / pktCnt;
-        temp = (sumSquaredProcTimeNs2 - temp) / pktCnt;
-        sigmaProcTimeNs = (long) Math.sqrt(temp);
-    }
-    
-    public void updatePerPacketCounters(long procTimeNs) {
-        increasePktCount();
-        updateTotalProcessingTime(procTimeNs);
-        calculateMinProcTime(procTimeNs);
-        calculateMaxProcTime(procTimeNs);
-        updateAvgProcessTime();
-        updateSquaredProcessingTime(procTimeNs);
+
+    @JsonProperty("p99")
+    public long getP99ProcTimeNs() {
+        return times.getPercentile(99);
     }
-    
-    @Override
-    public int hashCode() {
-        return compId;
+
+    @JsonProperty("p999")
+    public long getP999ProcTimeNs() {
+        return times.getPercentile(99.9);
     }
-}
\ No newline at end of file
+}
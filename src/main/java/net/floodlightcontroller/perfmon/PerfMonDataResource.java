@@ -45,9 +45,7 @@ public class PerfMonDataResource extends ServerResource {
         }
         // Allocate output object
         if (pktinProcTime.isEnabled()) {
-            CumulativeTimeBucket ctb = pktinProcTime.getCtb();
-            ctb.computeAverages();
-            return ctb;
+            return pktinProcTime.getCtb();
         }
         
         return null;
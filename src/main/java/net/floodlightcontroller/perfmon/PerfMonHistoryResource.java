@@ -0,0 +1,23 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.List;
+
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Return the performance monitoring data of the last few periods
+ */
+public class PerfMonHistoryResource extends ServerResource {
+    
+    @Get("json")
+    public List<CumulativeTimeBucket> handleApiQuery() {
+        IPktInProcessingTimeService pktinProcTime = 
+            (IPktInProcessingTimeService)getContext().getAttributes().
+                get(IPktInProcessingTimeService.class.getCanonicalName());
+        
+        setStatus(Status.SUCCESS_OK, "OK");
+        return pktinProcTime.getHistory();
+    }
+}
@@ -34,7 +34,7 @@ public class PerfMonToggleResource extends ServerResource {
         	if(!pktinProcTime.isEnabled()){
         		pktinProcTime.setEnabled(true);
         	}
-            pktinProcTime.getCtb().reset();
+            pktinProcTime.reset();
         } else {
             if (param.equals("enable") || param.equals("true")) {
                 pktinProcTime.setEnabled(true);
@@ -28,6 +28,7 @@ public class PerfWebRoutable implements RestletRoutable {
     public Restlet getRestlet(Context context) {
         Router router = new Router(context);
         router.attach("/data/json", PerfMonDataResource.class);
+        router.attach("/history/json", PerfMonHistoryResource.class);
         router.attach("/{perfmonstate}/json", PerfMonToggleResource.class); // enable, disable, or reset
         return router;
     }
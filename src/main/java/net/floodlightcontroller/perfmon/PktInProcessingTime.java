@@ -22,11 +22,16 @@ package net.floodlightcontroller.perfmon;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.FloodlightContext;
-import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
@@ -34,20 +39,21 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
-import org.projectfloodlight.openflow.protocol.OFType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class contains a set of buckets (called time buckets as the
- * primarily contain 'times' that are used in a circular way to 
- * store information on packet in processing time.
- * Each bucket is meant to store the various processing time 
- * related data for a fixed duration.
- * Buckets are reused to reduce garbage generation! Once the
- * last bucket is used up the LRU bucket is reused.
+ * This class records the time taken to process OF messages, in total and
+ * by each listener, in latency histograms.
+ * 
+ * OF messages are processed concurrently by the netty worker threads, so
+ * each thread records into histograms of its own, one per listener,
+ * without locking. Every ONE_BUCKET_DURATION_SECONDS the histograms of
+ * all threads are added up into a time bucket, of which the last
+ * BUCKET_SET_SIZE are kept.
  * 
  * Naming convention for variable or constants
  * variable_s : value in seconds
@@ -56,21 +62,16 @@ import org.slf4j.LoggerFactory;
  * variable_ns: value in nanoseconds
  * 
  * Key Constants:
- * ONE_BUCKET_DURATION_SECONDS_INT:  time duration of each bucket
+ * ONE_BUCKET_DURATION_SECONDS:  time duration of each bucket
  * BUCKET_SET_SIZE: Number of buckets
- * TOT_PROC_TIME_WARN_THRESHOLD_US: if processing time for a packet
- *    exceeds this threshold then a warning LOG message is generated
- * TOT_PROC_TIME_ALERT_THRESHOLD_US: same as above but an alert level
- *    syslog is generated instead
  * 
  */
 public class PktInProcessingTime
     implements IFloodlightModule, IPktInProcessingTimeService {
 
-    
-	protected IFloodlightProviderService floodlightProvider;
     // Our dependencies
     private IRestApiService restApi;
+    private IThreadPoolService threadPool;
     
     protected long ptWarningThresholdInNano;
 
@@ -82,74 +83,185 @@ public class PktInProcessingTime
     protected static  Logger  logger = 
         LoggerFactory.getLogger(PktInProcessingTime.class);
     
-    protected boolean isEnabled = false;
-    protected boolean isInited = false;
-    // Maintains the time when the last packet was processed
-    protected long lastPktTime_ns;
-    private CumulativeTimeBucket ctb = null;
+    protected volatile boolean isEnabled = false;
 
-    
     /***
      * BUCKET_SET_SIZE buckets each holding 10s of processing time data, a total
      * of 30*10s = 5mins of processing time data is maintained
      */
     protected static final int ONE_BUCKET_DURATION_SECONDS = 10;// seconds
-    protected static final long ONE_BUCKET_DURATION_NANOSECONDS  =
-                                ONE_BUCKET_DURATION_SECONDS * 1000000000;
-    
-    @Override
-    public void bootstrap(List<IOFMessageListener> listeners) {
-            ctb = new CumulativeTimeBucket(listeners);
+    protected static final int BUCKET_SET_SIZE = 30;
+
+    /**
+     * The times recorded by one thread. Only the thread itself writes them
+     */
+    private static class ThreadTimes {
+        final LatencyRecorder total = new LatencyRecorder();
+        /** copied on write, so that it can be read from other threads */
+        volatile IdentityHashMap<IOFMessageListener, LatencyRecorder>
+                components =
+                    new IdentityHashMap<IOFMessageListener, LatencyRecorder>();
+        boolean inPacket;
+        long startTimePktNs;
+        long lastTimeNs;
+
+        LatencyRecorder getRecorder(IOFMessageListener listener) {
+            LatencyRecorder r = components.get(listener);
+            if (r == null) {
+                IdentityHashMap<IOFMessageListener, LatencyRecorder> c =
+                        new IdentityHashMap<IOFMessageListener,
+                                            LatencyRecorder>(components);
+                r = new LatencyRecorder();
+                c.put(listener, r);
+                components = c;
+            }
+            return r;
+        }
     }
-    
+
+    /**
+     * The times recorded by all threads, added up at some point in time
+     */
+    private static class Sample {
+        final long timeMs = System.currentTimeMillis();
+        final LatencyHistogram total = new LatencyHistogram();
+        final Map<String, LatencyHistogram> components =
+                new HashMap<String, LatencyHistogram>();
+
+        CumulativeTimeBucket since(Sample earlier) {
+            Map<String, LatencyHistogram> c =
+                    new HashMap<String, LatencyHistogram>();
+            for (Entry<String, LatencyHistogram> e : components.entrySet()) {
+                c.put(e.getKey(), e.getValue().since(earlier == null
+                        ? null : earlier.components.get(e.getKey())));
+            }
+            return new CumulativeTimeBucket(
+                    earlier == null ? timeMs : earlier.timeMs, timeMs,
+                    total.since(earlier == null ? null : earlier.total), c);
+        }
+    }
+
+    private final Queue<ThreadTimes> allThreadTimes =
+            new ConcurrentLinkedQueue<ThreadTimes>();
+    private final ThreadLocal<ThreadTimes> threadTimes =
+            new ThreadLocal<ThreadTimes>() {
+        @Override
+        protected ThreadTimes initialValue() {
+            ThreadTimes t = new ThreadTimes();
+            allThreadTimes.add(t);
+            return t;
+        }
+    };
+
+    // guarded by this
+    private Sample resetSample;
+    private Sample lastSample;
+    private final LinkedList<CumulativeTimeBucket> history =
+            new LinkedList<CumulativeTimeBucket>();
+
+    /**
+     * Add up the times recorded by all threads so far
+     */
+    private Sample collect() {
+        Sample s = new Sample();
+        for (ThreadTimes t : allThreadTimes) {
+            t.total.addTo(s.total);
+            for (Entry<IOFMessageListener, LatencyRecorder> e :
+                    t.components.entrySet()) {
+                String name = getName(e.getKey());
+                LatencyHistogram h = s.components.get(name);
+                if (h == null) {
+                    h = new LatencyHistogram();
+                    s.components.put(name, h);
+                }
+                e.getValue().addTo(h);
+            }
+        }
+        return s;
+    }
+
+    private static String getName(IOFMessageListener listener) {
+        String name = listener.getClass().getCanonicalName();
+        return name != null ? name : listener.getClass().getName();
+    }
+
+    /**
+     * Close the current time bucket
+     */
+    protected synchronized void roll() {
+        if (!isEnabled) {
+            lastSample = null;
+            return;
+        }
+        Sample s = collect();
+        if (lastSample != null) {
+            history.addLast(s.since(lastSample));
+            if (history.size() > BUCKET_SET_SIZE)
+                history.removeFirst();
+        }
+        lastSample = s;
+    }
+
     @Override
     public boolean isEnabled() {
         return isEnabled;
     }
     
     @Override
-    public void setEnabled(boolean enabled) {
-    	if(enabled){
-    		bootstrap(floodlightProvider.getListeners().get(OFType.PACKET_IN));
-    	}
+    public synchronized void setEnabled(boolean enabled) {
+        if (enabled && !isEnabled) {
+            reset();
+            lastSample = resetSample;
+        }
         this.isEnabled = enabled;
         logger.debug("Setting module to " + isEnabled);
     }
     
     @Override
-    public CumulativeTimeBucket getCtb() {
-        return ctb;
+    public synchronized CumulativeTimeBucket getCtb() {
+        return collect().since(resetSample);
     }
-    
-    private long startTimePktNs;
-    private long startTimeCompNs;
+
     @Override
-    public void recordStartTimeComp(IOFMessageListener listener) {
-        if (isEnabled()) {
-            startTimeCompNs = System.nanoTime();
-        }
+    public synchronized List<CumulativeTimeBucket> getHistory() {
+        return new ArrayList<CumulativeTimeBucket>(history);
+    }
+
+    @Override
+    public synchronized void reset() {
+        resetSample = collect();
     }
     
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
-        if (isEnabled()) {
-            long procTime = System.nanoTime() - startTimeCompNs;
-            ctb.updateOneComponent(listener, procTime);
+        if (isEnabled) {
+            ThreadTimes t = threadTimes.get();
+            if (t.inPacket) {
+                long now = System.nanoTime();
+                t.getRecorder(listener).record(now - t.lastTimeNs);
+                t.lastTimeNs = now;
+            }
         }
     }
     
     @Override
     public void recordStartTimePktIn() {
-        if (isEnabled()) {
-            startTimePktNs = System.nanoTime();
+        if (isEnabled) {
+            ThreadTimes t = threadTimes.get();
+            t.startTimePktNs = t.lastTimeNs = System.nanoTime();
+            t.inPacket = true;
         }
     }
     
     @Override
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
-        if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
-            ctb.updatePerPacketCounters(procTimeNs);
+        if (isEnabled) {
+            ThreadTimes t = threadTimes.get();
+            if (!t.inPacket)
+                return;
+            t.inPacket = false;
+            long procTimeNs = System.nanoTime() - t.startTimePktNs;
+            t.total.record(procTimeNs);
             
             if (ptWarningThresholdInNano > 0 && 
                     procTimeNs > ptWarningThresholdInNano) {
@@ -186,22 +298,33 @@ public class PktInProcessingTime
         Collection<Class<? extends IFloodlightService>> l = 
                 new ArrayList<Class<? extends IFloodlightService>>();
         l.add(IRestApiService.class);
-        l.add(IFloodlightProviderService.class);
+        l.add(IThreadPoolService.class);
         return l;
     }
     
     @Override
     public void init(FloodlightModuleContext context)
                                              throws FloodlightModuleException {
-    	floodlightProvider = context
-                .getServiceImpl(IFloodlightProviderService.class);
         restApi = context.getServiceImpl(IRestApiService.class);
+        threadPool = context.getServiceImpl(IThreadPoolService.class);
     }
     
     @Override
     public void startUp(FloodlightModuleContext context) {
         // Add our REST API
         restApi.addRestletRoutable(new PerfWebRoutable());
+
+        threadPool.getScheduledExecutor().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    roll();
+                } catch (Exception e) {
+                    logger.error("Exception rolling the time buckets", e);
+                }
+            }
+        }, ONE_BUCKET_DURATION_SECONDS, ONE_BUCKET_DURATION_SECONDS,
+           TimeUnit.SECONDS);
         
         // TODO - Alex - change this to a config option
         ptWarningThresholdInNano = Long.parseLong(System.getProperty(
@@ -72,6 +72,9 @@ public class RestApiServer implements IFloodlightModule, IRestApiService {
 	private static String httpsPort;
 	private static String httpPort;
 
+	/* Threads serving REST requests per server; 0 keeps the connector's default */
+	private static int workerThreads = 0;
+
 
 	// ***********
 	// Application
@@ -226,14 +229,18 @@ public class RestApiServer implements IFloodlightModule, IRestApiService {
 					parameters.add("truststoreType", "JKS");
 
 					parameters.add("needClientAuthentication", RestApiServer.httpsNeedClientAuth);
+					setWorkerThreads(server);
 				}
 
 				if (RestApiServer.useHttp) {
+					Server server;
+
 					if (restHost == null) {
-						component.getServers().add(Protocol.HTTP, Integer.valueOf(RestApiServer.httpPort));
+						server = component.getServers().add(Protocol.HTTP, Integer.valueOf(RestApiServer.httpPort));
 					} else {
-						component.getServers().add(Protocol.HTTP, restHost, Integer.valueOf(RestApiServer.httpPort));
+						server = component.getServers().add(Protocol.HTTP, restHost, Integer.valueOf(RestApiServer.httpPort));
 					}
+					setWorkerThreads(server);
 				}
 
 				component.getClients().add(Protocol.CLAP);
@@ -245,6 +252,18 @@ public class RestApiServer implements IFloodlightModule, IRestApiService {
 		}
 	}
 
+	/**
+	 * Size the thread pool of a server, through the parameter of the
+	 * Simple connector.
+	 * @param server
+	 */
+	private static void setWorkerThreads(Server server) {
+		if (RestApiServer.workerThreads > 0) {
+			server.getContext().getParameters().add("defaultThreads", 
+					String.valueOf(RestApiServer.workerThreads));
+		}
+	}
+
 	// ***************
 	// IRestApiService
 	// ***************
@@ -374,6 +393,19 @@ public class RestApiServer implements IFloodlightModule, IRestApiService {
 			}	
 		}
 		
+		String threads = configOptions.get("workerThreads");
+		if (threads != null && !threads.isEmpty()) {
+			int i = -1;
+			try {
+				i = Integer.parseInt(threads.trim());
+			} catch (NumberFormatException e) { }
+			if (i >= 0) {
+				RestApiServer.workerThreads = i;
+			} else {
+				logger.error("Invalid REST API worker threads {}. Using {}", threads, RestApiServer.workerThreads);
+			}
+		}
+
 		if (RestApiServer.useHttp && RestApiServer.useHttps && RestApiServer.httpPort.equals(RestApiServer.httpsPort)) {
 			logger.error("REST API's HTTP and HTTPS ports cannot be the same. Got " + RestApiServer.httpPort + " for both.");
 			throw new IllegalArgumentException("REST API's HTTP and HTTPS ports cannot be the same. Got " + RestApiServer.httpPort + " for both.");
@@ -70,7 +70,7 @@ public interface IRoutingService extends IFloodlightService {
      */
     public Route getRoute(DatapathId srcId, OFPort srcPort, DatapathId dstId, OFPort dstPort, U64 cookie, boolean tunnelEnabled);
 
-    /** return all routes, if available */
+    /** return the shortest route and up to k-1 alternatives by increasing cost, if available */
     public ArrayList<Route> getRoutes(DatapathId longSrcDpid, DatapathId longDstDpid, boolean tunnelEnabled);
 
     /** Check if a route exists between src and dst, including tunnel links
@@ -31,7 +31,7 @@ public class IgnoreProvider extends ReactiveProvider {
 			IPv4 ipv4 = (IPv4)eth.getPayload();
 			IPv4Address address = ipv4.getSourceAddress();
 			
-			if(this.manager.check(switchPort, macAddress, address)) {
+			if(this.manager.checkIPv4(switchPort.getSwitchDPID(), switchPort.getPort(), macAddress.getLong(), address.getInt())) {
 				//log.info("ipv4-check");
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
@@ -49,7 +49,7 @@ public class IgnoreProvider extends ReactiveProvider {
 			for(int i = 0 ; i < list.size() ; i++){
 				log.info(list.get(i).getAddress().toString());
 			}*/
-			if(this.manager.check(switchPort, macAddress, address)) {
+			if(this.manager.checkIPv6(switchPort.getSwitchDPID(), switchPort.getPort(), macAddress.getLong(), address.getHi(), address.getLo())) {
 				//log.info("ipv6-check");
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
@@ -64,7 +64,7 @@ public class IgnoreProvider extends ReactiveProvider {
 			ARP arp = (ARP)eth.getPayload();
 			IPv4Address address = arp.getSenderProtocolAddress();
 			
-			if(this.manager.check(switchPort, address)) {
+			if(this.manager.checkIPv4(switchPort.getSwitchDPID(), switchPort.getPort(), address.getInt())) {
 				//log.info("arp-check");
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
@@ -0,0 +1,180 @@
+package net.floodlightcontroller.savi;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.packet.Ethernet;
+
+/**
+ * Hands SAVI PACKET_IN processing from the OpenFlow I/O threads to a fixed
+ * set of worker shards. A switch is always served by the same shard, so
+ * packets of one switch are processed in arrival order while different
+ * switches are processed in parallel. Every shard has a bounded queue; when
+ * it is full {@link #dispatch(SwitchPort, Ethernet)} refuses the packet and
+ * the caller applies its overload policy.
+ */
+public class PacketInDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(PacketInDispatcher.class);
+
+	/**
+	 * What to do with a packet whose shard queue is full.
+	 */
+	public enum OverloadPolicy {
+		/** drop the packet */
+		DROP,
+		/** drop the packet and install a short-lived drop rule for its source */
+		DROP_RULE
+	}
+
+	/**
+	 * Processes one packet on a shard thread.
+	 */
+	public interface PacketHandler {
+		public void handlePacket(SwitchPort switchPort, Ethernet eth);
+	}
+
+	private static class Task {
+		final SwitchPort switchPort;
+		final Ethernet eth;
+		final long enqueued;
+
+		Task(SwitchPort switchPort, Ethernet eth) {
+			this.switchPort = switchPort;
+			this.eth = eth;
+			this.enqueued = System.nanoTime();
+		}
+	}
+
+	private class Shard implements Runnable {
+		final BlockingQueue<Task> queue;
+		final IDebugCounter ctrEnqueued;
+		final IDebugCounter ctrProcessed;
+		final IDebugCounter ctrDropped;
+		final IDebugCounter ctrLatency;
+		Thread thread;
+
+		Shard(int index, int queueSize, IDebugCounterService debugCounterService, String moduleName) {
+			queue = new ArrayBlockingQueue<>(queueSize);
+
+			String name = "packet-in-shard-" + index;
+			debugCounterService.registerCounter(moduleName, name, "SAVI PACKET_IN shard " + index);
+			ctrEnqueued = debugCounterService.registerCounter(moduleName, name + "/enqueued",
+					"Packets queued on the shard");
+			ctrProcessed = debugCounterService.registerCounter(moduleName, name + "/processed",
+					"Packets processed by the shard");
+			ctrDropped = debugCounterService.registerCounter(moduleName, name + "/dropped",
+					"Packets refused because the shard queue was full", IDebugCounterService.MetaData.DROP);
+			ctrLatency = debugCounterService.registerCounter(moduleName, name + "/latency-us",
+					"Accumulated queueing plus processing time in microseconds, divide by processed for the mean");
+		}
+
+		@Override
+		public void run() {
+			while(running) {
+				Task task;
+				try {
+					task = queue.poll(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					break;
+				}
+				if(task == null) {
+					continue;
+				}
+				try {
+					handler.handlePacket(task.switchPort, task.eth);
+				} catch (Exception e) {
+					log.error("Failure processing packet from " + task.switchPort, e);
+				}
+				ctrProcessed.increment();
+				ctrLatency.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - task.enqueued));
+			}
+		}
+	}
+
+	private final Shard[] shards;
+	private final PacketHandler handler;
+	private final OverloadPolicy overloadPolicy;
+	private volatile boolean running;
+
+	public PacketInDispatcher(int shardCount, int queueSize, OverloadPolicy overloadPolicy,
+			PacketHandler handler, IDebugCounterService debugCounterService, String moduleName) {
+		this.handler = handler;
+		this.overloadPolicy = overloadPolicy;
+
+		debugCounterService.registerModule(moduleName);
+		shards = new Shard[shardCount];
+		for(int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard(i, queueSize, debugCounterService, moduleName);
+		}
+	}
+
+	public synchronized void start() {
+		if(running) {
+			return;
+		}
+		running = true;
+		for(int i = 0; i < shards.length; i++) {
+			Thread t = new Thread(shards[i], "savi-packet-in-" + i);
+			t.setDaemon(true);
+			shards[i].thread = t;
+			t.start();
+		}
+	}
+
+	public synchronized void stop() {
+		running = false;
+		for(Shard shard : shards) {
+			if(shard.thread != null) {
+				shard.thread.interrupt();
+				shard.thread = null;
+			}
+		}
+	}
+
+	/**
+	 * Queue a packet on the shard of its switch.
+	 * @param switchPort
+	 * @param eth
+	 * @return false if the shard queue is full and the packet was not queued
+	 */
+	public boolean dispatch(SwitchPort switchPort, Ethernet eth) {
+		Shard shard = shardOf(switchPort);
+		if(shard.queue.offer(new Task(switchPort, eth))) {
+			shard.ctrEnqueued.increment();
+			return true;
+		}
+		shard.ctrDropped.increment();
+		return false;
+	}
+
+	public OverloadPolicy getOverloadPolicy() {
+		return overloadPolicy;
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @param shard
+	 * @return packets currently waiting on the shard
+	 */
+	public int getQueueDepth(int shard) {
+		return shards[shard].queue.size();
+	}
+
+	private Shard shardOf(SwitchPort switchPort) {
+		long dpid = switchPort.getSwitchDPID().getLong();
+		int h = (int)(dpid ^ (dpid >>> 32));
+		h ^= h >>> 16;
+		return shards[(h & Integer.MAX_VALUE) % shards.length];
+	}
+}
@@ -0,0 +1,398 @@
+package net.floodlightcontroller.savi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * Analysis state of the SAVI host ports.
+ *
+ * Every port is a node of an intrusive list, one list per switch and
+ * state, indexed by a hash map. A transition unlinks the node and links it
+ * at the tail of the new list, both O(1). Switches using dynamic
+ * validation rules form a ring which {@link #pollNormal(int, Set)} walks
+ * round-robin, so static and default switches are never visited. The last
+ * {@value #HISTORY_SIZE} transitions of a port are kept for diagnosis.
+ *
+ * All methods lock the table; none of them is linear in the total number
+ * of ports except the ones returning port lists.
+ */
+public class PortStateTable {
+
+	public enum State {
+		NORMAL, OBSERVE, ABNORMAL
+	}
+
+	// 交换机的验证方式：动态、静态、默认
+	public enum Mode {
+		DYNAMIC, STATIC, NONE
+	}
+
+	public static final int HISTORY_SIZE = 8;
+
+	private static final State[] STATES = State.values();
+	// state code of "not in the table" in the packed history
+	private static final int ABSENT = 3;
+
+	/**
+	 * One state change of a port, from or to null when the port was added or removed.
+	 */
+	public static class Transition {
+		private final long time;
+		private final State from;
+		private final State to;
+
+		Transition(long time, State from, State to) {
+			this.time = time;
+			this.from = from;
+			this.to = to;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public State getFrom() {
+			return from;
+		}
+
+		public State getTo() {
+			return to;
+		}
+
+		@Override
+		public String toString() {
+			return "Transition [time=" + time + ", from=" + from + ", to=" + to + "]";
+		}
+	}
+
+	private static final class Node {
+		final SwitchPort switchPort;
+		final SwitchNode owner;
+		State state;
+		int observeCount;
+		Node prev;
+		Node next;
+		// time << 4 | from << 2 | to
+		long[] history;
+		int historyCount;
+
+		Node(SwitchPort switchPort, SwitchNode owner) {
+			this.switchPort = switchPort;
+			this.owner = owner;
+		}
+	}
+
+	private static final class SwitchNode {
+		Mode mode = Mode.DYNAMIC;
+		final Node[] heads = new Node[STATES.length];
+		final int[] counts = new int[STATES.length];
+		SwitchNode prevDynamic;
+		SwitchNode nextDynamic;
+
+		SwitchNode() {
+			for(int i = 0; i < heads.length; i++) {
+				Node head = new Node(null, this);
+				head.prev = head;
+				head.next = head;
+				heads[i] = head;
+			}
+		}
+	}
+
+	private final Map<SwitchPort, Node> ports = new HashMap<>();
+	private final Map<DatapathId, SwitchNode> switches = new HashMap<>();
+	private final int[] counts = new int[STATES.length];
+	// next dynamic switch to poll, null if there is none
+	private SwitchNode cursor;
+	private int dynamicSwitches;
+
+	/**
+	 * @param switchPort
+	 * @param state
+	 * @return false if the port is already in the table
+	 */
+	public synchronized boolean add(SwitchPort switchPort, State state) {
+		if(ports.containsKey(switchPort)) {
+			return false;
+		}
+		Node node = new Node(switchPort, switchNode(switchPort.getSwitchDPID()));
+		ports.put(switchPort, node);
+		link(node, state);
+		record(node, null, state);
+		return true;
+	}
+
+	public synchronized void addAll(Collection<SwitchPort> switchPorts, State state) {
+		for(SwitchPort switchPort : switchPorts) {
+			add(switchPort, state);
+		}
+	}
+
+	/**
+	 * @param switchPort
+	 * @return previous state, null if the port was not in the table
+	 */
+	public synchronized State remove(SwitchPort switchPort) {
+		Node node = ports.remove(switchPort);
+		if(node == null) {
+			return null;
+		}
+		State state = node.state;
+		unlink(node);
+		record(node, state, null);
+		return state;
+	}
+
+	/**
+	 * Move a port to a state. Entering OBSERVE starts a new observation.
+	 * @param switchPort
+	 * @param state
+	 * @return false if the port is not in the table or already in the state
+	 */
+	public synchronized boolean setState(SwitchPort switchPort, State state) {
+		Node node = ports.get(switchPort);
+		if(node == null || node.state == state) {
+			return false;
+		}
+		moveTo(node, state);
+		return true;
+	}
+
+	/**
+	 * @param switchPort
+	 * @return null if the port is not in the table
+	 */
+	public synchronized State getState(SwitchPort switchPort) {
+		Node node = ports.get(switchPort);
+		return node == null ? null : node.state;
+	}
+
+	public synchronized boolean isInState(SwitchPort switchPort, State state) {
+		Node node = ports.get(switchPort);
+		return node != null && node.state == state;
+	}
+
+	/**
+	 * @param switchPort
+	 * @return normal rounds seen since the port entered OBSERVE
+	 */
+	public synchronized int getObserveCount(SwitchPort switchPort) {
+		Node node = ports.get(switchPort);
+		return node == null ? 0 : node.observeCount;
+	}
+
+	public synchronized int incrementObserveCount(SwitchPort switchPort) {
+		Node node = ports.get(switchPort);
+		return node == null ? 0 : ++node.observeCount;
+	}
+
+	public synchronized int size(State state) {
+		return counts[state.ordinal()];
+	}
+
+	/**
+	 * @param state
+	 * @return ports in the state, grouped by switch
+	 */
+	public synchronized List<SwitchPort> getPorts(State state) {
+		List<SwitchPort> result = new ArrayList<>(counts[state.ordinal()]);
+		for(SwitchNode sw : switches.values()) {
+			collect(sw, state, result);
+		}
+		return result;
+	}
+
+	public synchronized List<SwitchPort> getPorts(DatapathId dpid, State state) {
+		List<SwitchPort> result = new ArrayList<>();
+		SwitchNode sw = switches.get(dpid);
+		if(sw != null) {
+			collect(sw, state, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param mode
+	 * @return ports in any state of the switches using the mode
+	 */
+	public synchronized List<SwitchPort> getPorts(Mode mode) {
+		List<SwitchPort> result = new ArrayList<>();
+		for(SwitchNode sw : switches.values()) {
+			if(sw.mode == mode) {
+				for(State state : STATES) {
+					collect(sw, state, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	public synchronized void setSwitchMode(DatapathId dpid, Mode mode) {
+		SwitchNode sw = switchNode(dpid);
+		if(sw.mode == mode) {
+			return;
+		}
+		if(sw.mode == Mode.DYNAMIC) {
+			leaveRing(sw);
+		}
+		else if(mode == Mode.DYNAMIC) {
+			joinRing(sw);
+		}
+		sw.mode = mode;
+	}
+
+	public synchronized Mode getSwitchMode(DatapathId dpid) {
+		SwitchNode sw = switches.get(dpid);
+		return sw == null ? Mode.DYNAMIC : sw.mode;
+	}
+
+	public synchronized int getDynamicSwitchCount() {
+		return dynamicSwitches;
+	}
+
+	/**
+	 * Pick normal ports to observe, one per dynamic switch in round-robin
+	 * order, and move them to OBSERVE. Every dynamic switch is visited at
+	 * most once per call.
+	 * @param max maximum number of ports to pick
+	 * @param skip ports that are never picked, may be null
+	 * @return picked ports
+	 */
+	public synchronized List<SwitchPort> pollNormal(int max, Set<SwitchPort> skip) {
+		List<SwitchPort> picked = new ArrayList<>();
+		int visits = dynamicSwitches;
+		while(picked.size() < max && visits-- > 0) {
+			SwitchNode sw = cursor;
+			cursor = sw.nextDynamic;
+			Node head = sw.heads[State.NORMAL.ordinal()];
+			for(Node node = head.next; node != head; node = node.next) {
+				if(skip == null || !skip.contains(node.switchPort)) {
+					moveTo(node, State.OBSERVE);
+					picked.add(node.switchPort);
+					break;
+				}
+			}
+		}
+		return picked;
+	}
+
+	/**
+	 * @param switchPort
+	 * @return last transitions of the port, oldest first
+	 */
+	public synchronized List<Transition> getHistory(SwitchPort switchPort) {
+		List<Transition> result = new ArrayList<>();
+		Node node = ports.get(switchPort);
+		if(node == null || node.history == null) {
+			return result;
+		}
+		int n = Math.min(node.historyCount, HISTORY_SIZE);
+		for(int i = node.historyCount - n; i < node.historyCount; i++) {
+			long packed = node.history[i % HISTORY_SIZE];
+			result.add(new Transition(packed >>> 4, decode((int)(packed >>> 2) & 3), decode((int)packed & 3)));
+		}
+		return result;
+	}
+
+	private SwitchNode switchNode(DatapathId dpid) {
+		SwitchNode sw = switches.get(dpid);
+		if(sw == null) {
+			sw = new SwitchNode();
+			switches.put(dpid, sw);
+			joinRing(sw);
+		}
+		return sw;
+	}
+
+	private void joinRing(SwitchNode sw) {
+		if(cursor == null) {
+			sw.prevDynamic = sw;
+			sw.nextDynamic = sw;
+			cursor = sw;
+		}
+		else {
+			// 插在游标之前，即本轮最后一个被访问
+			sw.prevDynamic = cursor.prevDynamic;
+			sw.nextDynamic = cursor;
+			cursor.prevDynamic.nextDynamic = sw;
+			cursor.prevDynamic = sw;
+		}
+		dynamicSwitches++;
+	}
+
+	private void leaveRing(SwitchNode sw) {
+		if(sw.nextDynamic == sw) {
+			cursor = null;
+		}
+		else {
+			sw.prevDynamic.nextDynamic = sw.nextDynamic;
+			sw.nextDynamic.prevDynamic = sw.prevDynamic;
+			if(cursor == sw) {
+				cursor = sw.nextDynamic;
+			}
+		}
+		sw.prevDynamic = null;
+		sw.nextDynamic = null;
+		dynamicSwitches--;
+	}
+
+	private void moveTo(Node node, State state) {
+		State from = node.state;
+		unlink(node);
+		link(node, state);
+		record(node, from, state);
+	}
+
+	private void link(Node node, State state) {
+		Node head = node.owner.heads[state.ordinal()];
+		node.prev = head.prev;
+		node.next = head;
+		head.prev.next = node;
+		head.prev = node;
+		node.state = state;
+		node.observeCount = 0;
+		node.owner.counts[state.ordinal()]++;
+		counts[state.ordinal()]++;
+	}
+
+	private void unlink(Node node) {
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+		node.owner.counts[node.state.ordinal()]--;
+		counts[node.state.ordinal()]--;
+	}
+
+	private static void collect(SwitchNode sw, State state, List<SwitchPort> result) {
+		Node head = sw.heads[state.ordinal()];
+		for(Node node = head.next; node != head; node = node.next) {
+			result.add(node.switchPort);
+		}
+	}
+
+	private static void record(Node node, State from, State to) {
+		if(node.history == null) {
+			node.history = new long[HISTORY_SIZE];
+		}
+		node.history[node.historyCount % HISTORY_SIZE] = (System.currentTimeMillis() << 4)
+				| (encode(from) << 2) | encode(to);
+		node.historyCount++;
+	}
+
+	private static long encode(State state) {
+		return state == null ? ABSENT : state.ordinal();
+	}
+
+	private static State decode(int code) {
+		return code == ABSENT ? null : STATES[code];
+	}
+}
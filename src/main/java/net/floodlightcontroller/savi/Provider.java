@@ -1,9 +1,13 @@
 package net.floodlightcontroller.savi;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -13,12 +17,16 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFFlowDelete;
 import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
 import org.projectfloodlight.openflow.protocol.OFFlowModify;
 import org.projectfloodlight.openflow.protocol.OFFlowModifyStrict;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFMeterMod;
 import org.projectfloodlight.openflow.protocol.OFPacketIn;
@@ -35,21 +43,28 @@ import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.protocol.meterband.OFMeterBand;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPVersion;
 import org.projectfloodlight.openflow.types.IPv4Address;
 import org.projectfloodlight.openflow.types.IPv6Address;
 import org.projectfloodlight.openflow.types.MacAddress;
 import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFGroup;
 import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.TableId;
 import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.PortChangeType;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
@@ -58,6 +73,7 @@ import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.util.AppCookie;
 import net.floodlightcontroller.core.util.SingletonTask;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.devicemanager.IDevice;
 import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.devicemanager.SwitchPort;
@@ -67,6 +83,7 @@ import net.floodlightcontroller.packet.ARP;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.IPv4;
 import net.floodlightcontroller.packet.IPv6;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.IRoutingDecision;
 import net.floodlightcontroller.routing.IRoutingDecision.RoutingAction;
@@ -82,9 +99,11 @@ import net.floodlightcontroller.savi.action.PacketOutAction;
 import net.floodlightcontroller.savi.action.UnbindIPv4Action;
 import net.floodlightcontroller.savi.action.UnbindIPv6Action;
 import net.floodlightcontroller.savi.binding.Binding;
+import net.floodlightcontroller.savi.binding.BindingJournal;
 import net.floodlightcontroller.savi.binding.BindingManager;
 import net.floodlightcontroller.savi.flow.FlowAction;
 import net.floodlightcontroller.savi.flow.FlowAddAction;
+import net.floodlightcontroller.savi.flow.FlowModBatcher;
 import net.floodlightcontroller.savi.flow.FlowModAction;
 import net.floodlightcontroller.savi.flow.FlowRemoveAction;
 import net.floodlightcontroller.savi.rest.SAVIRestRoute;
@@ -92,6 +111,7 @@ import net.floodlightcontroller.savi.service.SAVIProviderService;
 import net.floodlightcontroller.savi.service.SAVIService;
 import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.topology.EdgePortTable;
 import net.floodlightcontroller.topology.ITopologyListener;
 import net.floodlightcontroller.topology.ITopologyService;
 
@@ -116,6 +136,8 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	
 	static final Logger log = LoggerFactory.getLogger(SAVIProviderService.class);
 	
+	static final String PACKAGE = Provider.class.getPackage().getName();
+	
 	
 	protected boolean ENABLE_METER_TABLE = false;
 	
@@ -130,6 +152,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	protected IRestApiService restApiService;
 	protected IThreadPoolService threadPoolService;
 	protected ILinkDiscoveryService linkDiscoveryService;
+	protected IDebugCounterService debugCounterService;
 	
 	protected SingletonTask updateTask;
 	protected SingletonTask updateEntry;
@@ -139,6 +162,37 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	 */
 	protected List<SAVIService> saviServices;
 	protected BindingManager manager;
+	protected FlowModBatcher flowModBatcher;
+	
+	/**
+	 * Sharded PACKET_IN processing, null when SAVI runs inline on the I/O threads
+	 */
+	protected PacketInDispatcher packetInDispatcher;
+	protected Map<OverloadSource, Long> overloadDropRules = new ConcurrentHashMap<>();
+	protected static final int OVERLOAD_DROP_PRIORITY = 1000;
+	protected static final int OVERLOAD_DROP_TIMEOUT = 5;
+	
+	/**
+	 * Binding journal for warm restart, null when persistence is disabled
+	 */
+	protected BindingJournal bindingJournal;
+	protected SingletonTask journalTask;
+	//启动时从日志恢复的绑定，服务注册时交还给服务
+	protected List<Binding<?>> restoredBindings = new ArrayList<>();
+	//交换机重连后需要与table 0核对的绑定
+	protected Map<DatapathId, List<Binding<?>>> pendingReconcile = new ConcurrentHashMap<>();
+	protected static final int JOURNAL_SYNC_INTERVAL = 1; // 1s
+	protected static final int JOURNAL_COMPACT_MIN_RECORDS = 4096;
+	
+	/**
+	 * Per-thread flyweight used to classify PACKET_IN payloads without decoding them
+	 */
+	protected static final ThreadLocal<PacketView> packetView = new ThreadLocal<PacketView>() {
+		@Override
+		protected PacketView initialValue() {
+			return new PacketView();
+		}
+	};
 	
 	/**
 	 * rules 
@@ -172,14 +226,8 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	private /*public static*/ Map<SwitchPort, Integer> rank;
 	//<sw,端口对应的主机编号>
 	private /*public static*/ Map<SwitchPort, Integer> hostWithPort	=new ConcurrentHashMap<>();
-	//分别表示正常端口队列、异常端口队列
-	private /*public static*/ Queue<SwitchPort> normalPorts = new ConcurrentLinkedQueue<>();
-	private /*public static*/ Queue<SwitchPort> abnormalPorts = new ConcurrentLinkedQueue<>();
-	private /*public static*/ Map<SwitchPort, Integer> observePorts = new ConcurrentHashMap<>();
-	//静态交换机的主机
-	private Queue<SwitchPort> staticPorts = new ConcurrentLinkedQueue<>();
-	//默认交换机的主机
-	private Queue<SwitchPort> nonePorts = new ConcurrentLinkedQueue<>();
+	//主机端口的正常、观察、异常状态，以及各交换机的验证方式
+	private final PortStateTable portStates = new PortStateTable();
 	//手动下发流表一直存在
 	private Set<SwitchPort> pushFlowToSwitchPorts=new HashSet<>(); 
 	
@@ -266,8 +314,16 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		if(topologyService.isEdge(sw.getId(), inPort)) {
 		//	System.out.println(sw.getId());
 		// SAVI service process
+			PacketView view = packetView.get().wrap(pi.getData());
 			for(SAVIService s : saviServices) {
-				if (s.match(eth)) {
+				if (s.match(view)) {
+					if(packetInDispatcher != null) {
+						//交给交换机所在的分片线程处理，转发由分片线程完成
+						dispatchPacketIn(switchPort, eth);
+						decision.setRoutingAction(RoutingAction.NONE);
+						decision.addToContext(cntx);
+						return Command.CONTINUE;
+					}
 				//	log.info(s.toString());
 					routingAction = s.process(switchPort, eth);
 					break;
@@ -296,6 +352,13 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	 */
 	@Override
 	public void addSAVIService(SAVIService service) {
+		if(!restoredBindings.isEmpty()) {
+			List<Action> actions = new ArrayList<>(restoredBindings.size());
+			for(Binding<?> binding : restoredBindings) {
+				actions.add(ActionFactory.getRestoreBindingAction(binding));
+			}
+			service.pushActins(actions);
+		}
 		saviServices.add(service);
 		serviceRules.addAll(service.getMatches());
 	}
@@ -306,6 +369,15 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	 */
 	@Override
 	public boolean pushActions(List<Action> actions) {
+		flowModBatcher.begin();
+		try {
+			return doPushActions(actions);
+		} finally {
+			flowModBatcher.commit();
+		}
+	}
+	
+	protected boolean doPushActions(List<Action> actions) {
 		for(Action action:actions){
 			switch(action.getType()){
 			case FLOOD:
@@ -338,7 +410,30 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		return true;
 	}
 	
+	@Override
 	public boolean pushFlowActions(List<FlowAction> actions){
+		pushFlowActionsBatch(actions);
+		return true;
+	}
+	
+	/**
+	 * Coalesce flow actions per switch and write each switch's batch at once.
+	 * @param actions
+	 * @return future completing when every switch acknowledged its batch
+	 */
+	@Override
+	public ListenableFuture<List<OFBarrierReply>> pushFlowActionsBatch(List<FlowAction> actions){
+		ListenableFuture<List<OFBarrierReply>> ack;
+		flowModBatcher.begin();
+		try {
+			doPushFlowActions(actions);
+		} finally {
+			ack = flowModBatcher.commit();
+		}
+		return ack;
+	}
+	
+	protected void doPushFlowActions(List<FlowAction> actions){
 		for(FlowAction action:actions){
 			switch(action.getType()){
 			case ADD:
@@ -354,17 +449,20 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 				break;
 			}
 		}
-		return true;
 	}
 	
 		
 	//更新定时流表项方法
 	public void updateTimingFlowEntry(int hardTimeout, Set<DatapathId> staticSwIds) {
-		
-		for(DatapathId dpid:portsInBind.keySet()) {
-			if(staticSwIds==null||!staticSwIds.contains(dpid)) {
-				updateTimingFlowEntry(hardTimeout, dpid);
+		flowModBatcher.begin();
+		try {
+			for(DatapathId dpid:portsInBind.keySet()) {
+				if(staticSwIds==null||!staticSwIds.contains(dpid)) {
+					updateTimingFlowEntry(hardTimeout, dpid);
+				}
 			}
+		} finally {
+			flowModBatcher.commit();
 		}
 	}
 	
@@ -387,8 +485,13 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	//手动转为静态savi
 	@Override
 	public void convertTable(boolean isTrue) {
-		for(DatapathId dpid : portsInBind.keySet()) {
-			convertTable(dpid,isTrue);
+		flowModBatcher.begin();
+		try {
+			for(DatapathId dpid : portsInBind.keySet()) {
+				convertTable(dpid,isTrue);
+			}
+		} finally {
+			flowModBatcher.commit();
 		}
 		alreadyInit=!isTrue;
 	}
@@ -400,23 +503,12 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			return ;
 		}
 		noneSwId.add(dpid);
+		portStates.setSwitchMode(dpid, PortStateTable.Mode.NONE);
 		Match.Builder mb=OFFactories.getFactory(OFVersion.OF_13).buildMatch();
 		List<OFInstruction> instructions=new ArrayList<>();
 		instructions.add(OFFactories.getFactory(OFVersion.OF_13).instructions().gotoTable(FLOW_TABLE_ID));
-		List<SwitchPort> tmp = new ArrayList<>(rank.keySet());
-		for(int i = 0; i < tmp.size(); i++) {
-			if(tmp.get(i).getSwitchDPID().equals(dpid)) {
-				nonePorts.offer(tmp.get(i));
-			}
-		}
 		if(staticSwId.contains(dpid)){
 			staticSwId.remove(dpid);
-			int len = staticPorts.size();
-			for(int i = 0; i < len; i++) {
-				if(staticPorts.element().getSwitchDPID().equals(dpid)) {
-					staticPorts.poll();
-				}
-			}
 		}else{
 			doFlowRemove(dpid, STATIC_TABLE_ID, mb.build(), STATIC_FITST_PRIORITY);
 		}
@@ -425,8 +517,13 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	}
 	
 	public void convertToNone() {
-		for(DatapathId dpid : portsInBind.keySet()) {
-			convertToNone(dpid);
+		flowModBatcher.begin();
+		try {
+			for(DatapathId dpid : portsInBind.keySet()) {
+				convertToNone(dpid);
+			}
+		} finally {
+			flowModBatcher.commit();
 		}
 		alreadyInit=false;
 	}
@@ -445,26 +542,10 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 				return ;
 			}
 			staticSwId.add(dpid);
-			IOFSwitch sw=switchService.getSwitch(dpid);
-		//	System.out.println("交换机:" + sw + "端口：" + sw.getEnabledPortNumbers());
-			List<SwitchPort> tmp=new ArrayList<>(rank.keySet());
-			for(int i = 0; i < tmp.size(); i++) {
-				if(tmp.get(i).getSwitchDPID().equals(dpid)) {
-					staticPorts.offer(tmp.get(i));
-			//		System.out.println("端口：" + hostWithPort.get(tmp.get(i)));
-				}
-			}
+			portStates.setSwitchMode(dpid, PortStateTable.Mode.STATIC);
 			System.out.println("交换机：" + dpid);
 			if(noneSwId.contains(dpid)) {
 				noneSwId.remove(dpid);
-				int len = nonePorts.size();
-				for(int i = 0; i < len; i++) {
-					if(nonePorts.element().getSwitchDPID().equals(dpid)) {
-						System.out.println("端口：" + nonePorts.peek());
-						nonePorts.poll();
-					}
-				}
-				
 			}
 			doFlowRemove(dpid, STATIC_TABLE_ID, mb.build(), STATIC_FITST_PRIORITY);
 			log.warn("交换机{"+dpid+"}转为静态流表");
@@ -478,22 +559,11 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			instructions.add(OFFactories.getFactory(OFVersion.OF_13).instructions().gotoTable(FLOW_TABLE_ID));
 			if(staticSwId.contains(dpid)) {
 				staticSwId.remove(dpid);
-				int len = staticPorts.size();
-				for(int i = 0; i < len; i++) {
-					if(staticPorts.element().getSwitchDPID().equals(dpid)) {
-						staticPorts.poll();
-					}
-				}
 			}else{
 				doFlowRemove(dpid, STATIC_TABLE_ID, mb.build(), STATIC_FITST_PRIORITY);
 				noneSwId.remove(dpid);
-				int len = nonePorts.size();
-				for(int i = 0; i < len; i++) {
-					if(nonePorts.element().getSwitchDPID().equals(dpid)) {
-						nonePorts.poll();
-					}
-				}
 			}
+			portStates.setSwitchMode(dpid, PortStateTable.Mode.DYNAMIC);
 			doFlowAdd(dpid, STATIC_TABLE_ID, mb.build(), null, instructions, STATIC_FITST_PRIORITY);
 			alreadyInit=true;
 			log.warn("交换机{"+dpid+"}转为动态流表");
@@ -501,8 +571,137 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	}
 	
 	/**
-	 * 
+	 * Queue a SAVI control packet on its shard, applying the overload policy if the shard is full.
+	 * @param switchPort
+	 * @param eth
+	 */
+	protected void dispatchPacketIn(SwitchPort switchPort, Ethernet eth) {
+		if(packetInDispatcher.dispatch(switchPort, eth)) {
+			return;
+		}
+		if(packetInDispatcher.getOverloadPolicy() == PacketInDispatcher.OverloadPolicy.DROP_RULE) {
+			installOverloadDropRule(switchPort, eth.getSourceMACAddress());
+		}
+	}
+	
+	/**
+	 * Runs on a shard thread: the SAVI service chain followed by the forwarding
+	 * the Forwarding module would have done for the packet.
+	 * @param switchPort
+	 * @param eth
+	 */
+	protected void processShardedPacketIn(SwitchPort switchPort, Ethernet eth) {
+		RoutingAction routingAction = null;
+		for(SAVIService s : saviServices) {
+			if (s.match(eth)) {
+				routingAction = s.process(switchPort, eth);
+				break;
+			}
+		}
+		
+		if(routingAction == null) {
+			routingAction = process(switchPort, eth);
+		}
+		
+		if(routingAction == null) {
+			return;
+		}
+		
+		switch(routingAction) {
+		case FORWARD:
+		case FORWARD_OR_FLOOD:
+		case MULTICAST:
+			SwitchPort dst = eth.isBroadcast() || eth.isMulticast() ? null : manager.getSwitchPort(eth.getDestinationMACAddress());
+			if(dst != null) {
+				doPacketOut(dst, eth.serialize());
+			}
+			else {
+				doFlood(switchPort, eth.serialize());
+			}
+			break;
+		case NONE:
+		case DROP:
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Drop a source that overloads its shard at the switch for a few seconds.
+	 * @param switchPort
+	 * @param macAddress
 	 */
+	protected void installOverloadDropRule(SwitchPort switchPort, MacAddress macAddress) {
+		long now = System.currentTimeMillis();
+		OverloadSource source = new OverloadSource(switchPort, macAddress);
+		Long deadline = overloadDropRules.get(source);
+		if(deadline != null && deadline > now) {
+			return;
+		}
+		// several I/O threads may see the same source overload, only one installs the rule
+		Long next = now + OVERLOAD_DROP_TIMEOUT * 1000L;
+		if(deadline == null ? overloadDropRules.putIfAbsent(source, next) != null
+				: !overloadDropRules.replace(source, deadline, next)) {
+			return;
+		}
+		
+		Match.Builder mb = OFFactories.getFactory(OFVersion.OF_13).buildMatch();
+		mb.setExact(MatchField.IN_PORT, switchPort.getPort());
+		mb.setExact(MatchField.ETH_SRC, macAddress);
+		doFlowAdd(switchPort.getSwitchDPID(), STATIC_TABLE_ID, mb.build(), new ArrayList<OFAction>(), null,
+				OVERLOAD_DROP_PRIORITY, OVERLOAD_DROP_TIMEOUT, 0);
+		log.warn("PACKET_IN shard overloaded, dropping {} on {} for {}s", new Object[] { macAddress, switchPort, OVERLOAD_DROP_TIMEOUT });
+	}
+	
+	/**
+	 * Forget the overload drop rules whose hard timeout has passed, the switch
+	 * already removed them.
+	 */
+	protected void pruneOverloadDropRules() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<OverloadSource, Long>> it = overloadDropRules.entrySet().iterator();
+		while(it.hasNext()) {
+			if(it.next().getValue() <= now) {
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * The match of an overload drop rule: the source MAC address on its ingress port.
+	 */
+	protected static final class OverloadSource {
+		private final SwitchPort switchPort;
+		private final MacAddress macAddress;
+		
+		OverloadSource(SwitchPort switchPort, MacAddress macAddress) {
+			this.switchPort = switchPort;
+			this.macAddress = macAddress;
+		}
+		
+		@Override
+		public int hashCode() {
+			return 31 * switchPort.hashCode() + macAddress.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(!(obj instanceof OverloadSource)) {
+				return false;
+			}
+			OverloadSource other = (OverloadSource) obj;
+			return switchPort.equals(other.switchPort) && macAddress.equals(other.macAddress);
+		}
+		
+		@Override
+		public String toString() {
+			return macAddress + "@" + switchPort;
+		}
+	}
+	
 	@Override
 	public String getName() {
 		return "savi";
@@ -580,6 +779,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		dependencies.add(IRestApiService.class);
 		dependencies.add(IThreadPoolService.class);
 		dependencies.add(ILinkDiscoveryService.class);
+		dependencies.add(IDebugCounterService.class);
 		return dependencies;
 	}
 
@@ -595,11 +795,13 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		restApiService 		 = context.getServiceImpl(IRestApiService.class);
 		threadPoolService	 = context.getServiceImpl(IThreadPoolService.class);
 		linkDiscoveryService = context.getServiceImpl(ILinkDiscoveryService.class);
+		debugCounterService  = context.getServiceImpl(IDebugCounterService.class);
 		
 		updateQueue = new ConcurrentLinkedQueue<>();
 		
 		saviServices 		= new ArrayList<>();
 		manager 			= new BindingManager();
+		flowModBatcher		= new FlowModBatcher(switchService, debugCounterService, PACKAGE);
 		
 		serviceRules		= new ArrayList<>();
 		protocolRules		= new ArrayList<>();
@@ -643,6 +845,40 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			ENABLE_METER_TABLE = false;
 		}
 		
+		int shards = 0;
+		int queueSize = 1024;
+		PacketInDispatcher.OverloadPolicy overloadPolicy = PacketInDispatcher.OverloadPolicy.DROP;
+		try {
+			if(configParameters.containsKey("packet-in-shards")) {
+				shards = Integer.parseInt(configParameters.get("packet-in-shards").trim());
+			}
+			if(configParameters.containsKey("packet-in-queue-size")) {
+				queueSize = Integer.parseInt(configParameters.get("packet-in-queue-size").trim());
+			}
+			if(configParameters.containsKey("packet-in-overload-policy")) {
+				overloadPolicy = PacketInDispatcher.OverloadPolicy.valueOf(
+						configParameters.get("packet-in-overload-policy").trim().toUpperCase());
+			}
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException("Invalid PACKET_IN shard configuration: " + e.getMessage());
+		}
+		String journalDir = configParameters.get("binding-journal-dir");
+		if(journalDir != null && !journalDir.trim().isEmpty()) {
+			bindingJournal = new BindingJournal(new File(journalDir.trim()));
+		}
+		
+		if(shards > 0) {
+			packetInDispatcher = new PacketInDispatcher(shards, queueSize, overloadPolicy,
+					new PacketInDispatcher.PacketHandler() {
+						@Override
+						public void handlePacket(SwitchPort switchPort, Ethernet eth) {
+							processShardedPacketIn(switchPort, eth);
+						}
+					}, debugCounterService, PACKAGE);
+			log.info("SAVI PACKET_IN processing on {} shards, queue size {}, overload policy {}",
+					new Object[] { shards, queueSize, overloadPolicy });
+		}
+		
 	} 
 
 	/**
@@ -650,12 +886,21 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	 */
 	@Override
 	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
+		//先恢复绑定，再开始接收交换机事件
+		if(bindingJournal != null) {
+			restoreBindings();
+		}
+		
 		floodlightProvider.addOFMessageListener(OFType.PACKET_IN, this);
 		floodlightProvider.addOFMessageListener(OFType.ERROR, this);
 		switchService.addOFSwitchListener(this);
 		restApiService.addRestletRoutable(new SAVIRestRoute());
 		linkDiscoveryService.addListener(this);
 		
+		if(packetInDispatcher != null) {
+			packetInDispatcher.start();
+		}
+		
 		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
 		
 		updateTask = new SingletonTask(ses, new Runnable() {
@@ -674,14 +919,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 						}
 						break;
 					case PORT_DOWN:
-						SwitchPort sp=new SwitchPort(update.getSrc(), update.getSrcPort());
-						if(normalPorts.contains(sp)) {
-							normalPorts.remove(sp);
-						}else if(observePorts.containsKey(sp)) {
-							observePorts.remove(sp);
-						}else if(abnormalPorts.contains(sp)) {
-							abnormalPorts.remove(sp);
-						}
+						portStates.remove(new SwitchPort(update.getSrc(), update.getSrcPort()));
 						break;
 					default:
 					}
@@ -704,6 +942,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 					}
 					*/
 				}
+				pruneOverloadDropRules();
 				updateTask.reschedule(1000, TimeUnit.MILLISECONDS);
 			}
 		});
@@ -720,9 +959,72 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			}
 		});
 		updateEntry.reschedule(updateTime, TimeUnit.SECONDS);
+		
+		if(bindingJournal != null) {
+			journalTask = new SingletonTask(ses, new Runnable() {
+				@Override
+				public void run() {
+					syncBindingJournal();
+					journalTask.reschedule(JOURNAL_SYNC_INTERVAL, TimeUnit.SECONDS);
+				}
+			});
+			journalTask.reschedule(JOURNAL_SYNC_INTERVAL, TimeUnit.SECONDS);
+		}
 				
 	}
 	
+	/**
+	 * Rebuild the binding manager and the IPv6 port state from the binding
+	 * journal. Flow entries are not touched here, each switch is reconciled
+	 * when it connects.
+	 */
+	protected void restoreBindings() {
+		List<Binding<?>> bindings;
+		try {
+			bindings = bindingJournal.load();
+		} catch (IOException e) {
+			log.error("Failure loading the binding journal, starting without it", e);
+			bindingJournal = null;
+			return;
+		}
+		for(Binding<?> binding : bindings) {
+			manager.addBinding(binding);
+			DatapathId dpid = binding.getSwitchPort().getSwitchDPID();
+			List<Binding<?>> pending = pendingReconcile.get(dpid);
+			if(pending == null) {
+				pending = new ArrayList<>();
+				pendingReconcile.put(dpid, pending);
+			}
+			pending.add(binding);
+			
+			if(binding.getAddress().getIpVersion() == IPVersion.IPv6 && !securityPort.contains(binding.getSwitchPort())) {
+				Integer count = portsInBind.get(dpid);
+				portsInBind.put(dpid, count == null ? 1 : count + 1);
+				rank.put(binding.getSwitchPort(), BINDING_LAYER_PRIORITY);
+				hostWithPort.put(binding.getSwitchPort(), (int)(binding.getMacAddress().getLong()));
+			}
+		}
+		restoredBindings = bindings;
+	}
+	
+	/**
+	 * Flush the binding journal and compact it once it holds far more records than live bindings.
+	 */
+	protected void syncBindingJournal() {
+		BindingJournal journal = bindingJournal;
+		if(journal == null) {
+			return;
+		}
+		journal.force();
+		if(journal.getRecordCount() > Math.max(JOURNAL_COMPACT_MIN_RECORDS, 2L * manager.getBindingCount())) {
+			try {
+				journal.compact(manager);
+			} catch (IOException e) {
+				log.error("Failure compacting the binding journal", e);
+			}
+		}
+	}
+	
 	/**
 	 * Listen switch add message.
 	 */
@@ -734,17 +1036,118 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 //		log.info("新的交换机"+switchId+"加入网络");
 		
 		//table-miss 静态流表(默认到转发表，后面看情况修改)
-		Match.Builder mb=OFFactories.getFactory(OFVersion.OF_13).buildMatch();
-		List<OFInstruction> instructions = new ArrayList<>();
-		instructions.add(OFFactories.getFactory(OFVersion.OF_13).instructions().gotoTable(FLOW_TABLE_ID));
-		//注释
-		doFlowAdd(switchId, STATIC_TABLE_ID, mb.build(), null, instructions, 0);
-		//转发表通配规则
-		List<OFAction> actions = new ArrayList<>();
-		actions.add(OFFactories.getFactory(OFVersion.OF_13).actions().output(OFPort.CONTROLLER, Integer.MAX_VALUE));
-		doFlowAdd(switchId, FLOW_TABLE_ID, mb.build(), actions, null, 0);
+		flowModBatcher.begin();
+		try {
+			Match.Builder mb=OFFactories.getFactory(OFVersion.OF_13).buildMatch();
+			List<OFInstruction> instructions = new ArrayList<>();
+			instructions.add(OFFactories.getFactory(OFVersion.OF_13).instructions().gotoTable(FLOW_TABLE_ID));
+			//注释
+			doFlowAdd(switchId, STATIC_TABLE_ID, mb.build(), null, instructions, 0);
+			//转发表通配规则
+			List<OFAction> actions = new ArrayList<>();
+			actions.add(OFFactories.getFactory(OFVersion.OF_13).actions().output(OFPort.CONTROLLER, Integer.MAX_VALUE));
+			doFlowAdd(switchId, FLOW_TABLE_ID, mb.build(), actions, null, 0);
+		} finally {
+			flowModBatcher.commit();
+		}
+		
+		reconcileBindings(switchId);
+	}
 	
+	/**
+	 * Compare the recovered bindings of a reconnected switch with its table 0
+	 * and install only the binding entries the switch lost. If the table
+	 * cannot be read every binding entry is installed again.
+	 * @param switchId
+	 */
+	protected void reconcileBindings(final DatapathId switchId) {
+		final List<Binding<?>> bindings = pendingReconcile.remove(switchId);
+		if(bindings == null) {
+			return;
+		}
+		IOFSwitch sw = switchService.getSwitch(switchId);
+		if(sw == null) {
+			pendingReconcile.put(switchId, bindings);
+			return;
+		}
+		
+		OFFlowStatsRequest request = sw.getOFFactory().buildFlowStatsRequest()
+				.setTableId(STATIC_TABLE_ID)
+				.setMatch(sw.getOFFactory().buildMatch().build())
+				.setOutPort(OFPort.ANY)
+				.setOutGroup(OFGroup.ANY)
+				.setCookie(cookie)
+				.setCookieMask(U64.NO_MASK)
+				.build();
+		ListenableFuture<List<OFFlowStatsReply>> future;
+		try {
+			future = sw.writeStatsRequest(request, LogicalOFMessageCategory.STATS);
+		} catch (Exception e) {
+			log.warn("Cannot read table 0 of switch {}, reinstalling its bindings", switchId);
+			installRestoredBindings(switchId, bindings, new HashSet<String>());
+			return;
+		}
 		
+		Futures.addCallback(future, new FutureCallback<List<OFFlowStatsReply>>() {
+			@Override
+			public void onSuccess(List<OFFlowStatsReply> replies) {
+				Set<String> present = new HashSet<>();
+				for(OFFlowStatsReply reply : replies) {
+					for(OFFlowStatsEntry entry : reply.getEntries()) {
+						if(entry.getPriority() == BINDING_LAYER_PRIORITY) {
+							present.add(bindingKey(entry.getMatch()));
+						}
+					}
+				}
+				installRestoredBindings(switchId, bindings, present);
+			}
+			
+			@Override
+			public void onFailure(Throwable t) {
+				log.warn("Cannot read table 0 of switch {}, reinstalling its bindings. {}", switchId, t.getMessage());
+				installRestoredBindings(switchId, bindings, new HashSet<String>());
+			}
+		});
+	}
+	
+	protected void installRestoredBindings(DatapathId switchId, List<Binding<?>> bindings, Set<String> present) {
+		int installed = 0;
+		boolean ipv6 = false;
+		flowModBatcher.begin();
+		try {
+			for(Binding<?> binding : bindings) {
+				// 等待期间被解绑或替换的绑定不再下发
+				if(manager.getBinding(binding.getAddress()) != binding || securityPort.contains(binding.getSwitchPort())) {
+					continue;
+				}
+				ipv6 |= binding.getAddress().getIpVersion() == IPVersion.IPv6;
+				if(!present.contains(bindingKey(bindingMatch(binding)))) {
+					installBindingFlow(binding);
+					installed++;
+				}
+			}
+			//switchAdded已经把table-miss改回转发表，需要重新下发
+			if(ipv6) {
+				addSpecialFlowEntry(switchId);
+			}
+		} finally {
+			flowModBatcher.commit();
+		}
+		log.info("Reconciled {} bindings on switch {}, {} entries reinstalled",
+				new Object[] { bindings.size(), switchId, installed });
+	}
+	
+	/**
+	 * Key of a binding entry in table 0: in port, source MAC and source address.
+	 * @param match
+	 * @return
+	 */
+	protected static String bindingKey(Match match) {
+		Object address = match.get(MatchField.IPV4_SRC);
+		if(address == null) {
+			address = match.get(MatchField.IPV6_SRC);
+		}
+		return match.get(MatchField.IN_PORT) + "/" + match.get(MatchField.ETH_SRC) + "/" + address;
 	}
 	
 	private void addSpecialFlowEntry(DatapathId switchId) {	
@@ -818,6 +1221,10 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	@Override
 	public void switchRemoved(DatapathId switchId) {
 		manager.removeSwitch(switchId);
+		pendingReconcile.remove(switchId);
+		if(bindingJournal != null) {
+			bindingJournal.clearSwitch(switchId);
+		}
 		List<Action> actions = new ArrayList<>();
 		actions.add(ActionFactory.getClearSwitchBindingAction(switchId));
 		for(SAVIService s:saviServices){
@@ -857,7 +1264,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			//log.info("12");
 			IPv4 ipv4 = (IPv4)eth.getPayload();
 			IPv4Address address = ipv4.getSourceAddress();
-			if(manager.check(switchPort, macAddress, address)){
+			if(manager.checkIPv4(switchPort.getSwitchDPID(), switchPort.getPort(), macAddress.getLong(), address.getInt())){
 				//doFlood(switchPort, eth.serialize());
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
@@ -875,7 +1282,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			if(address.isUnspecified()){
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
-			else if(manager.check(switchPort, macAddress, address)){
+			else if(manager.checkIPv6(switchPort.getSwitchDPID(), switchPort.getPort(), macAddress.getLong(), address.getHi(), address.getLo())){
 				if(ipv6.getDestinationAddress().isBroadcast()
 						||ipv6.getDestinationAddress().isMulticast()){
 					return RoutingAction.MULTICAST;
@@ -894,7 +1301,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			ARP arp = (ARP)eth.getPayload();
 			IPv4Address address = arp.getSenderProtocolAddress();
 			//log.info("12344");
-			if(manager.check(switchPort, macAddress, address)){
+			if(manager.checkIPv4(switchPort.getSwitchDPID(), switchPort.getPort(), macAddress.getLong(), address.getInt())){
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
 			else if(address.isUnspecified()){
@@ -944,9 +1351,11 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		List<OFPort> ports = new ArrayList<>();
 		
 		IOFSwitch sw = switchService.getSwitch(inPort.getSwitchDPID());
+		// 整个泛洪使用同一拓扑的边缘端口
+		EdgePortTable edgePorts = topologyService.getEdgePortTable();
 		
 		for(OFPort port: sw.getEnabledPortNumbers()) {
-			if(!port.equals(inPort.getPort())&&topologyService.isEdge(sw.getId(), port)) {
+			if(!port.equals(inPort.getPort())&&edgePorts.isEdge(sw.getId(), port)) {
 				doPacketOut(new SwitchPort(inPort.getSwitchDPID(), port), data);
 			}
 		}
@@ -957,7 +1366,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 				ports.clear();
 				
 				for(OFPort port: sw.getEnabledPortNumbers()) {
-					if(topologyService.isEdge(sw.getId(), port)) {
+					if(edgePorts.isEdge(sw.getId(), port)) {
 						doPacketOut(new SwitchPort(switchId, port), data);
 					}
 				}
@@ -1001,7 +1410,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			   .setData(data)
 			   .setInPort(OFPort.CONTROLLER);
 			
-			sw.write(pob.build());
+			sw.write(pob.build(), LogicalOFMessageCategory.PACKET_OUT);
 			
 		} catch (NullPointerException e) {
 			
@@ -1031,7 +1440,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		   .setData(data)
 		   .setInPort(inPort);
 		
-		sw.write(pob.build());
+		sw.write(pob.build(), LogicalOFMessageCategory.PACKET_OUT);
 	}
 	
 	/**
@@ -1043,20 +1452,41 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		log.info("BIND "+binding.getAddress());
 		
 		manager.addBinding(binding);
+		if(bindingJournal != null) {
+			bindingJournal.bind(binding);
+		}
 		
 		if(securityPort.contains(binding.getSwitchPort())){
 			return;
 		}
 		
+		installBindingFlow(binding);
+	}
+	
+	/**
+	 * Match of the table 0 entry admitting the traffic of a binding.
+	 * @param binding
+	 * @return
+	 */
+	protected Match bindingMatch(Binding<?> binding) {
 		Match.Builder mb = OFFactories.getFactory(OFVersion.OF_13).buildMatch();
 		mb.setExact(MatchField.ETH_SRC, binding.getMacAddress());
-		mb.setExact(MatchField.ETH_TYPE, EthType.IPv4);
-		mb.setExact(MatchField.IPV4_SRC, (IPv4Address)binding.getAddress());
+		if(binding.getAddress().getIpVersion() == IPVersion.IPv4) {
+			mb.setExact(MatchField.ETH_TYPE, EthType.IPv4);
+			mb.setExact(MatchField.IPV4_SRC, (IPv4Address)binding.getAddress());
+		}
+		else {
+			mb.setExact(MatchField.ETH_TYPE, EthType.IPv6);
+			mb.setExact(MatchField.IPV6_SRC, (IPv6Address)binding.getAddress());
+		}
 		mb.setExact(MatchField.IN_PORT, binding.getSwitchPort().getPort());
-		
+		return mb.build();
+	}
+	
+	protected void installBindingFlow(Binding<?> binding) {
 		List<OFInstruction> instructions = new ArrayList<>();
 		instructions.add(OFFactories.getFactory(OFVersion.OF_13).instructions().gotoTable(FLOW_TABLE_ID));
-		doFlowAdd(binding.getSwitchPort().getSwitchDPID(), STATIC_TABLE_ID, mb.build(), null, instructions, BINDING_LAYER_PRIORITY);	
+		doFlowAdd(binding.getSwitchPort().getSwitchDPID(), STATIC_TABLE_ID, bindingMatch(binding), null, instructions, BINDING_LAYER_PRIORITY);
 	}
 	
 	/**
@@ -1068,6 +1498,9 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		log.info("BIND "+binding.getAddress().toString()+"  "+binding.getSwitchPort().getSwitchDPID());
 		
 		manager.addBinding(binding);
+		if(bindingJournal != null) {
+			bindingJournal.bind(binding);
+		}
 		
 		if(securityPort.contains(binding.getSwitchPort())){
 			return;
@@ -1081,16 +1514,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		}
 		
 		//下发静态流表
-		Match.Builder mb = OFFactories.getFactory(OFVersion.OF_13).buildMatch();
-		mb.setExact(MatchField.ETH_SRC, binding.getMacAddress());
-		mb.setExact(MatchField.ETH_TYPE, EthType.IPv6);
-		mb.setExact(MatchField.IPV6_SRC, (IPv6Address)binding.getAddress());
-		mb.setExact(MatchField.IN_PORT, binding.getSwitchPort().getPort());
-		
-		List<OFInstruction> instructions = new ArrayList<>();
-		instructions.add(OFFactories.getFactory(OFVersion.OF_13).instructions().gotoTable(FLOW_TABLE_ID));
-		//注释
-		doFlowAdd(binding.getSwitchPort().getSwitchDPID(), STATIC_TABLE_ID, mb.build(), null, instructions, BINDING_LAYER_PRIORITY);
+		installBindingFlow(binding);
 		rank.put(binding.getSwitchPort(), BINDING_LAYER_PRIORITY);
 		hostWithPort.put(binding.getSwitchPort(), (int)(binding.getMacAddress().getLong()));
 	}
@@ -1102,6 +1526,9 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	protected void doUnbindIPv4(UnbindIPv4Action action) {
 		manager.delBinding(action.getIpv4Address());
 		Binding<?> binding = action.getBinding();
+		if(bindingJournal != null) {
+			bindingJournal.unbind(binding);
+		}
 		if(securityPort.contains(binding.getSwitchPort())){
 			return;
 		}
@@ -1122,6 +1549,9 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		manager.delBinding(action.getIPv6Address());
 		
 		Binding<?> binding = action.getBinding();
+		if(bindingJournal != null) {
+			bindingJournal.unbind(binding);
+		}
 		if(securityPort.contains(binding.getSwitchPort())){
 			return;
 		}
@@ -1218,11 +1648,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			fab.setInstructions(instructions);
 		}
 		
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		
-		if(sw!= null){
-			sw.write(fab.build());
-		}
+		flowModBatcher.write(switchId, fab.build());
 	}
 	
 	//strict
@@ -1245,12 +1671,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			fab.setInstructions(instructions);
 		}
 		
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		
-		if(sw!= null){
-			sw.write(fab.build());
-		}
-		
+		flowModBatcher.write(switchId, fab.build());
 	}
 	
 	/**
@@ -1295,11 +1716,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 			fab.setInstructions(instructions);
 		}
 		
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		
-		if(sw!= null){
-			sw.write(fab.build());
-		}
+		flowModBatcher.write(switchId, fab.build());
 	}
 	
 	/**
@@ -1323,11 +1740,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		   .setTableId(tableId)
 		   .setBufferId(OFBufferId.NO_BUFFER);
 		
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		
-		if(sw!= null){
-			sw.write(fdb.build());
-		}
+		flowModBatcher.write(switchId, fdb.build());
 	}
 	
 	
@@ -1341,11 +1754,7 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 		.setPriority(priority)
 		.setBufferId(OFBufferId.NO_BUFFER);
 		
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		
-		if(sw!= null){
-			sw.write(fdb.build());
-		}
+		flowModBatcher.write(switchId, fdb.build());
 	}
 
 	/**
@@ -1429,26 +1838,20 @@ IOFMessageListener, ITopologyListener, SAVIProviderService, ILinkDiscoveryListen
 	}
 	
 	@Override
-	public Queue<SwitchPort> getNormalPorts() {
-		return normalPorts;
-	}
-	@Override
-	public Queue<SwitchPort> getAbnormalPorts() {
-		return abnormalPorts;
-	}
-	@Override
-	public Map<SwitchPort, Integer> getObservePorts() {
-		return observePorts;
-	}
-	
-	@Override
-	public Queue<SwitchPort> getStaticPorts() {
-		return staticPorts;
+	public PortStateTable getPortStates() {
+		return portStates;
 	}
 	
 	@Override
-	public Queue<SwitchPort> getNonePorts() {
-		return nonePorts;
+	public List<Integer> getPacketInQueueDepths() {
+		if(packetInDispatcher == null) {
+			return Collections.emptyList();
+		}
+		List<Integer> depths = new ArrayList<>(packetInDispatcher.getShardCount());
+		for(int i = 0; i < packetInDispatcher.getShardCount(); i++) {
+			depths.add(packetInDispatcher.getQueueDepth(i));
+		}
+		return depths;
 	}
 	
 	@Override
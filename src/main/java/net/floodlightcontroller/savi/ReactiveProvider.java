@@ -45,7 +45,7 @@ public class ReactiveProvider extends Provider {
 			IPv4 ipv4 = (IPv4)eth.getPayload();
 			IPv4Address address = ipv4.getSourceAddress();
 			
-			if(this.manager.check(switchPort, macAddress, address)) {
+			if(this.manager.checkIPv4(switchPort.getSwitchDPID(), switchPort.getPort(), macAddress.getLong(), address.getInt())) {
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
 			else {
@@ -64,7 +64,7 @@ public class ReactiveProvider extends Provider {
 			IPv6 ipv6 = (IPv6)eth.getPayload();
 			IPv6Address address = ipv6.getSourceAddress();
 			
-			if(this.manager.check(switchPort, macAddress, address)) {
+			if(this.manager.checkIPv6(switchPort.getSwitchDPID(), switchPort.getPort(), macAddress.getLong(), address.getHi(), address.getLo())) {
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
 			else {
@@ -82,7 +82,7 @@ public class ReactiveProvider extends Provider {
 			ARP arp = (ARP)eth.getPayload();
 			IPv4Address address = arp.getSenderProtocolAddress();
 			
-			if(this.manager.check(switchPort, address)) {
+			if(this.manager.checkIPv4(switchPort.getSwitchDPID(), switchPort.getPort(), address.getInt())) {
 				return RoutingAction.FORWARD_OR_FLOOD;
 			}
 			else {
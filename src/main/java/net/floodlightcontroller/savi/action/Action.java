@@ -30,6 +30,7 @@ public abstract class Action {
 		actionStore.put(ActionType.CLEAR_IPv6_BINDING, ClearIPv6BindingAction.class);
 		actionStore.put(ActionType.CLEAR_PORT_BINDING, ClearPortBindingAction.class);
 		actionStore.put(ActionType.CLEAR_SWITCH_BINDING, ClearSwitchBindingAction.class);
+		actionStore.put(ActionType.RESTORE_BINDING, RestoreBindingAction.class);
 	}
 	
 	ActionType 	type;
@@ -86,5 +87,8 @@ public abstract class Action {
 		public static CheckIPv6BindingAction getCheckIPv6Binding(SwitchPort switchPort, MacAddress macAddress, IPv6Address ipv6Address){
 			return new CheckIPv6BindingAction(switchPort, macAddress, ipv6Address);
 		}
+		public static RestoreBindingAction getRestoreBindingAction(Binding<?> binding) {
+			return new RestoreBindingAction(binding);
+		}
 	}
 }
@@ -17,5 +17,6 @@ public enum ActionType{
 	CLEAR_MAC_BINDING,
 	CHECK_IPv4_BINDING,
 	CHECK_IPv6_BINDING,
-	CONFIGURE
+	CONFIGURE,
+	RESTORE_BINDING
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package net.floodlightcontroller.savi.action;
+
+import net.floodlightcontroller.savi.binding.Binding;
+
+/**
+ * Hands a binding recovered from the binding journal back to the service owning it.
+ */
+public class RestoreBindingAction extends Action {
+	protected Binding<?> binding;
+	
+	public RestoreBindingAction() {
+		this.type = ActionType.RESTORE_BINDING;
+		binding = null;
+	}
+	
+	public RestoreBindingAction(Binding<?> binding){
+		this.type = ActionType.RESTORE_BINDING;
+		this.binding = binding;
+	}
+
+	public Binding<?> getBinding() {
+		return binding;
+	}
+
+	public void setBinding(Binding<?> binding) {
+		this.binding = binding;
+	}
+}
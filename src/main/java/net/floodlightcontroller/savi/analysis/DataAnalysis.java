@@ -1,14 +1,11 @@
 package net.floodlightcontroller.savi.analysis;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
-import java.lang.Thread.State;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.text.DecimalFormat;
@@ -19,18 +16,23 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
@@ -55,7 +57,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.primitives.UnsignedLong;
-import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
@@ -66,6 +70,15 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.devicemanager.SwitchPort;
 import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.savi.PortStateTable;
+import net.floodlightcontroller.savi.Provider;
+import net.floodlightcontroller.savi.analysis.StatisticsPoller.RequestFactory;
+import net.floodlightcontroller.savi.analysis.StatisticsPoller.StatisticsCallback;
+import net.floodlightcontroller.savi.analysis.detector.EwmaDetector;
+import net.floodlightcontroller.savi.analysis.detector.HeavyHitterDetector;
+import net.floodlightcontroller.savi.analysis.detector.IAnomalyDetector;
+import net.floodlightcontroller.savi.analysis.detector.LossRateDetector;
+import net.floodlightcontroller.savi.analysis.detector.ZScoreDetector;
 import net.floodlightcontroller.savi.analysis.web.AnalysisWebRoutable;
 import net.floodlightcontroller.savi.binding.Binding;
 import net.floodlightcontroller.savi.flow.FlowAction;
@@ -88,6 +101,16 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	private static ScheduledFuture<?> portPackets;
 	private static int flowStasInterval = 1;
 	
+	//统计请求：每个交换机的超时时间和处理回复的线程数
+	private static final String STATS_TIMEOUT_STR = "stats-timeout-ms";
+	private static final String STATS_THREADS_STR = "stats-threads";
+	private long statsTimeoutMs = 800;
+	private int statsThreads = 2;
+	//等待处理的回复轮数上限，队列满时丢弃该轮回复并计数
+	private static final int STATS_QUEUE_SIZE = 16;
+	private ExecutorService statsExecutor;
+	private StatisticsPoller statisticsPoller;
+	
 	//该字段控制模块是否启用，注意enable是key
 	public static boolean isEnable= false;
 	private static final String ENABLED_STR = "enable";
@@ -96,10 +119,15 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	private static final String SECURE_STR = "secure";
 	//该字段用来控制方案类型，它的值可以修改为后面几个，默认采用丢包
 	public static int STATUS = 1;
-	//以下字段是代表决策方案，0表示初始阶段，1表示采用丢包率的方案
+	//以下字段是代表决策方案，0表示初始阶段，1表示采用丢包率的方案，2表示按入流量基线检测
 	public static final int INIT_STAGE = 0;
 	public static final int PLAN_LOSSRATE = 1;
 	public static final int PLAN_TRAFFIC = 2;
+	//异常检测器，可以通过rest按交换机指定，没有指定的交换机使用defaultDetector
+	private static final String DETECTOR_STR = "detector";
+	private final Map<String, IAnomalyDetector> detectors = new LinkedHashMap<>();
+	private final Map<DatapathId, IAnomalyDetector> switchDetectors = new ConcurrentHashMap<>();
+	private volatile IAnomalyDetector defaultDetector;
 	//可信端口规则优先级
 	public static final int RELIABLE_PORT_PRIORITY = 5;
 	//绑定优先级，5较高，4较低
@@ -139,8 +167,8 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	private static final Map<SwitchPort, U64> outPortPackets = new ConcurrentHashMap<SwitchPort, U64>();
 	private static final Map<SwitchPort, U64> outTentativePortPackets = new ConcurrentHashMap<SwitchPort, U64>();
 	private static final Map<SwitchPort, U64> outPortPacketsRes = new ConcurrentHashMap<SwitchPort, U64>();
-	//计算丢包率的map，在FlowStatsCollector用到
-	private static final Map<SwitchPort , PacketOfFlow> packetOfFlows = new ConcurrentHashMap<>();
+	//验证规则的通过/丢包计数，在FlowStatsCollector中更新
+	private static final FlowCounterTable flowCounters = new FlowCounterTable();
 	//保存数据流量历史峰值的map
 	private static final Map<Integer, Double> maxTraffics = new ConcurrentHashMap<>();
 	//每个端口对应的同一个交换机的其他端口出流量的总和，用来衡量是否为异常流量
@@ -151,15 +179,9 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	//使用静态规则的交换机 丢包率检测
 //	private SingletonTask staticLossRate;
 	
-	private double LOSS_RATE_THRESHOLD = 0.018;
-	private int LOSS_NUM_THRESHOLD = 100;
-	
-	//分别表示正常端口队列、异常端口队列
-	private Queue<SwitchPort> normalPorts /*= new ConcurrentLinkedQueue<>()*/;
+	//端口的正常、观察、异常状态，与Provider共用
+	private PortStateTable portStates;
 	private Set<SwitchPort> pickFromNormal = new HashSet<>();
-	private Queue<SwitchPort> abnormalPorts /*= new ConcurrentLinkedQueue<>()*/;
-	private Map<SwitchPort, Integer> observePorts /*= new ConcurrentHashMap<>()*/;
-	private Queue<SwitchPort> nonePorts;
 	//上一轮的正常端口
 	private Set<SwitchPort> rightPorts = new HashSet<>();
 	
@@ -267,11 +289,13 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 		portsInBind=	/*Provider.portsInBind;*/				saviProvider.getPortsInBind();
 		staticSwId=		/*Provider.staticSwId;*/				saviProvider.getStaticSwId();
 		noneSwId=												saviProvider.getNoneSwId();
-		normalPorts=	/*Provider.normalPorts;*/				saviProvider.getNormalPorts();
-		abnormalPorts=	/*Provider.abnormalPorts;*/				saviProvider.getAbnormalPorts();
-		observePorts=	/*Provider.observePorts;*/				saviProvider.getObservePorts();
-		nonePorts = saviProvider.getNonePorts();
-//		for(int i = 0; i < nonePorts.)
+		portStates=												saviProvider.getPortStates();
+		
+		addDetector(new LossRateDetector());
+		addDetector(new EwmaDetector());
+		addDetector(new ZScoreDetector());
+		addDetector(new HeavyHitterDetector());
+		defaultDetector = detectors.get(LossRateDetector.NAME);
 		
 		//对配置文件参数进行解析
 		Map<String, String> config = context.getConfigParams(this);
@@ -290,6 +314,43 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 				log.error("Could not parse '{}'. Using default of {}", SECURE_STR, isSecurity);
 			}
 		}
+		if(config.containsKey(DETECTOR_STR)){
+			IAnomalyDetector detector = detectors.get(config.get(DETECTOR_STR).trim().toLowerCase());
+			if(detector != null) {
+				defaultDetector = detector;
+			} else {
+				log.error("Unknown anomaly detector '{}'. Using default of {}", config.get(DETECTOR_STR), defaultDetector.getName());
+			}
+		}
+		if(config.containsKey(STATS_TIMEOUT_STR)){
+			try {
+				statsTimeoutMs = Long.parseLong(config.get(STATS_TIMEOUT_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", STATS_TIMEOUT_STR, statsTimeoutMs);
+			}
+		}
+		if(config.containsKey(STATS_THREADS_STR)){
+			try {
+				statsThreads = Math.max(1, Integer.parseInt(config.get(STATS_THREADS_STR).trim()));
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", STATS_THREADS_STR, statsThreads);
+			}
+		}
+		
+		//回复在OpenFlow的IO线程上到达，统计处理放到固定大小的线程池里，
+		//队列有界，拒绝的轮次由StatisticsPoller计数并丢弃
+		statsExecutor = new ThreadPoolExecutor(statsThreads, statsThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(STATS_QUEUE_SIZE), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "savi-stats-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		statisticsPoller = new StatisticsPoller(switchService, threadPoolService.getScheduledExecutor(),
+				statsExecutor, statsTimeoutMs);
 	}
 
 	@Override
@@ -308,17 +369,16 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 				if(saviProvider.getInit()) {
 					//每隔0.5秒获取一次三个队列的元素
 					StringBuffer sb = new StringBuffer();
-					testPortSet(sb, normalPorts, "normal");
-					testPortSet(sb, observePorts.keySet(), "observe");
-					testPortSet(sb, abnormalPorts, "abnormal");
+					testPortSet(sb, portStates.getPorts(PortStateTable.State.NORMAL), "normal");
+					testPortSet(sb, portStates.getPorts(PortStateTable.State.OBSERVE), "observe");
+					testPortSet(sb, portStates.getPorts(PortStateTable.State.ABNORMAL), "abnormal");
 					log.info(sb.toString());
 					if(--assist==0) {
-						for(DatapathId dpid : portsInBind.keySet()) 
-							dynamicRuleNumber.put(dpid, 0);
-						for(SwitchPort sp : observePorts.keySet())
-							dynamicRuleNumber.put(sp.getSwitchDPID(), dynamicRuleNumber.get(sp.getSwitchDPID())+2);
-						for(SwitchPort sp : abnormalPorts)
-							dynamicRuleNumber.put(sp.getSwitchDPID(), dynamicRuleNumber.get(sp.getSwitchDPID())+2);
+						//观察和异常端口各有两条验证规则
+						for(DatapathId dpid : portsInBind.keySet()) {
+							int ports = portStates.getPorts(dpid, PortStateTable.State.OBSERVE).size() + portStates.getPorts(dpid, PortStateTable.State.ABNORMAL).size();
+							dynamicRuleNumber.put(dpid, ports*2);
+						}
 						assist=2;
 					}
 				}
@@ -432,107 +492,6 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 		return map;
 	}
 	
-	//如果读文件失败，那么调用这个方法，不采用原来的默认填充全0，而是填充之前实验得到的固定值
-	private void trafficToMap(){
-		//这里默认填充的值都比文件中的值大一位小数
-//		maxTraffics.put(1, 2.5);
-//		maxTraffics.put(2, 143.7);
-//		maxTraffics.put(3, 32.5);
-//		maxTraffics.put(4, 103.4);
-//		maxTraffics.put(5, 5.4);
-//		maxTraffics.put(6, 117.2);
-//		maxTraffics.put(7, 90.4);
-//		maxTraffics.put(8, 2.4);
-//		maxTraffics.put(9, 5.4);
-		for(int i = 1; i <= rank.size(); i++){
-			maxTraffics.put(i, 100.0);
-		}
-	}
-	
-	//读文件，将历史峰值填充到hashmap
-	private void trafficToMap(String filename){
-		try {
-			synchronized (filename) {
-				File file = new File(filename);
-				if(!file.exists()){
-					log.info("文件不存在");
-					file.createNewFile();
-					
-					trafficToMap();
-					return;
-				}
-				BufferedReader in = new BufferedReader(new FileReader(filename));
-				try {
-					String temp = null;
-					boolean flag = false;
-					while((temp = in.readLine()) != null){
-						flag = true;
-						String[] splits = temp.split(" ");
-						//只要格式不对，直接返回
-						if(splits.length != 2 || !isInteger(splits[0]) || !isDouble(splits[1])) {
-							trafficToMap();
-							return;
-						}
-						else {
-							//这里容易发生异常
-							maxTraffics.put(Integer.parseInt(splits[0]), Double.parseDouble(splits[1]));
-						}
-					}
-					//说明是空文件
-					if(!flag){
-						trafficToMap();
-					}
-					else {
-						for( Map.Entry<Integer, Double> entry : maxTraffics.entrySet()){
-							System.out.println(entry.getKey() + " " + entry.getValue());
-						}
-					}
-					in.close();
-				} catch (Exception ex){
-					//最可能发生的异常是数字转换的错误，或者文件读写错误
-					ex.printStackTrace();
-				}
-				finally {
-					if(in != null){
-						try {
-							in.close();
-						}catch(IOException e){}
-					}
-				}
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-	}
-	
-	/**
-	 * 正则表达式判断是否是double类型，主要用于读文件
-	 * @param str
-	 * @return
-	 */
-	private boolean isDouble(String str) {
-		if (null == str || "".equals(str)) {  
-	        return false;  
-	    }  
-	    Pattern pattern = Pattern.compile("^[-\\+]?[.\\d]*$");  
-	    return pattern.matcher(str).matches();  
-	}
-
-	/**
-	 * 正则表达式判断是否是整数，主要用于读文件
-	 * @param str
-	 * @return
-	 */
-	private boolean isInteger(String str) {
-		if (null == str || "".equals(str)) {  
-	        return false;  
-	    }  
-	    Pattern pattern = Pattern.compile("^[-\\+]?[\\d]*$");  
-	    return pattern.matcher(str).matches(); 
-	}
-
-	
-
 	private void testPortSet(StringBuffer sb , Collection<SwitchPort> switchPorts, String name){
 		if(sb == null) return ;
 		sb.append(name + "[ ");
@@ -546,9 +505,6 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	
 	//初始阶段
 	private void firstStage(){
-		//将数据流量的历史峰值从文件读入系统，后面的定时器按时将当前流量写入文件
-	//	trafficToMap(filePath);
-		
 		ScheduledExecutorService ses0=threadPoolService.getScheduledExecutor();
 		//对流收集器进行扩展，收集信息的过程采用原代码，主要扩展的是后续处理
 		initTimer = new SingletonTask(ses0, /*new Runnable()*/ new Runnable(){
@@ -559,7 +515,9 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 				//将原始rank顺序打乱
 				Collections.shuffle(tmp);
 				//初始将所有端口都默认为normal状态
-				normalPorts.addAll(tmp);
+				portStates.addAll(tmp, PortStateTable.State.NORMAL);
+				//所有交换机的可信端口规则收集起来，按交换机批量下发
+				List<FlowAction> reliableActions = new ArrayList<>();
 				//遍历有绑定表的所有交换机
 				for(DatapathId switchId : portsInBind.keySet()) {
 					IOFSwitch sw=switchService.getSwitch(switchId);
@@ -581,9 +539,21 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 						instructions.add(OFFactories.getFactory(OFVersion.OF_13).instructions().gotoTable(FLOW_TABLE_ID));
 						log.info("add reliable switch port static match rule"+switchId+"----"+port);
 						//给可信端口下发转发规则
-						saviProvider.doFlowAdd(switchId, STATIC_TABLE_ID, mb.build(), null, instructions, RELIABLE_PORT_PRIORITY);
+						reliableActions.add(FlowActionFactory.getFlowAddAction(
+								switchId, STATIC_TABLE_ID, mb.build(), null, instructions, RELIABLE_PORT_PRIORITY));
 					}
 				}
+				Futures.addCallback(saviProvider.pushFlowActionsBatch(reliableActions), new FutureCallback<List<OFBarrierReply>>() {
+					@Override
+					public void onSuccess(List<OFBarrierReply> replies) {
+						log.info("Reliable port rules acknowledged by {} switches", replies.size());
+					}
+					
+					@Override
+					public void onFailure(Throwable t) {
+						log.error("Failure installing reliable port rules", t);
+					}
+				});
 				//初始化信用等级和日志信息
 				for(SwitchPort switchPort : rank.keySet()) {
 					hostsCredit.put(switchPort, 24);
@@ -593,9 +563,9 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 				//初始阶段的最后，发出信号，进入下一阶段，此时要打开两个数据收集线程
 				enableAnalysis(true);
 				StringBuffer sb = new StringBuffer();
-				testPortSet(sb, normalPorts, "normal");
-				testPortSet(sb, observePorts.keySet(), "observe");
-				testPortSet(sb, abnormalPorts, "abnormal");
+				testPortSet(sb, portStates.getPorts(PortStateTable.State.NORMAL), "normal");
+				testPortSet(sb, portStates.getPorts(PortStateTable.State.OBSERVE), "observe");
+				testPortSet(sb, portStates.getPorts(PortStateTable.State.ABNORMAL), "abnormal");
 				log.info("第一次得到的主机集合"+sb.toString());
 				enablePortHandle();
 				//记录时间
@@ -621,8 +591,8 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 			//只要是这个端口的验证规则（两条），都删除
 			mb.setExact(MatchField.IN_PORT, switchPort.getPort());
 			removeActions.add(FlowActionFactory.getFlowRemoveAction(switchPort.getSwitchDPID(), DYNAMIC_TABLE_ID, mb.build()));
-			if(!abnormalPorts.contains(switchPort))
-				packetOfFlows.get(switchPort).init();
+			if(!portStates.isInState(switchPort, PortStateTable.State.ABNORMAL))
+				flowCounters.reset(switchPort);
 		}
 		saviProvider.pushFlowActions(removeActions);
 	}
@@ -770,41 +740,11 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	private class NormalPortThread extends Thread {
 		@Override
 		public void run() {
-			SwitchPort cur = null;
-			Set<SwitchPort> handleSet = new HashSet<>();
-
-			int t1 = 0;
-			int t2 = 0;
-			//根据topo中动态交换机的个数决定挑选的正常主机个数
-			for(int i = 0 ; i < portsInBind.size() - staticSwId.size() - noneSwId.size() ; i++){
-				cur = normalPorts.poll();
-				if(cur == null) break;
-				//对手动下发验证规则的端口 不进行轮询
-				if(saviProvider.getPushFlowToSwitchPorts().contains(cur)) {
-					normalPorts.offer(cur);
-					++t1;
-					if(normalPorts.size()==t1) break;
-					i--;
-					continue;
-				}
-				//对静态SAVI的交换机不进行轮询，并根据情况修改轮循窗口大小
-				if(staticSwId.contains(cur.getSwitchDPID())||noneSwId.contains(cur.getSwitchDPID())) {
-					//记录遍历到的静态交换机和默认交换机上的正常主机个数
-					t2++;
-					//放回到正常端口
-					normalPorts.offer(cur);
-					//如果正常端口列表中已经没有动态交换机的主机，则退出挑选
-					if(normalPorts.size()==t2) break;
-					i--;
-					continue;
-				}
-				handleSet.add(cur);
-				//第一次放到观察列表，设置次数为0，方便观察线程处理
-				observePorts.put(cur, 0);
-				pickFromNormal.add(cur);
-			}
+			//每个动态交换机轮流挑选一个正常端口放到观察列表，静态和默认交换机不参与轮询，手动下发验证规则的端口也不轮询
+			List<SwitchPort> picked = portStates.pollNormal(portStates.getDynamicSwitchCount(), saviProvider.getPushFlowToSwitchPorts());
+			pickFromNormal.addAll(picked);
 			//对选中的端口下发验证规则
-			doFlowAdd(handleSet);
+			doFlowAdd(new HashSet<>(picked));
 		}
 	}
 	
@@ -812,17 +752,10 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	private class AbnormalPortThread extends Thread {
 		@Override
 		public void run() {
-			int curSize = abnormalPorts.size();
-			for(int i = 0 ; i < curSize ; i++){
-				SwitchPort cur = abnormalPorts.poll();
-				if(cur == null) break;
+			for(SwitchPort cur : portStates.getPorts(PortStateTable.State.ABNORMAL)){
 				//如果端口变正常，需要移出到观察队列
 				if(rightPorts.contains(cur)){
-					observePorts.put(cur, 0);
-				}                                                           
-				else {
-					//否则加入队尾
-					abnormalPorts.offer(cur);
+					portStates.setState(cur, PortStateTable.State.OBSERVE);
 				}
 			}
 		}
@@ -834,38 +767,29 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 		public void run() {
 			//放回正常队列，撤销规则的端口列表
 			Set<SwitchPort> actionPorts = new HashSet<>();
-			Iterator<Map.Entry<SwitchPort, Integer>> iterator = observePorts.entrySet().iterator();
 			
-			while(iterator.hasNext()){
-				Map.Entry<SwitchPort, Integer> entry = iterator.next();
+			for(SwitchPort cur : portStates.getPorts(PortStateTable.State.OBSERVE)){
 				//rightPorts在每次采集完FLOW信息后就更新一次
-				if(rightPorts.contains(entry.getKey())){
+				if(rightPorts.contains(cur)){
 					//发现该端口正常，正常次数超过一个定值（这个定值与主机的信用等级相关）则移除到正常端口
 					//信用等级为0-5
 					//如果在观察周期内都是正常的，则从观察端口中移除到正常端口
-					if(entry.getValue() >= 6-hostsCredit.get(entry.getKey())/8) {
-						normalPorts.offer(entry.getKey());
-						
-						if(pickFromNormal.contains(entry.getKey()))
-							pickFromNormal.remove(entry.getKey());
+					if(portStates.getObserveCount(cur) >= 6-hostsCredit.get(cur)/8) {
+						portStates.setState(cur, PortStateTable.State.NORMAL);
+						pickFromNormal.remove(cur);
 						
-						if(!saviProvider.getPushFlowToSwitchPorts().contains(entry.getKey()))
-							actionPorts.add(entry.getKey());
-						//边遍历边移除会不会有问题？
-						iterator.remove();
+						if(!saviProvider.getPushFlowToSwitchPorts().contains(cur))
+							actionPorts.add(cur);
 					}
 					else {
 						//观察次数不够，只修改次数
-						observePorts.put(entry.getKey(), entry.getValue() + 1);
+						portStates.incrementObserveCount(cur);
 					}
 				}
 				else {
 					//发现当前端口不正常，移出到异常队列
-					abnormalPorts.offer(entry.getKey());
-					
-					if(pickFromNormal.contains(entry.getKey()))
-						pickFromNormal.remove(entry.getKey());
-					iterator.remove();
+					portStates.setState(cur, PortStateTable.State.ABNORMAL);
+					pickFromNormal.remove(cur);
 				}
 			}
 			//遍历完成后，对移出到正常队列的端口撤销验证规则
@@ -874,150 +798,90 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	}
 	
 	/**
-	 * 判断当前端口主机是否是正常的
+	 * 判断当前端口主机是否是正常的，由该交换机的异常检测器决定，同时更新主机信用等级
 	 * @param switchPort
+	 * @param detector
+	 * @param counters
 	 * @return
 	 */
-	private boolean isNormal(SwitchPort switchPort) {
-		//注意，这里可以根据三个队列的长度比重，修改阈值（暂时去掉丢包率为1的边缘情况——样本过于偏差，虽然确实有可能丢包率为1，但前提是丢包数本身也很大）
-		if(packetOfFlows.get(switchPort) == null) return true;
-		if(packetOfFlows.get(switchPort).getDropRate() != 1 && packetOfFlows.get(switchPort).getDropRate() > LOSS_RATE_THRESHOLD) {
-			//异常，信用等级-2
-			int t = hostsCredit.get(switchPort) - 2 > 0 ? hostsCredit.get(switchPort) - 2 : 0;
-			if(!staticSwId.contains(switchPort.getSwitchDPID()) && !noneSwId.contains(switchPort.getSwitchDPID())) {
-				hostsCredit.put(switchPort, t);
-			}
-			//如果上一阶段为正常，则记录异常，写入日志文件
-			if(logFlag.get(switchPort)) {
-				writeErrorLog(switchPort, true);
-				logFlag.put(switchPort, false);
-			}
-			return false;
-		}
-		if(packetOfFlows.get(switchPort).getDropNum() > LOSS_NUM_THRESHOLD) {
+	private boolean isNormal(SwitchPort switchPort, IAnomalyDetector detector, FlowCounterTable.Snapshot counters) {
+		boolean hasRules = counters.contains(switchPort);
+		boolean anomalous = detector.isAnomalous(switchPort,
+				hasRules ? counters.getPassNum(switchPort) : -1,
+				hasRules ? counters.getDropNum(switchPort) : -1,
+				getInRate(switchPort));
+		//没有验证规则的端口不影响信用等级
+		if(!hasRules) return true;
+		
+		boolean dynamic = !staticSwId.contains(switchPort.getSwitchDPID()) && !noneSwId.contains(switchPort.getSwitchDPID());
+		Integer credit = hostsCredit.get(switchPort);
+		if(credit == null) credit = 24;
+		if(anomalous) {
 			//异常，信用等级-2
-			int t = hostsCredit.get(switchPort) - 2 > 0 ? hostsCredit.get(switchPort) - 2 : 0;
-			if(!staticSwId.contains(switchPort.getSwitchDPID()) && !noneSwId.contains(switchPort.getSwitchDPID())) {
-				hostsCredit.put(switchPort, t);
+			if(dynamic) {
+				hostsCredit.put(switchPort, credit - 2 > 0 ? credit - 2 : 0);
 			}
 			//如果上一阶段为正常，则记录异常，写入日志文件
-			if(logFlag.get(switchPort)) {
-				writeErrorLog(switchPort, true);
+			if(!Boolean.FALSE.equals(logFlag.get(switchPort))) {
+				writeErrorLog(switchPort, true, counters);
 				logFlag.put(switchPort, false);
 			}
 			return false;
 		}
 		//正常，信用等级+1
-		int t = hostsCredit.get(switchPort) + 1 < 47 ? hostsCredit.get(switchPort) + 1 : 47;
-		if(!staticSwId.contains(switchPort.getSwitchDPID()) && !noneSwId.contains(switchPort.getSwitchDPID())) {
-			hostsCredit.put(switchPort, t);
+		if(dynamic) {
+			hostsCredit.put(switchPort, credit + 1 < 47 ? credit + 1 : 47);
 		}
 		//如果上一阶段为异常，则记录正常，写入日志文件
-		if(!logFlag.get(switchPort)) {
-			writeErrorLog(switchPort, false);
+		if(Boolean.FALSE.equals(logFlag.get(switchPort))) {
+			writeErrorLog(switchPort, false, counters);
 			logFlag.put(switchPort, true);
 		}
 		return true;
 	}
 	
-	private Set<SwitchPort> getChangeNormalPorts(int type){
+	//每轮统计后对所有主机端口做一次检测，结果放在rightPorts里，供三个端口线程使用
+	private Set<SwitchPort> getChangeNormalPorts(){
 		rightPorts.clear();
-		//目前只按丢包率，以后扩展其他分支即可
-		if(type == PLAN_LOSSRATE){
-			
-//			StringBuffer test = new StringBuffer();
-			for(SwitchPort switchPort : rank.keySet()){
-				if(isNormal(switchPort)) {
-					rightPorts.add(switchPort);
-//					test.append(computeTerminatorNum(entry.getKey()) + ",");
-				}
-			}
-			
-			return rightPorts;
+		FlowCounterTable.Snapshot counters = flowCounters.getSnapshot();
+		List<SwitchPort> ports = new ArrayList<>(rank.keySet());
+		for(IAnomalyDetector detector : detectors.values()) {
+			detector.startRound();
 		}
-		//按照数据流量来获取正常端口
-		//这部分代码是针对9主机的固定场景，如果想要更通用、标准，请修改trafficToMap以及更新相应文件的方法
-		else if(type == PLAN_TRAFFIC){
-			Map<Integer, Double> testMap = new HashMap<>();
-			//flag用来判断是否发生峰值更新
-			boolean flag = false;
-			
-			//将当前轮次，端口的流量数据和maxTraffic相比较
-			//Set<SwitchPort> result = new HashSet<>();
-			//从inPortPackets里面获取到的是所有端口，包括非主机端口，需要想个办法进行过滤
-			//上面packetOfFlows之所以可以，是因为当初统计时只针对验证规则在统计，而验证规则恰好只针对主机端口
-			//这里先取巧，以后再相办法改进吧，改进思路就是根据saviProvider.getBindings
-			for(Map.Entry<SwitchPort, U64> entry : inPortPacketsRes.entrySet()){
-				SwitchPort swport = entry.getKey();
-				//排除掉00::01和-4，即1-1,1-2,1-3,2-4,3-4,4-4
-//					if(!swport.getSwitchDPID().toString().contains("01") &&
-//							swport.getPort().getPortNumber() != -2 && swport.getPort().getPortNumber() != 4){
-				if(rank.containsKey(swport)){
-					//将端口转主机编号，因为文件里面读取出来的就是主机编号
-					int terminatorNum = computeTerminatorNum(swport);
-					//计算当前速率
-					double v = entry.getValue().getValue()/(1.0 * flowStasInterval);
-					testMap.put(terminatorNum, maxTraffics.get(terminatorNum));
-					
-					//log.info(tempNum + " curV:" + v + " maxV:" + maxTraffics.get(tempNum));
-					
-					//当速率超过历史峰值时，加入异常端口集合，更新历史峰值，最后更新峰值文件
-					if(v > maxTraffics.get(terminatorNum)){
-						flag = true;
-						//这一句放在后面测试一下，只有正常流量才更新峰值，这样下一次检测时获取到的还是正常的峰值
-						//maxTraffics.put(tempNum, v);
-						
-						//DecimalFormat df = new DecimalFormat("#####0.00");
-						//int curOut = getOutPacketsByPort(swport);
-						
-						//当峰值发生变化时，统计同一交换机的其他端口流量总和，以初步判断是正常还是异常流量
-						//而这个值是根据是否剧烈变化来判断是否正常的，定义剧烈变化就得和上一次的数据进行比较
-						double curOut = getOutPacketsByPort(swport)/(1.0 * flowStasInterval);
-						
-						//超过当前最大峰值
-						log.info("当前入流量" + v + "超过历史峰值" + maxTraffics.get(terminatorNum));
-//							log.info(tempNum + " curOut - map：" + curOut + " - " + (outTraffics.get(tempNum)/(2.0 * flowStasInterval)) + " = " + (curOut - outTraffics.get(tempNum)/(2.0 * flowStasInterval))
-//									+ " curInV - map：" + v + " - " + maxTraffics.get(tempNum) + " = " + (v - maxTraffics.get(tempNum)));
-//							double curRate = 1.0 * (v - maxTraffics.get(tempNum))/(curOut - outTraffics.get(tempNum)/(2.0 * flowStasInterval));
-//							log.info(tempNum + " in/out增比：" + curRate);
-//							
-						//如果这个值变化特别剧烈，in、out同时波动强烈，说明是正常流量；如果in变化而out不怎么变化，那就是异常流量了（注意，这里的out是同一交换机的其他端口的out之和）
-						//但是这里这个判断只能生效一次，之后由于是平稳的高流量，就会多次进入else，被判定为异常端口了。
-						if(curOut > (outTraffics.get(terminatorNum) * 1.3)){
-						//if(curRate > outTraffics.get(tempNum)){
-							//说明是正常端口，正常端口才更新outTraffics，不要让异常数据影响
-							rightPorts.add(swport);
-							//log.info("========if内 " + tempNum + " curOut：" + curOut + " outMap：" + outTraffics.get(tempNum));
-							log.info("正常大流量 curOut：" + curOut + " map：" + outTraffics.get(terminatorNum));
-							//outTraffics.put(tempNum, curRate);
-							maxTraffics.put(terminatorNum, v);
-						}
-						//异常端口的情况，不应该更新峰值
-						else{
-							flag = false;
-						}
-					}
-					else {
-						rightPorts.add(swport);
-					}
-				}
-			}
-			//如果发生了峰值更新，最后更新文件
-			if(flag){
-				StringBuffer sb = new StringBuffer();
-				for(Map.Entry<Integer, Double> entry : maxTraffics.entrySet()){
-					//试了一下，\r\n是当前行的字符，也就是说最后一行是空行
-					sb.append(entry.getKey() + " " + entry.getValue() + "\r\n");
-				}
-				System.out.println("=============更新峰值文件，h1：" + maxTraffics.get(1) + "=============");
-		//		writeToTxt(filePath, false, sb.toString());
-				
+		//先把本轮所有端口的样本喂给检测器，再逐个判断，结果与端口顺序无关
+		//没有验证规则的端口也要喂给检测器，让基线持续学习
+		for(SwitchPort switchPort : ports){
+			boolean hasRules = counters.contains(switchPort);
+			getDetector(switchPort.getSwitchDPID()).update(switchPort,
+					hasRules ? counters.getPassNum(switchPort) : -1,
+					hasRules ? counters.getDropNum(switchPort) : -1,
+					getInRate(switchPort));
+		}
+		for(SwitchPort switchPort : ports){
+			if(isNormal(switchPort, getDetector(switchPort.getSwitchDPID()), counters)) {
+				rightPorts.add(switchPort);
 			}
-			return rightPorts;
 		}
-		
-		return null;
+		for(IAnomalyDetector detector : detectors.values()) {
+			detector.endRound();
+		}
+		return rightPorts;
+	}
+	
+	private double getInRate(SwitchPort switchPort) {
+		U64 in = inPortPacketsRes.get(switchPort);
+		return in == null ? -1 : in.getValue()/(1.0 * flowStasInterval);
+	}
+	
+	private void addDetector(IAnomalyDetector detector) {
+		detectors.put(detector.getName(), detector);
+	}
+	
+	private IAnomalyDetector getDetector(DatapathId dpid) {
+		IAnomalyDetector detector = switchDetectors.get(dpid);
+		return detector == null ? defaultDetector : detector;
 	}
+	
 	//获取当前交换机的所有出口流量 
 	private int getOutPacketsByPort(SwitchPort sp){
 		if(outTraffics.size() < 1){
@@ -1042,60 +906,36 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	
 	
 	//接下来要定义几个线程内部类
-	private class FlowStatisCollector extends Thread{
+	private class FlowStatisCollector extends StatsCollector {
+		FlowStatisCollector() {
+			super(OFStatsType.FLOW);
+		}
+		
 		@Override
-		public void run(){
-			//首先获取交换机的响应信息
-			Map<DatapathId, List<OFStatsReply>> map = getSwitchStatistics(portsInBind.keySet(), OFStatsType.FLOW);
-			//遍历响应信息
+		public void statisticsReceived(Map<DatapathId, List<OFStatsReply>> map) {
+			//一次遍历把所有验证规则的计数汇总到各端口，差值和速率由flowCounters计算
+			FlowCounterTable.Round round = flowCounters.newRound();
 			for(Map.Entry<DatapathId, List<OFStatsReply>> entry : map.entrySet()){
 				DatapathId swid = entry.getKey();
 				if(swid == null || entry.getValue() == null) continue;
-				//遍历每个交换机的响应信息，其实只有一个，动态规则流表
 				for(OFStatsReply r :entry.getValue()){
 					OFFlowStatsReply psr = (OFFlowStatsReply) r;
-					//遍历动态规则流表里的流表项
 					for(OFFlowStatsEntry psrEntry : psr.getEntries()){
 						//目前只统计验证规则和通配规则
 						int priority = psrEntry.getPriority();
 						if(priority < BINDING_PRIORITY-1&&priority>2*priorityLevel) continue;
-						OFPort port = psrEntry.getMatch().get(MatchField.IN_PORT);
+						Match match = psrEntry.getMatch();
+						OFPort port = match.get(MatchField.IN_PORT);
 						if(port == null) continue;
-						SwitchPort swport = new SwitchPort(swid , port);
-						PacketOfFlow packetOfFlow = packetOfFlows.get(swport);
-						if(psrEntry.getMatch().isExact(MatchField.IPV6_SRC)){
-							if(packetOfFlow == null){
-								//该分支表示正常数据包数，所以最后两个和丢包率有关的字段初始化为0
-								packetOfFlow= new PacketOfFlow(psrEntry.getPacketCount().getValue(), 0 , psrEntry.getPacketCount().getValue() , 0 , 0 , 0);
-							}else{
-								//统计通过包数，累计通过包数，丢包数，累计丢包率
-								packetOfFlow.setPassNum(((psrEntry.getPacketCount().getValue() - packetOfFlow.getAccumulatePassNum()) > 0 ? (psrEntry.getPacketCount().getValue() - packetOfFlow.getAccumulatePassNum()) : 0));
-								packetOfFlow.setAccumulatePassNum(psrEntry.getPacketCount().getValue());
-								long fenmu1 = packetOfFlow.getDropNum() + packetOfFlow.getPassNum();
-								packetOfFlow.setDropRate(fenmu1 == 0 ? 0 : (packetOfFlow.getDropNum()*1.0)/fenmu1);
-								long fenmu2 = packetOfFlow.getAccumulateDropNum() + packetOfFlow.getAccumulatePassNum();
-								packetOfFlow.setAccumulateDropRate(fenmu2 == 0 ? 0 : (packetOfFlow.getAccumulateDropNum()*1.0 / fenmu2));
-							}
-						}else{
-							if(packetOfFlow == null){
-								packetOfFlow=new PacketOfFlow(0, psrEntry.getPacketCount().getValue(),0, psrEntry.getPacketCount().getValue() , 0 , 0);
-							}else{
-								//统计失配包数，累计失配包数，累计失配率
-								packetOfFlow.setDropNum(((psrEntry.getPacketCount().getValue()-packetOfFlow.getAccumulateDropNum()) > 0 ? (psrEntry.getPacketCount().getValue()-packetOfFlow.getAccumulateDropNum()) : 0));
-								packetOfFlow.setAccumulateDropNum(psrEntry.getPacketCount().getValue());
-								long fenmu1 = packetOfFlow.getDropNum() + packetOfFlow.getPassNum();
-								packetOfFlow.setDropRate(fenmu1 == 0 ? 0 : (packetOfFlow.getDropNum()*1.0)/fenmu1);
-								long fenmu2 = packetOfFlow.getAccumulateDropNum() + packetOfFlow.getAccumulatePassNum();
-								packetOfFlow.setAccumulateDropRate(fenmu2 == 0 ? 0 : (packetOfFlow.getAccumulateDropNum()*1.0 / fenmu2));
-							}
-						}
-						packetOfFlows.put(swport, packetOfFlow);
+						//精确匹配源地址的是通过规则，只匹配端口的是丢弃规则
+						round.add(swid, port.getPortNumber(), psrEntry.getPacketCount().getValue(), match.isExact(MatchField.IPV6_SRC));
 					}
 				}
 			}
+			flowCounters.commit(round);
 			//统计完成后，通过这个方法判定是否有主机发生异常
 			//每采集一次数据信息，就判断一次主机状态---异常/正常
-			getChangeNormalPorts(STATUS);
+			getChangeNormalPorts();
 		}
 	}
 	//并发读写文件，需慎重，一旦抛出异常，定时器就会中断了
@@ -1175,201 +1015,157 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	}*/
 	
 	
-	//该线程类用来获取单个交换机的流表统计信息
-	private class GetStatisticsThread extends Thread{
-		List<OFStatsReply> replies;
-		DatapathId dpId;
-
-
-		OFStatsType statsType;
+	/**
+	 * 周期采集的基类：上一轮请求还没有结束（全部回复或超时）时跳过本轮，
+	 * 回复由StatisticsPoller在统计线程池中交给statisticsReceived处理
+	 */
+	private abstract class StatsCollector implements Runnable, StatisticsCallback {
+		private final AtomicBoolean polling = new AtomicBoolean(false);
+		private final RequestFactory requests;
 		
-		public GetStatisticsThread(DatapathId dpId , OFStatsType statsType){
-			this.statsType=statsType;
-			this.dpId=dpId;
-			this.replies=null;
+		StatsCollector(OFStatsType statsType) {
+			this.requests = new StatsRequestFactory(statsType);
 		}
 		
-		public List<OFStatsReply> getReplies() {
-			return replies;
-		}
-		public DatapathId getDpId() {
-			return dpId;
-		}
 		@Override
-		public void run(){
-			replies=getSwitchStatistics(dpId, statsType);
+		public void run() {
+			if(!polling.compareAndSet(false, true)) {
+				log.debug("Previous {} statistics poll still pending, skipping", requests);
+				return;
+			}
+			try {
+				statisticsPoller.poll(portsInBind.keySet(), requests, this).addListener(new Runnable() {
+					@Override
+					public void run() {
+						polling.set(false);
+					}
+				}, MoreExecutors.sameThreadExecutor());
+			} catch (Exception e) {
+				polling.set(false);
+				log.error("Failure polling statistics", e);
+			}
 		}
 	}
 	
-	//该方法使用多线程对多个交换机进行流统计信息的请求
-	protected Map<DatapathId, List<OFStatsReply>> getSwitchStatistics(Set<DatapathId> dpIds , OFStatsType statsType){
-		Map<DatapathId, List<OFStatsReply>> replies = new HashMap<>();
-		//活跃线程、等待被移除线程列表
-		List<GetStatisticsThread> activeThreads = new ArrayList<>(dpIds.size());
-		List<GetStatisticsThread> pendingRemovalThreads = new ArrayList<>();
-		GetStatisticsThread t;
-		//没有判定是否是接入层交换机
-		for(DatapathId dpId : dpIds){
-			//如果是静态或默认交换机，不需要收集FLOW消息
-			if(statsType.equals(OFStatsType.FLOW) && (staticSwId.contains(dpId) || noneSwId.contains(dpId))) continue;
-			t = new GetStatisticsThread(dpId, statsType);
-			activeThreads.add(t);
-			t.start();
+	//构造统计请求，静态或默认交换机不需要收集FLOW消息
+	private class StatsRequestFactory implements RequestFactory {
+		private final OFStatsType statsType;
+		
+		StatsRequestFactory(OFStatsType statsType) {
+			this.statsType = statsType;
 		}
 		
-		// 这里是0.4s，具体的要根据拓扑测出来，在0.4s内必须完成收集工作
-		for(int sleepCycle = 0 ; sleepCycle < 2 ; sleepCycle++){
-			//首先扫描活跃线程列表，遇到结束的加入移除列表
-			for(GetStatisticsThread curThread : activeThreads){
-				if(curThread.getState() == State.TERMINATED){
-					replies.put(curThread.getDpId(), curThread.getReplies());
-					pendingRemovalThreads.add(curThread);
-				}
-			}
-			
-			for(GetStatisticsThread curThread : pendingRemovalThreads){
-				activeThreads.remove(curThread);
-			}
-			//因为下次开始，移除列表需要要为空，所以这里清除
-			pendingRemovalThreads.clear();
-			
-			if(activeThreads.isEmpty()){
-				break;
-			}
-			
-			try{
-				Thread.sleep(500);
-			}
-			catch(InterruptedException e){
-				log.error("Interrupted while waiting for statistics", e);
+		@Override
+		public OFStatsRequest<?> buildRequest(IOFSwitch sw) {
+			if(statsType.equals(OFStatsType.FLOW) && (staticSwId.contains(sw.getId()) || noneSwId.contains(sw.getId()))) {
+				return null;
 			}
+			return buildStatsRequest(sw, statsType);
+		}
+		
+		@Override
+		public String toString() {
+			return statsType.name();
 		}
-		return replies;
 	}
 	
-	/**
-	 * 获取单个交换机信息
-	 * @param swId
-	 * @param statsType
-	 * @return
-	 */
-	@SuppressWarnings("unchecked")
-	protected List<OFStatsReply> getSwitchStatistics(DatapathId swId , OFStatsType statsType){
-		IOFSwitch sw=switchService.getSwitch(swId);
-		ListenableFuture<?> future;
-		List<OFStatsReply> values=null;
+	protected OFStatsRequest<?> buildStatsRequest(IOFSwitch sw, OFStatsType statsType){
+		OFStatsRequest<?> request = null;
 		Match match;
-		if(sw!=null){
-			OFStatsRequest<?> request = null;
-			switch(statsType){
-			case FLOW:
-				match = sw.getOFFactory().buildMatch().build();
-				//只采集动态规则
-				request = sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) == 0 
-						? sw.getOFFactory().buildFlowStatsRequest().setMatch(match).setOutPort(OFPort.ANY)
-						.setTableId(DYNAMIC_TABLE_ID).build()
-						: sw.getOFFactory().buildFlowStatsRequest().setMatch(match).setOutPort(OFPort.ANY)
-						.setTableId(DYNAMIC_TABLE_ID).setOutGroup(OFGroup.ANY).build();
-				break;
-			case PORT:
-				request = sw.getOFFactory().buildPortStatsRequest().setPortNo(OFPort.ANY).build();
-				break;
-			case AGGREGATE:
-				match = sw.getOFFactory().buildMatch().build();
-				request = sw.getOFFactory().buildAggregateStatsRequest().setMatch(match).setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL).build();
-				break;
-			case QUEUE:
-				request = sw.getOFFactory().buildQueueStatsRequest().setPortNo(OFPort.ANY)
-						.setQueueId(UnsignedLong.MAX_VALUE.longValue()).build();
-				break;
-			case DESC:
-				request = sw.getOFFactory().buildDescStatsRequest().build();
-				break;
-			case GROUP:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					request = sw.getOFFactory().buildGroupStatsRequest().build();
-				}
-				break;
-
-			case METER:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					request = sw.getOFFactory().buildMeterStatsRequest().setMeterId(OFMeterSerializerVer13.ALL_VAL).build();
-				}
-				break;
+		switch(statsType){
+		case FLOW:
+			match = sw.getOFFactory().buildMatch().build();
+			//只采集动态规则，OF1.3以上按SAVI的cookie过滤掉其他应用的规则
+			request = sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) == 0 
+					? sw.getOFFactory().buildFlowStatsRequest().setMatch(match).setOutPort(OFPort.ANY)
+					.setTableId(DYNAMIC_TABLE_ID).build()
+					: sw.getOFFactory().buildFlowStatsRequest().setMatch(match).setOutPort(OFPort.ANY)
+					.setTableId(DYNAMIC_TABLE_ID).setOutGroup(OFGroup.ANY)
+					.setCookie(Provider.cookie).setCookieMask(U64.NO_MASK).build();
+			break;
+		case PORT:
+			request = sw.getOFFactory().buildPortStatsRequest().setPortNo(OFPort.ANY).build();
+			break;
+		case AGGREGATE:
+			match = sw.getOFFactory().buildMatch().build();
+			request = sw.getOFFactory().buildAggregateStatsRequest().setMatch(match).setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL).build();
+			break;
+		case QUEUE:
+			request = sw.getOFFactory().buildQueueStatsRequest().setPortNo(OFPort.ANY)
+					.setQueueId(UnsignedLong.MAX_VALUE.longValue()).build();
+			break;
+		case DESC:
+			request = sw.getOFFactory().buildDescStatsRequest().build();
+			break;
+		case GROUP:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				request = sw.getOFFactory().buildGroupStatsRequest().build();
+			}
+			break;
 
-			case GROUP_DESC:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					request = sw.getOFFactory().buildGroupDescStatsRequest().build();
-				}
-				break;
+		case METER:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				request = sw.getOFFactory().buildMeterStatsRequest().setMeterId(OFMeterSerializerVer13.ALL_VAL).build();
+			}
+			break;
 
-			case GROUP_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					request = sw.getOFFactory().buildGroupFeaturesStatsRequest().build();
-				}
-				break;
+		case GROUP_DESC:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				request = sw.getOFFactory().buildGroupDescStatsRequest().build();
+			}
+			break;
 
-			case METER_CONFIG:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					request = sw.getOFFactory().buildMeterConfigStatsRequest().build();
-				}
-				break;
+		case GROUP_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				request = sw.getOFFactory().buildGroupFeaturesStatsRequest().build();
+			}
+			break;
 
-			case METER_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					request = sw.getOFFactory().buildMeterFeaturesStatsRequest().build();
-				}
-				break;
+		case METER_CONFIG:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				request = sw.getOFFactory().buildMeterConfigStatsRequest().build();
+			}
+			break;
 
-			case TABLE:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					request = sw.getOFFactory().buildTableStatsRequest().build();
-				}
-				break;
+		case METER_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				request = sw.getOFFactory().buildMeterFeaturesStatsRequest().build();
+			}
+			break;
 
-			case TABLE_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					request = sw.getOFFactory().buildTableFeaturesStatsRequest().build();
-				}
-				break;
-			case PORT_DESC:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					request = sw.getOFFactory().buildPortDescStatsRequest().build();
-				}
-				break;
-			case EXPERIMENTER:
-			default:
-				log.error("Stats Request Type {} not implemented yet", statsType.name());
-				break;
+		case TABLE:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				request = sw.getOFFactory().buildTableStatsRequest().build();
 			}
-			
-			try{
-				if(request!=null){
-					//向交换机下发statsRequest请求，交换机在空闲时间会返回statsReply消息
-			//		System.out.println("交换机。。。。。。。。。。。。。" + sw);
-					future = sw.writeStatsRequest(request);
-					//查看这个处理是否完成
-					while(!future.isDone()) {
-						continue;
-					}
-					values = (List<OFStatsReply>) future.get();
-			//		System.out.println("值。。。。。。。。。" + values);
-				}
+			break;
+
+		case TABLE_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				request = sw.getOFFactory().buildTableFeaturesStatsRequest().build();
 			}
-			catch(Exception e){
-				log.error("Failure retrieving statistics from switch {}. {}", sw, e);
+			break;
+		case PORT_DESC:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				request = sw.getOFFactory().buildPortDescStatsRequest().build();
 			}
+			break;
+		case EXPERIMENTER:
+		default:
+			log.error("Stats Request Type {} not implemented yet", statsType.name());
+			break;
 		}
-		return values;
+		return request;
 	}
 
 	//统计交换机端口信息
-	private class PortPacketsCollector implements Runnable {
+	private class PortPacketsCollector extends StatsCollector {
+		PortPacketsCollector() {
+			super(OFStatsType.PORT);
+		}
+		
 		@Override
-		public void run() {
-			//采集交换机数据信息
-			Map<DatapathId, List<OFStatsReply>> replies = getSwitchStatistics(portsInBind.keySet(),OFStatsType.PORT);
+		public void statisticsReceived(Map<DatapathId, List<OFStatsReply>> replies) {
 			//遍历数据流量信息
 			for (Entry<DatapathId, List<OFStatsReply>> e : replies.entrySet()) {
 				U64 maxInPacketNum=U64.ZERO;
@@ -1460,7 +1256,7 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 			if(cycleTime==0) {
 				timeToSave=true;
 				cycleTime=period;
-				Set<SwitchPort> tmp=new HashSet<>(abnormalPorts);
+				Set<SwitchPort> tmp=new HashSet<>(portStates.getPorts(PortStateTable.State.ABNORMAL));
 				doFlowRemove(tmp);
 				doFlowAdd(tmp);
 			}
@@ -1480,13 +1276,13 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 
 	@Override
 	public PacketOfFlow getPacketOfFlow(DatapathId dpid, OFPort p) {
-		return packetOfFlows.get(new SwitchPort(dpid, p));
+		return flowCounters.getSnapshot().get(dpid, p);
 	}
 
 	@Override
 	public Object getAllPacketOfFlow() {
 		List<Map.Entry<SwitchPort, PacketOfFlow>> temp = 
-				new ArrayList<>(packetOfFlows.entrySet());
+				new ArrayList<>(flowCounters.getSnapshot().toMap().entrySet());
 		Collections.sort(temp, new Comparator<Map.Entry<SwitchPort, PacketOfFlow>>() {
 			@Override
 			public int compare(Entry<SwitchPort, PacketOfFlow> o1, Entry<SwitchPort, PacketOfFlow> o2) {
@@ -1506,18 +1302,22 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	
 	public Object getPortSet() {
 		Map<String, String> temp = new HashMap<>();
-		temp.put("normal", getPorts(normalPorts));
+		temp.put("normal", getPorts(portStates.getPorts(PortStateTable.State.NORMAL)));
 		temp.put("polling", getPorts(pickFromNormal));
-		Set<SwitchPort> set=new HashSet<>(observePorts.keySet());
+		Set<SwitchPort> set=new HashSet<>(portStates.getPorts(PortStateTable.State.OBSERVE));
 		set.removeAll(pickFromNormal);
 		temp.put("observe", getPorts(set));
-		temp.put("abnormal", getPorts(abnormalPorts));
-		nonePorts = saviProvider.getNonePorts();
-		temp.put("none", getPorts(nonePorts));
+		temp.put("abnormal", getPorts(portStates.getPorts(PortStateTable.State.ABNORMAL)));
+		temp.put("none", getPorts(portStates.getPorts(PortStateTable.Mode.NONE)));
 		
 		return temp;
 	}
 	
+	@Override
+	public Object getPortHistory(DatapathId dpid, OFPort p) {
+		return portStates.getHistory(new SwitchPort(dpid, p));
+	}
+	
 	public String getPorts(Collection<SwitchPort> ports){
 		StringBuffer sb = new StringBuffer();
 		for(SwitchPort port : ports) {
@@ -1529,10 +1329,38 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 		return sb.toString();
 	}
 
-	//切换方案
+	//切换方案，即切换默认的异常检测器
 	@Override
 	public synchronized void changePlanByRest(int flag) {
 		STATUS = flag;
+		defaultDetector = detectors.get(flag == PLAN_TRAFFIC ? EwmaDetector.NAME : LossRateDetector.NAME);
+	}
+	
+	@Override
+	public Object getDetectors() {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("available", new ArrayList<>(detectors.keySet()));
+		map.put("default", defaultDetector.getName());
+		Map<String, String> switches = new HashMap<>();
+		for(Map.Entry<DatapathId, IAnomalyDetector> entry : switchDetectors.entrySet()) {
+			switches.put(entry.getKey().toString(), entry.getValue().getName());
+		}
+		map.put("switches", switches);
+		return map;
+	}
+	
+	@Override
+	public boolean setDetector(DatapathId dpid, String name) {
+		if(name == null || name.equalsIgnoreCase("default")) {
+			switchDetectors.remove(dpid);
+			return true;
+		}
+		IAnomalyDetector detector = detectors.get(name.toLowerCase());
+		if(detector == null) {
+			return false;
+		}
+		switchDetectors.put(dpid, detector);
+		return true;
 	}
 
 	//返回入端口历史峰值
@@ -1555,7 +1383,7 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 		DecimalFormat df = new DecimalFormat("####0.00");
 		for(Map.Entry<Integer, Double> entry : map.entrySet()){
 			sb.append(String.format("%-12s", df.format(entry.getValue()) + "(" + entry.getKey() + ")"));
-			sb2.append(String.format("%-12s", df.format(maxTraffics.get(entry.getKey())) + "(" + entry.getKey()  + ")"));
+			sb2.append(String.format("%-12s", df.format(maxTraffics.getOrDefault(entry.getKey(), 0.0)) + "(" + entry.getKey()  + ")"));
 		}
 		log.info("入流量、峰值比对：\r\n" + sb.toString() + "\r\n" + sb2.toString());
 		
@@ -1571,7 +1399,7 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 			//	double curIn = getOutPacketsByPort(sp)/(2.0 * flowStasInterval);
 				double curIn = entry.getValue().getValue()/(1.0 * flowStasInterval);
 				int terminatorNum = computeTerminatorNum(sp);
-				if(curIn > maxTraffics.get(terminatorNum)){
+				if(curIn > maxTraffics.getOrDefault(terminatorNum, 0.0)){
 					maxTraffics.put(terminatorNum, curIn);
 				}
 			}
@@ -1620,7 +1448,8 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 	 * @return
 	 */
 	protected int computeTerminatorNum(SwitchPort swport) {
-		return saviProvider.getHostWithPort().get(swport);
+		Integer host = saviProvider.getHostWithPort().get(swport);
+		return host == null ? -1 : host;
 	}
 	
 	@Override
@@ -1643,17 +1472,19 @@ public class DataAnalysis implements IFloodlightModule, IAnalysisService {
 		this.autoCheck=autoCheck;
 	}
 	
-	private void writeErrorLog(SwitchPort sp, boolean isAbnormal) {
+	private void writeErrorLog(SwitchPort sp, boolean isAbnormal, FlowCounterTable.Snapshot counters) {
 		String text="";
+		long passNum = counters.getPassNum(sp);
+		long dropNum = counters.getDropNum(sp);
 		if (isAbnormal) {
 //			long lossNum=packetOfFlows.get(sp).getDropNum();
 //			if(pickFromNormal.contains(sp)) 
 //				lossNum=(long) (lossNum/0.28);
-			text=sdflog.format(System.currentTimeMillis())+"  主机："+saviProvider.getHostWithPort().get(sp) + "发现异常---" +"发包："+(packetOfFlows.get(sp).getPassNum()+packetOfFlows.get(sp).getDropNum())+"  丢包率："+packetOfFlows.get(sp).getDropRate()
-		               +"  丢包数："+packetOfFlows.get(sp).getDropNum();
+			text=sdflog.format(System.currentTimeMillis())+"  主机："+saviProvider.getHostWithPort().get(sp) + "发现异常---" +"发包："+(passNum+dropNum)+"  丢包率："+counters.getDropRate(sp)
+		               +"  丢包数："+dropNum;
 		} else {
-			text=sdflog.format(System.currentTimeMillis())+"  主机："+saviProvider.getHostWithPort().get(sp) + "恢复正常---" + "发包："+(packetOfFlows.get(sp).getPassNum()+packetOfFlows.get(sp).getDropNum())+"  丢包率："+packetOfFlows.get(sp).getDropRate()
-		               +"  丢包数："+packetOfFlows.get(sp).getDropNum();
+			text=sdflog.format(System.currentTimeMillis())+"  主机："+saviProvider.getHostWithPort().get(sp) + "恢复正常---" + "发包："+(passNum+dropNum)+"  丢包率："+counters.getDropRate(sp)
+		               +"  丢包数："+dropNum;
 		}
 		try {
 			synchronized (filePath5) {
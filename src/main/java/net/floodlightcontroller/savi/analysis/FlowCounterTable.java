@@ -0,0 +1,296 @@
+package net.floodlightcontroller.savi.analysis;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * Per-port pass/drop counters of the validation rules.
+ *
+ * Counters are kept in primitive arrays indexed by (switch index, port
+ * number). A poll is folded in with {@link #commit(Round)}: the raw rule
+ * counters of the round are summed per port and turned into deltas and
+ * rates against the previous round in one pass. Every commit publishes an
+ * immutable {@link Snapshot}, readers never take a lock.
+ *
+ * A port missing from a round has no validation rules any more and reads
+ * as zero. A counter smaller than in the previous round belongs to rules
+ * installed again and counts from zero.
+ */
+public class FlowCounterTable {
+
+	// 端口号超过这个值的规则不统计（保留端口不会出现在验证规则里）
+	public static final int MAX_PORT = 0xffff;
+
+	private final Map<DatapathId, Integer> switchIndex = new ConcurrentHashMap<>();
+	private volatile Snapshot snapshot = new Snapshot(this, new SwitchCounters[0]);
+
+	/**
+	 * Raw counters of one poll, filled by the collector.
+	 */
+	public static class Round {
+		private final Map<DatapathId, long[][]> counters = new HashMap<>();
+		private DatapathId lastSwitch;
+		private long[][] last;
+
+		/**
+		 * @param dpid
+		 * @param port in port of the rule
+		 * @param packets packet counter of the rule
+		 * @param pass true for a rule admitting bound traffic, false for the rule dropping the rest
+		 */
+		public void add(DatapathId dpid, int port, long packets, boolean pass) {
+			if(port < 0 || port > MAX_PORT) {
+				return;
+			}
+			if(!dpid.equals(lastSwitch)) {
+				last = counters.get(dpid);
+				if(last == null) {
+					last = new long[2][16];
+					counters.put(dpid, last);
+				}
+				lastSwitch = dpid;
+			}
+			if(port >= last[0].length) {
+				int length = Math.min(MAX_PORT + 1, Math.max(port + 1, last[0].length * 2));
+				last[0] = Arrays.copyOf(last[0], length);
+				last[1] = Arrays.copyOf(last[1], length);
+			}
+			last[pass ? 0 : 1][port] += packets;
+		}
+	}
+
+	/**
+	 * Counters of one switch after a round, immutable once published.
+	 */
+	static class SwitchCounters {
+		final long time;
+		// 上一个周期的通过/丢弃包数
+		final long[] pass;
+		final long[] drop;
+		// 规则上的累计计数
+		final long[] accumulatePass;
+		final long[] accumulateDrop;
+		// 周期内每秒的包数
+		final double[] packetRate;
+
+		SwitchCounters(long time, int length) {
+			this.time = time;
+			this.pass = new long[length];
+			this.drop = new long[length];
+			this.accumulatePass = new long[length];
+			this.accumulateDrop = new long[length];
+			this.packetRate = new double[length];
+		}
+
+		int length() {
+			return pass.length;
+		}
+
+		SwitchCounters copy() {
+			SwitchCounters c = new SwitchCounters(time, length());
+			System.arraycopy(pass, 0, c.pass, 0, length());
+			System.arraycopy(drop, 0, c.drop, 0, length());
+			System.arraycopy(accumulatePass, 0, c.accumulatePass, 0, length());
+			System.arraycopy(accumulateDrop, 0, c.accumulateDrop, 0, length());
+			System.arraycopy(packetRate, 0, c.packetRate, 0, length());
+			return c;
+		}
+	}
+
+	/**
+	 * Consistent view of all counters as of the last commit.
+	 */
+	public static class Snapshot {
+		private final FlowCounterTable table;
+		private final SwitchCounters[] switches;
+
+		Snapshot(FlowCounterTable table, SwitchCounters[] switches) {
+			this.table = table;
+			this.switches = switches;
+		}
+
+		private SwitchCounters of(DatapathId dpid, int port) {
+			Integer index = table.switchIndex.get(dpid);
+			if(index == null || index >= switches.length) {
+				return null;
+			}
+			SwitchCounters c = switches[index];
+			return c != null && port >= 0 && port < c.length() ? c : null;
+		}
+
+		/**
+		 * @param switchPort
+		 * @return false if no validation rule of the port was ever counted
+		 */
+		public boolean contains(SwitchPort switchPort) {
+			return of(switchPort.getSwitchDPID(), switchPort.getPort().getPortNumber()) != null;
+		}
+
+		public long getPassNum(SwitchPort switchPort) {
+			int port = switchPort.getPort().getPortNumber();
+			SwitchCounters c = of(switchPort.getSwitchDPID(), port);
+			return c == null ? 0 : c.pass[port];
+		}
+
+		public long getDropNum(SwitchPort switchPort) {
+			int port = switchPort.getPort().getPortNumber();
+			SwitchCounters c = of(switchPort.getSwitchDPID(), port);
+			return c == null ? 0 : c.drop[port];
+		}
+
+		/**
+		 * @param switchPort
+		 * @return dropped share of the packets of the last interval
+		 */
+		public double getDropRate(SwitchPort switchPort) {
+			int port = switchPort.getPort().getPortNumber();
+			SwitchCounters c = of(switchPort.getSwitchDPID(), port);
+			return c == null ? 0 : ratio(c.drop[port], c.pass[port]);
+		}
+
+		/**
+		 * @param switchPort
+		 * @return packets per second of the port in the last interval
+		 */
+		public double getPacketRate(SwitchPort switchPort) {
+			int port = switchPort.getPort().getPortNumber();
+			SwitchCounters c = of(switchPort.getSwitchDPID(), port);
+			return c == null ? 0 : c.packetRate[port];
+		}
+
+		/**
+		 * @param dpid
+		 * @param port
+		 * @return counters of the port in the REST representation, null if unknown
+		 */
+		public PacketOfFlow get(DatapathId dpid, OFPort port) {
+			int p = port.getPortNumber();
+			SwitchCounters c = of(dpid, p);
+			return c == null ? null : toPacketOfFlow(c, p);
+		}
+
+		/**
+		 * @return all ports that have counted packets
+		 */
+		public Map<SwitchPort, PacketOfFlow> toMap() {
+			Map<SwitchPort, PacketOfFlow> map = new LinkedHashMap<>();
+			for(Map.Entry<DatapathId, Integer> entry : table.switchIndex.entrySet()) {
+				int index = entry.getValue();
+				if(index >= switches.length || switches[index] == null) {
+					continue;
+				}
+				SwitchCounters c = switches[index];
+				for(int port = 0; port < c.length(); port++) {
+					if(c.accumulatePass[port] != 0 || c.accumulateDrop[port] != 0) {
+						map.put(new SwitchPort(entry.getKey(), OFPort.of(port)), toPacketOfFlow(c, port));
+					}
+				}
+			}
+			return map;
+		}
+
+		private static PacketOfFlow toPacketOfFlow(SwitchCounters c, int port) {
+			return new PacketOfFlow(c.pass[port], c.drop[port], c.accumulatePass[port], c.accumulateDrop[port],
+					ratio(c.drop[port], c.pass[port]), ratio(c.accumulateDrop[port], c.accumulatePass[port]));
+		}
+	}
+
+	public Round newRound() {
+		return new Round();
+	}
+
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Fold a poll into the table and publish the new snapshot. Switches
+	 * absent from the round, e.g. because they timed out, keep their counters.
+	 * @param round
+	 */
+	public synchronized void commit(Round round) {
+		long now = System.currentTimeMillis();
+		SwitchCounters[] switches = grow(snapshot.switches);
+
+		for(Map.Entry<DatapathId, long[][]> entry : round.counters.entrySet()) {
+			int index = indexOf(entry.getKey());
+			if(index >= switches.length) {
+				switches = Arrays.copyOf(switches, switchIndex.size());
+			}
+			long[] rawPass = entry.getValue()[0];
+			long[] rawDrop = entry.getValue()[1];
+			SwitchCounters prev = switches[index];
+			int length = Math.max(rawPass.length, prev == null ? 0 : prev.length());
+			SwitchCounters next = new SwitchCounters(now, length);
+			double seconds = prev == null ? 0 : (now - prev.time) / 1000.0;
+
+			for(int port = 0; port < length; port++) {
+				long p = port < rawPass.length ? rawPass[port] : 0;
+				long d = port < rawDrop.length ? rawDrop[port] : 0;
+				long prevPass = prev != null && port < prev.length() ? prev.accumulatePass[port] : 0;
+				long prevDrop = prev != null && port < prev.length() ? prev.accumulateDrop[port] : 0;
+				next.accumulatePass[port] = p;
+				next.accumulateDrop[port] = d;
+				next.pass[port] = delta(p, prevPass);
+				next.drop[port] = delta(d, prevDrop);
+				next.packetRate[port] = seconds > 0 ? (next.pass[port] + next.drop[port]) / seconds : 0;
+			}
+			switches[index] = next;
+		}
+		snapshot = new Snapshot(this, switches);
+	}
+
+	/**
+	 * Forget the counters of a port whose validation rules were removed.
+	 * @param switchPort
+	 */
+	public synchronized void reset(SwitchPort switchPort) {
+		Integer index = switchIndex.get(switchPort.getSwitchDPID());
+		int port = switchPort.getPort().getPortNumber();
+		SwitchCounters[] switches = snapshot.switches;
+		if(index == null || index >= switches.length || switches[index] == null || port < 0 || port >= switches[index].length()) {
+			return;
+		}
+		SwitchCounters c = switches[index].copy();
+		c.pass[port] = 0;
+		c.drop[port] = 0;
+		c.accumulatePass[port] = 0;
+		c.accumulateDrop[port] = 0;
+		c.packetRate[port] = 0;
+		switches = switches.clone();
+		switches[index] = c;
+		snapshot = new Snapshot(this, switches);
+	}
+
+	private int indexOf(DatapathId dpid) {
+		Integer index = switchIndex.get(dpid);
+		if(index == null) {
+			// 只有持有锁的写线程分配下标
+			index = switchIndex.size();
+			switchIndex.put(dpid, index);
+		}
+		return index;
+	}
+
+	private SwitchCounters[] grow(SwitchCounters[] switches) {
+		return Arrays.copyOf(switches, Math.max(switches.length, switchIndex.size()));
+	}
+
+	private static long delta(long current, long previous) {
+		// 计数变小说明规则被重新下发，从0开始计
+		return current >= previous ? current - previous : current;
+	}
+
+	private static double ratio(long part, long rest) {
+		long total = part + rest;
+		return total == 0 ? 0 : (part * 1.0) / total;
+	}
+}
@@ -16,6 +16,16 @@ public interface IAnalysisService extends IFloodlightService {
 	
 	public void changePlanByRest(int flag);
 	
+	public Object getDetectors();
+	
+	/**
+	 * Select the anomaly detector of a switch.
+	 * @param dpid
+	 * @param name detector name, "default" to follow the current plan again
+	 * @return false if there is no detector of that name
+	 */
+	public boolean setDetector(DatapathId dpid, String name);
+	
 	public U64 getInPacketsNum(DatapathId dpid,OFPort p);
 	
 	public U64 getOutPacketsNum(DatapathId dpid,OFPort p);
@@ -26,6 +36,8 @@ public interface IAnalysisService extends IFloodlightService {
 	
 	public Object getPortSet();
 	
+	public Object getPortHistory(DatapathId dpid, OFPort p);
+	
 	public Object showOutFlow();
 	
 	public void updateOutFlow();
@@ -0,0 +1,218 @@
+package net.floodlightcontroller.savi.analysis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+
+/**
+ * Non-blocking statistics poller of the analysis module.
+ *
+ * A poll writes one stats request per switch and composes the returned
+ * futures; no thread waits for a reply. Every switch gets its own timeout,
+ * a switch that does not answer in time is left out of the result instead
+ * of holding back the others. The merged result is handed to the callback
+ * on a bounded executor, never on the OpenFlow I/O threads; when that
+ * executor rejects it, the round is counted and dropped.
+ */
+public class StatisticsPoller {
+
+	private static final Logger log = LoggerFactory.getLogger(StatisticsPoller.class);
+
+	/**
+	 * Builds the request sent to a switch, null to skip the switch.
+	 */
+	public interface RequestFactory {
+		public OFStatsRequest<?> buildRequest(IOFSwitch sw);
+	}
+
+	/**
+	 * Receives the replies of one poll, keyed by switch. Switches that
+	 * were disconnected, failed or timed out are absent.
+	 */
+	public interface StatisticsCallback {
+		public void statisticsReceived(Map<DatapathId, List<OFStatsReply>> replies);
+	}
+
+	private final IOFSwitchService switchService;
+	private final ScheduledExecutorService timer;
+	private final Executor callbackExecutor;
+	private final long timeoutMs;
+	private final AtomicLong droppedRounds = new AtomicLong();
+
+	public StatisticsPoller(IOFSwitchService switchService, ScheduledExecutorService timer,
+			Executor callbackExecutor, long timeoutMs) {
+		this.switchService = switchService;
+		this.timer = timer;
+		this.callbackExecutor = callbackExecutor;
+		this.timeoutMs = timeoutMs;
+	}
+
+	public long getTimeoutMs() {
+		return timeoutMs;
+	}
+
+	/**
+	 * @return number of poll rounds whose replies were dropped because the
+	 * callback executor rejected them
+	 */
+	public long getDroppedRounds() {
+		return droppedRounds.get();
+	}
+
+	/**
+	 * Poll all given switches.
+	 * @param dpids
+	 * @param factory
+	 * @return future of the replies that arrived within the per-switch timeout
+	 */
+	public ListenableFuture<Map<DatapathId, List<OFStatsReply>>> poll(Set<DatapathId> dpids, RequestFactory factory) {
+		final Map<DatapathId, List<OFStatsReply>> replies = new ConcurrentHashMap<>();
+		final SettableFuture<Map<DatapathId, List<OFStatsReply>>> result = SettableFuture.create();
+		// one extra count for the loop below, so an early reply cannot complete the poll
+		final AtomicInteger pending = new AtomicInteger(1);
+
+		for(DatapathId dpid : dpids) {
+			IOFSwitch sw = switchService.getSwitch(dpid);
+			if(sw == null) {
+				continue;
+			}
+			OFStatsRequest<?> request = factory.buildRequest(sw);
+			if(request == null) {
+				continue;
+			}
+			pending.incrementAndGet();
+			request(sw, request, replies, pending, result);
+		}
+
+		if(pending.decrementAndGet() == 0) {
+			result.set(replies);
+		}
+		return result;
+	}
+
+	/**
+	 * Poll all given switches and deliver the replies to the callback.
+	 * @param dpids
+	 * @param factory
+	 * @param callback
+	 * @return future completing after the callback returned or the round was dropped
+	 */
+	public ListenableFuture<?> poll(Set<DatapathId> dpids, RequestFactory factory, final StatisticsCallback callback) {
+		final SettableFuture<Object> done = SettableFuture.create();
+		final ListenableFuture<Map<DatapathId, List<OFStatsReply>>> replies = poll(dpids, factory);
+		final Runnable deliver = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					callback.statisticsReceived(Futures.getUnchecked(replies));
+				} catch (Exception e) {
+					log.error("Statistics callback failed", e);
+				} finally {
+					done.set(null);
+				}
+			}
+		};
+		// only hand over on the completing thread, the callback runs on the executor
+		replies.addListener(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					callbackExecutor.execute(deliver);
+				} catch (RejectedExecutionException e) {
+					droppedRounds.incrementAndGet();
+					log.warn("Statistics callback executor is full, dropping a poll round of {} switches",
+							Futures.getUnchecked(replies).size());
+					done.set(null);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return done;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void request(final IOFSwitch sw, OFStatsRequest<?> request,
+			final Map<DatapathId, List<OFStatsReply>> replies, final AtomicInteger pending,
+			final SettableFuture<Map<DatapathId, List<OFStatsReply>>> result) {
+		final DatapathId dpid = sw.getId();
+		final AtomicBoolean finished = new AtomicBoolean(false);
+
+		final ListenableFuture<List<OFStatsReply>> future;
+		try {
+			future = (ListenableFuture<List<OFStatsReply>>) (ListenableFuture<?>) sw.writeStatsRequest(request, LogicalOFMessageCategory.STATS);
+		} catch (Exception e) {
+			log.error("Failure requesting statistics from switch {}. {}", dpid, e);
+			finish(finished, dpid, null, pending, replies, result);
+			return;
+		}
+
+		final ScheduledFuture<?> timeout = timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if(!finished.get()) {
+					log.debug("Statistics request to switch {} timed out after {} ms", dpid, timeoutMs);
+					future.cancel(false);
+					finish(finished, dpid, null, pending, replies, result);
+				}
+			}
+		}, timeoutMs, TimeUnit.MILLISECONDS);
+
+		Futures.addCallback(future, new FutureCallback<List<OFStatsReply>>() {
+			@Override
+			public void onSuccess(List<OFStatsReply> values) {
+				timeout.cancel(false);
+				finish(finished, dpid, values, pending, replies, result);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				timeout.cancel(false);
+				if(!finished.get()) {
+					log.error("Failure retrieving statistics from switch {}. {}", dpid, t.getMessage());
+				}
+				finish(finished, dpid, null, pending, replies, result);
+			}
+		});
+	}
+
+	/**
+	 * Settle one switch exactly once, whichever of reply, failure or timeout comes first.
+	 */
+	private static void finish(AtomicBoolean finished, DatapathId dpid, List<OFStatsReply> values,
+			AtomicInteger pending, Map<DatapathId, List<OFStatsReply>> replies,
+			SettableFuture<Map<DatapathId, List<OFStatsReply>>> result) {
+		if(!finished.compareAndSet(false, true)) {
+			return;
+		}
+		if(values != null) {
+			replies.put(dpid, values);
+		}
+		if(pending.decrementAndGet() == 0) {
+			result.set(replies);
+		}
+	}
+}
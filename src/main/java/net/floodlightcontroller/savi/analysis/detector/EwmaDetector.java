@@ -0,0 +1,114 @@
+package net.floodlightcontroller.savi.analysis.detector;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * Per-port exponentially weighted mean and variance of the inbound packet
+ * rate. A rate more than {@code k} deviations and {@code minDelta} packets
+ * per second above the mean is anomalous.
+ *
+ * Only normal samples move the baseline, so a sustained flood does not
+ * become the new normal. This replaces the per-host peak traffic file of
+ * the traffic plan: the baseline is learned for every port.
+ */
+public class EwmaDetector implements IAnomalyDetector {
+
+	public static final String NAME = "ewma";
+
+	private final double alpha;
+	private final double k;
+	private final double minDelta;
+	private final int warmup;
+
+	private static class State {
+		double mean;
+		double variance;
+		int samples;
+		// last round the port was fed in
+		long round;
+
+		State(double mean) {
+			this.mean = mean;
+		}
+	}
+
+	private final Map<SwitchPort, State> states = new HashMap<>();
+	private long round;
+
+	public EwmaDetector() {
+		this(0.2, 3, 100, 5);
+	}
+
+	/**
+	 * @param alpha weight of a new sample
+	 * @param k deviations above the mean
+	 * @param minDelta minimum distance from the mean in packets per second
+	 * @param warmup samples learned before the port is judged
+	 */
+	public EwmaDetector(double alpha, double k, double minDelta, int warmup) {
+		this.alpha = alpha;
+		this.k = k;
+		this.minDelta = minDelta;
+		this.warmup = warmup;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public synchronized void startRound() {
+		round++;
+	}
+
+	@Override
+	public synchronized void update(SwitchPort switchPort, long passNum, long dropNum, double inRate) {
+		State state = states.get(switchPort);
+		if(state != null) {
+			state.round = round;
+		}
+		else if(inRate >= 0) {
+			state = new State(inRate);
+			state.round = round;
+			states.put(switchPort, state);
+		}
+	}
+
+	@Override
+	public synchronized boolean isAnomalous(SwitchPort switchPort, long passNum, long dropNum, double inRate) {
+		State state = states.get(switchPort);
+		if(inRate < 0 || state == null) {
+			return false;
+		}
+
+		double diff = inRate - state.mean;
+		if(state.samples >= warmup && diff > minDelta && diff > k * Math.sqrt(state.variance)) {
+			return true;
+		}
+		// 只有正常样本才更新基线
+		double incr = alpha * diff;
+		state.mean += incr;
+		state.variance = (1 - alpha) * (state.variance + diff * incr);
+		state.samples++;
+		return false;
+	}
+
+	@Override
+	public synchronized void endRound() {
+		Iterator<State> it = states.values().iterator();
+		while(it.hasNext()) {
+			if(it.next().round != round) {
+				it.remove();
+			}
+		}
+	}
+
+	synchronized int size() {
+		return states.size();
+	}
+}
@@ -0,0 +1,124 @@
+package net.floodlightcontroller.savi.analysis.detector;
+
+import java.util.Arrays;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * Count-min sketch of the dropped packets per port. A port whose estimated
+ * drops make up more than {@code share} of all drops of the current and the
+ * previous window is a heavy hitter, e.g. the source of a spoofing flood.
+ *
+ * The drops of all ports of a round are added before any port is judged,
+ * so a port is compared with the final total of the round.
+ *
+ * Memory is fixed by the sketch size whatever the number of ports, an
+ * update touches one counter per row. Every {@code windowRounds} rounds the
+ * current sketch becomes the previous one and a cleared sketch takes over.
+ */
+public class HeavyHitterDetector implements IAnomalyDetector {
+
+	public static final String NAME = "heavyhitter";
+
+	private static final long[] SEEDS = {
+		0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+		0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x85EBCA77C2B2AE63L
+	};
+
+	private final int depth;
+	private final int widthMask;
+	private final int windowRounds;
+	private final double share;
+	private final long minDrop;
+
+	private long[][] current;
+	private long[][] previous;
+	private long currentTotal;
+	private long previousTotal;
+	private int rounds;
+
+	public HeavyHitterDetector() {
+		this(4, 1024, 10, 0.2, 100);
+	}
+
+	/**
+	 * @param depth rows of the sketch, at most 8
+	 * @param width counters per row, rounded up to a power of two
+	 * @param windowRounds statistics rounds per window
+	 * @param share fraction of all drops above which a port is a heavy hitter
+	 * @param minDrop minimum estimated drops of a heavy hitter
+	 */
+	public HeavyHitterDetector(int depth, int width, int windowRounds, double share, long minDrop) {
+		if(depth < 1 || depth > SEEDS.length) {
+			throw new IllegalArgumentException("depth must be between 1 and " + SEEDS.length);
+		}
+		this.depth = depth;
+		this.widthMask = Integer.highestOneBit(Math.max(1, width - 1) << 1) - 1;
+		this.windowRounds = windowRounds;
+		this.share = share;
+		this.minDrop = minDrop;
+		this.current = new long[depth][widthMask + 1];
+		this.previous = new long[depth][widthMask + 1];
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public synchronized void startRound() {
+		if(++rounds < windowRounds) {
+			return;
+		}
+		rounds = 0;
+		long[][] t = previous;
+		previous = current;
+		current = t;
+		for(long[] row : current) {
+			Arrays.fill(row, 0);
+		}
+		previousTotal = currentTotal;
+		currentTotal = 0;
+	}
+
+	@Override
+	public synchronized void update(SwitchPort switchPort, long passNum, long dropNum, double inRate) {
+		if(dropNum <= 0) {
+			return;
+		}
+		long key = key(switchPort);
+		for(int row = 0; row < depth; row++) {
+			current[row][index(key, row)] += dropNum;
+		}
+		currentTotal += dropNum;
+	}
+
+	@Override
+	public synchronized boolean isAnomalous(SwitchPort switchPort, long passNum, long dropNum, double inRate) {
+		if(dropNum <= 0) {
+			return false;
+		}
+		long key = key(switchPort);
+		long estimate = Long.MAX_VALUE;
+		for(int row = 0; row < depth; row++) {
+			int index = index(key, row);
+			estimate = Math.min(estimate, current[row][index] + previous[row][index]);
+		}
+		return estimate >= minDrop && estimate > share * (currentTotal + previousTotal);
+	}
+
+	@Override
+	public void endRound() {
+		// 草图大小固定，不需要按端口清理
+	}
+
+	private static long key(SwitchPort switchPort) {
+		return switchPort.getSwitchDPID().getLong() * 31 + switchPort.getPort().getPortNumber();
+	}
+
+	private int index(long key, int row) {
+		long h = (key ^ (key >>> 33)) * SEEDS[row];
+		return (int)(h >>> 40) & widthMask;
+	}
+}
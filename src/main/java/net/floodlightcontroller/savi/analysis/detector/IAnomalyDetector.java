@@ -0,0 +1,55 @@
+package net.floodlightcontroller.savi.analysis.detector;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * Streaming detector deciding whether a host port behaves abnormally.
+ *
+ * DataAnalysis runs a statistics round from one thread: {@link #startRound()},
+ * {@link #update} for every host port, {@link #isAnomalous} for every host
+ * port, then {@link #endRound()}. A detector comparing a port with the
+ * others, such as a share of all drops, therefore decides on the totals of
+ * the whole round whatever the order of the ports. Implementations keep a
+ * bounded amount of state per port, must update it in constant time per
+ * sample and forget the ports that were not fed in a round, so the cost of
+ * a round is linear in the number of ports.
+ */
+public interface IAnomalyDetector {
+
+	/**
+	 * @return name used to select the detector through the REST API
+	 */
+	public String getName();
+
+	/**
+	 * Called once before the samples of a statistics round.
+	 */
+	public void startRound();
+
+	/**
+	 * Feed the sample of one port, before any port of the round is classified.
+	 * @param switchPort
+	 * @param passNum packets admitted by the validation rules in the last interval, -1 if the port has no validation rules
+	 * @param dropNum packets dropped by the validation rules in the last interval, -1 if the port has no validation rules
+	 * @param inRate packets per second received on the port, -1 if not known yet
+	 */
+	public void update(SwitchPort switchPort, long passNum, long dropNum, double inRate);
+
+	/**
+	 * Classify the sample of a port fed in this round. A detector looking at
+	 * each port on its own may learn from the sample here, once it is known
+	 * to be normal.
+	 * @param switchPort
+	 * @param passNum same as given to {@link #update}
+	 * @param dropNum same as given to {@link #update}
+	 * @param inRate same as given to {@link #update}
+	 * @return true if the sample is anomalous
+	 */
+	public boolean isAnomalous(SwitchPort switchPort, long passNum, long dropNum, double inRate);
+
+	/**
+	 * Called once after the samples of a statistics round. State of the
+	 * ports that were not fed in the round is dropped.
+	 */
+	public void endRound();
+}
@@ -0,0 +1,54 @@
+package net.floodlightcontroller.savi.analysis.detector;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * Fixed thresholds on the drop rate and the drop count of the validation
+ * rules. Stateless, this is the original loss rate plan.
+ */
+public class LossRateDetector implements IAnomalyDetector {
+
+	public static final String NAME = "lossrate";
+
+	private final double lossRateThreshold;
+	private final long lossNumThreshold;
+
+	public LossRateDetector() {
+		this(0.018, 100);
+	}
+
+	public LossRateDetector(double lossRateThreshold, long lossNumThreshold) {
+		this.lossRateThreshold = lossRateThreshold;
+		this.lossNumThreshold = lossNumThreshold;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public void startRound() {
+	}
+
+	@Override
+	public void update(SwitchPort switchPort, long passNum, long dropNum, double inRate) {
+	}
+
+	@Override
+	public boolean isAnomalous(SwitchPort switchPort, long passNum, long dropNum, double inRate) {
+		if(dropNum <= 0) {
+			return false;
+		}
+		// 丢包率为1的边缘情况样本过于偏差，只看丢包数
+		double dropRate = (dropNum * 1.0) / (passNum + dropNum);
+		if(dropRate != 1 && dropRate > lossRateThreshold) {
+			return true;
+		}
+		return dropNum > lossNumThreshold;
+	}
+
+	@Override
+	public void endRound() {
+	}
+}
@@ -0,0 +1,128 @@
+package net.floodlightcontroller.savi.analysis.detector;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * Z-score of the dropped packets of a port against its last {@code window}
+ * normal samples. A ring buffer with running sums keeps the update O(1).
+ *
+ * Anomalous samples are not added to the window, and a sample must also
+ * exceed the mean by {@code minDrop} packets so that a flat window (zero
+ * deviation) does not flag every single drop.
+ */
+public class ZScoreDetector implements IAnomalyDetector {
+
+	public static final String NAME = "zscore";
+
+	private final int window;
+	private final double threshold;
+	private final long minDrop;
+
+	private static class Window {
+		final long[] samples;
+		int next;
+		int count;
+		double sum;
+		double sumOfSquares;
+		// last round the port was fed in
+		long round;
+
+		Window(int size) {
+			samples = new long[size];
+		}
+
+		void add(long sample) {
+			if(count == samples.length) {
+				long old = samples[next];
+				sum -= old;
+				sumOfSquares -= (double)old * old;
+			}
+			else {
+				count++;
+			}
+			samples[next] = sample;
+			sum += sample;
+			sumOfSquares += (double)sample * sample;
+			next = (next + 1) % samples.length;
+		}
+	}
+
+	private final Map<SwitchPort, Window> windows = new HashMap<>();
+	private long round;
+
+	public ZScoreDetector() {
+		this(20, 3, 50);
+	}
+
+	/**
+	 * @param window number of samples per port
+	 * @param threshold z-score above which a sample is anomalous
+	 * @param minDrop minimum distance from the mean in packets
+	 */
+	public ZScoreDetector(int window, double threshold, long minDrop) {
+		this.window = window;
+		this.threshold = threshold;
+		this.minDrop = minDrop;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public synchronized void startRound() {
+		round++;
+	}
+
+	@Override
+	public synchronized void update(SwitchPort switchPort, long passNum, long dropNum, double inRate) {
+		Window w = windows.get(switchPort);
+		if(w == null) {
+			if(dropNum < 0) {
+				return;
+			}
+			w = new Window(window);
+			windows.put(switchPort, w);
+		}
+		w.round = round;
+	}
+
+	@Override
+	public synchronized boolean isAnomalous(SwitchPort switchPort, long passNum, long dropNum, double inRate) {
+		Window w = windows.get(switchPort);
+		if(dropNum < 0 || w == null) {
+			return false;
+		}
+
+		if(w.count > 1) {
+			double mean = w.sum / w.count;
+			// 浮点误差可能使方差略小于0
+			double variance = Math.max(0, w.sumOfSquares / w.count - mean * mean);
+			double diff = dropNum - mean;
+			if(diff > minDrop && diff > threshold * Math.sqrt(variance)) {
+				return true;
+			}
+		}
+		w.add(dropNum);
+		return false;
+	}
+
+	@Override
+	public synchronized void endRound() {
+		Iterator<Window> it = windows.values().iterator();
+		while(it.hasNext()) {
+			if(it.next().round != round) {
+				it.remove();
+			}
+		}
+	}
+
+	synchronized int size() {
+		return windows.size();
+	}
+}
@@ -17,6 +17,7 @@ public class AnalysisWebRoutable implements RestletRoutable {
 	protected static final String TABLE_ID = "tableId";
 	protected static final String SWITCH_ID = "switchId";
 	protected static final String ISDYNAMIC = "dynamic";
+	protected static final String DETECTOR = "detector";
 	
 	@Override
 	public Router getRestlet(Context context) {
@@ -30,7 +31,10 @@ public class AnalysisWebRoutable implements RestletRoutable {
 		router.attach("/packets/drop/{"+ DPID_STR+ "}/{"+ PORT_STR +"}/json" , PacketOfFlowResource.class);
 		router.attach("/packets/drop/json" , PacketOfAllFlowResource.class);
 		router.attach("/ports/json" , PortSetResource.class);
+		router.attach("/ports/{"+ DPID_STR + "}/{" + PORT_STR + "}/history/json" , PortHistoryResource.class);
 		router.attach("/plan/{" + PLAN_TYPE +"}/json" , PlanResource.class);
+		router.attach("/detector/json" , DetectorResource.class);	//list detectors
+		router.attach("/detector/{"+ SWITCH_ID +"}/{"+ DETECTOR +"}/json" , DetectorResource.class);	//select detector of a switch
 
 		router.attach("/traffic/get/out", SpecifyOutflowResource.class);
 		router.attach("/traffic/update/out", SpecifyOutflowResource.class);
@@ -0,0 +1,47 @@
+package net.floodlightcontroller.savi.analysis.web;
+
+import java.util.Collections;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.restlet.resource.Get;
+import org.restlet.resource.Post;
+import org.restlet.resource.Put;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.floodlightcontroller.savi.analysis.IAnalysisService;
+
+public class DetectorResource extends ServerResource {
+
+	private static final Logger log = LoggerFactory.getLogger(DetectorResource.class);
+	
+	@Get("json")
+	public Object retrieve() {
+		IAnalysisService analysisService = (IAnalysisService) getContext().getAttributes().get(IAnalysisService.class.getCanonicalName());
+		return analysisService.getDetectors();
+	}
+	
+	@Post
+	@Put
+	public Object config() {
+		IAnalysisService analysisService = (IAnalysisService) getContext().getAttributes().get(IAnalysisService.class.getCanonicalName());
+		String swStr = (String) getRequestAttributes().get(AnalysisWebRoutable.SWITCH_ID);
+		String detector = (String) getRequestAttributes().get(AnalysisWebRoutable.DETECTOR);
+		if(swStr == null || detector == null) {
+			return Collections.singletonMap("ERROR", "Unimplemented configuration option");
+		}
+		
+		DatapathId dpid;
+		try {
+			dpid = DatapathId.of(swStr);
+		} catch (Exception e) {
+			log.error("Error, unable to parse switch id {}", swStr);
+			return Collections.singletonMap("ERROR", "Invalid switch id " + swStr);
+		}
+		if(!analysisService.setDetector(dpid, detector)) {
+			return Collections.singletonMap("ERROR", "Unknown detector " + detector);
+		}
+		return Collections.singletonMap("success", dpid.toString() + " uses " + detector);
+	}
+}
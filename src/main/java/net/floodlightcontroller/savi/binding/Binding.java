@@ -52,12 +52,17 @@ public class Binding<T extends IPAddress<?>> {
 			return false;
 		}
 		long currentTime = System.currentTimeMillis() / 1000;
-		if(currentTime>=(bindingTime+leaseTime)){
-			return false;
-		}
-		else{
-			return true;
+		return currentTime >= (bindingTime + leaseTime);
+	}
+	
+	/**
+	 * @return end of the lease in milliseconds, 0 if the lease never expires
+	 */
+	public long getLeaseDeadline(){
+		if(leaseTime == 0){
+			return 0;
 		}
+		return (bindingTime + leaseTime) * 1000;
 	}
 	
 	public void clearLeaseTime(){
@@ -124,6 +129,10 @@ public class Binding<T extends IPAddress<?>> {
 		this.bindingTime = System.currentTimeMillis() / 1000;
 	}
 	
+	public void setBindingTime(long bindingTime) {
+		this.bindingTime = bindingTime;
+	}
+	
 	public long getLeaseTime() {
 		return leaseTime;
 	}
@@ -0,0 +1,350 @@
+package net.floodlightcontroller.savi.binding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPAddress;
+import org.projectfloodlight.openflow.types.IPVersion;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * Append-only journal of binding changes, used to rebuild the binding
+ * state after a controller restart.
+ *
+ * Every change is one fixed size record appended to a memory-mapped file,
+ * so logging a binding is a few stores into the page cache. The op byte of
+ * a record is written last: a record whose op is zero marks the end of the
+ * journal, a torn record is therefore never replayed. {@link #compact(BindingManager)}
+ * writes the live bindings to a snapshot file, renames it over the old one
+ * and clears the journal. Recovery reads the snapshot and replays the
+ * journal, both sequentially. Replaying a journal over a snapshot that
+ * already contains it gives the same state, so a crash between the rename
+ * and the clear is harmless.
+ */
+public class BindingJournal {
+
+	private static final Logger log = LoggerFactory.getLogger(BindingJournal.class);
+
+	public static final byte OP_BIND = 1;
+	public static final byte OP_UNBIND = 2;
+	public static final byte OP_CLEAR_SWITCH = 3;
+
+	static final int RECORD_SIZE = 64;
+	// 65536 records per mapped chunk
+	static final int CHUNK_SIZE = RECORD_SIZE << 16;
+
+	static final String JOURNAL_FILE = "bindings.journal";
+	static final String SNAPSHOT_FILE = "bindings.snapshot";
+	static final String SNAPSHOT_TMP_FILE = "bindings.snapshot.tmp";
+
+	private final File directory;
+	private final File journalFile;
+	private final File snapshotFile;
+
+	private RandomAccessFile journal;
+	private FileChannel channel;
+	private MappedByteBuffer chunk;
+	private long chunkStart;
+	// offset of the next record in the journal file
+	private long writeOffset;
+	private long records;
+	private boolean dirty;
+
+	public BindingJournal(File directory) {
+		this.directory = directory;
+		this.journalFile = new File(directory, JOURNAL_FILE);
+		this.snapshotFile = new File(directory, SNAPSHOT_FILE);
+	}
+
+	/**
+	 * Rebuild the bindings from the snapshot and the journal and open the
+	 * journal for appending.
+	 * @return live bindings, in the order they were last bound
+	 * @throws IOException
+	 */
+	public synchronized List<Binding<?>> load() throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create binding journal directory " + directory);
+		}
+
+		Map<IPAddress<?>, Binding<?>> bindings = new LinkedHashMap<>();
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+		if(snapshotFile.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16))) {
+				while(true) {
+					try {
+						in.readFully(record.array());
+					} catch (EOFException e) {
+						break;
+					}
+					record.clear();
+					if(!apply(record, bindings)) {
+						break;
+					}
+				}
+			}
+		}
+
+		journal = new RandomAccessFile(journalFile, "rw");
+		channel = journal.getChannel();
+		writeOffset = 0;
+		records = 0;
+		ByteBuffer block = ByteBuffer.allocate(1 << 16);
+		boolean end = false;
+		while(!end) {
+			block.clear();
+			int read = channel.read(block, writeOffset);
+			if(read < RECORD_SIZE) {
+				break;
+			}
+			for(int pos = 0; pos + RECORD_SIZE <= read; pos += RECORD_SIZE) {
+				block.limit(pos + RECORD_SIZE).position(pos);
+				if(!apply(block.slice(), bindings)) {
+					end = true;
+					break;
+				}
+				writeOffset += RECORD_SIZE;
+				records++;
+			}
+		}
+		map(writeOffset - writeOffset % CHUNK_SIZE);
+
+		log.info("Recovered {} bindings from {}, {} journal records replayed",
+				new Object[] { bindings.size(), directory, records });
+		return new ArrayList<>(bindings.values());
+	}
+
+	public void bind(Binding<?> binding) {
+		append(OP_BIND, binding, null);
+	}
+
+	public void unbind(Binding<?> binding) {
+		append(OP_UNBIND, binding, null);
+	}
+
+	public void clearSwitch(DatapathId switchId) {
+		append(OP_CLEAR_SWITCH, null, switchId);
+	}
+
+	/**
+	 * @return records appended since the last compaction
+	 */
+	public synchronized long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Flush appended records to the disk.
+	 */
+	public synchronized void force() {
+		if(dirty && chunk != null) {
+			chunk.force();
+			dirty = false;
+		}
+	}
+
+	/**
+	 * Replace the snapshot with the bindings of the manager and start an
+	 * empty journal. Changes are logged after they are applied to the
+	 * manager, so reading it under the journal lock loses none of them.
+	 * @param manager
+	 * @throws IOException
+	 */
+	public synchronized void compact(BindingManager manager) throws IOException {
+		if(channel == null) {
+			return;
+		}
+		List<Binding<?>> bindings = manager.getBindings();
+		File tmp = new File(directory, SNAPSHOT_TMP_FILE);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		int count = 0;
+		try (FileOutputStream fos = new FileOutputStream(tmp);
+				BufferedOutputStream out = new BufferedOutputStream(fos, 1 << 16)) {
+			for(Binding<?> binding : bindings) {
+				record.clear();
+				encode(record, OP_BIND, binding, null);
+				out.write(record.array());
+				count++;
+			}
+			out.flush();
+			fos.getFD().sync();
+		}
+		Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		// zero the used part of the journal, the rest is still zero
+		ByteBuffer zero = ByteBuffer.allocate(CHUNK_SIZE);
+		for(long pos = 0; pos < writeOffset; pos += CHUNK_SIZE) {
+			zero.clear();
+			zero.limit((int)Math.min(CHUNK_SIZE, writeOffset - pos));
+			channel.write(zero, pos);
+		}
+		channel.force(false);
+		writeOffset = 0;
+		records = 0;
+		dirty = false;
+		map(0);
+		log.debug("Compacted binding journal, {} bindings in snapshot", count);
+	}
+
+	public synchronized void close() {
+		force();
+		chunk = null;
+		try {
+			if(journal != null) {
+				journal.close();
+			}
+		} catch (IOException e) {
+			log.warn("Failure closing binding journal " + journalFile, e);
+		}
+		journal = null;
+		channel = null;
+	}
+
+	private synchronized void append(byte op, Binding<?> binding, DatapathId switchId) {
+		if(channel == null) {
+			return;
+		}
+		try {
+			if(writeOffset + RECORD_SIZE > chunkStart + CHUNK_SIZE) {
+				chunk.force();
+				map(chunkStart + CHUNK_SIZE);
+			}
+			int pos = (int)(writeOffset - chunkStart);
+			ByteBuffer record = chunk.duplicate();
+			record.position(pos);
+			record.limit(pos + RECORD_SIZE);
+			encode(record.slice(), op, binding, switchId);
+			writeOffset += RECORD_SIZE;
+			records++;
+			dirty = true;
+		} catch (IOException e) {
+			log.error("Failure appending to binding journal " + journalFile + ", disabling it", e);
+			close();
+		}
+	}
+
+	private void map(long start) throws IOException {
+		chunkStart = start;
+		chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, CHUNK_SIZE);
+	}
+
+	/**
+	 * Layout: op(1) ipVersion(1) status(1) pad(1) port(4) dpid(8) mac(8)
+	 * addrHi(8) addrLo(8) bindingTime(8) leaseTime(8) transactionId(8).
+	 */
+	private static void encode(ByteBuffer record, byte op, Binding<?> binding, DatapathId switchId) {
+		if(binding != null) {
+			IPAddress<?> address = binding.getAddress();
+			SwitchPort switchPort = binding.getSwitchPort();
+			if(address.getIpVersion() == IPVersion.IPv4) {
+				record.put(1, (byte)4);
+				record.putLong(24, 0);
+				record.putLong(32, ((IPv4Address)address).getInt() & 0xFFFFFFFFL);
+			}
+			else {
+				record.put(1, (byte)6);
+				record.putLong(24, ((IPv6Address)address).getHi());
+				record.putLong(32, ((IPv6Address)address).getLo());
+			}
+			record.put(2, (byte)(binding.getStatus() == null ? -1 : binding.getStatus().ordinal()));
+			record.putInt(4, switchPort.getPort().getPortNumber());
+			record.putLong(8, switchPort.getSwitchDPID().getLong());
+			record.putLong(16, binding.getMacAddress().getLong());
+			record.putLong(40, binding.getBindingTime());
+			record.putLong(48, binding.getLeaseTime());
+			record.putLong(56, binding.getTransactionId());
+		}
+		else {
+			record.putLong(8, switchId.getLong());
+		}
+		record.put(0, op);
+	}
+
+	/**
+	 * Apply one record to the bindings.
+	 * @return false at the end of the log
+	 */
+	private static boolean apply(ByteBuffer record, Map<IPAddress<?>, Binding<?>> bindings) {
+		byte op = record.get(0);
+		switch(op) {
+		case OP_BIND:
+			Binding<?> binding = decode(record);
+			// keep the map ordered by the last bind
+			bindings.remove(binding.getAddress());
+			bindings.put(binding.getAddress(), binding);
+			return true;
+		case OP_UNBIND:
+			bindings.remove(decodeAddress(record));
+			return true;
+		case OP_CLEAR_SWITCH:
+			DatapathId switchId = DatapathId.of(record.getLong(8));
+			Iterator<Binding<?>> it = bindings.values().iterator();
+			while(it.hasNext()) {
+				if(it.next().getSwitchPort().getSwitchDPID().equals(switchId)) {
+					it.remove();
+				}
+			}
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static IPAddress<?> decodeAddress(ByteBuffer record) {
+		if(record.get(1) == 4) {
+			return IPv4Address.of((int)record.getLong(32));
+		}
+		return IPv6Address.of(record.getLong(24), record.getLong(32));
+	}
+
+	private static Binding<?> decode(ByteBuffer record) {
+		IPAddress<?> address = decodeAddress(record);
+		Binding<?> binding;
+		if(address.getIpVersion() == IPVersion.IPv4) {
+			Binding<IPv4Address> ipv4Binding = new Binding<>();
+			ipv4Binding.setAddress((IPv4Address)address);
+			binding = ipv4Binding;
+		}
+		else {
+			Binding<IPv6Address> ipv6Binding = new Binding<>();
+			ipv6Binding.setAddress((IPv6Address)address);
+			binding = ipv6Binding;
+		}
+		int status = record.get(2);
+		if(status >= 0 && status < BindingStatus.values().length) {
+			binding.setStatus(BindingStatus.values()[status]);
+		}
+		binding.setSwitchPort(new SwitchPort(DatapathId.of(record.getLong(8)), OFPort.of(record.getInt(4))));
+		binding.setMacAddress(MacAddress.of(record.getLong(16)));
+		binding.setBindingTime(record.getLong(40));
+		binding.setLeaseTime(record.getLong(48));
+		binding.setTransactionId(record.getLong(56));
+		return binding;
+	}
+}
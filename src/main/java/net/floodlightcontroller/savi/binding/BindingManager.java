@@ -1,11 +1,11 @@
 package net.floodlightcontroller.savi.binding;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.IPAddress;
@@ -13,107 +13,87 @@ import org.projectfloodlight.openflow.types.IPVersion;
 import org.projectfloodlight.openflow.types.IPv4Address;
 import org.projectfloodlight.openflow.types.IPv6Address;
 import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+
 import net.floodlightcontroller.devicemanager.SwitchPort;
 
+/**
+ * Binding store of the SAVI provider. Primary tables are keyed by primitive
+ * address values (see {@link BindingTable}) so that the checks done for every
+ * edge PACKET_IN are wait-free and allocation-free. Writers are serialized
+ * on the manager so the per-switch indices always agree with the tables.
+ */
 public class BindingManager {
-	
-	protected Map<IPv4Address, Binding<IPv4Address>> ipv4Binding;
-	protected Map<IPv6Address, Binding<IPv6Address>> ipv6Binding;
-	protected Map<MacAddress, SwitchPort> hardwareBinding;
-	
-	protected Map<DatapathId, Set<IPv4Address>> ipv4SwitchBinding;
-	protected Map<DatapathId, Set<IPv6Address>> ipv6SwitchBinding;
-	protected Map<DatapathId, Set<MacAddress>> hardwareSwitchBinding;
-	
-	
+
+	protected final BindingTable<Binding<IPv4Address>> ipv4Binding;
+	protected final BindingTable<Binding<IPv6Address>> ipv6Binding;
+	protected final BindingTable<SwitchPort> hardwareBinding;
+
+	protected final ConcurrentMap<DatapathId, Set<IPv4Address>> ipv4SwitchBinding;
+	protected final ConcurrentMap<DatapathId, Set<IPv6Address>> ipv6SwitchBinding;
+	protected final ConcurrentMap<DatapathId, Set<MacAddress>> hardwareSwitchBinding;
+
+
 	public static final byte SUCCESS = 0;
 	public static final byte FAIL = 1;
 	public static final byte NO_EXIST = 2;
 
-	
+
 	public BindingManager() {
-		ipv4Binding = new ConcurrentHashMap<>();
-		ipv6Binding = new ConcurrentHashMap<>();
-		hardwareBinding = new ConcurrentHashMap<>();
-		
+		ipv4Binding = new BindingTable<>();
+		ipv6Binding = new BindingTable<>();
+		hardwareBinding = new BindingTable<>();
+
 		ipv4SwitchBinding = new ConcurrentHashMap<>();
 		ipv6SwitchBinding = new ConcurrentHashMap<>();
 		hardwareSwitchBinding = new ConcurrentHashMap<>();
-		
+
 	}
-	
+
 	public void addSwitch(DatapathId switchId) {
-		if(!ipv4SwitchBinding.containsKey(switchId)){
-			ipv4SwitchBinding.put(switchId, new HashSet<IPv4Address>());
-		}
-		if(!ipv6SwitchBinding.containsKey(switchId)){
-			ipv6SwitchBinding.put(switchId, new HashSet<IPv6Address>());
-		}
-		if(!hardwareSwitchBinding.containsKey(switchId)){
-			hardwareSwitchBinding.put(switchId, new HashSet<MacAddress>());
-		}
+		indexOf(ipv4SwitchBinding, switchId);
+		indexOf(ipv6SwitchBinding, switchId);
+		indexOf(hardwareSwitchBinding, switchId);
 	}
-	
+
 	@SuppressWarnings("unchecked")
-	public void addBinding(Binding<?> binding) {
+	public synchronized void addBinding(Binding<?> binding) {
 		IPAddress<?> address = binding.getAddress();
-		
+
 		SwitchPort switchPort = binding.getSwitchPort();
 		DatapathId switchId = switchPort.getSwitchDPID();
-		
+
 		MacAddress macAddress = binding.getMacAddress();
-		
+
 		if(address.getIpVersion() == IPVersion.IPv4) {
 			IPv4Address ipv4Address = (IPv4Address) address;
-			ipv4Binding.put(ipv4Address, (Binding<IPv4Address>)binding);
-			
-			Set<IPv4Address> set = null;
-			if(ipv4SwitchBinding.containsKey(switchId)){
-				set = ipv4SwitchBinding.get(switchId);
-			}
-			else{
-				set = new HashSet<>();
-				ipv4SwitchBinding.put(switchId, set);
+			Binding<IPv4Address> old = ipv4Binding.put(ipv4Key(ipv4Address), (Binding<IPv4Address>)binding);
+			if(old != null && !old.getSwitchPort().getSwitchDPID().equals(switchId)) {
+				unindex(ipv4SwitchBinding, old.getSwitchPort().getSwitchDPID(), ipv4Address);
 			}
-			set.add(ipv4Address);
+			indexOf(ipv4SwitchBinding, switchId).add(ipv4Address);
 		}
 		else {
 			IPv6Address ipv6Address = (IPv6Address) address;
-			ipv6Binding.put(ipv6Address, (Binding<IPv6Address>)binding);
-			
-			Set<IPv6Address> set = null;
-			if(ipv6SwitchBinding.containsKey(switchId)){
-				set = ipv6SwitchBinding.get(switchId);
-			}
-			else{
-				set = new HashSet<>();
-				ipv6SwitchBinding.put(switchId, set);
+			Binding<IPv6Address> old = ipv6Binding.put(ipv6Address.getHi(), ipv6Address.getLo(), (Binding<IPv6Address>)binding);
+			if(old != null && !old.getSwitchPort().getSwitchDPID().equals(switchId)) {
+				unindex(ipv6SwitchBinding, old.getSwitchPort().getSwitchDPID(), ipv6Address);
 			}
-			set.add(ipv6Address);
+			indexOf(ipv6SwitchBinding, switchId).add(ipv6Address);
 		}
-		
-		addBinding(macAddress, binding.getSwitchPort());
+
+		addBinding(macAddress, switchPort);
 	}
 
-	public void addBinding(MacAddress macAddress, SwitchPort switchPort) {
-		if (!hardwareBinding.containsKey(macAddress)) {
-			hardwareBinding.put(macAddress, switchPort);
-			
-			DatapathId dpid = switchPort.getSwitchDPID();
-			Set<MacAddress> set = null;
-			if(hardwareSwitchBinding.containsKey(dpid)){
-				set = hardwareSwitchBinding.get(dpid);
-			}
-			else{
-				set = new HashSet<>();
-			}
-			set.add(macAddress);
+	public synchronized void addBinding(MacAddress macAddress, SwitchPort switchPort) {
+		if (hardwareBinding.putIfAbsent(macAddress.getLong(), switchPort) == null) {
+			indexOf(hardwareSwitchBinding, switchPort.getSwitchDPID()).add(macAddress);
 		}
 	}
 
 	public SwitchPort getSwitchPort(IPv4Address ipv4Address) {
-		Binding<?> binding = ipv4Binding.get(ipv4Address);
-		
+		Binding<?> binding = ipv4Binding.get(ipv4Key(ipv4Address));
+
 		if (binding != null) {
 			return binding.getSwitchPort();
 		}
@@ -121,127 +101,200 @@ public class BindingManager {
 	}
 
 	public SwitchPort getSwitchPort(IPv6Address ipv6Address) {
-		Binding<?> binding = ipv6Binding.get(ipv6Address);
+		Binding<?> binding = ipv6Binding.get(ipv6Address.getHi(), ipv6Address.getLo());
 		if(binding != null){
 			return binding.getSwitchPort();
 		}
 		return null;
 	}
-	
+
+	public SwitchPort getSwitchPort(MacAddress macAddress) {
+		return hardwareBinding.get(macAddress.getLong());
+	}
+
 	public boolean check(SwitchPort switchPort, IPAddress<?> address) {
-		Binding<?> binding = null;
-		if(address.getIpVersion() == IPVersion.IPv4) {
-			binding = ipv4Binding.get(address);
-		}
-		else {
-			binding = ipv6Binding.get(address);
-		}
-		
+		Binding<?> binding = getBinding(address);
+
 		if(binding == null) {
 			return false;
 		}
-		
-		if(binding.getSwitchPort().equals(switchPort)) {
-			return true;
-		}
-		else {
-			return false;
-		}
+
+		return matches(binding, switchPort.getSwitchDPID(), switchPort.getPort());
 	}
-	
+
 	public boolean check(SwitchPort switchPort, MacAddress macAddress, IPAddress<?> address) {
-		Binding<?> binding = null;
-		
-		if(address.getIpVersion() == IPVersion.IPv4){
-			binding = ipv4Binding.get(address);
-		}
-		else {
-			binding = ipv6Binding.get(address);
-		}
-		
+		Binding<?> binding = getBinding(address);
+
 		if(binding == null) {
 			return false;
 		}
-		else {
-			if (binding.getMacAddress().equals(macAddress) && binding.getSwitchPort().equals(switchPort)) {
-				return true;
-			} else {
-				return false;
-			}
-		}
+
+		return binding.getMacAddress().getLong() == macAddress.getLong()
+				&& matches(binding, switchPort.getSwitchDPID(), switchPort.getPort());
+	}
+
+	/**
+	 * Allocation-free IPv4 check used on the PACKET_IN path.
+	 * @param switchId
+	 * @param port
+	 * @param macAddress raw MAC address
+	 * @param ipv4Address raw IPv4 address
+	 * @return true if the binding exists and is anchored at switchId/port
+	 */
+	public boolean checkIPv4(DatapathId switchId, OFPort port, long macAddress, int ipv4Address) {
+		Binding<?> binding = ipv4Binding.get(ipv4Address & 0xFFFFFFFFL);
+
+		return binding != null
+				&& binding.getMacAddress().getLong() == macAddress
+				&& matches(binding, switchId, port);
+	}
+
+	/**
+	 * Allocation-free IPv6 check used on the PACKET_IN path.
+	 * @param switchId
+	 * @param port
+	 * @param macAddress raw MAC address
+	 * @param high upper 64 bits of the IPv6 address
+	 * @param low lower 64 bits of the IPv6 address
+	 * @return true if the binding exists and is anchored at switchId/port
+	 */
+	public boolean checkIPv6(DatapathId switchId, OFPort port, long macAddress, long high, long low) {
+		Binding<?> binding = ipv6Binding.get(high, low);
+
+		return binding != null
+				&& binding.getMacAddress().getLong() == macAddress
+				&& matches(binding, switchId, port);
+	}
+
+	/**
+	 * Allocation-free check of the IPv4 address only, used for ARP.
+	 * @param switchId
+	 * @param port
+	 * @param ipv4Address raw IPv4 address
+	 * @return true if the binding exists and is anchored at switchId/port
+	 */
+	public boolean checkIPv4(DatapathId switchId, OFPort port, int ipv4Address) {
+		Binding<?> binding = ipv4Binding.get(ipv4Address & 0xFFFFFFFFL);
+
+		return binding != null && matches(binding, switchId, port);
 	}
 
-	public void delBinding(IPAddress<?> address) {
+	public synchronized void delBinding(IPAddress<?> address) {
 		Binding<?> binding = null;
-		
+
 		if(address.getIpVersion() == IPVersion.IPv4) {
-			binding = ipv4Binding.remove(address);
+			binding = ipv4Binding.remove(ipv4Key((IPv4Address)address));
 		}
 		else {
-			binding =  ipv6Binding.remove(address);
+			IPv6Address ipv6Address = (IPv6Address)address;
+			binding = ipv6Binding.remove(ipv6Address.getHi(), ipv6Address.getLo());
 		}
-		
+
 		if(binding!=null) {
 			DatapathId switchId = binding.getSwitchPort().getSwitchDPID();
 			if(address.getIpVersion() == IPVersion.IPv4){
-				ipv4SwitchBinding.get(switchId).remove(address);
+				unindex(ipv4SwitchBinding, switchId, (IPv4Address)address);
 			}
 			else {
-				ipv6SwitchBinding.get(switchId).remove(address);
+				unindex(ipv6SwitchBinding, switchId, (IPv6Address)address);
 			}
 		}
 	}
 
 	public MacAddress getMacAddress(IPAddress<?> address) {
-		Binding<?> binding = null;
-		
-		if(address.getIpVersion() == IPVersion.IPv4){
-			binding = ipv4Binding.get(address);
-		}
-		else {
-			binding = ipv6Binding.get(address);
-		}
+		Binding<?> binding = getBinding(address);
+
 		if(binding != null){
 			return binding.getMacAddress();
 		}
 		return null;
 	}
-	
+
+	public Binding<?> getBinding(IPAddress<?> address) {
+		if(address.getIpVersion() == IPVersion.IPv4){
+			return ipv4Binding.get(ipv4Key((IPv4Address)address));
+		}
+		else {
+			IPv6Address ipv6Address = (IPv6Address)address;
+			return ipv6Binding.get(ipv6Address.getHi(), ipv6Address.getLo());
+		}
+	}
+
 	public Set<IPv4Address> getIPv4SwitchBinding(DatapathId dpid){
-		return ipv4SwitchBinding.get(dpid);
+		return readOnly(ipv4SwitchBinding.get(dpid));
 	}
-	
+
 	public Set<IPv6Address> getIPv6SwitchBinding(DatapathId dpid){
-		return ipv6SwitchBinding.get(dpid);
+		return readOnly(ipv6SwitchBinding.get(dpid));
 	}
-	
+
 	public Set<MacAddress> getHardwareBinding(DatapathId dpid){
-		return hardwareSwitchBinding.get(dpid);
-	}
-	
-	public void removeSwitch(DatapathId dpid){
-		
-		Set<IPv4Address> ipv4Set = ipv4SwitchBinding.get(dpid);
-		Set<IPv6Address> ipv6Set = ipv6SwitchBinding.get(dpid);
-		
+		return readOnly(hardwareSwitchBinding.get(dpid));
+	}
+
+	public synchronized void removeSwitch(DatapathId dpid){
+
+		Set<IPv4Address> ipv4Set = ipv4SwitchBinding.remove(dpid);
+		Set<IPv6Address> ipv6Set = ipv6SwitchBinding.remove(dpid);
+		Set<MacAddress> macSet = hardwareSwitchBinding.remove(dpid);
+
 		if(ipv4Set!=null){
 			for(IPv4Address ipv4Address:ipv4Set){
-				ipv4Binding.remove(ipv4Address);
+				ipv4Binding.remove(ipv4Key(ipv4Address));
 			}
-			ipv4SwitchBinding.remove(dpid);
 		}
 		if(ipv6Set!=null){
 			for(IPv6Address ipv6Address:ipv6Set){
-				ipv6Binding.remove(ipv6Address);
+				ipv6Binding.remove(ipv6Address.getHi(), ipv6Address.getLo());
+			}
+		}
+		if(macSet!=null){
+			for(MacAddress macAddress:macSet){
+				hardwareBinding.remove(macAddress.getLong());
 			}
-			ipv6SwitchBinding.remove(dpid);
 		}
 	}
-	
+
+	public int getBindingCount(){
+		return ipv4Binding.size() + ipv6Binding.size();
+	}
+
 	public List<Binding<?>> getBindings(){
-		List<Binding<?>> bindingList = new ArrayList<>();
+		List<Binding<?>> bindingList = new ArrayList<>(ipv4Binding.size() + ipv6Binding.size());
 		bindingList.addAll(ipv4Binding.values());
 		bindingList.addAll(ipv6Binding.values());
 		return bindingList;
 	}
+
+	private static boolean matches(Binding<?> binding, DatapathId switchId, OFPort port) {
+		SwitchPort switchPort = binding.getSwitchPort();
+		return switchPort.getPort().equals(port) && switchPort.getSwitchDPID().equals(switchId);
+	}
+
+	private static long ipv4Key(IPv4Address address) {
+		return address.getInt() & 0xFFFFFFFFL;
+	}
+
+	private static <T> Set<T> indexOf(ConcurrentMap<DatapathId, Set<T>> index, DatapathId switchId) {
+		Set<T> set = index.get(switchId);
+		if(set == null) {
+			Set<T> created = Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+			set = index.putIfAbsent(switchId, created);
+			if(set == null) {
+				set = created;
+			}
+		}
+		return set;
+	}
+
+	private static <T> void unindex(ConcurrentMap<DatapathId, Set<T>> index, DatapathId switchId, T value) {
+		Set<T> set = index.get(switchId);
+		if(set != null) {
+			set.remove(value);
+		}
+	}
+
+	private static <T> Set<T> readOnly(Set<T> set) {
+		return set == null ? null : Collections.unmodifiableSet(set);
+	}
 }
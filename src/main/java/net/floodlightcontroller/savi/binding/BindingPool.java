@@ -1,6 +1,8 @@
 package net.floodlightcontroller.savi.binding;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -65,19 +67,28 @@ public class BindingPool<T extends IPAddress<?>>{
 		return bindingTable.get(address);
 	}
 	
-	public void addBinding(T address, Binding<T> binding){
+	/**
+	 * @return the binding this one replaced, or null
+	 */
+	public Binding<T> addBinding(T address, Binding<T> binding){
 		synchronized(bindingTable){
-			bindingTable.put(address, binding);
+			return bindingTable.put(address, binding);
 		}
 	}
 	
-	public void delBinding(T address){
+	/**
+	 * @return the removed binding, or null
+	 */
+	public Binding<T> delBinding(T address){
 		synchronized(bindingTable){
-			bindingTable.remove(address);
+			return bindingTable.remove(address);
 		}
 	}
 	
-	public void delSwitch(DatapathId switchId){
+	/**
+	 * @return the removed bindings
+	 */
+	public List<Binding<T>> delSwitch(DatapathId switchId){
 		
 		synchronized(hardwareBindingTable){
 			for(MacAddress macAddress:hardwareBindingTable.keySet()){
@@ -87,14 +98,39 @@ public class BindingPool<T extends IPAddress<?>>{
 				}
 			}
 		}
+		List<Binding<T>> removed = new ArrayList<>();
 		synchronized(bindingTable){
 			for(T key:bindingTable.keySet()){
 				SwitchPort switchPort = bindingTable.get(key).getSwitchPort();
 				if(switchId.equals(switchPort.getSwitchDPID())){
-					bindingTable.remove(key);
+					removed.add(bindingTable.remove(key));
 				}
 			}
 		}
+		return removed;
+	}
+	
+	/**
+	 * @return the removed bindings
+	 */
+	public List<Binding<T>> delPort(SwitchPort switchPort){
+		
+		synchronized(hardwareBindingTable){
+			for(MacAddress macAddress:hardwareBindingTable.keySet()){
+				if(switchPort.equals(hardwareBindingTable.get(macAddress))){
+					hardwareBindingTable.remove(macAddress);
+				}
+			}
+		}
+		List<Binding<T>> removed = new ArrayList<>();
+		synchronized(bindingTable){
+			for(T key:bindingTable.keySet()){
+				if(switchPort.equals(bindingTable.get(key).getSwitchPort())){
+					removed.add(bindingTable.remove(key));
+				}
+			}
+		}
+		return removed;
 	}
 	
 	public boolean check(MacAddress macAddress, SwitchPort switchPort){
@@ -0,0 +1,255 @@
+package net.floodlightcontroller.savi.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open-addressing table keyed by up to 128 bits of primitive key.
+ * IPv4 addresses use the low 32 bits, MAC addresses the low 48 bits and
+ * IPv6 addresses both halves, so lookups never box or allocate.
+ *
+ * Reads are wait-free: a lookup walks at most one full table of immutable
+ * slots. Writers are serialized on the table and publish slots atomically,
+ * a reader sees either the old or the new slot but never a torn one.
+ */
+public class BindingTable<V> {
+
+	static final int MIN_CAPACITY = 16;
+
+	/**
+	 * Immutable key/value pair, replaced as a whole on every write.
+	 */
+	static final class Slot<V> {
+		final long high;
+		final long low;
+		final V value;
+
+		Slot(long high, long low, V value) {
+			this.high = high;
+			this.low = low;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Marks a removed slot so that probe sequences of other keys stay intact.
+	 */
+	static final Slot<Object> TOMBSTONE = new Slot<Object>(0, 0, null);
+
+	private volatile AtomicReferenceArray<Slot<V>> slots;
+	private volatile int size;
+	// live slots plus tombstones, guarded by this
+	private int used;
+
+	public BindingTable() {
+		this(MIN_CAPACITY);
+	}
+
+	public BindingTable(int expectedSize) {
+		slots = new AtomicReferenceArray<>(capacityFor(expectedSize));
+	}
+
+	public V get(long key) {
+		return get(0, key);
+	}
+
+	public V get(long high, long low) {
+		AtomicReferenceArray<Slot<V>> table = slots;
+		int mask = table.length() - 1;
+		int index = hash(high, low) & mask;
+
+		for(int probes = 0; probes <= mask; probes++) {
+			Slot<V> slot = table.get(index);
+			if(slot == null) {
+				return null;
+			}
+			if(slot != TOMBSTONE && slot.high == high && slot.low == low) {
+				return slot.value;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	public boolean containsKey(long high, long low) {
+		return get(high, low) != null;
+	}
+
+	public V put(long key, V value) {
+		return put(0, key, value);
+	}
+
+	/**
+	 * Insert or replace a mapping.
+	 * @param high
+	 * @param low
+	 * @param value must not be null
+	 * @return the previous value, or null
+	 */
+	public synchronized V put(long high, long low, V value) {
+		if(value == null) {
+			throw new NullPointerException("value");
+		}
+
+		AtomicReferenceArray<Slot<V>> table = slots;
+		int mask = table.length() - 1;
+		int index = hash(high, low) & mask;
+		int free = -1;
+
+		for(int probes = 0; probes <= mask; probes++) {
+			Slot<V> slot = table.get(index);
+			if(slot == null) {
+				break;
+			}
+			if(slot == TOMBSTONE) {
+				if(free < 0) {
+					free = index;
+				}
+			}
+			else if(slot.high == high && slot.low == low) {
+				table.set(index, new Slot<V>(high, low, value));
+				return slot.value;
+			}
+			index = (index + 1) & mask;
+		}
+
+		if(free >= 0) {
+			table.set(free, new Slot<V>(high, low, value));
+		}
+		else {
+			if((used + 1) * 2 > table.length()) {
+				rehash((size + 1) * 2);
+				return put(high, low, value);
+			}
+			table.set(index, new Slot<V>(high, low, value));
+			used++;
+		}
+		size++;
+		return null;
+	}
+
+	public V putIfAbsent(long key, V value) {
+		return putIfAbsent(0, key, value);
+	}
+
+	public synchronized V putIfAbsent(long high, long low, V value) {
+		V old = get(high, low);
+		if(old != null) {
+			return old;
+		}
+		put(high, low, value);
+		return null;
+	}
+
+	public V remove(long key) {
+		return remove(0, key);
+	}
+
+	@SuppressWarnings("unchecked")
+	public synchronized V remove(long high, long low) {
+		AtomicReferenceArray<Slot<V>> table = slots;
+		int mask = table.length() - 1;
+		int index = hash(high, low) & mask;
+
+		for(int probes = 0; probes <= mask; probes++) {
+			Slot<V> slot = table.get(index);
+			if(slot == null) {
+				return null;
+			}
+			if(slot != TOMBSTONE && slot.high == high && slot.low == low) {
+				table.set(index, (Slot<V>)TOMBSTONE);
+				size--;
+				return slot.value;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	public synchronized void clear() {
+		slots = new AtomicReferenceArray<>(MIN_CAPACITY);
+		size = 0;
+		used = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	int capacity() {
+		return slots.length();
+	}
+
+	/**
+	 * @return live slots plus tombstones
+	 */
+	synchronized int usedSlots() {
+		return used;
+	}
+
+	/**
+	 * Weakly consistent copy of all values.
+	 */
+	public List<V> values() {
+		AtomicReferenceArray<Slot<V>> table = slots;
+		List<V> values = new ArrayList<>(size);
+		for(int i = 0; i < table.length(); i++) {
+			Slot<V> slot = table.get(i);
+			if(slot != null && slot != TOMBSTONE) {
+				values.add(slot.value);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Build a fresh table without tombstones and publish it in one write.
+	 * Readers holding the old table keep a consistent, slightly stale view.
+	 */
+	private void rehash(int expectedSize) {
+		AtomicReferenceArray<Slot<V>> old = slots;
+		AtomicReferenceArray<Slot<V>> table = new AtomicReferenceArray<>(capacityFor(expectedSize));
+		int mask = table.length() - 1;
+		int count = 0;
+
+		for(int i = 0; i < old.length(); i++) {
+			Slot<V> slot = old.get(i);
+			if(slot == null || slot == TOMBSTONE) {
+				continue;
+			}
+			int index = hash(slot.high, slot.low) & mask;
+			while(table.get(index) != null) {
+				index = (index + 1) & mask;
+			}
+			table.set(index, slot);
+			count++;
+		}
+
+		used = count;
+		slots = table;
+	}
+
+	static int capacityFor(int expectedSize) {
+		// keep the load factor at or below 0.5 so probe chains stay short
+		int capacity = MIN_CAPACITY;
+		while(capacity < expectedSize * 2 && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	static int hash(long high, long low) {
+		long h = high * 0x9E3779B97F4A7C15L ^ low;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return (int)h;
+	}
+}
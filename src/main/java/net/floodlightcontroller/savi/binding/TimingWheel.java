@@ -0,0 +1,174 @@
+package net.floodlightcontroller.savi.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel used to drive binding state transitions.
+ *
+ * Five levels of 64 slots cover 2^30 ticks. Scheduling and cancelling are
+ * O(1); an entry is moved down at most once per level before it fires, so
+ * the cost per binding stays constant no matter how many leases are
+ * pending. Deadlines beyond the range are clamped to it, callers that need
+ * exact far deadlines check the item again when it fires.
+ *
+ * The wheel does not own a thread: the owner calls {@link #advance(long)}
+ * from its timer and gets all items that became due as one batch.
+ */
+public class TimingWheel<T> {
+
+	private static final int WHEEL_BITS = 6;
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+	private static final int LEVELS = 5;
+	private static final long MAX_DELAY_TICKS = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+	/**
+	 * Handle of a scheduled item, used to cancel it.
+	 */
+	public static final class Timeout<T> {
+		private final T item;
+		private long deadline;
+		private Timeout<T> prev;
+		private Timeout<T> next;
+		private boolean scheduled;
+
+		private Timeout(T item) {
+			this.item = item;
+		}
+
+		public T getItem() {
+			return item;
+		}
+	}
+
+	private final long tickMillis;
+	private final long startMillis;
+	// sentinel heads of the circular slot lists
+	private final Timeout<T>[][] wheels;
+	private long currentTick;
+	private int size;
+
+	public TimingWheel(long tickMillis) {
+		this(tickMillis, System.currentTimeMillis());
+	}
+
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long tickMillis, long startMillis) {
+		if(tickMillis <= 0) {
+			throw new IllegalArgumentException("tickMillis must be positive");
+		}
+		this.tickMillis = tickMillis;
+		this.startMillis = startMillis;
+		this.wheels = new Timeout[LEVELS][WHEEL_SIZE];
+		for(int level = 0; level < LEVELS; level++) {
+			for(int slot = 0; slot < WHEEL_SIZE; slot++) {
+				Timeout<T> head = new Timeout<>(null);
+				head.prev = head;
+				head.next = head;
+				wheels[level][slot] = head;
+			}
+		}
+	}
+
+	/**
+	 * Schedule an item to fire at the first tick at or after the deadline.
+	 * @param item
+	 * @param deadlineMillis absolute time in milliseconds
+	 * @return handle for {@link #cancel(Timeout)}
+	 */
+	public synchronized Timeout<T> schedule(T item, long deadlineMillis) {
+		Timeout<T> timeout = new Timeout<>(item);
+		long offset = deadlineMillis - startMillis;
+		long tick = offset <= 0 ? 0 : (offset + tickMillis - 1) / tickMillis;
+		timeout.deadline = Math.max(tick, currentTick + 1);
+		insert(timeout);
+		size++;
+		return timeout;
+	}
+
+	/**
+	 * @param timeout
+	 * @return false if the item already fired or was cancelled
+	 */
+	public synchronized boolean cancel(Timeout<T> timeout) {
+		if(!timeout.scheduled) {
+			return false;
+		}
+		unlink(timeout);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Process all ticks up to now.
+	 * @param nowMillis
+	 * @return items that became due, in deadline order
+	 */
+	public synchronized List<T> advance(long nowMillis) {
+		List<T> expired = new ArrayList<>();
+		long target = (nowMillis - startMillis) / tickMillis;
+
+		while(currentTick < target) {
+			currentTick++;
+			// move entries of higher levels whose slot starts now
+			for(int level = 1; level < LEVELS; level++) {
+				long shift = WHEEL_BITS * level;
+				if((currentTick & ((1L << shift) - 1)) != 0) {
+					break;
+				}
+				cascade(wheels[level][(int)((currentTick >>> shift) & WHEEL_MASK)]);
+			}
+
+			Timeout<T> head = wheels[0][(int)(currentTick & WHEEL_MASK)];
+			while(head.next != head) {
+				Timeout<T> timeout = head.next;
+				unlink(timeout);
+				size--;
+				expired.add(timeout.item);
+			}
+		}
+		return expired;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	private void cascade(Timeout<T> head) {
+		while(head.next != head) {
+			Timeout<T> timeout = head.next;
+			unlink(timeout);
+			insert(timeout);
+		}
+	}
+
+	private void insert(Timeout<T> timeout) {
+		long delay = timeout.deadline - currentTick;
+		if(delay > MAX_DELAY_TICKS) {
+			timeout.deadline = currentTick + MAX_DELAY_TICKS;
+			delay = MAX_DELAY_TICKS;
+		}
+
+		int level = 0;
+		while(level < LEVELS - 1 && delay >= (1L << (WHEEL_BITS * (level + 1)))) {
+			level++;
+		}
+		int slot = (int)((timeout.deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+
+		Timeout<T> head = wheels[level][slot];
+		timeout.prev = head.prev;
+		timeout.next = head;
+		head.prev.next = timeout;
+		head.prev = timeout;
+		timeout.scheduled = true;
+	}
+
+	private void unlink(Timeout<T> timeout) {
+		timeout.prev.next = timeout.next;
+		timeout.next.prev = timeout.prev;
+		timeout.prev = null;
+		timeout.next = null;
+		timeout.scheduled = false;
+	}
+}
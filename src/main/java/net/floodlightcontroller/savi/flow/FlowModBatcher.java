@@ -0,0 +1,206 @@
+package net.floodlightcontroller.savi.flow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+/**
+ * Per-switch FlowMod batching stage of the SAVI provider.
+ *
+ * Between {@link #begin()} and {@link #commit()} every message handed to
+ * {@link #write(DatapathId, OFMessage)} is coalesced per switch on the calling
+ * thread. The commit writes each switch's batch with a single
+ * {@link IOFSwitch#write(Iterable)} followed by a BARRIER_REQUEST and returns
+ * a future that completes once every switch acknowledged its barrier.
+ * Outside of a batch messages are written straight through.
+ */
+public class FlowModBatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(FlowModBatcher.class);
+
+	private static final ListenableFuture<List<OFBarrierReply>> NOTHING_TO_ACK =
+			Futures.immediateFuture(Collections.<OFBarrierReply>emptyList());
+
+	private final IOFSwitchService switchService;
+
+	private final IDebugCounter ctrBatches;
+	private final IDebugCounter ctrBatchedMessages;
+	private final IDebugCounter ctrUnbatchedMessages;
+	private final IDebugCounter ctrBarrierAcks;
+	private final IDebugCounter ctrBarrierFailures;
+	private final IDebugCounter ctrDroppedMessages;
+
+	/**
+	 * Messages collected by the current thread, keyed by switch in
+	 * insertion order. Nested begin/commit pairs share one batch.
+	 */
+	private static class Batch {
+		int depth;
+		final Map<DatapathId, List<OFMessage>> messages = new LinkedHashMap<>();
+	}
+
+	private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
+	public FlowModBatcher(IOFSwitchService switchService, IDebugCounterService debugCounterService,
+			String moduleName) {
+		this.switchService = switchService;
+
+		debugCounterService.registerModule(moduleName);
+		ctrBatches = debugCounterService.registerCounter(moduleName, "flowmod-batches",
+				"Per-switch FlowMod batches written");
+		ctrBatchedMessages = debugCounterService.registerCounter(moduleName, "flowmod-batched-messages",
+				"FlowMod messages written as part of a batch");
+		ctrUnbatchedMessages = debugCounterService.registerCounter(moduleName, "flowmod-unbatched-messages",
+				"FlowMod messages written outside of a batch");
+		ctrBarrierAcks = debugCounterService.registerCounter(moduleName, "flowmod-barrier-acks",
+				"Batches acknowledged by the switch barrier reply");
+		ctrBarrierFailures = debugCounterService.registerCounter(moduleName, "flowmod-barrier-failures",
+				"Batches whose barrier failed or was never answered", IDebugCounterService.MetaData.WARN);
+		ctrDroppedMessages = debugCounterService.registerCounter(moduleName, "flowmod-dropped-messages",
+				"FlowMod messages dropped because the switch was not connected", IDebugCounterService.MetaData.DROP);
+	}
+
+	/**
+	 * Open a batch on the calling thread. Calls nest; only the outermost
+	 * {@link #commit()} writes to the switches.
+	 */
+	public void begin() {
+		Batch batch = currentBatch.get();
+		if(batch == null) {
+			batch = new Batch();
+			currentBatch.set(batch);
+		}
+		batch.depth++;
+	}
+
+	/**
+	 * Queue a message for the switch, or write it immediately when no
+	 * batch is open on the calling thread.
+	 * @param switchId
+	 * @param message
+	 * @return false if the message was dropped
+	 */
+	public boolean write(DatapathId switchId, OFMessage message) {
+		Batch batch = currentBatch.get();
+		if(batch != null) {
+			List<OFMessage> messages = batch.messages.get(switchId);
+			if(messages == null) {
+				messages = new ArrayList<>();
+				batch.messages.put(switchId, messages);
+			}
+			messages.add(message);
+			return true;
+		}
+
+		IOFSwitch sw = switchService.getSwitch(switchId);
+		if(sw == null) {
+			ctrDroppedMessages.increment();
+			return false;
+		}
+		ctrUnbatchedMessages.increment();
+		return sw.write(message, LogicalOFMessageCategory.FLOW_MOD);
+	}
+
+	/**
+	 * Close the batch opened by the matching {@link #begin()}.
+	 * @return future completing when all switches in the batch acknowledged
+	 * their barrier; already completed for nested commits and empty batches
+	 */
+	public ListenableFuture<List<OFBarrierReply>> commit() {
+		Batch batch = currentBatch.get();
+		if(batch == null) {
+			log.warn("commit() without begin()");
+			return NOTHING_TO_ACK;
+		}
+		if(--batch.depth > 0) {
+			return NOTHING_TO_ACK;
+		}
+		currentBatch.remove();
+		return flush(batch.messages);
+	}
+
+	/**
+	 * Write prepared per-switch batches, each terminated by a barrier.
+	 * @param batches
+	 * @return future of all barrier replies
+	 */
+	public ListenableFuture<List<OFBarrierReply>> flush(Map<DatapathId, List<OFMessage>> batches) {
+		if(batches.isEmpty()) {
+			return NOTHING_TO_ACK;
+		}
+
+		List<ListenableFuture<OFBarrierReply>> acks = new ArrayList<>(batches.size());
+		for(Map.Entry<DatapathId, List<OFMessage>> entry : batches.entrySet()) {
+			List<OFMessage> messages = entry.getValue();
+			if(messages.isEmpty()) {
+				continue;
+			}
+
+			IOFSwitch sw = switchService.getSwitch(entry.getKey());
+			if(sw == null) {
+				ctrDroppedMessages.add(messages.size());
+				continue;
+			}
+
+			Iterable<OFMessage> unsent = sw.write(messages, LogicalOFMessageCategory.FLOW_MOD);
+			if(!Iterables.isEmpty(unsent)) {
+				ctrDroppedMessages.add(Iterables.size(unsent));
+				continue;
+			}
+			ctrBatches.increment();
+			ctrBatchedMessages.add(messages.size());
+
+			OFBarrierRequest barrier = sw.getOFFactory().buildBarrierRequest().build();
+			ListenableFuture<OFBarrierReply> ack = sw.writeRequest(barrier, LogicalOFMessageCategory.FLOW_MOD);
+			Futures.addCallback(ack, new BarrierCallback(entry.getKey(), messages.size()));
+			acks.add(ack);
+		}
+
+		if(acks.isEmpty()) {
+			return NOTHING_TO_ACK;
+		}
+		return Futures.allAsList(acks);
+	}
+
+	private class BarrierCallback implements FutureCallback<OFBarrierReply> {
+		private final DatapathId switchId;
+		private final int size;
+
+		BarrierCallback(DatapathId switchId, int size) {
+			this.switchId = switchId;
+			this.size = size;
+		}
+
+		@Override
+		public void onSuccess(OFBarrierReply result) {
+			ctrBarrierAcks.increment();
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			ctrBarrierFailures.increment();
+			log.warn("Barrier for batch of {} FlowMods to switch {} failed: {}",
+					new Object[] { size, switchId, t.getMessage() });
+		}
+	}
+}
@@ -8,6 +8,7 @@ import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.protocol.match.Match;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPVersion;
 import org.projectfloodlight.openflow.types.IPv4Address;
 import org.projectfloodlight.openflow.types.IpProtocol;
 import org.projectfloodlight.openflow.types.MacAddress;
@@ -16,14 +17,19 @@ import org.projectfloodlight.openflow.types.TransportPort;
 
 import net.floodlightcontroller.devicemanager.SwitchPort;
 import net.floodlightcontroller.packet.DHCP;
+import net.floodlightcontroller.packet.DHCP.DHCPOptionCode;
+import net.floodlightcontroller.packet.DHCPOption;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.packet.UDP;
 import net.floodlightcontroller.routing.IRoutingDecision.RoutingAction;
 import net.floodlightcontroller.savi.action.Action;
 import net.floodlightcontroller.savi.action.Action.ActionFactory;
 import net.floodlightcontroller.savi.action.ClearIPv4BindingAction;
+import net.floodlightcontroller.savi.action.ClearPortBindingAction;
 import net.floodlightcontroller.savi.action.ClearSwitchBindingAction;
+import net.floodlightcontroller.savi.action.RestoreBindingAction;
 import net.floodlightcontroller.savi.binding.Binding;
 import net.floodlightcontroller.savi.binding.BindingPool;
 import net.floodlightcontroller.savi.binding.BindingStatus;
@@ -196,14 +202,16 @@ public class DHCPService extends SAVIBaseService {
 			if(binding.getStatus() == BindingStatus.REQUESTING){
 				binding.setBindingTime();
 				binding.setStatus(BindingStatus.BOUND);
-				binding.setLeaseTime(dhcp.getSeconds());
+				binding.setLeaseTime(getLeaseTime(dhcp));
+				scheduleLeaseExpiry(binding);
 				actions.add(ActionFactory.getPacketOutAction(eth, pool.getSwitchPort(macAddress), OFPort.CONTROLLER));
 				actions.add(ActionFactory.getBindIPv4Action(binding));			
 			}
 			else if(binding.getStatus() == BindingStatus.REBINDING){
 				binding.setBindingTime();
 				binding.setStatus(BindingStatus.BOUND);
-				binding.setLeaseTime(dhcp.getSeconds());
+				binding.setLeaseTime(getLeaseTime(dhcp));
+				scheduleLeaseExpiry(binding);
 				actions.add(ActionFactory.getPacketOutAction(eth, pool.getSwitchPort(macAddress), OFPort.CONTROLLER));
 			}
 			saviProvider.pushActions(actions);
@@ -213,6 +221,21 @@ public class DHCPService extends SAVIBaseService {
 		return RoutingAction.NONE;
 	}
 	
+	/**
+	 * Lease time granted by the server (option 51), 0 if absent or infinite.
+	 * @param dhcp
+	 * @return lease time in seconds
+	 */
+	protected long getLeaseTime(DHCP dhcp){
+		DHCPOption option = dhcp.getOption(DHCPOptionCode.OptionCode_LeaseTime);
+		if(option == null || option.getData() == null || option.getData().length != 4){
+			return 0;
+		}
+		byte[] data = option.getData();
+		long leaseTime = ((data[0] & 0xffL) << 24) | ((data[1] & 0xffL) << 16) | ((data[2] & 0xffL) << 8) | (data[3] & 0xffL);
+		return leaseTime == 0xffffffffL ? 0 : leaseTime;
+	}
+	
 	protected RoutingAction processNack(SwitchPort switchPort,Ethernet eth){
 		List<Action> actions = new ArrayList<>();
 		IPv4 ipv4 = (IPv4)eth.getPayload();
@@ -226,7 +249,7 @@ public class DHCPService extends SAVIBaseService {
 			Binding<IPv4Address> binding = pool.getBinding(ipv4Address);
 			actions.add(ActionFactory.getPacketOutAction(eth, pool.getSwitchPort(macAddress), OFPort.CONTROLLER));
 			if(binding.getStatus()!=BindingStatus.BOUND){
-				pool.delBinding(ipv4Address);
+				cancelLeaseExpiry(pool.delBinding(ipv4Address));
 			}
 		}
 		
@@ -250,17 +273,38 @@ public class DHCPService extends SAVIBaseService {
 			}
 			
 			actions.add(ActionFactory.getPacketOutAction(eth, pool.getSwitchPort(macAddress), OFPort.CONTROLLER));
-			pool.delBinding(ipv4Address);
+			cancelLeaseExpiry(pool.delBinding(ipv4Address));
 		}
 		return RoutingAction.NONE;
 	}
 	@Override
 	protected void doClearIPv4BindingAction(ClearIPv4BindingAction action){
-		pool.delBinding(action.getIPv4Address());
+		cancelLeaseExpiry(pool.delBinding(action.getIPv4Address()));
+	}
+	@Override
+	protected void doClearPortBindingAction(ClearPortBindingAction action){
+		for(SwitchPort switchPort:action.getSwitchPorts()){
+			cancelLeaseExpiry(pool.delPort(switchPort));
+		}
 	}
 	@Override
 	protected void doClearSwitchBindingAction(ClearSwitchBindingAction action){
-		pool.delSwitch(action.getSwitchId());
+		cancelLeaseExpiry(pool.delSwitch(action.getSwitchId()));
+	}
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void doRestoreBindingAction(RestoreBindingAction action){
+		Binding<?> binding = action.getBinding();
+		if(binding.getAddress().getIpVersion() != IPVersion.IPv4){
+			return;
+		}
+		pool.addHardwareBinding(binding.getMacAddress(), binding.getSwitchPort());
+		Binding<IPv4Address> previous = pool.addBinding((IPv4Address)binding.getAddress(), (Binding<IPv4Address>)binding);
+		if(previous != binding){
+			cancelLeaseExpiry(previous);
+		}
+		// 停机期间到期的租约在下一次checkDeadline时解绑
+		scheduleLeaseExpiry(binding);
 	}
 	
 	@Override
@@ -268,6 +312,15 @@ public class DHCPService extends SAVIBaseService {
 		// TODO Auto-generated method stub
 		return isDHCP(eth);
 	}
+	
+	@Override
+	public boolean match(PacketView view) {
+		if(view.isIPv4() && view.getL4Protocol() == PacketView.PROTO_UDP) {
+			int port = view.getUDPDestinationPort();
+			return port == 68 || port == 67;
+		}
+		return false;
+	}
 
 	@Override
 	public List<Match> getMatches() {
@@ -301,13 +354,17 @@ public class DHCPService extends SAVIBaseService {
 	}
 	
 	@Override
+	@SuppressWarnings("unchecked")
 	public void checkDeadline(){
 		List<Action> actions = new ArrayList<>();
-		for(Binding<IPv4Address> binding:pool.getAllBindings()){
-			if(binding.isLeaseExpired()){
-				actions.add(ActionFactory.getUnbindIPv4Action(binding.getAddress(), binding));
-				pool.delBinding(binding.getAddress());
+		for(Binding<?> expired:pollExpiredLeases()){
+			Binding<IPv4Address> binding = (Binding<IPv4Address>)expired;
+			// 已被删除或替换的绑定不再处理
+			if(pool.getBinding(binding.getAddress()) != binding){
+				continue;
 			}
+			actions.add(ActionFactory.getUnbindIPv4Action(binding.getAddress(), binding));
+			pool.delBinding(binding.getAddress());
 		}
 		if(actions.size()>0){
 			saviProvider.pushActions(actions);
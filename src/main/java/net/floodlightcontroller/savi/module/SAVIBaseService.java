@@ -2,6 +2,7 @@ package net.floodlightcontroller.savi.module;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
@@ -26,6 +27,9 @@ import net.floodlightcontroller.savi.action.ClearIPv6BindingAction;
 import net.floodlightcontroller.savi.action.ClearMacBindingAction;
 import net.floodlightcontroller.savi.action.ClearPortBindingAction;
 import net.floodlightcontroller.savi.action.ClearSwitchBindingAction;
+import net.floodlightcontroller.savi.action.RestoreBindingAction;
+import net.floodlightcontroller.savi.binding.Binding;
+import net.floodlightcontroller.savi.binding.TimingWheel;
 import net.floodlightcontroller.savi.service.SAVIProviderService;
 import net.floodlightcontroller.savi.service.SAVIService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
@@ -43,6 +47,10 @@ public abstract class SAVIBaseService implements SAVIService, IFloodlightModule{
 	IThreadPoolService threadPoolService;
 	SAVIProviderService	saviProvider;
 	SingletonTask deadlineTimer;
+	// 租约到期的时间轮，由deadlineTimer每秒推进
+	TimingWheel<Binding<?>> leaseWheel;
+	// 每个绑定在时间轮上只保留一个表项，续租时替换
+	Map<Binding<?>, TimingWheel.Timeout<Binding<?>>> leaseTimeouts;
 	
 	
 	@Override
@@ -65,6 +73,9 @@ public abstract class SAVIBaseService implements SAVIService, IFloodlightModule{
 			case CLEAR_MAC_BINDING:
 				doClearMacBindingAction((ClearMacBindingAction)action);
 				break;
+			case RESTORE_BINDING:
+				doRestoreBindingAction((RestoreBindingAction)action);
+				break;
 			default:
 				break;
 			}
@@ -91,6 +102,15 @@ public abstract class SAVIBaseService implements SAVIService, IFloodlightModule{
 		
 	}
 	
+	/**
+	 * A binding recovered from the binding journal at start up, services
+	 * owning the address family put it back into their pool.
+	 * @param action
+	 */
+	protected void doRestoreBindingAction(RestoreBindingAction action){
+		
+	}
+	
 	@Override
 	public Collection<Class<? extends IFloodlightService>> getModuleServices() {
 		// TODO Auto-generated method stub
@@ -119,6 +139,68 @@ public abstract class SAVIBaseService implements SAVIService, IFloodlightModule{
 		floodlightProvider = context.getServiceImpl(IFloodlightProviderService.class);
 		threadPoolService =context.getServiceImpl(IThreadPoolService.class);
 		saviProvider	= context.getServiceImpl(SAVIProviderService.class);
+		leaseWheel		= new TimingWheel<>(1000);
+		leaseTimeouts	= new IdentityHashMap<>();
+	}
+	
+	/**
+	 * Expire the binding at the end of its lease, bindings without lease are ignored.
+	 * A binding has at most one entry on the wheel, scheduling it again after a
+	 * renewal replaces the entry of the previous lease.
+	 * @param binding
+	 */
+	protected void scheduleLeaseExpiry(Binding<?> binding) {
+		synchronized(leaseWheel) {
+			cancelLeaseExpiry(binding);
+			if(binding.getLeaseTime() != 0) {
+				leaseTimeouts.put(binding, leaseWheel.schedule(binding, binding.getLeaseDeadline()));
+			}
+		}
+	}
+	
+	/**
+	 * Take a removed binding off the wheel, every path that drops a binding
+	 * from the pool calls this so the wheel does not hold on to it.
+	 * @param binding may be null
+	 */
+	protected void cancelLeaseExpiry(Binding<?> binding) {
+		if(binding == null) {
+			return;
+		}
+		synchronized(leaseWheel) {
+			TimingWheel.Timeout<Binding<?>> timeout = leaseTimeouts.remove(binding);
+			if(timeout != null) {
+				leaseWheel.cancel(timeout);
+			}
+		}
+	}
+	
+	protected void cancelLeaseExpiry(Collection<? extends Binding<?>> bindings) {
+		for(Binding<?> binding : bindings) {
+			cancelLeaseExpiry(binding);
+		}
+	}
+	
+	/**
+	 * Bindings whose lease ended since the last call, each returned once. An
+	 * entry may fire a tick before a far deadline that the wheel clamped, such
+	 * a binding is put back on the wheel at its deadline instead.
+	 * @return expired bindings
+	 */
+	protected List<Binding<?>> pollExpiredLeases() {
+		List<Binding<?>> expired = new ArrayList<>();
+		synchronized(leaseWheel) {
+			for(Binding<?> binding : leaseWheel.advance(System.currentTimeMillis())) {
+				leaseTimeouts.remove(binding);
+				if(binding.isLeaseExpired()) {
+					expired.add(binding);
+				}
+				else {
+					scheduleLeaseExpiry(binding);
+				}
+			}
+		}
+		return expired;
 	}
 
 	
@@ -126,8 +208,6 @@ public abstract class SAVIBaseService implements SAVIService, IFloodlightModule{
 	@Override
 	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
 		// TODO Auto-generated method stub
-		saviProvider.addSAVIService(this);
-		
 		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
 		
 		deadlineTimer = new SingletonTask(ses, new Runnable() {
@@ -142,6 +222,8 @@ public abstract class SAVIBaseService implements SAVIService, IFloodlightModule{
 		deadlineTimer.reschedule(1, TimeUnit.SECONDS);
 		
 		startUpService();
+		// 服务的绑定池在startUpService中创建，之后才能接收报文和恢复的绑定
+		saviProvider.addSAVIService(this);
 	}
 
 	@Override
@@ -2,7 +2,6 @@ package net.floodlightcontroller.savi.module;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -11,6 +10,7 @@ import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.protocol.match.Match;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPVersion;
 import org.projectfloodlight.openflow.types.IPv6Address;
 import org.projectfloodlight.openflow.types.IpProtocol;
 import org.projectfloodlight.openflow.types.MacAddress;
@@ -21,15 +21,18 @@ import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.ICMPv6;
 import net.floodlightcontroller.packet.IPacket;
 import net.floodlightcontroller.packet.IPv6;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.routing.IRoutingDecision.RoutingAction;
 import net.floodlightcontroller.savi.action.Action;
 import net.floodlightcontroller.savi.action.Action.ActionFactory;
 import net.floodlightcontroller.savi.action.ClearIPv6BindingAction;
 import net.floodlightcontroller.savi.action.ClearPortBindingAction;
 import net.floodlightcontroller.savi.action.ClearSwitchBindingAction;
+import net.floodlightcontroller.savi.action.RestoreBindingAction;
 import net.floodlightcontroller.savi.binding.Binding;
 import net.floodlightcontroller.savi.binding.BindingPool;
 import net.floodlightcontroller.savi.binding.BindingStatus;
+import net.floodlightcontroller.savi.binding.TimingWheel;
 
 public class SLAACService extends SAVIBaseService {
 
@@ -37,7 +40,8 @@ public class SLAACService extends SAVIBaseService {
 	protected static int UPDATE_DELAY = 2;
 	
 	BindingPool<IPv6Address> pool;
-	List<Binding<IPv6Address>> updateQueue;
+	// DETECTING状态的绑定，UPDATE_DELAY之后转为BOUND
+	TimingWheel<Binding<IPv6Address>> detectingWheel;
 	
 	protected SingletonTask timer;
 	
@@ -45,42 +49,26 @@ public class SLAACService extends SAVIBaseService {
 	public void startUpService() {
 		// TODO Auto-generated method stub
 		pool = new BindingPool<>();
-		updateQueue = new  CopyOnWriteArrayList<>();
+		detectingWheel = new TimingWheel<>(TIMER_DELAY * 1000);
 		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
 		
 		timer = new SingletonTask(ses, new Runnable() {
 			@Override
 			public void run() {
 				// TODO Auto-generated method stub
-				int tmp = (int)(System.currentTimeMillis()/1000);
-				synchronized (updateQueue) {
-					for(Binding<IPv6Address> entry:updateQueue){
-						if((tmp-entry.getBindingTime())>UPDATE_DELAY){
-							entry.setStatus(BindingStatus.BOUND);
-							entry.setBindingTime();
-							
-							List<Action> actions = new ArrayList<>();
-							actions.add(ActionFactory.getBindIPv6Action(entry));
-							
-							/* 测试pushFlowAction方法，验证成功，和在doBindIPv6方法中下发流表效果一致
-							 * 即，可以其他module可以通过这种方式调用saviProvider的该方法间接下发流表。
-							List<FlowAction> flowActions=new ArrayList<>();
-							Match.Builder mb = OFFactories.getFactory(OFVersion.OF_13).buildMatch();
-							mb.setExact(MatchField.ETH_SRC, entry.getMacAddress());
-							mb.setExact(MatchField.ETH_TYPE, EthType.IPv6);
-							mb.setExact(MatchField.IPV6_SRC, (IPv6Address)entry.getAddress());
-							mb.setExact(MatchField.IN_PORT, entry.getSwitchPort().getPort());
-							
-							List<OFInstruction> instructions = new ArrayList<>();
-							instructions.add(OFFactories.getFactory(OFVersion.OF_13).instructions().gotoTable(TableId.of(1)));
-							flowActions.add(FlowActionFactory.getFlowAddAction(
-									entry.getSwitchPort().getSwitchDPID(), 
-									TableId.of(0), mb.build(), null, instructions, 3));
-							saviProvider.pushFlowActions(flowActions);*/
-							saviProvider.pushActions(actions);
-							updateQueue.remove(entry);
-						}
+				List<Action> actions = new ArrayList<>();
+				for(Binding<IPv6Address> entry:detectingWheel.advance(System.currentTimeMillis())){
+					// 检测期间被删除或替换的绑定不再处理
+					if(entry.getStatus() != BindingStatus.DETECTING || pool.getBinding(entry.getAddress()) != entry){
+						continue;
 					}
+					entry.setStatus(BindingStatus.BOUND);
+					entry.setBindingTime();
+					scheduleLeaseExpiry(entry);
+					actions.add(ActionFactory.getBindIPv6Action(entry));
+				}
+				if(actions.size()>0){
+					saviProvider.pushActions(actions);
 				}
 				timer.reschedule(TIMER_DELAY, TimeUnit.SECONDS);
 			}
@@ -191,9 +179,7 @@ public class SLAACService extends SAVIBaseService {
 			binding.setSwitchPort(switchPort);
 			pool.addBinding(targetAddress, binding);
 			
-			synchronized(updateQueue){
-				updateQueue.add(binding);
-			}
+			detectingWheel.schedule(binding, (binding.getBindingTime() + UPDATE_DELAY + 1) * 1000);
 			
 		//	actions.add(ActionFactory.getFloodAction(switchPort.getSwitchDPID(), switchPort.getPort(), eth));
 		//	saviProvider.pushActions(actions);
@@ -235,17 +221,45 @@ public class SLAACService extends SAVIBaseService {
 		}
 		return false;
 	}
+	@Override
+	public boolean match(PacketView view) {
+		int type = view.getICMPv6Type();
+		if(type == (ICMPv6.NEIGHBOR_SOLICITATION & 0xff)) {
+			return view.isIPv6SourceUnspecified();
+		}
+		if(type == (ICMPv6.NEIGHBOR_ADVERTISEMENT & 0xff)) {
+			return view.isIPv6DestinationBroadcast();
+		}
+		return false;
+	}
+	
 	@Override
 	protected void doClearIPv6BindingAction(ClearIPv6BindingAction action){
-		pool.delBinding(action.getIpv6Address());
+		cancelLeaseExpiry(pool.delBinding(action.getIpv6Address()));
 	}
 	@Override
 	protected void doClearPortBindingAction(ClearPortBindingAction action){
-		
+		for(SwitchPort switchPort:action.getSwitchPorts()){
+			cancelLeaseExpiry(pool.delPort(switchPort));
+		}
 	}
 	@Override
 	protected void doClearSwitchBindingAction(ClearSwitchBindingAction action){
-		pool.delSwitch(action.getSwitchId());
+		cancelLeaseExpiry(pool.delSwitch(action.getSwitchId()));
+	}
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void doRestoreBindingAction(RestoreBindingAction action){
+		Binding<?> binding = action.getBinding();
+		if(binding.getAddress().getIpVersion() != IPVersion.IPv6){
+			return;
+		}
+		pool.addHardwareBinding(binding.getMacAddress(), binding.getSwitchPort());
+		Binding<IPv6Address> previous = pool.addBinding((IPv6Address)binding.getAddress(), (Binding<IPv6Address>)binding);
+		if(previous != binding){
+			cancelLeaseExpiry(previous);
+		}
+		scheduleLeaseExpiry(binding);
 	}
 	@Override
 	public List<Match> getMatches() {
@@ -268,13 +282,16 @@ public class SLAACService extends SAVIBaseService {
 	}
 	
 	@Override
+	@SuppressWarnings("unchecked")
 	public void checkDeadline(){
 		List<Action> actions = new ArrayList<>();
-		for(Binding<IPv6Address> binding:pool.getAllBindings()){
-			if(binding.isLeaseExpired()){
-				actions.add(ActionFactory.getUnbindIPv6Action(binding.getAddress(), binding));
-				pool.delBinding(binding.getAddress());
+		for(Binding<?> expired:pollExpiredLeases()){
+			Binding<IPv6Address> binding = (Binding<IPv6Address>)expired;
+			if(pool.getBinding(binding.getAddress()) != binding){
+				continue;
 			}
+			actions.add(ActionFactory.getUnbindIPv6Action(binding.getAddress(), binding));
+			pool.delBinding(binding.getAddress());
 		}
 		if(actions.size()>0){
 			saviProvider.pushActions(actions);
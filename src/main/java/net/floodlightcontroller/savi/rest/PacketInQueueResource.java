@@ -0,0 +1,31 @@
+package net.floodlightcontroller.savi.rest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+import net.floodlightcontroller.savi.service.SAVIProviderService;
+
+/**
+ * Packets waiting on each SAVI PACKET_IN shard.
+ */
+public class PacketInQueueResource extends ServerResource {
+	@Get("json")
+	public Object getJson() {
+		SAVIProviderService saviProvider = (SAVIProviderService)getContext().getAttributes()
+				.get(SAVIProviderService.class.getCanonicalName());
+		List<Integer> depths = saviProvider.getPacketInQueueDepths();
+		
+		Map<String, Object> result = new HashMap<>();
+		int total = 0;
+		for(int depth : depths) {
+			total += depth;
+		}
+		result.put("shards", depths);
+		result.put("total", total);
+		return result;
+	}
+}
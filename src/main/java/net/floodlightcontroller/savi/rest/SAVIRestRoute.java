@@ -20,6 +20,7 @@ public class SAVIRestRoute implements RestletRoutable{
         Router router = new Router(context);
 		router.attach("/config", SAVIRest.class);
 		router.attach("/flow",FlowResource.class);
+		router.attach("/packet-in/queues",PacketInQueueResource.class);
 		router.attach("/change/static/{"+DPID_STR+"}",ChangeTableResource.class);
 		router.attach("/change/dynamic/{"+DPID_STR+"}",ChangeTableResource.class);
 		router.attach("/change/none/{"+DPID_STR+"}",ChangeTableResource.class);
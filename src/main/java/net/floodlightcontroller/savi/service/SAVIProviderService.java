@@ -2,17 +2,20 @@ package net.floodlightcontroller.savi.service;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
 import org.projectfloodlight.openflow.protocol.match.Match;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.TableId;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.savi.PortStateTable;
 import net.floodlightcontroller.savi.action.Action;
 import net.floodlightcontroller.savi.binding.Binding;
 import net.floodlightcontroller.savi.flow.FlowAction;
@@ -27,6 +30,8 @@ public interface SAVIProviderService extends IFloodlightService {
 	public List<Binding<?>> getBindings();
 
 	public boolean pushFlowActions(List<FlowAction> actions);
+	//按交换机批量下发，所有交换机回复barrier后future完成
+	public ListenableFuture<List<OFBarrierReply>> pushFlowActionsBatch(List<FlowAction> actions);
 	
 	//新增同名方法
 //	public void doFlowRemove(DatapathId switchId, TableId tableId, Match match,int priority);
@@ -43,11 +48,9 @@ public interface SAVIProviderService extends IFloodlightService {
 	public Set<DatapathId> getStaticSwId();
 	public Set<DatapathId> getNoneSwId();
 	public Map<SwitchPort, Integer> getHostWithPort();
-	public Queue<SwitchPort> getNormalPorts();
-	public Queue<SwitchPort> getAbnormalPorts();
-	public Map<SwitchPort, Integer> getObservePorts();
-	public Queue<SwitchPort> getStaticPorts();
-	public Queue<SwitchPort> getNonePorts();
+	public PortStateTable getPortStates();
+	//每个PACKET_IN分片队列中等待的报文数，未启用分片时为空
+	public List<Integer> getPacketInQueueDepths();
 	public void doFlowRemove(DatapathId switchId, TableId tableId, Match match);
 	public void doFlowAdd(DatapathId switchId, TableId tableId, Match match, List<OFAction> actions,
 			List<OFInstruction> instructions, int priority);
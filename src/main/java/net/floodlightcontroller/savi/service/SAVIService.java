@@ -4,12 +4,15 @@ import java.util.List;
 import org.projectfloodlight.openflow.protocol.match.Match;
 import net.floodlightcontroller.devicemanager.SwitchPort;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.PacketView;
 import net.floodlightcontroller.routing.IRoutingDecision.RoutingAction;
 import net.floodlightcontroller.savi.action.Action;
 
 public interface SAVIService {
 	
 	public boolean match(Ethernet eth);
+	//基于原始字节的分类，不需要解析整个包
+	public boolean match(PacketView view);
 	public List<Match> getMatches();
 	public RoutingAction process(SwitchPort switchPort,Ethernet eth);
 	public void pushActins(List<Action> actions);
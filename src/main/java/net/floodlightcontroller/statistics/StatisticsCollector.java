@@ -31,6 +31,7 @@ import com.google.common.primitives.UnsignedLong;
 import com.google.common.util.concurrent.ListenableFuture;
 
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -455,7 +456,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 
 			try {
 				if (req != null) {
-					future = sw.writeStatsRequest(req); 
+					future = sw.writeStatsRequest(req, LogicalOFMessageCategory.STATS);
 					values = (List<OFStatsReply>) future.get(portStatsInterval / 2, TimeUnit.SECONDS);
 				}
 			} catch (Exception e) {
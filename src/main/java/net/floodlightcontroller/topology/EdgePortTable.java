@@ -0,0 +1,196 @@
+package net.floodlightcontroller.topology;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Immutable lookup table of the ports with links of a topology instance,
+ * answering {@link #isEdge(DatapathId, OFPort)} and
+ * {@link #isAttachmentPointPort(DatapathId, OFPort)} without allocating.
+ *
+ * Switches are mapped to a dense index by an open addressing table of
+ * datapath ids. Each switch has a bitmap indexed by port number for the
+ * ports below {@value #BITMAP_PORTS} and a sorted array for the others,
+ * which are the reserved ports and rarely have links.
+ *
+ * A table is built with its topology instance and published with it, a
+ * caller that needs a consistent view over several lookups keeps the table
+ * returned by {@link ITopologyService#getEdgePortTable()}.
+ */
+public class EdgePortTable {
+    public static final int BITMAP_PORTS = 4096;
+
+    private static final int[] NO_PORTS = new int[0];
+
+    /**
+     * Ports of one switch
+     */
+    private static final class PortSet {
+        final long[] bits;
+        final int[] others;
+
+        PortSet(long[] bits, int[] others) {
+            this.bits = bits;
+            this.others = others;
+        }
+
+        boolean contains(int port) {
+            if (port >= 0 && port < BITMAP_PORTS) {
+                int word = port >>> 6;
+                return word < bits.length && (bits[word] & (1L << port)) != 0;
+            }
+            return Arrays.binarySearch(others, port) >= 0;
+        }
+    }
+
+    private final long[] dpids;
+    // dense switch index + 1 of the slot, 0 for an empty slot
+    private final int[] indices;
+    private final int mask;
+    // ports with links, which are not edge ports
+    private final PortSet[] linkPorts;
+    // ports with links inside an openflow domain, which are not attachment point ports
+    private final PortSet[] domainPorts;
+
+    /**
+     * @param allLinks all links by switch port
+     * @param switchPortLinks links inside openflow domains by switch port
+     */
+    public EdgePortTable(Map<NodePortTuple, Set<Link>> allLinks,
+                         Map<NodePortTuple, Set<Link>> switchPortLinks) {
+        Map<DatapathId, Integer> switches = new HashMap<DatapathId, Integer>();
+        for (NodePortTuple npt : allLinks.keySet()) {
+            index(switches, npt.getNodeId());
+        }
+        for (NodePortTuple npt : switchPortLinks.keySet()) {
+            index(switches, npt.getNodeId());
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(switches.size(), 1) * 2) * 2;
+        dpids = new long[capacity];
+        indices = new int[capacity];
+        mask = capacity - 1;
+        for (Map.Entry<DatapathId, Integer> e : switches.entrySet()) {
+            long dpid = e.getKey().getLong();
+            int slot = hash(dpid) & mask;
+            while (indices[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            dpids[slot] = dpid;
+            indices[slot] = e.getValue() + 1;
+        }
+
+        linkPorts = portSets(switches, allLinks, true);
+        // the domain ports are the keys, a port may be left without links
+        domainPorts = portSets(switches, switchPortLinks, false);
+    }
+
+    /**
+     * An edge port has no link
+     * @param sw
+     * @param port
+     * @return
+     */
+    public boolean isEdge(DatapathId sw, OFPort port) {
+        return isEdge(sw.getLong(), port.getPortNumber());
+    }
+
+    public boolean isEdge(long dpid, int port) {
+        int i = indexOf(dpid);
+        return i < 0 || !linkPorts[i].contains(port);
+    }
+
+    /**
+     * An attachment point port has no link inside an openflow domain
+     * @param sw
+     * @param port
+     * @return
+     */
+    public boolean isAttachmentPointPort(DatapathId sw, OFPort port) {
+        return isAttachmentPointPort(sw.getLong(), port.getPortNumber());
+    }
+
+    public boolean isAttachmentPointPort(long dpid, int port) {
+        int i = indexOf(dpid);
+        return i < 0 || !domainPorts[i].contains(port);
+    }
+
+    /**
+     * @return the number of switches with ports in the table
+     */
+    public int getSwitchCount() {
+        return linkPorts.length;
+    }
+
+    private int indexOf(long dpid) {
+        int slot = hash(dpid) & mask;
+        int index;
+        while ((index = indices[slot]) != 0) {
+            if (dpids[slot] == dpid) return index - 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(long dpid) {
+        long h = dpid * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static void index(Map<DatapathId, Integer> switches, DatapathId sw) {
+        if (!switches.containsKey(sw)) {
+            switches.put(sw, switches.size());
+        }
+    }
+
+    private static PortSet[] portSets(Map<DatapathId, Integer> switches,
+                                      Map<NodePortTuple, Set<Link>> links,
+                                      boolean withLinksOnly) {
+        int n = switches.size();
+        int[] maxPort = new int[n];
+        int[] otherCount = new int[n];
+        Arrays.fill(maxPort, -1);
+        for (Map.Entry<NodePortTuple, Set<Link>> e : links.entrySet()) {
+            if (withLinksOnly && (e.getValue() == null || e.getValue().isEmpty())) continue;
+            int i = switches.get(e.getKey().getNodeId());
+            int port = e.getKey().getPortId().getPortNumber();
+            if (port >= 0 && port < BITMAP_PORTS) {
+                maxPort[i] = Math.max(maxPort[i], port);
+            } else {
+                otherCount[i]++;
+            }
+        }
+
+        long[][] bits = new long[n][];
+        int[][] others = new int[n][];
+        for (int i = 0; i < n; i++) {
+            bits[i] = new long[maxPort[i] < 0 ? 0 : (maxPort[i] >>> 6) + 1];
+            others[i] = otherCount[i] == 0 ? NO_PORTS : new int[otherCount[i]];
+            otherCount[i] = 0;
+        }
+        for (Map.Entry<NodePortTuple, Set<Link>> e : links.entrySet()) {
+            if (withLinksOnly && (e.getValue() == null || e.getValue().isEmpty())) continue;
+            int i = switches.get(e.getKey().getNodeId());
+            int port = e.getKey().getPortId().getPortNumber();
+            if (port >= 0 && port < BITMAP_PORTS) {
+                bits[i][port >>> 6] |= 1L << port;
+            } else {
+                others[i][otherCount[i]++] = port;
+            }
+        }
+
+        PortSet[] sets = new PortSet[n];
+        for (int i = 0; i < n; i++) {
+            Arrays.sort(others[i]);
+            sets[i] = new PortSet(bits[i], others[i]);
+        }
+        return sets;
+    }
+}
@@ -72,6 +72,14 @@ public interface ITopologyService extends IFloodlightService  {
 	 * @return
 	 */
    	public boolean isEdge(DatapathId sw, OFPort p);
+
+	/**
+	 * Get the edge and attachment point ports of the current topology.
+	 * The table does not change, keep it for consistent lookups of
+	 * several ports.
+	 * @return
+	 */
+	public EdgePortTable getEdgePortTable();
    	
 	/**
 	 * Get list of ports that can SEND a broadcast packet.
@@ -0,0 +1,520 @@
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.routing.Route;
+import net.floodlightcontroller.routing.RouteId;
+
+/**
+ * Cache of the routes between pairs of switches, shared by the successive
+ * topology instances.
+ *
+ * An entry holds the shortest route of a pair and, once they were asked
+ * for, up to k alternative routes in order of cost. The cache is bounded by
+ * the estimated memory of its entries, not by their number. It is split
+ * into segments by route id, each with its own lock and W-TinyLFU policy: a
+ * new entry goes into a small LRU window, and when it leaves the window it
+ * only replaces the LRU entry of the main area if its access frequency,
+ * estimated by a count-min sketch, times the work to compute it again is
+ * higher. A pair that is rarely used or cheap to compute again thus does
+ * not push out a popular or expensive one.
+ *
+ * Each segment indexes its entries by the links of their routes. When a
+ * new topology instance removes links, only the entries using them are
+ * invalidated; see {@link #invalidate(Collection, Set, boolean)}. Every
+ * invalidation starts a new generation, and an entry computed by an
+ * instance of an older generation is not cached any more.
+ */
+public class RouteCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ROUTES = 3;
+
+    // Rough heap footprint of an entry, a route and a switch port of a route
+    protected static final int ENTRY_BYTES = 160;
+    protected static final int ROUTE_BYTES = 96;
+    protected static final int PORT_BYTES = 40;
+    // Share of a segment for the window of new entries, in percent
+    protected static final int WINDOW_PERCENT = 1;
+    // Work of a spur search for an alternative route, a shortest path search
+    // over the graph, relative to following a hop of a tree
+    protected static final int SPUR_COST = 32;
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * Computes the routes of a pair
+     */
+    public interface Loader {
+        /**
+         * @param id
+         * @param maxRoutes 1 for the shortest route only, more for alternatives
+         * @return the routes by increasing cost, empty if there is none
+         */
+        public List<Route> load(RouteId id, int maxRoutes);
+    }
+
+    private static final class Entry {
+        final RouteId id;
+        final List<Route> routes;
+        // the routes requested when the entry was computed
+        final int maxRoutes;
+        final int weight;
+        // estimated work to compute the entry again
+        final long cost;
+
+        /*
+         * The shortest route follows a tree hop by hop, the alternatives take
+         * a spur search from every switch of the routes found before them.
+         * The work is estimated from the routes rather than timed, so that it
+         * does not depend on the load or garbage collection at the time.
+         */
+        Entry(RouteId id, List<Route> routes, int maxRoutes) {
+            this.id = id;
+            this.routes = routes;
+            this.maxRoutes = maxRoutes;
+            int w = ENTRY_BYTES;
+            long hops = 0;
+            for (Route r : routes) {
+                w += ROUTE_BYTES + PORT_BYTES * r.getPath().size();
+                hops += r.getPath().size() / 2;
+            }
+            this.weight = w;
+            this.cost = Math.max(1, (maxRoutes > 1) ? hops * SPUR_COST : hops);
+        }
+    }
+
+    private final Segment[] segments;
+    private final long maxBytes;
+    private final int maxRoutes;
+    private volatile long generation;
+
+    public RouteCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_ROUTES);
+    }
+
+    /**
+     * @param maxBytes estimated memory the entries may take
+     * @param maxRoutes routes kept per pair, the shortest and the alternatives
+     */
+    public RouteCache(long maxBytes, int maxRoutes) {
+        this.maxBytes = maxBytes;
+        this.maxRoutes = Math.max(1, maxRoutes);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxBytes / SEGMENTS);
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the shortest route of a pair, computing it on a miss
+     * @param id
+     * @param loader computes the route on a miss
+     * @param generation generation of the loader, see {@link #invalidate(Collection, Set, boolean)}
+     * @return null if there is no route
+     */
+    public Route getRoute(RouteId id, Loader loader, long generation) {
+        List<Route> routes = getRoutes(id, 1, loader, generation);
+        return routes.isEmpty() ? null : routes.get(0);
+    }
+
+    /**
+     * Get the routes of a pair, computing them on a miss or if the entry
+     * holds fewer alternatives than requested
+     * @param id
+     * @param maxRoutes
+     * @param loader
+     * @param generation
+     * @return the routes by increasing cost, at most maxRoutes of them
+     */
+    public List<Route> getRoutes(RouteId id, int maxRoutes, Loader loader, long generation) {
+        Segment segment = segmentFor(id);
+        Entry e = segment.get(id, maxRoutes);
+        if (e == null) {
+            List<Route> routes = Collections.unmodifiableList(
+                    new ArrayList<Route>(loader.load(id, maxRoutes)));
+            e = new Entry(id, routes, maxRoutes);
+            segment.put(e, generation);
+        }
+        return (e.routes.size() <= maxRoutes) ? e.routes : e.routes.subList(0, maxRoutes);
+    }
+
+    /**
+     * Invalidate the entries that may be outdated after a topology change
+     * and start a new generation.
+     *
+     * A removed link invalidates the entries with a route over it: the
+     * other routes kept their cost and no route got cheaper. An added link
+     * may give shorter routes toward some destinations, the entries toward
+     * them are invalidated. Toward the other destinations the shortest
+     * route is unchanged and is kept, but an added link may have made new
+     * alternatives, so the alternatives are dropped and computed again
+     * when they are asked for.
+     *
+     * @param removedLinks links removed or with a changed cost
+     * @param changedDestinations destinations whose shortest routes changed
+     * @param linksAdded whether links were added
+     * @return the new generation
+     */
+    public synchronized long invalidate(Collection<Link> removedLinks,
+                                        Set<DatapathId> changedDestinations, boolean linksAdded) {
+        long g = ++generation;
+        for (Segment segment : segments) {
+            segment.invalidate(removedLinks, changedDestinations, linksAdded);
+        }
+        return g;
+    }
+
+    /**
+     * Invalidate all entries and start a new generation
+     * @return the new generation
+     */
+    public synchronized long invalidateAll() {
+        long g = ++generation;
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        return g;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return estimated memory of the entries in bytes
+     */
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    public long getHitCount() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            hits += segment.hits();
+        }
+        return hits;
+    }
+
+    public long getMissCount() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            misses += segment.misses();
+        }
+        return misses;
+    }
+
+    private Segment segmentFor(RouteId id) {
+        int h = id.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % SEGMENTS];
+    }
+
+    private final class Segment {
+        private final long windowMax;
+        private final long mainMax;
+        private final LinkedHashMap<RouteId, Entry> window =
+                new LinkedHashMap<RouteId, Entry>(16, 0.75f, true);
+        private final LinkedHashMap<RouteId, Entry> main =
+                new LinkedHashMap<RouteId, Entry>(16, 0.75f, true);
+        private final Map<Link, Set<RouteId>> byLink = new HashMap<Link, Set<RouteId>>();
+        private final FrequencySketch sketch;
+        private long windowWeight;
+        private long mainWeight;
+        private long hits;
+        private long misses;
+
+        Segment(long maxBytes) {
+            this.windowMax = Math.max(1, maxBytes * WINDOW_PERCENT / 100);
+            this.mainMax = Math.max(0, maxBytes - windowMax);
+            int entries = (int) Math.min(1 << 22, maxBytes / (ENTRY_BYTES + ROUTE_BYTES + 4 * PORT_BYTES));
+            this.sketch = new FrequencySketch(Math.max(64, entries));
+        }
+
+        synchronized Entry get(RouteId id, int maxRoutes) {
+            sketch.increment(id);
+            Entry e = window.get(id);
+            if (e == null) {
+                e = main.get(id);
+            }
+            // fewer alternatives than requested, and maybe more exist
+            if (e == null || (e.maxRoutes < maxRoutes && e.routes.size() >= e.maxRoutes)) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return e;
+        }
+
+        /*
+         * The generation is checked under the segment lock, an invalidation
+         * either sees the entry or the entry sees the new generation.
+         */
+        synchronized void put(Entry e, long generation) {
+            if (generation != RouteCache.this.generation) return;
+            remove(e.id);
+            window.put(e.id, e);
+            windowWeight += e.weight;
+            index(e);
+            while (windowWeight > windowMax && !window.isEmpty()) {
+                Entry candidate = window.values().iterator().next();
+                window.remove(candidate.id);
+                windowWeight -= candidate.weight;
+                admit(candidate);
+            }
+        }
+
+        /*
+         * Move an entry leaving the window to the main area if it is worth
+         * more than the entries it would push out.
+         */
+        private void admit(Entry candidate) {
+            long score = score(candidate);
+            Iterator<Entry> lru = main.values().iterator();
+            while (mainWeight + candidate.weight > mainMax) {
+                if (!lru.hasNext()) {
+                    unindex(candidate);
+                    return;
+                }
+                Entry victim = lru.next();
+                if (score <= score(victim)) {
+                    unindex(candidate);
+                    return;
+                }
+                lru.remove();
+                mainWeight -= victim.weight;
+                unindex(victim);
+            }
+            main.put(candidate.id, candidate);
+            mainWeight += candidate.weight;
+        }
+
+        private long score(Entry e) {
+            return sketch.frequency(e.id) * e.cost;
+        }
+
+        synchronized void invalidate(Collection<Link> removedLinks,
+                                     Set<DatapathId> changedDestinations, boolean linksAdded) {
+            Set<RouteId> invalid = new HashSet<RouteId>();
+            for (Link l : removedLinks) {
+                Set<RouteId> ids = byLink.get(l);
+                if (ids != null) {
+                    invalid.addAll(ids);
+                }
+            }
+            if (!changedDestinations.isEmpty()) {
+                for (RouteId id : window.keySet()) {
+                    if (changedDestinations.contains(id.getDst())) invalid.add(id);
+                }
+                for (RouteId id : main.keySet()) {
+                    if (changedDestinations.contains(id.getDst())) invalid.add(id);
+                }
+            }
+            for (RouteId id : invalid) {
+                remove(id);
+            }
+            if (linksAdded) {
+                trim(window);
+                trim(main);
+            }
+        }
+
+        /*
+         * Keep only the shortest route of the entries. The values are
+         * replaced in place so that the LRU order does not change.
+         */
+        private void trim(LinkedHashMap<RouteId, Entry> area) {
+            for (Map.Entry<RouteId, Entry> me : area.entrySet()) {
+                Entry e = me.getValue();
+                if (e.maxRoutes == 1) continue;
+                Entry shortest = new Entry(e.id, e.routes.subList(0, Math.min(1, e.routes.size())), 1);
+                unindex(e);
+                index(shortest);
+                me.setValue(shortest);
+                if (area == window) {
+                    windowWeight += shortest.weight - e.weight;
+                } else {
+                    mainWeight += shortest.weight - e.weight;
+                }
+            }
+        }
+
+        synchronized void clear() {
+            window.clear();
+            main.clear();
+            byLink.clear();
+            windowWeight = 0;
+            mainWeight = 0;
+        }
+
+        synchronized int size() {
+            return window.size() + main.size();
+        }
+
+        synchronized long weight() {
+            return windowWeight + mainWeight;
+        }
+
+        synchronized long hits() {
+            return hits;
+        }
+
+        synchronized long misses() {
+            return misses;
+        }
+
+        private void remove(RouteId id) {
+            Entry e = window.remove(id);
+            if (e != null) {
+                windowWeight -= e.weight;
+            } else {
+                e = main.remove(id);
+                if (e == null) return;
+                mainWeight -= e.weight;
+            }
+            unindex(e);
+        }
+
+        private void index(Entry e) {
+            for (Link l : links(e)) {
+                Set<RouteId> ids = byLink.get(l);
+                if (ids == null) {
+                    ids = new HashSet<RouteId>();
+                    byLink.put(l, ids);
+                }
+                ids.add(e.id);
+            }
+        }
+
+        private void unindex(Entry e) {
+            for (Link l : links(e)) {
+                Set<RouteId> ids = byLink.get(l);
+                if (ids == null) continue;
+                ids.remove(e.id);
+                if (ids.isEmpty()) {
+                    byLink.remove(l);
+                }
+            }
+        }
+
+        /*
+         * The links of the routes of an entry. A route is a list of switch
+         * ports, two per link; the link is matched on its ports only.
+         */
+        private static Set<Link> links(Entry e) {
+            Set<Link> links = new HashSet<Link>();
+            for (Route r : e.routes) {
+                List<NodePortTuple> path = r.getPath();
+                for (int i = 0; i + 1 < path.size(); i += 2) {
+                    NodePortTuple src = path.get(i);
+                    NodePortTuple dst = path.get(i + 1);
+                    links.add(new Link(src.getNodeId(), src.getPortId(),
+                            dst.getNodeId(), dst.getPortId(), U64.ZERO));
+                }
+            }
+            return links;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key and sixteen per
+     * entry the segment can hold, all halved when the number of increments
+     * reaches ten times the number of entries so that the frequencies
+     * follow the recent accesses.
+     */
+    static final class FrequencySketch {
+        // odd multipliers, one per counter of a key
+        private static final int[] SEEDS = { 0x97cb3127, 0xb492b66f, 0x9ae16a3b, 0x85ebca6b };
+
+        private final long[] table;
+        private final int mask;
+        private final int resetSize;
+        private int size;
+
+        FrequencySketch(int entries) {
+            int longs = Integer.highestOneBit(Math.max(2, entries) - 1) << 1;
+            this.table = new long[longs];
+            this.mask = longs * 16 - 1;
+            this.resetSize = 10 * entries;
+        }
+
+        int frequency(Object key) {
+            int h = spread(key.hashCode());
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                min = Math.min(min, counter(index(h, i)));
+            }
+            return min;
+        }
+
+        void increment(Object key) {
+            int h = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = index(h, i);
+                if (counter(index) < 15) {
+                    table[index >>> 4] += 1L << ((index & 15) << 2);
+                    added = true;
+                }
+            }
+            if (added && ++size >= resetSize) {
+                reset();
+            }
+        }
+
+        private int counter(int index) {
+            return (int) (table[index >>> 4] >>> ((index & 15) << 2)) & 15;
+        }
+
+        private int index(int h, int i) {
+            int x = (h + i) * SEEDS[i];
+            return (x ^ (x >>> 16)) & mask;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            size /= 2;
+        }
+
+        private static int spread(int h) {
+            h ^= (h >>> 17);
+            h *= 0xed5ad4bb;
+            h ^= (h >>> 11);
+            return h;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Computes the destination rooted trees of a topology, one independent
+ * task per root, on a fork/join pool.
+ *
+ * The graph is flattened once per computation into a {@link Graph}: the
+ * switches get a dense index and the links into each switch are stored as
+ * compressed rows of source indices and weights. A tree is then computed
+ * with primitive arrays and a heap of longs, reused by every tree a worker
+ * computes, and only its result is converted to a {@link BroadcastTree}.
+ */
+public class ShortestPathEngine {
+    /**
+     * Leaf tasks per worker, so that workers that finish early can steal
+     */
+    private static final int TASKS_PER_WORKER = 8;
+
+    /**
+     * Computes the trees in the calling thread
+     */
+    public static final ShortestPathEngine SEQUENTIAL = new ShortestPathEngine(1);
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+
+    /**
+     * @param parallelism number of worker threads, 1 to compute in the caller
+     */
+    public ShortestPathEngine(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = (this.parallelism > 1) ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Computes the tree of one root
+     */
+    public interface TreeFunction {
+        public BroadcastTree computeTree(DatapathId root);
+    }
+
+    /**
+     * Compute a tree for every root
+     * @param roots
+     * @param function called concurrently for different roots
+     * @return the trees in the order of the roots
+     */
+    public BroadcastTree[] computeAll(List<DatapathId> roots, TreeFunction function) {
+        BroadcastTree[] trees = new BroadcastTree[roots.size()];
+        if (pool == null || roots.size() < 2) {
+            for (int i = 0; i < trees.length; i++) {
+                trees[i] = function.computeTree(roots.get(i));
+            }
+        } else {
+            int leaf = Math.max(1, roots.size() / (parallelism * TASKS_PER_WORKER));
+            pool.invoke(new TreeTask(roots, function, trees, 0, trees.length, leaf));
+        }
+        return trees;
+    }
+
+    @SuppressWarnings("serial")
+    private static class TreeTask extends RecursiveAction {
+        private final List<DatapathId> roots;
+        private final TreeFunction function;
+        private final BroadcastTree[] trees;
+        private final int from;
+        private final int to;
+        private final int leaf;
+
+        TreeTask(List<DatapathId> roots, TreeFunction function, BroadcastTree[] trees,
+                 int from, int to, int leaf) {
+            this.roots = roots;
+            this.function = function;
+            this.trees = trees;
+            this.from = from;
+            this.to = to;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leaf) {
+                for (int i = from; i < to; i++) {
+                    trees[i] = function.computeTree(roots.get(i));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TreeTask(roots, function, trees, from, mid, leaf),
+                      new TreeTask(roots, function, trees, mid, to, leaf));
+        }
+    }
+
+    /**
+     * Links into each switch in compressed sparse row form
+     */
+    public static class Graph {
+        private final DatapathId[] nodes;
+        private final Map<DatapathId, Integer> index;
+        // links into node i are offsets[i] .. offsets[i + 1] - 1
+        private final int[] offsets;
+        // the node a link goes to, the row it is in
+        private final int[] targets;
+        private final int[] sources;
+        private final int[] weights;
+        private final Link[] links;
+
+        /**
+         * @param linkMap the links of each switch, in either direction
+         * @param linkCost link weights, 1 if missing
+         */
+        public Graph(Map<DatapathId, Set<Link>> linkMap, Map<Link, Integer> linkCost) {
+            int n = linkMap.size();
+            nodes = linkMap.keySet().toArray(new DatapathId[n]);
+            index = new HashMap<DatapathId, Integer>(n * 2);
+            for (int i = 0; i < n; i++) {
+                index.put(nodes[i], i);
+            }
+
+            offsets = new int[n + 1];
+            List<Link> in = new ArrayList<Link>();
+            List<Integer> src = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                offsets[i] = in.size();
+                Set<Link> ls = linkMap.get(nodes[i]);
+                if (ls == null) continue;
+                for (Link l : ls) {
+                    // only the links toward the node lead to the root
+                    if (l.getSrc().equals(nodes[i])) continue;
+                    Integer s = index.get(l.getSrc());
+                    if (s == null) continue;
+                    in.add(l);
+                    src.add(s);
+                }
+            }
+            offsets[n] = in.size();
+
+            links = in.toArray(new Link[in.size()]);
+            targets = new int[links.length];
+            sources = new int[links.length];
+            weights = new int[links.length];
+            for (int i = 0; i < n; i++) {
+                Arrays.fill(targets, offsets[i], offsets[i + 1], i);
+            }
+            for (int e = 0; e < links.length; e++) {
+                sources[e] = src.get(e);
+                Integer w = (linkCost == null) ? null : linkCost.get(links[e]);
+                weights[e] = (w == null) ? 1 : w;
+            }
+        }
+
+        public int getNodeCount() {
+            return nodes.length;
+        }
+
+        public int getLinkCount() {
+            return links.length;
+        }
+
+        /**
+         * The same tree as TopologyInstance.dijkstra() with isDstRooted
+         * set, up to the choice between equal cost next hops.
+         * @param root
+         * @return null if the root is not in the graph
+         */
+        public BroadcastTree dstRootedTree(DatapathId root) {
+            Integer r = index.get(root);
+            if (r == null) return null;
+
+            int n = nodes.length;
+            Scratch s = SCRATCH.get();
+            s.ensure(n, links.length + 1);
+            int[] dist = s.dist;
+            int[] via = s.via;
+            long[] heap = s.heap;
+            Arrays.fill(dist, 0, n, TopologyInstance.MAX_PATH_WEIGHT);
+            Arrays.fill(via, 0, n, -1);
+
+            dist[r] = 0;
+            int size = 0;
+            heap[size++] = r;
+            while (size > 0) {
+                long top = heap[0];
+                size = pop(heap, size);
+                int node = (int) top;
+                int d = (int) (top >>> 32);
+                // an outdated entry, the node got closer since
+                if (d > dist[node]) continue;
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    int nd = d + weights[e];
+                    int next = sources[e];
+                    if (nd < dist[next]) {
+                        dist[next] = nd;
+                        via[next] = e;
+                        size = push(heap, size, ((long) nd << 32) | next);
+                    }
+                }
+            }
+
+            HashMap<DatapathId, Link> nexthoplinks = new HashMap<DatapathId, Link>(n * 4 / 3 + 1);
+            HashMap<DatapathId, Integer> cost = new HashMap<DatapathId, Integer>(n * 4 / 3 + 1);
+            for (int i = 0; i < n; i++) {
+                nexthoplinks.put(nodes[i], via[i] < 0 ? null : links[via[i]]);
+                cost.put(nodes[i], dist[i]);
+            }
+            return new BroadcastTree(nexthoplinks, cost);
+        }
+
+        /**
+         * The shortest path between two switches that avoids some links and
+         * switches, as needed for the alternative routes.
+         * @param src
+         * @param dst
+         * @param excludedLinks links the path may not take
+         * @param excludedNodes switches the path may not cross
+         * @return the links from src to dst, null if there is no such path
+         */
+        public List<Link> shortestPath(DatapathId src, DatapathId dst,
+                                       Set<Link> excludedLinks, Set<DatapathId> excludedNodes) {
+            Integer s = index.get(src);
+            Integer r = index.get(dst);
+            if (s == null || r == null || excludedNodes.contains(src)) return null;
+
+            int n = nodes.length;
+            Scratch scratch = SCRATCH.get();
+            scratch.ensure(n, links.length + 1);
+            int[] dist = scratch.dist;
+            int[] via = scratch.via;
+            long[] heap = scratch.heap;
+            boolean[] excluded = scratch.excluded;
+            Arrays.fill(dist, 0, n, TopologyInstance.MAX_PATH_WEIGHT);
+            Arrays.fill(via, 0, n, -1);
+            Arrays.fill(excluded, 0, n, false);
+            for (DatapathId node : excludedNodes) {
+                Integer i = index.get(node);
+                if (i != null) excluded[i] = true;
+            }
+            boolean checkLinks = !excludedLinks.isEmpty();
+
+            // from the destination backwards, until the source is reached
+            dist[r] = 0;
+            int size = 0;
+            heap[size++] = r;
+            while (size > 0) {
+                long top = heap[0];
+                size = pop(heap, size);
+                int node = (int) top;
+                int d = (int) (top >>> 32);
+                if (d > dist[node]) continue;
+                if (node == s) break;
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    int next = sources[e];
+                    if (excluded[next]) continue;
+                    if (checkLinks && excludedLinks.contains(links[e])) continue;
+                    int nd = d + weights[e];
+                    if (nd < dist[next]) {
+                        dist[next] = nd;
+                        via[next] = e;
+                        size = push(heap, size, ((long) nd << 32) | next);
+                    }
+                }
+            }
+            if (s.intValue() != r.intValue() && via[s] < 0) return null;
+
+            List<Link> path = new ArrayList<Link>();
+            for (int node = s; node != r; node = targets[via[node]]) {
+                path.add(links[via[node]]);
+            }
+            return path;
+        }
+
+        private static int push(long[] heap, int size, long v) {
+            int i = size;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= v) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = v;
+            return size + 1;
+        }
+
+        private static int pop(long[] heap, int size) {
+            long v = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+                if (v <= heap[child]) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = v;
+            return size;
+        }
+    }
+
+    /**
+     * Arrays of one worker thread, grown to the largest graph it has seen
+     */
+    private static final class Scratch {
+        int[] dist = new int[0];
+        int[] via = new int[0];
+        boolean[] excluded = new boolean[0];
+        long[] heap = new long[0];
+
+        void ensure(int nodes, int entries) {
+            if (dist.length < nodes) {
+                dist = new int[nodes];
+                via = new int[nodes];
+                excluded = new boolean[nodes];
+            }
+            if (heap.length < entries) {
+                heap = new long[entries];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.routing.BroadcastTree;
 import net.floodlightcontroller.routing.Link;
@@ -39,10 +40,6 @@ import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-
 /**
  * A representation of a network topology.  Used internally by
  * {@link TopologyManager}
@@ -55,7 +52,6 @@ public class TopologyInstance {
 
     public static final int MAX_LINK_WEIGHT = 10000;
     public static final int MAX_PATH_WEIGHT = Integer.MAX_VALUE - MAX_LINK_WEIGHT - 1;
-    public static final int PATH_CACHE_SIZE = 1000;
 
     protected static Logger log = LoggerFactory.getLogger(TopologyInstance.class);
 
@@ -95,24 +91,45 @@ public class TopologyInstance {
 	protected Map<DatapathId, Set<OFPort>> allPorts;
 	// Maps broadcast ports to DatapathId
     protected Map<DatapathId, Set<OFPort>> broadcastPortMap;
+	// Edge and attachment point ports, looked up on every packet-in
+    protected EdgePortTable edgePorts;
+	// Links and link costs the full and the cluster trees were computed on,
+	// so that the next instance only repairs the trees a link change touches
+    protected Map<DatapathId, Set<Link>> allLinksBySwitch;
+    protected Map<Link, Integer> allLinkCosts;
+    protected Map<Link, Integer> clusterLinkCosts;
+	// Trees taken over unchanged from the previous instance, repaired, and computed anew
+    protected final AtomicInteger treesReused = new AtomicInteger();
+    protected final AtomicInteger treesRepaired = new AtomicInteger();
+    protected final AtomicInteger treesComputed = new AtomicInteger();
+	// Computes the shortest path trees, by default in the calling thread
+    protected ShortestPathEngine pathEngine = ShortestPathEngine.SEQUENTIAL;
+	// Graph of all links, for the alternative routes
+    protected ShortestPathEngine.Graph allLinksGraph;
+	// Links removed and added since the previous instance, null without one
+    protected List<Link> allLinksRemoved;
+    protected List<Link> allLinksAdded;
     
 
-    protected class PathCacheLoader extends CacheLoader<RouteId, Route> {
+    protected class RouteLoader implements RouteCache.Loader {
         TopologyInstance ti;
-        PathCacheLoader(TopologyInstance ti) {
+        RouteLoader(TopologyInstance ti) {
             this.ti = ti;
         }
 
         @Override
-        public Route load(RouteId rid) {
-            return ti.buildroute(rid);
+        public List<Route> load(RouteId rid, int maxRoutes) {
+            return ti.buildroutes(rid, maxRoutes);
         }
     }
 
-    // Path cache loader is defined for loading a path when it not present
-    // in the cache.
-    private final PathCacheLoader pathCacheLoader = new PathCacheLoader(this);
-    protected LoadingCache<RouteId, Route> pathcache;
+    // Route loader is defined for loading the routes of a pair when they
+    // are not present in the cache.
+    private final RouteLoader routeLoader = new RouteLoader(this);
+    // Shared with the previous and the next instances
+    protected RouteCache routeCache;
+    // The cache generation of the routes of this instance
+    protected long routeGeneration;
 	
     public TopologyInstance(Map<DatapathId, Set<OFPort>> switchPorts,
                             Set<NodePortTuple> blockedPorts,
@@ -146,6 +163,7 @@ public class TopologyInstance {
         
         this.broadcastDomainPorts = new HashSet<NodePortTuple>(broadcastDomainPorts);
         this.tunnelPorts = new HashSet<NodePortTuple>(tunnelPorts);
+        this.edgePorts = new EdgePortTable(this.allLinks, this.switchPortLinks);
 
         this.blockedLinks = new HashSet<Link>();
        
@@ -158,17 +176,38 @@ public class TopologyInstance {
         this.clusterBroadcastTrees = new HashMap<DatapathId, BroadcastTree>();
         this.clusterBroadcastNodePorts = new HashMap<DatapathId, Set<NodePortTuple>>();
 
-        pathcache = CacheBuilder.newBuilder().concurrencyLevel(4)
-                    .maximumSize(1000L)
-                    .build(
-                            new CacheLoader<RouteId, Route>() {
-                                public Route load(RouteId rid) {
-                                    return pathCacheLoader.load(rid);
-                                }
-                            });
+        this.routeCache = new RouteCache();
+        this.routeGeneration = routeCache.getGeneration();
     }
 	
+    public void setPathEngine(ShortestPathEngine pathEngine) {
+        this.pathEngine = pathEngine;
+    }
+
+    /**
+     * Use the route cache of the previous instances. Must be set before
+     * {@link #compute(TopologyInstance)}.
+     * @param routeCache
+     */
+    public void setRouteCache(RouteCache routeCache) {
+        this.routeCache = routeCache;
+        this.routeGeneration = routeCache.getGeneration();
+    }
+
     public void compute() {
+        compute(null);
+    }
+
+    /**
+     * Compute the instance from the trees of the previous one. A shortest
+     * path tree that no added, removed or reweighted link touches is shared
+     * with the previous instance, so are its cached routes; a touched tree
+     * is repaired rather than computed again.
+     * @param previous the instance this one replaces, may be null
+     */
+    public void compute(TopologyInstance previous) {
+        long start = System.nanoTime();
+
         // Step 1: Compute clusters ignoring broadcast domain links
         // Create nodes for clusters in the higher level topology
         // Must ignore blocked links.
@@ -181,7 +220,7 @@ public class TopologyInstance {
         // Step 2. Compute shortest path trees in each cluster for
         // unicast routing.  The trees are rooted at the destination.
         // Cost for tunnel links and direct links are the same.
-        calculateShortestPathTreeInClusters();
+        calculateShortestPathTreeInClusters(previous);
 		
 		// Step 3. Compute broadcast tree in each cluster.
         // Cost for tunnel links are high to discourage use of
@@ -193,7 +232,10 @@ public class TopologyInstance {
         // Step 4. Compute e2e shortest path trees on entire topology for unicast routing.
 		// The trees are rooted at the destination.
         // Cost for tunnel links and direct links are the same.
-		calculateAllShortestPaths();
+		calculateAllShortestPaths(previous);
+
+		// Step 4.1. Invalidate the cached routes the changes may affect.
+		invalidateRoutes(previous);
 		
 		// Step 5. Compute broadcast tree for the whole topology (needed to avoid loops).
         // Cost for tunnel links are high to discourage use of
@@ -207,20 +249,24 @@ public class TopologyInstance {
        	
         // Step 7. print topology.
         printTopology();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Computed topology in {} us, shortest path trees: {} reused, {} repaired, {} computed",
+                    new Object[] { (System.nanoTime() - start) / 1000, treesReused.get(),
+                            treesRepaired.get(), treesComputed.get() });
+        }
     }
 
 	/*
 	 * Checks if OF port is edge port
 	 */
     public boolean isEdge(DatapathId sw, OFPort portId) { 
-		NodePortTuple np = new NodePortTuple(sw, portId);
-		if (allLinks.get(np) == null || allLinks.get(np).isEmpty()) {
-			return true;
-		}
-		else {
-			return false;
-		}
-    }   
+        return edgePorts.isEdge(sw, portId);
+    }
+
+    public EdgePortTable getEdgePortTable() {
+        return edgePorts;
+    }
 
 	/*
 	 * Returns broadcast ports for the given DatapathId
@@ -659,6 +705,10 @@ public class TopologyInstance {
 	 * Modification of the calculateShortestPathTreeInClusters (dealing with whole topology, not individual clusters)
 	 */
     public void calculateAllShortestPaths() {
+    	calculateAllShortestPaths(null);
+    }
+
+    public void calculateAllShortestPaths(TopologyInstance previous) {
     	this.broadcastNodePorts.clear();
     	this.destinationRootedFullTrees.clear();
     	Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
@@ -689,10 +739,47 @@ public class TopologyInstance {
             }
         }   
         
-        for (DatapathId node : linkDpidMap.keySet()) {
-        	BroadcastTree tree = dijkstra(linkDpidMap, node, linkCost, true);
-            destinationRootedFullTrees.put(node, tree);
+        allLinksBySwitch = linkDpidMap;
+        allLinkCosts = linkCost;
+
+        final boolean incremental = previous != null && previous.allLinksBySwitch != null;
+        boolean sameNodes = false;
+        final List<Link> removed = new ArrayList<Link>();
+        final List<Link> added = new ArrayList<Link>();
+        if (incremental) {
+            sameNodes = linkDpidMap.keySet().equals(previous.allLinksBySwitch.keySet());
+            diffLinks(previous.allLinksBySwitch, previous.allLinkCosts,
+                    linkDpidMap, linkCost, removed, added);
+        }
+
+        final Map<DatapathId, BroadcastTree> oldTrees =
+                incremental ? previous.destinationRootedFullTrees : null;
+        final Map<DatapathId, Set<Link>> links = linkDpidMap;
+        final Map<Link, Integer> costs = linkCost;
+        final boolean unchangedNodes = sameNodes;
+        final ShortestPathEngine.Graph graph = new ShortestPathEngine.Graph(linkDpidMap, linkCost);
+        List<DatapathId> roots = new ArrayList<DatapathId>(linkDpidMap.keySet());
+        BroadcastTree[] trees = pathEngine.computeAll(roots, new ShortestPathEngine.TreeFunction() {
+            @Override
+            public BroadcastTree computeTree(DatapathId root) {
+                BroadcastTree tree = null;
+                if (incremental) {
+                    tree = repairDstRootedTree(oldTrees.get(root), links, costs,
+                            removed, added, unchangedNodes);
+                }
+                if (tree == null) {
+                    tree = graph.dstRootedTree(root);
+                    treesComputed.incrementAndGet();
+                }
+                return tree;
+            }
+        });
+        for (int i = 0; i < trees.length; i++) {
+            destinationRootedFullTrees.put(roots.get(i), trees[i]);
         }
+        allLinksGraph = graph;
+        allLinksRemoved = incremental ? removed : null;
+        allLinksAdded = incremental ? added : null;
         
 		//finiteBroadcastTree is randomly chosen in this implementation
         if (this.destinationRootedFullTrees.size() > 0) {
@@ -701,7 +788,10 @@ public class TopologyInstance {
     }
 
     protected void calculateShortestPathTreeInClusters() {
-        pathcache.invalidateAll();
+        calculateShortestPathTreeInClusters(null);
+    }
+
+    protected void calculateShortestPathTreeInClusters(TopologyInstance previous) {
         destinationRootedTrees.clear();
 
         Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
@@ -715,12 +805,282 @@ public class TopologyInstance {
             }
         }
 
+        clusterLinkCosts = linkCost;
+
+        // the trees of all clusters are computed together
+        final Map<DatapathId, ClusterChange> changes = new HashMap<DatapathId, ClusterChange>();
+        List<DatapathId> roots = new ArrayList<DatapathId>();
         for (Cluster c : clusters) {
+            ClusterChange change = new ClusterChange(c, linkCost);
+            // the trees of a cluster can only be repaired if it has the same switches
+            if (previous != null && previous.clusterLinkCosts != null) {
+                Cluster old = previous.switchClusterMap.get(c.id);
+                if (old != null && old.links.keySet().equals(c.links.keySet())) {
+                    change.oldTrees = previous.destinationRootedTrees;
+                    diffLinks(old.links, previous.clusterLinkCosts, c.links, linkCost,
+                            change.removed, change.added);
+                }
+            }
             for (DatapathId node : c.links.keySet()) {
-                BroadcastTree tree = clusterDijkstra(c, node, linkCost, true);
-                destinationRootedTrees.put(node, tree);
+                changes.put(node, change);
+                roots.add(node);
+            }
+        }
+
+        final Map<Link, Integer> costs = linkCost;
+        BroadcastTree[] trees = pathEngine.computeAll(roots, new ShortestPathEngine.TreeFunction() {
+            @Override
+            public BroadcastTree computeTree(DatapathId root) {
+                ClusterChange change = changes.get(root);
+                BroadcastTree tree = null;
+                if (change.oldTrees != null) {
+                    tree = repairDstRootedTree(change.oldTrees.get(root),
+                            change.cluster.links, costs, change.removed, change.added, true);
+                }
+                if (tree == null) {
+                    tree = change.graph.dstRootedTree(root);
+                    treesComputed.incrementAndGet();
+                }
+                return tree;
+            }
+        });
+        for (int i = 0; i < trees.length; i++) {
+            destinationRootedTrees.put(roots.get(i), trees[i]);
+        }
+    }
+
+    /*
+     * A cluster and its link changes since the previous instance
+     */
+    private static class ClusterChange {
+        final Cluster cluster;
+        final ShortestPathEngine.Graph graph;
+        final List<Link> removed = new ArrayList<Link>();
+        final List<Link> added = new ArrayList<Link>();
+        // trees of the previous instance if the cluster has the same switches
+        Map<DatapathId, BroadcastTree> oldTrees;
+
+        ClusterChange(Cluster cluster, Map<Link, Integer> linkCost) {
+            this.cluster = cluster;
+            this.graph = new ShortestPathEngine.Graph(cluster.links, linkCost);
+        }
+    }
+
+    /*
+     * Links that are in the old but not in the new graph, and links that are
+     * in the new but not in the old graph. A link whose cost changed is both.
+     */
+    protected static void diffLinks(Map<DatapathId, Set<Link>> oldLinks, Map<Link, Integer> oldCost,
+            Map<DatapathId, Set<Link>> newLinks, Map<Link, Integer> newCost,
+            List<Link> removed, List<Link> added) {
+        Set<Link> oldSet = new HashSet<Link>();
+        for (Set<Link> links : oldLinks.values()) {
+            oldSet.addAll(links);
+        }
+        Set<Link> newSet = new HashSet<Link>();
+        for (Set<Link> links : newLinks.values()) {
+            newSet.addAll(links);
+        }
+        for (Link l : oldSet) {
+            if (!newSet.contains(l) || weight(oldCost, l) != weight(newCost, l)) {
+                removed.add(l);
+            }
+        }
+        for (Link l : newSet) {
+            if (!oldSet.contains(l) || weight(oldCost, l) != weight(newCost, l)) {
+                added.add(l);
+            }
+        }
+    }
+
+    private static int weight(Map<Link, Integer> linkCost, Link l) {
+        Integer w = (linkCost == null) ? null : linkCost.get(l);
+        return (w == null) ? 1 : w;
+    }
+
+    /*
+     * Repair a destination rooted tree of the previous instance for the new
+     * graph, with the same result as dijkstra() up to the choice between
+     * equal cost next hops.
+     *
+     * Removing a link only lengthens the paths of the nodes below it in the
+     * tree. Those nodes are cut off and get their cost back from their
+     * neighbours outside the cut. Adding a link only shortens paths through
+     * it. In both cases a Dijkstra run then spreads the new costs, but only
+     * from the nodes whose cost changed.
+     *
+     * Returns the old tree itself if no link change touches it, null if
+     * there is no old tree.
+     */
+    protected BroadcastTree repairDstRootedTree(BroadcastTree old,
+            Map<DatapathId, Set<Link>> links, Map<Link, Integer> linkCost,
+            List<Link> removed, List<Link> added, boolean sameNodes) {
+        if (old == null) return null;
+
+        Map<DatapathId, Link> oldLinks = old.getLinks();
+        Map<DatapathId, Integer> oldCosts = old.getCosts();
+
+        List<DatapathId> cut = new ArrayList<DatapathId>();
+        for (Link l : removed) {
+            if (l.equals(oldLinks.get(l.getSrc()))) {
+                cut.add(l.getSrc());
+            }
+        }
+        if (cut.isEmpty() && sameNodes) {
+            boolean shorter = false;
+            for (Link l : added) {
+                if (shortens(oldCosts, l, weight(linkCost, l))) {
+                    shorter = true;
+                    break;
+                }
+            }
+            if (!shorter) {
+                treesReused.incrementAndGet();
+                return old;
+            }
+        }
+        treesRepaired.incrementAndGet();
+
+        HashMap<DatapathId, Link> nexthoplinks = new HashMap<DatapathId, Link>(oldLinks);
+        HashMap<DatapathId, Integer> cost = new HashMap<DatapathId, Integer>(oldCosts);
+        if (!sameNodes) {
+            nexthoplinks.keySet().retainAll(links.keySet());
+            cost.keySet().retainAll(links.keySet());
+            for (DatapathId node : links.keySet()) {
+                if (!cost.containsKey(node)) {
+                    nexthoplinks.put(node, null);
+                    cost.put(node, MAX_PATH_WEIGHT);
+                }
+            }
+        }
+
+        PriorityQueue<NodeDist> nodeq = new PriorityQueue<NodeDist>();
+
+        if (!cut.isEmpty()) {
+            // Cut off the subtrees below the removed tree links
+            Map<DatapathId, List<DatapathId>> children = new HashMap<DatapathId, List<DatapathId>>();
+            for (Map.Entry<DatapathId, Link> e : oldLinks.entrySet()) {
+                if (e.getValue() == null) continue;
+                List<DatapathId> c = children.get(e.getValue().getDst());
+                if (c == null) {
+                    c = new ArrayList<DatapathId>();
+                    children.put(e.getValue().getDst(), c);
+                }
+                c.add(e.getKey());
+            }
+            Set<DatapathId> subtree = new HashSet<DatapathId>(cut);
+            LinkedList<DatapathId> queue = new LinkedList<DatapathId>(cut);
+            while (!queue.isEmpty()) {
+                List<DatapathId> c = children.get(queue.poll());
+                if (c == null) continue;
+                for (DatapathId child : c) {
+                    if (subtree.add(child)) {
+                        queue.add(child);
+                    }
+                }
+            }
+            for (DatapathId node : subtree) {
+                if (cost.containsKey(node)) {
+                    nexthoplinks.put(node, null);
+                    cost.put(node, MAX_PATH_WEIGHT);
+                }
+            }
+            // and hook them to the nearest node outside the cut
+            for (DatapathId node : subtree) {
+                if (links.get(node) == null) continue;
+                int best = MAX_PATH_WEIGHT;
+                Link bestLink = null;
+                for (Link l : links.get(node)) {
+                    DatapathId next = l.getDst();
+                    if (!l.getSrc().equals(node) || next.equals(node)) continue;
+                    if (subtree.contains(next)) continue;
+                    Integer c = cost.get(next);
+                    if (c == null || c >= MAX_PATH_WEIGHT) continue;
+                    int d = c + weight(linkCost, l);
+                    if (d < best) {
+                        best = d;
+                        bestLink = l;
+                    }
+                }
+                if (bestLink != null) {
+                    cost.put(node, best);
+                    nexthoplinks.put(node, bestLink);
+                    nodeq.add(new NodeDist(node, best));
+                }
+            }
+        }
+
+        for (Link l : added) {
+            int w = weight(linkCost, l);
+            if (shortens(cost, l, w)) {
+                int d = cost.get(l.getDst()) + w;
+                cost.put(l.getSrc(), d);
+                nexthoplinks.put(l.getSrc(), l);
+                nodeq.add(new NodeDist(l.getSrc(), d));
+            }
+        }
+
+        // Spread the changed costs. Entries are not removed from the queue
+        // when a node gets closer; outdated ones are skipped instead.
+        while (nodeq.peek() != null) {
+            NodeDist n = nodeq.poll();
+            DatapathId cnode = n.getNode();
+            int cdist = n.getDist();
+            if (cdist >= MAX_PATH_WEIGHT) break;
+            if (cdist > cost.get(cnode)) continue;
+            if (links.get(cnode) == null) continue;
+
+            for (Link link : links.get(cnode)) {
+                DatapathId neighbor = link.getSrc();
+                if (neighbor.equals(cnode)) continue;
+                Integer c = cost.get(neighbor);
+                if (c == null) continue;
+                int ndist = cdist + weight(linkCost, link);
+                if (ndist < c) {
+                    cost.put(neighbor, ndist);
+                    nexthoplinks.put(neighbor, link);
+                    nodeq.add(new NodeDist(neighbor, ndist));
+                }
             }
         }
+
+        return new BroadcastTree(nexthoplinks, cost);
+    }
+
+    /*
+     * Whether a link gives its source a shorter path to the root
+     */
+    private static boolean shortens(Map<DatapathId, Integer> cost, Link l, int w) {
+        if (l.getSrc().equals(l.getDst())) return false;
+        Integer dstCost = cost.get(l.getDst());
+        if (dstCost == null || dstCost >= MAX_PATH_WEIGHT) return false;
+        Integer srcCost = cost.get(l.getSrc());
+        return srcCost != null && dstCost + w < srcCost;
+    }
+
+    /*
+     * Invalidate the cached routes over the removed links, and toward the
+     * destinations whose tree changed if links were added. The other
+     * entries lose their alternatives then.
+     */
+    protected void invalidateRoutes(TopologyInstance previous) {
+        if (previous == null || previous.routeCache != routeCache || allLinksRemoved == null) {
+            routeGeneration = routeCache.invalidateAll();
+            return;
+        }
+        Set<DatapathId> changed = new HashSet<DatapathId>();
+        if (!allLinksAdded.isEmpty()) {
+            for (Map.Entry<DatapathId, BroadcastTree> e : destinationRootedFullTrees.entrySet()) {
+                if (e.getValue() != previous.destinationRootedFullTrees.get(e.getKey())) {
+                    changed.add(e.getKey());
+                }
+            }
+        }
+        routeGeneration = routeCache.invalidate(allLinksRemoved, changed, !allLinksAdded.isEmpty());
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated routes over {} links and toward {} destinations, {} routes cached",
+                    new Object[] { allLinksRemoved.size(), changed.size(), routeCache.size() });
+        }
     }
 
     protected void calculateBroadcastTreeInClusters() {
@@ -840,6 +1200,100 @@ public class TopologyInstance {
      * Getter Functions
      */
 
+    /*
+     * The shortest route from the destination rooted tree and up to
+     * maxRoutes - 1 alternatives by Yen's algorithm: the next route leaves
+     * one of the routes found at a spur switch, over a link the routes
+     * sharing the same part before the spur do not take, and never goes
+     * back to a switch before the spur.
+     */
+    protected List<Route> buildroutes(RouteId id, int maxRoutes) {
+        List<Route> routes = new ArrayList<Route>();
+        Route shortest = buildroute(id);
+        if (shortest == null) return routes;
+        routes.add(shortest);
+        if (maxRoutes <= 1 || allLinksGraph == null) return routes;
+
+        List<List<Link>> found = new ArrayList<List<Link>>();
+        found.add(routeLinks(shortest));
+        Set<List<Link>> seen = new HashSet<List<Link>>(found);
+        PriorityQueue<PathCost> candidates = new PriorityQueue<PathCost>();
+        while (found.size() < maxRoutes) {
+            List<Link> last = found.get(found.size() - 1);
+            for (int i = 0; i < last.size(); i++) {
+                List<Link> root = last.subList(0, i);
+                Set<Link> excludedLinks = new HashSet<Link>();
+                for (List<Link> path : found) {
+                    if (path.size() > i && path.subList(0, i).equals(root)) {
+                        excludedLinks.add(path.get(i));
+                    }
+                }
+                Set<DatapathId> excludedNodes = new HashSet<DatapathId>();
+                for (Link l : root) {
+                    excludedNodes.add(l.getSrc());
+                }
+                List<Link> spur = allLinksGraph.shortestPath(last.get(i).getSrc(), id.getDst(),
+                        excludedLinks, excludedNodes);
+                if (spur == null) continue;
+                List<Link> path = new ArrayList<Link>(root);
+                path.addAll(spur);
+                if (seen.add(path)) {
+                    candidates.add(new PathCost(path, pathCost(path)));
+                }
+            }
+            PathCost next = candidates.poll();
+            if (next == null) break;
+            found.add(next.path);
+        }
+
+        for (int i = 1; i < found.size(); i++) {
+            List<NodePortTuple> sPorts = new ArrayList<NodePortTuple>();
+            for (Link l : found.get(i)) {
+                sPorts.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+                sPorts.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+            }
+            routes.add(new Route(id, sPorts));
+        }
+        return routes;
+    }
+
+    /*
+     * The links of a route, its switch ports taken in pairs
+     */
+    private static List<Link> routeLinks(Route route) {
+        List<Link> links = new ArrayList<Link>();
+        List<NodePortTuple> path = route.getPath();
+        for (int i = 0; i + 1 < path.size(); i += 2) {
+            links.add(new Link(path.get(i).getNodeId(), path.get(i).getPortId(),
+                    path.get(i + 1).getNodeId(), path.get(i + 1).getPortId(), U64.ZERO));
+        }
+        return links;
+    }
+
+    private int pathCost(List<Link> path) {
+        int cost = 0;
+        for (Link l : path) {
+            cost += weight(allLinkCosts, l);
+        }
+        return cost;
+    }
+
+    private static class PathCost implements Comparable<PathCost> {
+        final List<Link> path;
+        final int cost;
+
+        PathCost(List<Link> path, int cost) {
+            this.path = path;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(PathCost o) {
+            if (cost != o.cost) return (cost < o.cost) ? -1 : 1;
+            return Integer.compare(path.size(), o.path.size());
+        }
+    }
+
     protected int getCost(DatapathId srcId, DatapathId dstId) {
         BroadcastTree bt = destinationRootedTrees.get(dstId);
         if (bt == null) return -1;
@@ -893,20 +1347,13 @@ public class TopologyInstance {
     
 
     // NOTE: Return a null route if srcId equals dstId.  The null route
-    // need not be stored in the cache.  Moreover, the LoadingCache will
-    // throw an exception if null route is returned.
+    // need not be stored in the cache.
     protected Route getRoute(DatapathId srcId, DatapathId dstId, U64 cookie) {
         // Return null route if srcId equals dstId
         if (srcId.equals(dstId)) return null;
 
         RouteId id = new RouteId(srcId, dstId);
-        Route result = null;
-
-        try {
-            result = pathcache.get(id);
-        } catch (Exception e) {
-            log.error("{}", e);
-        }
+        Route result = routeCache.getRoute(id, routeLoader, routeGeneration);
 
         if (log.isTraceEnabled()) {
             log.trace("getRoute: {} -> {}", id, result);
@@ -914,6 +1361,17 @@ public class TopologyInstance {
         return result;
     }
 
+    /*
+     * The shortest route and the cached number of alternatives, by
+     * increasing cost. Empty if srcId equals dstId.
+     */
+    protected List<Route> getRoutes(DatapathId srcId, DatapathId dstId) {
+        if (srcId.equals(dstId)) return new ArrayList<Route>();
+
+        RouteId id = new RouteId(srcId, dstId);
+        return routeCache.getRoutes(id, routeCache.getMaxRoutes(), routeLoader, routeGeneration);
+    }
+
     protected BroadcastTree getBroadcastTreeForCluster(long clusterId){
         Cluster c = switchClusterMap.get(clusterId);
         if (c == null) return null;
@@ -929,9 +1387,7 @@ public class TopologyInstance {
     }
 
     public boolean isAttachmentPointPort(DatapathId switchid, OFPort port) {
-        NodePortTuple npt = new NodePortTuple(switchid, port);
-        if (switchPortLinks.containsKey(npt)) return false;
-        return true;
+        return edgePorts.isAttachmentPointPort(switchid, port);
     }
 
     protected DatapathId getOpenflowDomainId(DatapathId switchId) {
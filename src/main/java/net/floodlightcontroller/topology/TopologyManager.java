@@ -38,6 +38,8 @@ import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IHAListener;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IShutdownListener;
+import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
@@ -128,15 +130,17 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	protected IOFSwitchService switchService;
 	protected IRestApiService restApiService;
 	protected IDebugCounterService debugCounterService;
+	protected IShutdownService shutdownService;
 
 	// Modules that listen to our updates
 	protected ArrayList<ITopologyListener> topologyAware;
 
 	protected BlockingQueue<LDUpdate> ldUpdates;
 
-	// These must be accessed using getCurrentInstance(), not directly
-	protected TopologyInstance currentInstance;
-	protected TopologyInstance currentInstanceWithoutTunnels;
+	// These must be accessed using getCurrentInstance(), not directly.
+	// Volatile so that an instance is published fully computed.
+	protected volatile TopologyInstance currentInstance;
+	protected volatile TopologyInstance currentInstanceWithoutTunnels;
 
 	protected SingletonTask newInstanceTask;
 	private Date lastUpdateTime;
@@ -158,6 +162,19 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 
 	protected int TOPOLOGY_COMPUTE_INTERVAL_MS = 500;
 
+	/**
+	 * Threads computing the shortest path trees of a new instance
+	 */
+	protected static final String PATH_THREADS_STR = "path-computation-threads";
+	protected ShortestPathEngine pathEngine;
+
+	/**
+	 * Routes shared by the topology instances, bounded by memory
+	 */
+	protected static final String ROUTE_CACHE_SIZE_STR = "route-cache-size-mb";
+	protected static final String ROUTE_CACHE_PATHS_STR = "route-cache-paths";
+	protected RouteCache routeCache;
+
 	private IHAListener haListener;
 
 	/**
@@ -359,6 +376,12 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		return ti.isEdge(sw, p);
 	}
 
+	@Override
+	public EdgePortTable getEdgePortTable() {
+		TopologyInstance ti = getCurrentInstance(true);
+		return ti.getEdgePortTable();
+	}
+
 	@Override
 	public Set<OFPort> getSwitchBroadcastPorts(DatapathId sw){
 		TopologyInstance ti = getCurrentInstance(true);
@@ -713,12 +736,9 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	@Override
 	public ArrayList<Route> getRoutes(DatapathId srcDpid, DatapathId dstDpid,
 			boolean tunnelEnabled) {
-		// Floodlight supports single path routing now
-
-		// return single path now
-		ArrayList<Route> result=new ArrayList<Route>();
-		result.add(getRoute(srcDpid, dstDpid, U64.of(0), tunnelEnabled));
-		return result;
+		// the shortest path first, then the alternatives by cost
+		TopologyInstance ti = getCurrentInstance(tunnelEnabled);
+		return new ArrayList<Route>(ti.getRoutes(srcDpid, dstDpid));
 	}
 
 	// ******************
@@ -839,6 +859,7 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		l.add(IDebugCounterService.class);
 		l.add(IDebugEventService.class);
 		l.add(IRestApiService.class);
+		l.add(IShutdownService.class);
 		return l;
 	}
 
@@ -852,6 +873,7 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		restApiService = context.getServiceImpl(IRestApiService.class);
 		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
 		debugEventService = context.getServiceImpl(IDebugEventService.class);
+		shutdownService = context.getServiceImpl(IShutdownService.class);
 
 		switchPorts = new HashMap<DatapathId, Set<OFPort>>();
 		switchPortLinks = new HashMap<NodePortTuple, Set<Link>>();
@@ -861,6 +883,41 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		topologyAware = new ArrayList<ITopologyListener>();
 		ldUpdates = new LinkedBlockingQueue<LDUpdate>();
 		haListener = new HAListenerDelegate();
+
+		Map<String, String> configOptions = context.getConfigParams(this);
+		int pathThreads = Runtime.getRuntime().availableProcessors();
+		try {
+			String threads = configOptions.get(PATH_THREADS_STR);
+			if (threads != null) {
+				pathThreads = Integer.parseInt(threads.trim());
+			}
+		} catch (NumberFormatException e) {
+			log.warn("Error in {}. Using default of {} threads", PATH_THREADS_STR, pathThreads);
+		}
+		pathEngine = new ShortestPathEngine(pathThreads);
+		log.info("Shortest path trees computed by {} threads", pathEngine.getParallelism());
+
+		long routeCacheBytes = RouteCache.DEFAULT_MAX_BYTES;
+		int routeCachePaths = RouteCache.DEFAULT_MAX_ROUTES;
+		try {
+			String size = configOptions.get(ROUTE_CACHE_SIZE_STR);
+			if (size != null) {
+				routeCacheBytes = Long.parseLong(size.trim()) * 1024 * 1024;
+			}
+			String paths = configOptions.get(ROUTE_CACHE_PATHS_STR);
+			if (paths != null) {
+				routeCachePaths = Integer.parseInt(paths.trim());
+			}
+		} catch (NumberFormatException e) {
+			log.warn("Error in route cache configuration. Using default of {} MB and {} paths",
+					RouteCache.DEFAULT_MAX_BYTES / 1024 / 1024, RouteCache.DEFAULT_MAX_ROUTES);
+			routeCacheBytes = RouteCache.DEFAULT_MAX_BYTES;
+			routeCachePaths = RouteCache.DEFAULT_MAX_ROUTES;
+		}
+		routeCache = new RouteCache(routeCacheBytes, routeCachePaths);
+		log.info("Route cache of {} MB with up to {} paths per switch pair",
+				routeCacheBytes / 1024 / 1024, routeCache.getMaxRoutes());
+
 		registerTopologyDebugCounters();
 		registerTopologyDebugEvents();
 	}
@@ -894,6 +951,14 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		linkDiscoveryService.addListener(this);
 		floodlightProviderService.addOFMessageListener(OFType.PACKET_IN, this);
 		floodlightProviderService.addHAListener(this.haListener);
+		if (shutdownService != null) {
+			shutdownService.registerShutdownListener(new IShutdownListener() {
+				@Override
+				public void floodlightIsShuttingDown() {
+					pathEngine.shutdown();
+				}
+			});
+		}
 		addRestletRoutable();
 	}
 
@@ -1230,7 +1295,9 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 				broadcastDomainPorts,
 				tunnelPorts,switchPortLinks,allPorts);
 
-		nt.compute();
+		nt.setPathEngine(pathEngine);
+		nt.setRouteCache(routeCache);
+		nt.compute(currentInstance);
 
 		// We set the instances with and without tunnels to be identical.
 		// If needed, we may compute them differently.
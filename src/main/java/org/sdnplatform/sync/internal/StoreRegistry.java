@@ -1,5 +1,6 @@
 package org.sdnplatform.sync.internal;
 
+import java.io.File;
 import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.HashMap;
@@ -17,6 +18,7 @@ import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.InMemoryStorageEngine;
 import org.sdnplatform.sync.internal.store.JavaDBStorageEngine;
+import org.sdnplatform.sync.internal.store.LogStorageEngine;
 import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.slf4j.Logger;
@@ -46,6 +48,31 @@ public class StoreRegistry {
      */
     private ConnectionPoolDataSource persistentDataSource; 
 
+    /**
+     * The storage engines available for persistent stores
+     */
+    public enum PersistentEngine {
+        /**
+         * A table per store in an embedded Derby database
+         */
+        JAVADB,
+        /**
+         * An append-only log per store, see {@link LogStorageEngine}
+         */
+        LOG
+    }
+
+    /**
+     * The storage engine of persistent stores with no engine of their own
+     */
+    private PersistentEngine defaultEngine = PersistentEngine.JAVADB;
+
+    /**
+     * The storage engines of specific persistent stores
+     */
+    private HashMap<String, PersistentEngine> storeEngines =
+            new HashMap<String, PersistentEngine>();
+
     /**
      * The storage engines that contain the locally-stored data
      */
@@ -79,6 +106,25 @@ public class StoreRegistry {
     // public methods
     // **************
 
+    /**
+     * Set the storage engine of the persistent stores registered from now
+     * on, unless they have an engine of their own
+     * @param engine the storage engine
+     */
+    public synchronized void setDefaultEngine(PersistentEngine engine) {
+        this.defaultEngine = engine;
+    }
+
+    /**
+     * Set the storage engine of a persistent store registered from now on
+     * @param storeName the name of the store
+     * @param engine the storage engine
+     */
+    public synchronized void setEngine(String storeName,
+                                       PersistentEngine engine) {
+        storeEngines.put(storeName, engine);
+    }
+
     /**
      * Get the store associated with the given name, or null if there is no
      * such store
@@ -108,7 +154,13 @@ public class StoreRegistry {
         }
                 
         IStorageEngine<ByteArray, byte[]> dstore;
-        if (persistent) {
+        PersistentEngine engine = storeEngines.get(storeName);
+        if (engine == null) engine = defaultEngine;
+        if (persistent && engine == PersistentEngine.LOG) {
+            File logPath = new File(dbPath == null ? "." : dbPath, "SyncLog");
+            dstore = new LogStorageEngine(storeName,
+                                          new File(logPath, storeName));
+        } else if (persistent) {
             if (persistentDataSource == null)
                 persistentDataSource = JavaDBStorageEngine.getDataSource(dbPath, false);
             dstore = new JavaDBStorageEngine(storeName, persistentDataSource);
@@ -5,6 +5,7 @@ import io.netty.util.Timer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -21,7 +22,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.core.type.TypeReference;
 
-import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.ISyncService;
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.IVersion.Occurred;
@@ -30,6 +30,7 @@ import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.error.SyncRuntimeException;
 import org.sdnplatform.sync.error.UnknownStoreException;
 import org.sdnplatform.sync.internal.StoreRegistry.Hint;
+import org.sdnplatform.sync.internal.StoreRegistry.PersistentEngine;
 import org.sdnplatform.sync.internal.config.ClusterConfig;
 import org.sdnplatform.sync.internal.config.DelegatingCCProvider;
 import org.sdnplatform.sync.internal.config.FallbackCCProvider;
@@ -43,12 +44,15 @@ import org.sdnplatform.sync.internal.rpc.TProtocolUtil;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.IStore;
 import org.sdnplatform.sync.internal.store.MappingStoreListener;
+import org.sdnplatform.sync.internal.store.MerkleTree;
 import org.sdnplatform.sync.internal.store.SynchronizingStorageEngine;
 import org.sdnplatform.sync.internal.util.ByteArray;
 import org.sdnplatform.sync.internal.version.VectorClock;
 import org.sdnplatform.sync.thrift.SyncMessage;
 import org.sdnplatform.sync.thrift.KeyedValues;
 import org.sdnplatform.sync.thrift.KeyedVersions;
+import org.sdnplatform.sync.thrift.MerkleNode;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
 import org.sdnplatform.sync.thrift.SyncOfferMessage;
 import org.sdnplatform.sync.thrift.SyncValueMessage;
 import org.slf4j.Logger;
@@ -57,6 +61,7 @@ import org.slf4j.LoggerFactory;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.NettyTransport;
 import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
@@ -148,6 +153,13 @@ public class SyncManager extends AbstractSyncManager {
 	 */
 	private boolean persistenceEnabled = true;
 
+	/**
+	 * Netty transport and worker threads of the RPC service
+	 */
+	private NettyTransport transport =
+			new NettyTransport(NettyTransport.Type.AUTO);
+	private int workerThreads = 0;
+
 	private static final String PACKAGE =
 			ISyncService.class.getPackage().getName();
 
@@ -209,7 +221,11 @@ public class SyncManager extends AbstractSyncManager {
 	}
 
 	/**
-	 * Perform a synchronization with the node specified
+	 * Perform a synchronization with the node specified.  Only the root of
+	 * the hash tree of each store is sent at first; the node reports the
+	 * nodes on which it differs, and we go down the tree from there until
+	 * we offer the keys of the leaves that differ.
+	 * @see #handleSyncDigestReply(short, String, Iterable)
 	 */
 	public void antientropy(Node node) {
 		if (!rpcService.isConnected(node.getNodeId())) return;
@@ -226,44 +242,52 @@ public class SyncManager extends AbstractSyncManager {
 				continue;
 			}
 
-			IClosableIterator<Entry<ByteArray,
-			List<Versioned<byte[]>>>> entries =
-			store.entries();
 			try {
-				SyncMessage bsm =
-						TProtocolUtil.getTSyncOfferMessage(store.getName(),
-								store.getScope(),
-								store.isPersistent());
-				int count = 0;
-				while (entries.hasNext()) {
-					if (!rpcService.isConnected(node.getNodeId())) return;
-
-					Entry<ByteArray, List<Versioned<byte[]>>> pair =
-							entries.next();
-					KeyedVersions kv =
-							TProtocolUtil.getTKeyedVersions(pair.getKey(),
-									pair.getValue());
-					bsm.getSyncOffer().addToVersions(kv);
-					count += 1;
-					if (count >= 50) {
-						sendSyncOffer(node.getNodeId(), bsm);
-						// realloc sync message - it is still queued up by netty!
-						bsm = TProtocolUtil.getTSyncOfferMessage(store.getName(),
-								store.getScope(),
-								store.isPersistent());
-						count = 0;
-					}
-				}
-				sendSyncOffer(node.getNodeId(), bsm);
+				sendSyncDigest(node.getNodeId(), store,
+						Arrays.asList(MerkleTree.ROOT));
 			} catch (InterruptedException e) {
 				// This can't really happen
 				throw new RuntimeException(e);
-			} finally {
-				entries.close();
 			}
 		}
 	}
 
+	/**
+	 * Continue a synchronization with a node from the nodes of the hash
+	 * tree of a store on which the node differs: send it the children of
+	 * the inner nodes, and offer it the keys of the leaves
+	 * @param nodeId the node
+	 * @param storeName the store
+	 * @param nodes the tree nodes that differ
+	 */
+	public void handleSyncDigestReply(short nodeId, String storeName,
+			Iterable<Integer> nodes) {
+		SynchronizingStorageEngine store = storeRegistry.get(storeName);
+		if (store == null) return;
+
+		List<Integer> children = new ArrayList<Integer>();
+		BitSet leaves = new BitSet(MerkleTree.LEAVES);
+		for (int n : nodes) {
+			if (n < 0 || n >= MerkleTree.NODES) continue;
+			if (MerkleTree.isLeaf(n)) {
+				leaves.set(MerkleTree.getLeafOfNode(n));
+			} else {
+				int child = MerkleTree.getFirstChild(n);
+				for (int i = 0; i < MerkleTree.FANOUT; i++)
+					children.add(child + i);
+			}
+		}
+		try {
+			if (!children.isEmpty())
+				sendSyncDigest(nodeId, store, children);
+			if (!leaves.isEmpty())
+				sendSyncOffers(nodeId, store, leaves);
+		} catch (InterruptedException e) {
+			// This can't really happen
+			throw new RuntimeException(e);
+		}
+	}
+
 	/**
 	 * Communicate with a random node and do a full synchronization of the
 	 * all the stores on each node that have the appropriate scope.
@@ -303,6 +327,30 @@ public class SyncManager extends AbstractSyncManager {
 		store.writeSyncValue(new ByteArray(key), values);
 	}
 
+	/**
+	 * Compare the hashes of the nodes of the hash tree of a store sent by
+	 * another node with ours
+	 * @param storeName the store to check
+	 * @param digests the tree nodes with their hashes
+	 * @return the tree nodes whose hashes differ
+	 */
+	public List<Integer> handleSyncDigest(String storeName,
+			Iterable<MerkleNode> digests) {
+		SynchronizingStorageEngine store = storeRegistry.get(storeName);
+		long[] hashes = null;
+		if (store != null)
+			hashes = store.getMerkleTree().getHashes();
+
+		List<Integer> divergent = new ArrayList<Integer>();
+		for (MerkleNode mn : digests) {
+			int n = mn.getIndex();
+			if (n < 0 || n >= MerkleTree.NODES) continue;
+			if (hashes == null || hashes[n] != mn.getHash())
+				divergent.add(n);
+		}
+		return divergent;
+	}
+
 	/**
 	 * Check whether any of the specified versions for the key are not older
 	 * than the versions we already have
@@ -491,6 +539,53 @@ public class SyncManager extends AbstractSyncManager {
 					"providers " + Arrays.toString(configProviders), e);
 		}
 
+		String engineString = config.get("storageEngine");
+		if (engineString != null) {
+			try {
+				storeRegistry.setDefaultEngine(PersistentEngine.
+						valueOf(engineString.toUpperCase()));
+			} catch (IllegalArgumentException e) {
+				throw new FloodlightModuleException("Invalid sync storage " +
+						"engine: " + engineString, e);
+			}
+		}
+		String storeEngineString = config.get("storageEngines");
+		if (storeEngineString != null) {
+			Map<String, String> storeEngines = null;
+			try {
+				storeEngines =
+						(new ObjectMapper()).readValue(storeEngineString,
+								new TypeReference<Map<String, String>>() {});
+				for (Entry<String, String> e : storeEngines.entrySet()) {
+					storeRegistry.setEngine(e.getKey(), PersistentEngine.
+							valueOf(e.getValue().toUpperCase()));
+				}
+			} catch (Exception e) {
+				throw new FloodlightModuleException("Failed to parse sync " +
+						"manager storage engines: " + storeEngineString, e);
+			}
+		}
+
+		try {
+			transport = NettyTransport.fromString(config.get("transport"));
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException("Invalid sync transport: " +
+					config.get("transport"), e);
+		}
+		String workerThreadsString = config.get("workerThreads");
+		if (workerThreadsString != null && !workerThreadsString.isEmpty()) {
+			int threads = -1;
+			try {
+				threads = Integer.parseInt(workerThreadsString.trim());
+			} catch (NumberFormatException e) { }
+			if (threads >= 0) {
+				workerThreads = threads;
+			} else {
+				logger.error("Invalid sync worker threads {}. Using {}",
+						workerThreadsString, workerThreads);
+			}
+		}
+
 		String manualStoreString = config.get("manualStores");
 		if (manualStoreString != null) {
 			List<String> manualStores = null;
@@ -541,7 +636,8 @@ public class SyncManager extends AbstractSyncManager {
 			throws FloodlightModuleException {
 
 		timer = new HashedWheelTimer();
-		rpcService = new RPCService(this, debugCounter, timer);
+		rpcService = new RPCService(this, debugCounter, timer, transport,
+				workerThreads);
 
 		cleanupTask = new SingletonTask(threadPool.getScheduledExecutor(),
 				new CleanupTask());
@@ -648,6 +744,85 @@ public class SyncManager extends AbstractSyncManager {
 		return store;
 	}
 
+	/**
+	 * Send the hashes of some nodes of the hash tree of a store
+	 * @param nodeId the node to send to
+	 * @param store the store
+	 * @param nodes the tree nodes
+	 * @throws InterruptedException
+	 */
+	private void sendSyncDigest(short nodeId,
+			SynchronizingStorageEngine store,
+			Collection<Integer> nodes)
+					throws InterruptedException {
+		long[] hashes = store.getMerkleTree().getHashes();
+		SyncMessage bsm =
+				TProtocolUtil.getTSyncDigestMessage(store.getName(),
+						store.getScope(),
+						store.isPersistent());
+		SyncDigestMessage sdm = bsm.getSyncDigest();
+		for (int n : nodes) {
+			sdm.addToDigests(new MerkleNode(n, hashes[n]));
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("[{}->{}] Sending SyncDigest with {} elements",
+					new Object[]{getLocalNodeId(), nodeId,
+					sdm.getDigestsSize()});
+		}
+
+		sdm.getHeader().setTransactionId(rpcService.getTransactionId());
+		rpcService.writeToNode(nodeId, bsm);
+	}
+
+	/**
+	 * Offer the keys of a store in some leaves of its hash tree.  The keys
+	 * come from the key index of the tree, so only the keys of the leaves
+	 * are read
+	 * @param nodeId the node to send to
+	 * @param store the store
+	 * @param leaves the leaves
+	 * @throws InterruptedException
+	 */
+	private void sendSyncOffers(short nodeId,
+			SynchronizingStorageEngine store,
+			BitSet leaves) throws InterruptedException {
+		MerkleTree tree = store.getMerkleTree();
+		SyncMessage bsm =
+				TProtocolUtil.getTSyncOfferMessage(store.getName(),
+						store.getScope(),
+						store.isPersistent());
+		int count = 0;
+		for (int leaf = leaves.nextSetBit(0); leaf >= 0;
+				leaf = leaves.nextSetBit(leaf + 1)) {
+			for (ByteArray key : tree.getKeys(leaf)) {
+				if (!rpcService.isConnected(nodeId)) return;
+
+				List<Versioned<byte[]>> values;
+				try {
+					values = store.get(key);
+				} catch (SyncException e) {
+					logger.error("Could not read key to offer from store " +
+							store.getName(), e);
+					continue;
+				}
+				if (values == null || values.isEmpty()) continue;
+				KeyedVersions kv =
+						TProtocolUtil.getTKeyedVersions(key, values);
+				bsm.getSyncOffer().addToVersions(kv);
+				count += 1;
+				if (count >= 50) {
+					sendSyncOffer(nodeId, bsm);
+					// realloc sync message - it is still queued up by netty!
+					bsm = TProtocolUtil.getTSyncOfferMessage(store.getName(),
+							store.getScope(),
+							store.isPersistent());
+					count = 0;
+				}
+			}
+		}
+		sendSyncOffer(nodeId, bsm);
+	}
+
 	private void sendSyncOffer(short nodeId, SyncMessage bsm)
 			throws InterruptedException {
 		SyncOfferMessage som = bsm.getSyncOffer();
@@ -44,6 +44,8 @@ import org.sdnplatform.sync.thrift.PutRequestMessage;
 import org.sdnplatform.sync.thrift.PutResponseMessage;
 import org.sdnplatform.sync.thrift.RegisterRequestMessage;
 import org.sdnplatform.sync.thrift.RegisterResponseMessage;
+import org.sdnplatform.sync.thrift.SyncDigestMessage;
+import org.sdnplatform.sync.thrift.SyncDigestReplyMessage;
 import org.sdnplatform.sync.thrift.SyncOfferMessage;
 import org.sdnplatform.sync.thrift.SyncRequestMessage;
 import org.sdnplatform.sync.thrift.SyncValueMessage;
@@ -271,6 +273,12 @@ public abstract class AbstractRPCChannelHandler extends ChannelInboundHandlerAda
             case SYNC_REQUEST:
                 handleSyncRequest(bsm.getSyncRequest(), channel);
                 break;
+            case SYNC_DIGEST:
+                handleSyncDigest(bsm.getSyncDigest(), channel);
+                break;
+            case SYNC_DIGEST_REPLY:
+                handleSyncDigestReply(bsm.getSyncDigestReply(), channel);
+                break;
             case CURSOR_REQUEST:
                 handleCursorRequest(bsm.getCursorRequest(), channel);
                 break;
@@ -443,6 +451,18 @@ public abstract class AbstractRPCChannelHandler extends ChannelInboundHandlerAda
                           MessageType.SYNC_REQUEST, channel);
     }
 
+    protected void handleSyncDigest(SyncDigestMessage request,
+                                    Channel channel) {
+        unexpectedMessage(request.getHeader().getTransactionId(),
+                          MessageType.SYNC_DIGEST, channel);
+    }
+
+    protected void handleSyncDigestReply(SyncDigestReplyMessage reply,
+                                         Channel channel) {
+        unexpectedMessage(reply.getHeader().getTransactionId(),
+                          MessageType.SYNC_DIGEST_REPLY, channel);
+    }
+
     protected void handleFullSyncRequest(FullSyncRequestMessage request,
                                          Channel channel) {
         unexpectedMessage(request.getHeader().getTransactionId(),
@@ -353,6 +353,60 @@ public class RPCChannelHandler extends AbstractRPCChannelHandler {
         }
     }
 
+    @Override
+    protected void handleSyncDigest(SyncDigestMessage request,
+                                    Channel channel) {
+        try {
+            String storeName = request.getStore().getStoreName();
+
+            SyncDigestReplyMessage sdrm = new SyncDigestReplyMessage();
+            AsyncMessageHeader header = new AsyncMessageHeader();
+            header.setTransactionId(request.getHeader().getTransactionId());
+            sdrm.setHeader(header);
+            sdrm.setStore(request.getStore());
+
+            if (request.isSetDigests()) {
+                for (Integer n : syncManager.handleSyncDigest(storeName,
+                                                      request.getDigests()))
+                    sdrm.addToNodes(n);
+            }
+
+            SyncMessage bsm =
+                    new SyncMessage(MessageType.SYNC_DIGEST_REPLY);
+            bsm.setSyncDigestReply(sdrm);
+            if (logger.isTraceEnabled()) {
+                logger.trace("[{}->{}] Sending SyncDigestReply with {} elements",
+                             new Object[]{getLocalNodeIdString(),
+                                          getRemoteNodeIdString(),
+                                          sdrm.getNodesSize()});
+            }
+            channel.writeAndFlush(bsm);
+
+        } catch (Exception e) {
+            channel.writeAndFlush(getError(request.getHeader().getTransactionId(),
+                                   e, MessageType.SYNC_DIGEST));
+        }
+    }
+
+    @Override
+    protected void handleSyncDigestReply(final SyncDigestReplyMessage reply,
+                                         Channel channel) {
+        final Short nodeId = getRemoteNodeId();
+        if (nodeId == null || !reply.isSetNodes()) return;
+
+        // Go down the tree and offer the keys in a background task, as
+        // for antientropy
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                syncManager.handleSyncDigestReply(nodeId,
+                                                  reply.getStore().getStoreName(),
+                                                  reply.getNodes());
+            }
+        };
+        syncManager.getThreadPool().getScheduledExecutor().execute(task);
+    }
+
     @Override
     protected void handleFullSyncRequest(FullSyncRequestMessage request,
                                          Channel channel) {
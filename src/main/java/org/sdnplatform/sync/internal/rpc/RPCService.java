@@ -16,6 +16,8 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.LinkedTransferQueue;
 
+import net.floodlightcontroller.core.util.EventLoopMonitor;
+import net.floodlightcontroller.core.util.NettyTransport;
 import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import io.netty.bootstrap.Bootstrap;
@@ -27,9 +29,6 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.Timer;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
@@ -59,6 +58,16 @@ public class RPCService {
      */
     protected IDebugCounterService debugCounter;
 
+    /**
+     * Netty transport of the RPC channels
+     */
+    protected NettyTransport transport;
+
+    /**
+     * Number of netty worker threads, 0 for the netty default
+     */
+    protected int workerThreads;
+
     /**
      * Channel group that will hold all our channels
      */
@@ -105,6 +114,14 @@ public class RPCService {
      */
     public static final int CONNECT_TIMEOUT = 500;
 
+    /**
+     * Seconds between samples of the event loop counters
+     */
+    protected static final int EVENT_LOOP_MONITOR_INTERVAL = 10;
+
+    private static final String PACKAGE =
+            RPCService.class.getPackage().getName();
+
     /**
      * True after the {@link RPCService#run()} method is called
      */
@@ -167,11 +184,15 @@ public class RPCService {
 
     public RPCService(SyncManager syncManager, 
                       IDebugCounterService debugCounter,
-                      Timer timer) {
+                      Timer timer,
+                      NettyTransport transport,
+                      int workerThreads) {
         super();
         this.syncManager = syncManager;
         this.debugCounter = debugCounter;
         this.timer = timer;
+        this.transport = transport;
+        this.workerThreads = workerThreads;
 
         messageWindows = new ConcurrentHashMap<Short, MessageWindow>();
     }
@@ -211,8 +232,13 @@ public class RPCService {
             }
         };
         
-        bossGroup = new NioEventLoopGroup(0, f2);
-        workerGroup = new NioEventLoopGroup(0, f2);
+        bossGroup = transport.newEventLoopGroup(1, f2);
+        workerGroup = transport.newEventLoopGroup(workerThreads, f2);
+
+        debugCounter.registerModule(PACKAGE);
+        EventLoopMonitor monitor = new EventLoopMonitor(debugCounter, PACKAGE);
+        monitor.addGroup("worker", workerGroup);
+        monitor.start(bossGroup, EVENT_LOOP_MONITOR_INTERVAL, TimeUnit.SECONDS);
 
         channelInitializer = new RPCChannelInitializer(syncManager, this, timer);
 
@@ -425,13 +451,15 @@ public class RPCService {
     protected void startServer(RPCChannelInitializer channelInitializer) {
         final ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group(bossGroup, workerGroup)
-        .channel(NioServerSocketChannel.class)
+        .channel(transport.getServerChannelClass())
         .option(ChannelOption.SO_REUSEADDR, true)
-        .option(ChannelOption.SO_KEEPALIVE, true)
-        .option(ChannelOption.TCP_NODELAY, true)
-        .option(ChannelOption.SO_SNDBUF, SEND_BUFFER_SIZE)
         .option(ChannelOption.SO_RCVBUF, SEND_BUFFER_SIZE)
-        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
+        .option(ChannelOption.ALLOCATOR, transport.getAllocator())
+        .childOption(ChannelOption.SO_KEEPALIVE, true)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childOption(ChannelOption.SO_SNDBUF, SEND_BUFFER_SIZE)
+        .childOption(ChannelOption.SO_RCVBUF, SEND_BUFFER_SIZE)
+        .childOption(ChannelOption.ALLOCATOR, transport.getAllocator())
         .childHandler(channelInitializer);
 
         int port = syncManager.getClusterConfig().getNode().getPort();
@@ -513,12 +541,13 @@ public class RPCService {
     protected void startClients(RPCChannelInitializer channelInitializer) {
         final Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(workerGroup)
-        .channel(NioSocketChannel.class)
+        .channel(transport.getChannelClass())
         .option(ChannelOption.SO_REUSEADDR, true)
         .option(ChannelOption.SO_KEEPALIVE, true)
         .option(ChannelOption.TCP_NODELAY, true)
         .option(ChannelOption.SO_SNDBUF, SEND_BUFFER_SIZE)
         .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT)
+        .option(ChannelOption.ALLOCATOR, transport.getAllocator())
         .handler(channelInitializer);
         clientBootstrap = bootstrap;
 
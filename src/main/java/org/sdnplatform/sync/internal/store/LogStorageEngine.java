@@ -0,0 +1,902 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.IVersion;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.IVersion.Occurred;
+import org.sdnplatform.sync.error.ObsoleteVersionException;
+import org.sdnplatform.sync.error.PersistException;
+import org.sdnplatform.sync.error.SyncException;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.util.Pair;
+import org.sdnplatform.sync.internal.version.ClockEntry;
+import org.sdnplatform.sync.internal.version.VectorClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent storage engine that appends every write to a log, and finds
+ * the latest record of each key through an in-memory hash index.
+ *
+ * The log is a sequence of segment files in a directory, each mapped into
+ * memory.  A record holds a key with its whole list of versions, so that
+ * a get reads a single record.  A write returns once its record is on
+ * disk; concurrent writers share a single force of the log.  A record
+ * with no versions removes its key.
+ *
+ * The records that are no longer the latest of their key are reclaimed in
+ * {@link #cleanupTask()}, which copies the live records of the segments
+ * that are mostly garbage to the end of the log and deletes the segments.
+ * A deleted segment keeps its disk space while it is mapped, so it is
+ * unmapped as soon as no reader can still go through it.
+ * When the engine is opened, the segments are replayed in order to rebuild
+ * the index, stopping at the first torn record.
+ */
+public class LogStorageEngine implements IStorageEngine<ByteArray, byte[]> {
+    protected static final Logger logger =
+            LoggerFactory.getLogger(LogStorageEngine.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    /**
+     * Record length, checksum of the rest of the record and key length
+     */
+    private static final int HEADER_LENGTH = 12;
+    /**
+     * A segment is compacted when less than this share of it is live
+     */
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    /**
+     * Unmaps a buffer: Unsafe.invokeCleaner on Java 9 and later, or the
+     * cleaner of the buffer on Java 8.  Null if neither is available, the
+     * mappings are then released when the buffers are garbage collected
+     */
+    private static final Method UNMAP;
+    private static final Object UNSAFE;
+
+    private final String name;
+    private final File dir;
+    private final int segmentSize;
+    private final boolean sync;
+
+    /**
+     * Interval in milliseconds before tombstones will be cleared.
+     */
+    private int tombstoneDeletion = 24 * 60 * 60 * 1000;
+
+    /**
+     * The latest record of each key
+     */
+    private final ConcurrentHashMap<ByteArray, Location> index =
+            new ConcurrentHashMap<ByteArray, Location>();
+    private final ConcurrentSkipListMap<Long, Segment> segments =
+            new ConcurrentSkipListMap<Long, Segment>();
+
+    /**
+     * Held to read or write, and exclusively to truncate or close
+     */
+    private final ReentrantReadWriteLock stateLock =
+            new ReentrantReadWriteLock();
+    /**
+     * Serialize the writes to a key
+     */
+    private final Object[] keyLocks = new Object[64];
+
+    /**
+     * Guards the segment at the end of the log, the number of records
+     * appended and the segments written since the last force
+     */
+    private final Object appendLock = new Object();
+    private Segment active;
+    private long appended;
+    private final Set<Segment> dirty = new LinkedHashSet<Segment>();
+
+    /**
+     * Guards the number of records on disk, and whether a writer is
+     * forcing the log for the others
+     */
+    private final Object commitLock = new Object();
+    private long committed;
+    private boolean committing;
+
+    private boolean closed;
+
+    static {
+        Method unmap = null;
+        Object unsafe = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            unmap = c.getMethod("invokeCleaner", ByteBuffer.class);
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+        } catch (Exception e) {
+            try {
+                unmap = Class.forName("sun.nio.ch.DirectBuffer")
+                        .getMethod("cleaner");
+            } catch (Exception e2) {
+                logger.debug("Log segments cannot be unmapped", e2);
+            }
+        }
+        UNMAP = unmap;
+        UNSAFE = unsafe;
+    }
+
+    /**
+     * Open the log of a store in a directory, creating it if needed
+     * @param name the name of the store
+     * @param dir the directory of the log
+     * @throws PersistException
+     */
+    public LogStorageEngine(String name, File dir) throws PersistException {
+        this(name, dir, DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    /**
+     * Open the log of a store in a directory, creating it if needed
+     * @param name the name of the store
+     * @param dir the directory of the log
+     * @param segmentSize the size of a segment file in bytes
+     * @param sync whether a write waits for its record to be on disk
+     * @throws PersistException
+     */
+    public LogStorageEngine(String name, File dir,
+                            int segmentSize, boolean sync)
+            throws PersistException {
+        super();
+        this.name = name;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        for (int i = 0; i < keyLocks.length; i++)
+            keyLocks[i] = new Object();
+
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs())
+                throw new IOException("Could not create " + dir);
+            recover();
+        } catch (IOException e) {
+            throw new PersistException("Could not open log of store " +
+                                       name, e);
+        }
+    }
+
+    // *******************************
+    // StorageEngine<ByteArray,byte[]>
+    // *******************************
+
+    @Override
+    public List<Versioned<byte[]>> get(ByteArray key) throws SyncException {
+        StoreUtils.assertValidKey(key);
+        // a segment is only unmapped with the lock held exclusively
+        stateLock.readLock().lock();
+        try {
+            checkOpen();
+            Location loc = index.get(key);
+            if (loc == null) {
+                return new ArrayList<Versioned<byte[]>>(0);
+            }
+            return loc.read();
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>>
+            entries() {
+        final Iterator<Entry<ByteArray, Location>> it =
+                index.entrySet().iterator();
+        return new IClosableIterator<Entry<ByteArray,
+                                           List<Versioned<byte[]>>>>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Entry<ByteArray, List<Versioned<byte[]>>> next() {
+                stateLock.readLock().lock();
+                try {
+                    if (closed)
+                        throw new IllegalStateException("Store " + name +
+                                                        " is closed");
+                    Entry<ByteArray, Location> e = it.next();
+                    return new Pair<ByteArray, List<Versioned<byte[]>>>(
+                            e.getKey(), e.getValue().read());
+                } finally {
+                    stateLock.readLock().unlock();
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                // nothing to do
+            }
+        };
+    }
+
+    @Override
+    public IClosableIterator<ByteArray> keys() {
+        final Iterator<ByteArray> it = index.keySet().iterator();
+        return new IClosableIterator<ByteArray>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public ByteArray next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                // nothing to do
+            }
+        };
+    }
+
+    @Override
+    public void put(ByteArray key, Versioned<byte[]> value)
+            throws SyncException {
+        StoreUtils.assertValidKey(key);
+        long seq;
+        stateLock.readLock().lock();
+        try {
+            checkOpen();
+            synchronized (getKeyLock(key)) {
+                List<Versioned<byte[]>> values = get(key);
+                List<Versioned<byte[]>> itemsToRemove =
+                        new ArrayList<Versioned<byte[]>>(values.size());
+                for (Versioned<byte[]> versioned : values) {
+                    Occurred occurred =
+                            value.getVersion().compare(versioned.getVersion());
+                    if (occurred == Occurred.BEFORE) {
+                        throw new ObsoleteVersionException("Obsolete version for key '" + key
+                                                           + "': " + value.getVersion());
+                    } else if (occurred == Occurred.AFTER) {
+                        itemsToRemove.add(versioned);
+                    }
+                }
+                values.removeAll(itemsToRemove);
+                values.add(value);
+                seq = write(key, encode(key, values));
+            }
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        if (sync) commit(seq);
+    }
+
+    @Override
+    public void truncate() throws SyncException {
+        stateLock.writeLock().lock();
+        try {
+            index.clear();
+            synchronized (appendLock) {
+                dirty.clear();
+            }
+            unmap(segments.values());
+            synchronized (appendLock) {
+                for (Segment s : segments.values()) {
+                    if (!s.file.delete())
+                        logger.warn("Could not delete log segment {}",
+                                    s.file);
+                }
+                segments.clear();
+                active = newSegment(0, segmentSize);
+            }
+        } catch (IOException e) {
+            throw new PersistException("Could not truncate log of store " +
+                                       name, e);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() throws SyncException {
+        stateLock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            for (Segment s : segments.values()) {
+                s.buffer.force();
+            }
+            // everything appended is on disk, writers still waiting for
+            // their commit must not force the unmapped segments
+            synchronized (appendLock) {
+                dirty.clear();
+                synchronized (commitLock) {
+                    committed = appended;
+                    commitLock.notifyAll();
+                }
+            }
+            unmap(segments.values());
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean writeSyncValue(ByteArray key,
+                                  Iterable<Versioned<byte[]>> values) {
+        boolean success = false;
+        for (Versioned<byte[]> value : values) {
+            try {
+                put(key, value);
+                success = true;
+            } catch (PersistException e) {
+                logger.error("Failed to sync value because of " +
+                             "persistence exception", e);
+            } catch (SyncException e) {
+                // ignore obsolete version exception
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public List<IVersion> getVersions(ByteArray key) throws SyncException {
+        return StoreUtils.getVersions(get(key));
+    }
+
+    @Override
+    public void cleanupTask() throws SyncException {
+        long seq = 0;
+        List<Segment> compacted = new ArrayList<Segment>();
+        stateLock.readLock().lock();
+        try {
+            if (closed) return;
+            for (ByteArray key : index.keySet()) {
+                synchronized (getKeyLock(key)) {
+                    Location loc = index.get(key);
+                    if (loc == null) continue;
+                    if (StoreUtils.canDelete(loc.read(), tombstoneDeletion)) {
+                        seq = write(key, encode(key,
+                                    new ArrayList<Versioned<byte[]>>(0)));
+                    }
+                }
+            }
+            seq = Math.max(seq, compact(compacted));
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        commit(seq);
+        if (compacted.isEmpty()) return;
+
+        // no Location refers to the compacted segments anymore, and once
+        // the readers that found one before are done they can go
+        stateLock.writeLock().lock();
+        try {
+            unmap(compacted);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public void setTombstoneInterval(int interval) {
+        this.tombstoneDeletion = interval;
+    }
+
+    // ****************
+    // LogStorageEngine
+    // ****************
+
+    /**
+     * Get the number of segment files of the log
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    // *************
+    // Local methods
+    // *************
+
+    private Object getKeyLock(ByteArray key) {
+        return keyLocks[(key.hashCode() & 0x7fffffff) % keyLocks.length];
+    }
+
+    private void checkOpen() throws PersistException {
+        if (closed)
+            throw new PersistException("Store " + name + " is closed");
+    }
+
+    /**
+     * Append a record, and make it the latest of its key.  Must be called
+     * with the lock of the key held
+     * @param key the key of the record
+     * @param record the record
+     * @return the sequence number of the record, to wait for its commit
+     */
+    private long write(ByteArray key, byte[] record) throws PersistException {
+        Location loc;
+        long seq;
+        synchronized (appendLock) {
+            try {
+                if (active.position + record.length > active.capacity)
+                    active = newSegment(active.id + 1,
+                                        Math.max(segmentSize, record.length));
+            } catch (IOException e) {
+                throw new PersistException("Could not extend log of store " +
+                                           name, e);
+            }
+            loc = new Location(active, active.position, record.length);
+            ByteBuffer bb = active.buffer.duplicate();
+            bb.position(active.position);
+            bb.put(record);
+            active.position += record.length;
+            dirty.add(active);
+            seq = ++appended;
+        }
+        if (isDeletion(record)) {
+            setLocation(key, null);
+        } else {
+            setLocation(key, loc);
+        }
+        return seq;
+    }
+
+    private void setLocation(ByteArray key, Location loc) {
+        Location old = (loc == null) ? index.remove(key) : index.put(key, loc);
+        if (old != null)
+            old.segment.live.addAndGet(-old.length);
+        if (loc != null)
+            loc.segment.live.addAndGet(loc.length);
+    }
+
+    /**
+     * Wait until a record is on disk.  The first writer to wait forces the
+     * log for all the records appended so far, and the others wait for it
+     * @param seq the sequence number of the record
+     */
+    private void commit(long seq) throws PersistException {
+        while (true) {
+            synchronized (commitLock) {
+                while (committing && committed < seq) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new PersistException("Interrupted while " +
+                                                   "committing to log", e);
+                    }
+                }
+                if (committed >= seq) return;
+                committing = true;
+            }
+
+            long target;
+            List<Segment> toForce;
+            synchronized (appendLock) {
+                target = appended;
+                toForce = new ArrayList<Segment>(dirty);
+                dirty.clear();
+            }
+            boolean forced = false;
+            try {
+                for (Segment s : toForce) {
+                    s.force();
+                }
+                forced = true;
+            } finally {
+                if (!forced) {
+                    synchronized (appendLock) {
+                        dirty.addAll(toForce);
+                    }
+                }
+                synchronized (commitLock) {
+                    committing = false;
+                    if (forced) committed = Math.max(committed, target);
+                    commitLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the live records of the sealed segments that are mostly garbage
+     * to the end of the log, and delete them
+     * @param compacted gets the deleted segments, still mapped
+     * @return the sequence number of the last record copied, or 0
+     */
+    private long compact(List<Segment> compacted) throws PersistException {
+        long seq = 0;
+        for (Segment s : segments.values()) {
+            synchronized (appendLock) {
+                if (s == active) break;
+            }
+            if (s.live.get() >= s.position * COMPACTION_THRESHOLD) continue;
+
+            // a removal must be kept while an older record of its key may
+            boolean older = segments.lowerKey(s.id) != null;
+            int offset = 0;
+            while (offset < s.position) {
+                byte[] record = s.readRecord(offset);
+                ByteArray key = decodeKey(record);
+                synchronized (getKeyLock(key)) {
+                    Location loc = index.get(key);
+                    if (isDeletion(record)) {
+                        if (older && loc == null)
+                            seq = write(key, record);
+                    } else if (loc != null && loc.segment == s &&
+                               loc.offset == offset) {
+                        seq = write(key, record);
+                    }
+                }
+                offset += record.length;
+            }
+            compacted.add(s);
+        }
+        if (compacted.isEmpty()) return seq;
+
+        // the copies must be on disk before the originals go away
+        commit(seq);
+        for (Segment s : compacted) {
+            segments.remove(s.id);
+            synchronized (appendLock) {
+                dirty.remove(s);
+            }
+            if (!s.file.delete())
+                logger.warn("Could not delete log segment {}", s.file);
+        }
+        logger.debug("Compacted {} segments of store {}",
+                     compacted.size(), name);
+        return seq;
+    }
+
+    /**
+     * Replay the segments in order to rebuild the index
+     */
+    private void recover() throws IOException {
+        File[] files = dir.listFiles();
+        List<Long> ids = new ArrayList<Long>();
+        if (files != null) {
+            for (File f : files) {
+                String fn = f.getName();
+                if (!fn.endsWith(SEGMENT_SUFFIX)) continue;
+                try {
+                    ids.add(Long.parseLong(fn.substring(0, fn.length() -
+                                           SEGMENT_SUFFIX.length()), 16));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file {} in log of " +
+                                "store {}", f, name);
+                }
+            }
+        }
+        long[] sorted = new long[ids.size()];
+        for (int i = 0; i < sorted.length; i++)
+            sorted[i] = ids.get(i);
+        Arrays.sort(sorted);
+
+        for (long id : sorted) {
+            File f = getSegmentFile(id);
+            Segment s = mapSegment(id, f, (int)f.length());
+            segments.put(id, s);
+            int offset = 0;
+            while (true) {
+                int length = s.getRecordLength(offset);
+                if (length == 0) break;
+                byte[] record = (length > 0) ? s.readRecord(offset) : null;
+                if (record == null || !isValid(record)) {
+                    logger.warn("Truncating torn record at {} in log " +
+                                "segment {}", offset, f);
+                    s.zero(offset);
+                    break;
+                }
+                ByteArray key = decodeKey(record);
+                if (isDeletion(record)) {
+                    setLocation(key, null);
+                } else {
+                    setLocation(key, new Location(s, offset, length));
+                }
+                offset += length;
+            }
+            s.position = offset;
+        }
+
+        if (segments.isEmpty()) {
+            active = newSegment(0, segmentSize);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Unmap segments that no Location refers to.  Must be called with the
+     * state lock held exclusively, so that no reader is still going
+     * through one into them
+     * @param toUnmap the segments, no longer in the dirty set
+     */
+    private void unmap(Collection<Segment> toUnmap) {
+        boolean interrupted = false;
+        synchronized (commitLock) {
+            // a writer forcing the log may still hold one of them
+            while (committing) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            for (Segment s : toUnmap) {
+                s.unmap();
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private File getSegmentFile(long id) {
+        return new File(dir, String.format("%016x", id) + SEGMENT_SUFFIX);
+    }
+
+    private Segment newSegment(long id, int size) throws IOException {
+        Segment s = mapSegment(id, getSegmentFile(id), size);
+        segments.put(id, s);
+        return s;
+    }
+
+    private static Segment mapSegment(long id, File f, int size)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            if (raf.length() < size)
+                raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid once the file is closed
+            return new Segment(id, f,
+                               channel.map(FileChannel.MapMode.READ_WRITE,
+                                           0, size));
+        } finally {
+            raf.close();
+        }
+    }
+
+    // ***************
+    // Record encoding
+    // ***************
+
+    /**
+     * Encode a record: its length, the checksum of the rest, the length of
+     * the key, the key and the number of versions, then for each version
+     * its clock and its value, of length -1 for a tombstone
+     */
+    private static byte[] encode(ByteArray key,
+                                 List<Versioned<byte[]>> values) {
+        int length = HEADER_LENGTH + key.length() + 4;
+        for (Versioned<byte[]> v : values) {
+            VectorClock vc = (VectorClock)v.getVersion();
+            length += 8 + 2 + vc.getEntries().size() * 10 + 4;
+            if (v.getValue() != null) length += v.getValue().length;
+        }
+        ByteBuffer bb = ByteBuffer.allocate(length);
+        bb.putInt(length);
+        bb.putInt(0);
+        bb.putInt(key.length());
+        bb.put(key.get());
+        bb.putInt(values.size());
+        for (Versioned<byte[]> v : values) {
+            VectorClock vc = (VectorClock)v.getVersion();
+            bb.putLong(vc.getTimestamp());
+            bb.putShort((short)vc.getEntries().size());
+            for (ClockEntry ce : vc.getEntries()) {
+                bb.putShort(ce.getNodeId());
+                bb.putLong(ce.getVersion());
+            }
+            if (v.getValue() == null) {
+                bb.putInt(-1);
+            } else {
+                bb.putInt(v.getValue().length);
+                bb.put(v.getValue());
+            }
+        }
+        byte[] record = bb.array();
+        bb.putInt(4, checksum(record));
+        return record;
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        return (int)crc.getValue();
+    }
+
+    private static boolean isValid(byte[] record) {
+        if (record.length < HEADER_LENGTH + 4) return false;
+        ByteBuffer bb = ByteBuffer.wrap(record);
+        if (bb.getInt(4) != checksum(record)) return false;
+        int keyLength = bb.getInt(8);
+        return keyLength >= 0 &&
+                HEADER_LENGTH + keyLength + 4 <= record.length;
+    }
+
+    private static ByteArray decodeKey(byte[] record) {
+        int keyLength = ByteBuffer.wrap(record).getInt(8);
+        return new ByteArray(Arrays.copyOfRange(record, HEADER_LENGTH,
+                                                HEADER_LENGTH + keyLength));
+    }
+
+    private static boolean isDeletion(byte[] record) {
+        ByteBuffer bb = ByteBuffer.wrap(record);
+        return bb.getInt(HEADER_LENGTH + bb.getInt(8)) == 0;
+    }
+
+    private static List<Versioned<byte[]>> decodeValues(byte[] record) {
+        ByteBuffer bb = ByteBuffer.wrap(record);
+        bb.position(HEADER_LENGTH + bb.getInt(8));
+        int count = bb.getInt();
+        List<Versioned<byte[]>> values =
+                new ArrayList<Versioned<byte[]>>(count);
+        for (int i = 0; i < count; i++) {
+            long timestamp = bb.getLong();
+            int entries = bb.getShort();
+            List<ClockEntry> clock = new ArrayList<ClockEntry>(entries);
+            for (int j = 0; j < entries; j++) {
+                short nodeId = bb.getShort();
+                clock.add(new ClockEntry(nodeId, bb.getLong()));
+            }
+            int length = bb.getInt();
+            byte[] value = null;
+            if (length >= 0) {
+                value = new byte[length];
+                bb.get(value);
+            }
+            values.add(new Versioned<byte[]>(value,
+                                             new VectorClock(clock,
+                                                             timestamp)));
+        }
+        return values;
+    }
+
+    // *************
+    // Local classes
+    // *************
+
+    /**
+     * A mapped segment file of the log
+     */
+    private static class Segment {
+        final long id;
+        final File file;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        /**
+         * The end of the records, guarded by the append lock for the
+         * segment at the end of the log
+         */
+        int position;
+        /**
+         * The bytes of the records that are the latest of their key
+         */
+        final AtomicInteger live = new AtomicInteger();
+        /**
+         * Set with the commit lock held and no force in progress
+         */
+        volatile boolean unmapped;
+
+        Segment(long id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        /**
+         * @return the length of the record at offset, 0 at the end of the
+         * records, or -1 if it cannot be a record
+         */
+        int getRecordLength(int offset) {
+            if (offset + HEADER_LENGTH > capacity) return 0;
+            int length = buffer.getInt(offset);
+            if (length == 0) return 0;
+            if (length < HEADER_LENGTH || length > capacity - offset)
+                return -1;
+            return length;
+        }
+
+        byte[] readRecord(int offset) {
+            ByteBuffer bb = buffer.duplicate();
+            byte[] record = new byte[bb.getInt(offset)];
+            bb.position(offset);
+            bb.get(record);
+            return record;
+        }
+
+        void force() {
+            if (!unmapped) buffer.force();
+        }
+
+        void unmap() {
+            if (unmapped) return;
+            unmapped = true;
+            if (UNMAP == null) return;
+            try {
+                if (UNSAFE != null) {
+                    UNMAP.invoke(UNSAFE, buffer);
+                } else {
+                    Object cleaner = UNMAP.invoke(buffer);
+                    if (cleaner != null)
+                        cleaner.getClass().getMethod("clean")
+                                .invoke(cleaner);
+                }
+            } catch (Exception e) {
+                logger.debug("Could not unmap log segment {}", file, e);
+            }
+        }
+
+        void zero(int offset) {
+            ByteBuffer bb = buffer.duplicate();
+            bb.position(offset);
+            while (bb.hasRemaining())
+                bb.put((byte)0);
+            buffer.force();
+        }
+    }
+
+    /**
+     * Where the latest record of a key is
+     */
+    private static class Location {
+        final Segment segment;
+        final int offset;
+        final int length;
+
+        Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        List<Versioned<byte[]>> read() {
+            return decodeValues(segment.readRecord(offset));
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.ClockEntry;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * A hash tree over the contents of a store, used to find the keys on which
+ * two nodes differ without exchanging every key.
+ *
+ * The key space is split by key hash into {@link #LEAVES} ranges.  The hash
+ * of a leaf is the XOR of the digests of the keys in its range, so that a
+ * write updates it in constant time from the old and new digests of the
+ * key.  Each inner node covers the ranges of its {@link #FANOUT} children,
+ * and its hash is computed from theirs when asked for.
+ *
+ * Nodes are numbered breadth first: the root is 0, and the children of
+ * node n are n * FANOUT + 1 to n * FANOUT + FANOUT.
+ *
+ * The tree also indexes the keys of each leaf, so that the keys of the
+ * leaves that differ can be offered without scanning the store.
+ */
+public class MerkleTree {
+    public static final int FANOUT = 16;
+    public static final int DEPTH = 3;
+    public static final int LEAVES = 1 << (4 * DEPTH);
+    public static final int ROOT = 0;
+    /**
+     * The number of the first leaf
+     */
+    public static final int FIRST_LEAF = (LEAVES - 1) / (FANOUT - 1);
+    public static final int NODES = FIRST_LEAF + LEAVES;
+
+    private static final HashFunction KEY_HASH = Hashing.murmur3_32();
+    private static final HashFunction DIGEST_HASH = Hashing.murmur3_128();
+
+    private volatile Leaves leaves = new Leaves();
+
+    /**
+     * The hashes and keys of the leaves, replaced together on a rebuild
+     */
+    private static class Leaves {
+        final AtomicLongArray hashes = new AtomicLongArray(LEAVES);
+        final AtomicReferenceArray<Set<ByteArray>> keys =
+                new AtomicReferenceArray<Set<ByteArray>>(LEAVES);
+
+        void addKey(int leaf, ByteArray key) {
+            Set<ByteArray> k = keys.get(leaf);
+            if (k == null) {
+                k = Collections.newSetFromMap(
+                        new ConcurrentHashMap<ByteArray, Boolean>());
+                if (!keys.compareAndSet(leaf, null, k))
+                    k = keys.get(leaf);
+            }
+            k.add(key);
+        }
+
+        void removeKey(int leaf, ByteArray key) {
+            Set<ByteArray> k = keys.get(leaf);
+            if (k != null)
+                k.remove(key);
+        }
+    }
+
+    /**
+     * Get the leaf whose range holds the key
+     * @param key the key
+     * @return the leaf, between 0 and {@link #LEAVES} - 1
+     */
+    public static int getLeaf(ByteArray key) {
+        return KEY_HASH.hashBytes(key.get()).asInt() >>> (32 - 4 * DEPTH);
+    }
+
+    /**
+     * Get the digest of a key and its versions.  It does not depend on the
+     * order of the versions, and is 0 when there are none
+     * @param key the key
+     * @param values the versions of the key, or null
+     * @return the digest
+     */
+    public static long digest(ByteArray key,
+                              List<Versioned<byte[]>> values) {
+        if (values == null) return 0;
+        long digest = 0;
+        for (Versioned<byte[]> value : values) {
+            Hasher h = DIGEST_HASH.newHasher();
+            h.putBytes(key.get());
+            VectorClock vc = (VectorClock)value.getVersion();
+            h.putLong(vc.getTimestamp());
+            for (ClockEntry ce : vc.getEntries()) {
+                h.putShort(ce.getNodeId());
+                h.putLong(ce.getVersion());
+            }
+            if (value.getValue() == null) {
+                h.putBoolean(false);
+            } else {
+                h.putBoolean(true);
+                h.putBytes(value.getValue());
+            }
+            digest ^= h.hash().asLong();
+        }
+        return digest;
+    }
+
+    public static boolean isLeaf(int node) {
+        return node >= FIRST_LEAF;
+    }
+
+    public static int getFirstChild(int node) {
+        return node * FANOUT + 1;
+    }
+
+    /**
+     * Get the leaf of a leaf node
+     * @param node the node number
+     * @return the leaf, between 0 and {@link #LEAVES} - 1
+     */
+    public static int getLeafOfNode(int node) {
+        return node - FIRST_LEAF;
+    }
+
+    /**
+     * Record a change of the digest of a key.  A digest of 0 means that
+     * the key has no versions, and takes it out of the key index
+     * @param key the key
+     * @param oldDigest the digest of the key before the change
+     * @param newDigest the digest of the key after the change
+     */
+    public void update(ByteArray key, long oldDigest, long newDigest) {
+        Leaves ls = leaves;
+        int leaf = getLeaf(key);
+        if (newDigest != 0)
+            ls.addKey(leaf, key);
+        else if (oldDigest != 0)
+            ls.removeKey(leaf, key);
+
+        long delta = oldDigest ^ newDigest;
+        if (delta == 0) return;
+        AtomicLongArray l = ls.hashes;
+        while (true) {
+            long current = l.get(leaf);
+            if (l.compareAndSet(leaf, current, current ^ delta))
+                return;
+        }
+    }
+
+    /**
+     * Compute the hashes of all the nodes
+     * @return the hashes, indexed by node number
+     */
+    public long[] getHashes() {
+        long[] hashes = new long[NODES];
+        AtomicLongArray l = leaves.hashes;
+        for (int i = 0; i < LEAVES; i++) {
+            hashes[FIRST_LEAF + i] = l.get(i);
+        }
+        for (int node = FIRST_LEAF - 1; node >= 0; node--) {
+            int child = getFirstChild(node);
+            long hash = 0;
+            for (int i = 0; i < FANOUT; i++) {
+                hash = mix(hash * 31 + hashes[child + i]);
+            }
+            hashes[node] = hash;
+        }
+        return hashes;
+    }
+
+    /**
+     * Recompute the tree from the contents of a store.  The tree is
+     * replaced at once, so that it can be read meanwhile.  A write racing
+     * with the scan may be missed, which only makes its range look
+     * different until the next rebuild
+     * @param entries the entries of the store, closed when done
+     */
+    public void rebuild(IClosableIterator<Entry<ByteArray,
+                                          List<Versioned<byte[]>>>> entries) {
+        Leaves ls = new Leaves();
+        AtomicLongArray l = ls.hashes;
+        try {
+            while (entries.hasNext()) {
+                Entry<ByteArray, List<Versioned<byte[]>>> e = entries.next();
+                List<Versioned<byte[]>> values = e.getValue();
+                long digest;
+                synchronized (values) {
+                    digest = digest(e.getKey(), values);
+                }
+                if (digest == 0) continue;
+                int leaf = getLeaf(e.getKey());
+                l.set(leaf, l.get(leaf) ^ digest);
+                ls.addKey(leaf, e.getKey());
+            }
+        } finally {
+            entries.close();
+        }
+        leaves = ls;
+    }
+
+    public void clear() {
+        leaves = new Leaves();
+    }
+
+    /**
+     * Get the keys whose range is a leaf.  The collection is a live view
+     * that may change while it is iterated
+     * @param leaf the leaf, between 0 and {@link #LEAVES} - 1
+     * @return the keys of the leaf
+     */
+    public Collection<ByteArray> getKeys(int leaf) {
+        Set<ByteArray> k = leaves.keys.get(leaf);
+        if (k == null) return Collections.emptySet();
+        return Collections.unmodifiableSet(k);
+    }
+
+    /**
+     * The finalizer of MurmurHash3
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -30,6 +30,17 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
      */
     protected Scope scope;
 
+    /**
+     * The hash tree over the contents of the store, for anti-entropy
+     */
+    protected MerkleTree tree = new MerkleTree();
+
+    /**
+     * Locks serializing the writes to a key with the update of its digest
+     * in the tree
+     */
+    private final Object[] treeLocks = new Object[64];
+
     /**
      * Allocate a synchronizing storage engine
      * @param localStorage the local storage
@@ -48,6 +59,10 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
         this.localStorage = localStorage;
         this.syncManager = syncManager;
         this.scope = scope;
+        for (int i = 0; i < treeLocks.length; i++)
+            treeLocks[i] = new Object();
+        if (isSynchronized())
+            tree.rebuild(localStorage.entries());
     }
 
     // *************************
@@ -57,11 +72,45 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
     @Override
     public void put(ByteArray key, Versioned<byte[]> value)
             throws SyncException {
-        super.put(key, value);
-        if (!Scope.UNSYNCHRONIZED.equals(scope))
+        if (isSynchronized()) {
+            synchronized (getTreeLock(key)) {
+                long oldDigest = getDigest(key);
+                super.put(key, value);
+                tree.update(key, oldDigest, getDigest(key));
+            }
             syncManager.queueSyncTask(this, key, value);
+        } else {
+            super.put(key, value);
+        }
+    }
+
+    @Override
+    public boolean writeSyncValue(ByteArray key,
+                                  Iterable<Versioned<byte[]>> values) {
+        if (!isSynchronized())
+            return super.writeSyncValue(key, values);
+        synchronized (getTreeLock(key)) {
+            long oldDigest = getDigest(key);
+            boolean r = super.writeSyncValue(key, values);
+            tree.update(key, oldDigest, getDigest(key));
+            return r;
+        }
+    }
+
+    @Override
+    public void truncate() throws SyncException {
+        super.truncate();
+        tree.clear();
+    }
+
+    @Override
+    public void cleanupTask() throws SyncException {
+        super.cleanupTask();
+        // the removed tombstones are not seen key by key
+        if (isSynchronized())
+            tree.rebuild(localStorage.entries());
     }
-    
+
     // **************
     // Public methods
     // **************
@@ -73,4 +122,40 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
     public Scope getScope() {
         return scope;
     }
+
+    /**
+     * Get the hash tree over the contents of the store.  It is only
+     * maintained for stores that are synchronized
+     * @return the {@link MerkleTree}
+     */
+    public MerkleTree getMerkleTree() {
+        return tree;
+    }
+
+    // ***************
+    // Private methods
+    // ***************
+
+    private boolean isSynchronized() {
+        return !Scope.UNSYNCHRONIZED.equals(scope);
+    }
+
+    /**
+     * Get the digest of the versions of a key in the local storage.  If
+     * they cannot be read, the range of the key will look different to
+     * the other nodes until the tree is rebuilt
+     */
+    private long getDigest(ByteArray key) {
+        try {
+            return MerkleTree.digest(key, localStorage.get(key));
+        } catch (SyncException e) {
+            logger.error("Could not read key for the hash tree of store " +
+                         getName(), e);
+            return 0;
+        }
+    }
+
+    private Object getTreeLock(ByteArray key) {
+        return treeLocks[(key.hashCode() & 0x7fffffff) % treeLocks.length];
+    }
 }
@@ -0,0 +1,469 @@
+/**
+ * Autogenerated by Thrift Compiler (0.9.0)
+ *
+ * DO NOT EDIT UNLESS YOU ARE SURE THAT YOU KNOW WHAT YOU ARE DOING
+ *  @generated
+ */
+package org.sdnplatform.sync.thrift;
+
+import org.apache.thrift.scheme.IScheme;
+import org.apache.thrift.scheme.SchemeFactory;
+import org.apache.thrift.scheme.StandardScheme;
+
+import org.apache.thrift.scheme.TupleScheme;
+import org.apache.thrift.protocol.TTupleProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.EncodingUtils;
+import org.apache.thrift.TException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.Collections;
+import java.util.BitSet;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@SuppressWarnings("all") public class MerkleNode implements org.apache.thrift.TBase<MerkleNode, MerkleNode._Fields>, java.io.Serializable, Cloneable {
+  private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("MerkleNode");
+
+  private static final org.apache.thrift.protocol.TField INDEX_FIELD_DESC = new org.apache.thrift.protocol.TField("index", org.apache.thrift.protocol.TType.I32, (short)1);
+  private static final org.apache.thrift.protocol.TField HASH_FIELD_DESC = new org.apache.thrift.protocol.TField("hash", org.apache.thrift.protocol.TType.I64, (short)2);
+
+  private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+  static {
+    schemes.put(StandardScheme.class, new MerkleNodeStandardSchemeFactory());
+    schemes.put(TupleScheme.class, new MerkleNodeTupleSchemeFactory());
+  }
+
+  public int index; // required
+  public long hash; // required
+
+  /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+  public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+    INDEX((short)1, "index"),
+    HASH((short)2, "hash");
+
+    private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+    static {
+      for (_Fields field : EnumSet.allOf(_Fields.class)) {
+        byName.put(field.getFieldName(), field);
+      }
+    }
+
+    /**
+     * Find the _Fields constant that matches fieldId, or null if its not found.
+     */
+    public static _Fields findByThriftId(int fieldId) {
+      switch(fieldId) {
+        case 1: // INDEX
+          return INDEX;
+        case 2: // HASH
+          return HASH;
+        default:
+          return null;
+      }
+    }
+
+    /**
+     * Find the _Fields constant that matches fieldId, throwing an exception
+     * if it is not found.
+     */
+    public static _Fields findByThriftIdOrThrow(int fieldId) {
+      _Fields fields = findByThriftId(fieldId);
+      if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+      return fields;
+    }
+
+    /**
+     * Find the _Fields constant that matches name, or null if its not found.
+     */
+    public static _Fields findByName(String name) {
+      return byName.get(name);
+    }
+
+    private final short _thriftId;
+    private final String _fieldName;
+
+    _Fields(short thriftId, String fieldName) {
+      _thriftId = thriftId;
+      _fieldName = fieldName;
+    }
+
+    public short getThriftFieldId() {
+      return _thriftId;
+    }
+
+    public String getFieldName() {
+      return _fieldName;
+    }
+  }
+
+  // isset id assignments
+  private static final int __INDEX_ISSET_ID = 0;
+  private static final int __HASH_ISSET_ID = 1;
+  private byte __isset_bitfield = 0;
+  public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+  static {
+    Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+    tmpMap.put(_Fields.INDEX, new org.apache.thrift.meta_data.FieldMetaData("index", org.apache.thrift.TFieldRequirementType.REQUIRED, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I32)));
+    tmpMap.put(_Fields.HASH, new org.apache.thrift.meta_data.FieldMetaData("hash", org.apache.thrift.TFieldRequirementType.REQUIRED, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.I64)));
+    metaDataMap = Collections.unmodifiableMap(tmpMap);
+    org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(MerkleNode.class, metaDataMap);
+  }
+
+  public MerkleNode() {
+  }
+
+  public MerkleNode(
+    int index,
+    long hash)
+  {
+    this();
+    this.index = index;
+    setIndexIsSet(true);
+    this.hash = hash;
+    setHashIsSet(true);
+  }
+
+  /**
+   * Performs a deep copy on <i>other</i>.
+   */
+  public MerkleNode(MerkleNode other) {
+    __isset_bitfield = other.__isset_bitfield;
+    this.index = other.index;
+    this.hash = other.hash;
+  }
+
+  public MerkleNode deepCopy() {
+    return new MerkleNode(this);
+  }
+
+  @Override
+  public void clear() {
+    setIndexIsSet(false);
+    this.index = 0;
+    setHashIsSet(false);
+    this.hash = 0;
+  }
+
+  public int getIndex() {
+    return this.index;
+  }
+
+  public MerkleNode setIndex(int index) {
+    this.index = index;
+    setIndexIsSet(true);
+    return this;
+  }
+
+  public void unsetIndex() {
+    __isset_bitfield = EncodingUtils.clearBit(__isset_bitfield, __INDEX_ISSET_ID);
+  }
+
+  /** Returns true if field index is set (has been assigned a value) and false otherwise */
+  public boolean isSetIndex() {
+    return EncodingUtils.testBit(__isset_bitfield, __INDEX_ISSET_ID);
+  }
+
+  public void setIndexIsSet(boolean value) {
+    __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __INDEX_ISSET_ID, value);
+  }
+
+  public long getHash() {
+    return this.hash;
+  }
+
+  public MerkleNode setHash(long hash) {
+    this.hash = hash;
+    setHashIsSet(true);
+    return this;
+  }
+
+  public void unsetHash() {
+    __isset_bitfield = EncodingUtils.clearBit(__isset_bitfield, __HASH_ISSET_ID);
+  }
+
+  /** Returns true if field hash is set (has been assigned a value) and false otherwise */
+  public boolean isSetHash() {
+    return EncodingUtils.testBit(__isset_bitfield, __HASH_ISSET_ID);
+  }
+
+  public void setHashIsSet(boolean value) {
+    __isset_bitfield = EncodingUtils.setBit(__isset_bitfield, __HASH_ISSET_ID, value);
+  }
+
+  public void setFieldValue(_Fields field, Object value) {
+    switch (field) {
+    case INDEX:
+      if (value == null) {
+        unsetIndex();
+      } else {
+        setIndex((Integer)value);
+      }
+      break;
+
+    case HASH:
+      if (value == null) {
+        unsetHash();
+      } else {
+        setHash((Long)value);
+      }
+      break;
+
+    }
+  }
+
+  public Object getFieldValue(_Fields field) {
+    switch (field) {
+    case INDEX:
+      return Integer.valueOf(getIndex());
+
+    case HASH:
+      return Long.valueOf(getHash());
+
+    }
+    throw new IllegalStateException();
+  }
+
+  /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+  public boolean isSet(_Fields field) {
+    if (field == null) {
+      throw new IllegalArgumentException();
+    }
+
+    switch (field) {
+    case INDEX:
+      return isSetIndex();
+    case HASH:
+      return isSetHash();
+    }
+    throw new IllegalStateException();
+  }
+
+  @Override
+  public boolean equals(Object that) {
+    if (that == null)
+      return false;
+    if (that instanceof MerkleNode)
+      return this.equals((MerkleNode)that);
+    return false;
+  }
+
+  public boolean equals(MerkleNode that) {
+    if (that == null)
+      return false;
+
+    boolean this_present_index = true;
+    boolean that_present_index = true;
+    if (this_present_index || that_present_index) {
+      if (!(this_present_index && that_present_index))
+        return false;
+      if (this.index != that.index)
+        return false;
+    }
+
+    boolean this_present_hash = true;
+    boolean that_present_hash = true;
+    if (this_present_hash || that_present_hash) {
+      if (!(this_present_hash && that_present_hash))
+        return false;
+      if (this.hash != that.hash)
+        return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return 0;
+  }
+
+  public int compareTo(MerkleNode other) {
+    if (!getClass().equals(other.getClass())) {
+      return getClass().getName().compareTo(other.getClass().getName());
+    }
+
+    int lastComparison = 0;
+    MerkleNode typedOther = (MerkleNode)other;
+
+    lastComparison = Boolean.valueOf(isSetIndex()).compareTo(typedOther.isSetIndex());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetIndex()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.index, typedOther.index);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    lastComparison = Boolean.valueOf(isSetHash()).compareTo(typedOther.isSetHash());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetHash()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.hash, typedOther.hash);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    return 0;
+  }
+
+  public _Fields fieldForId(int fieldId) {
+    return _Fields.findByThriftId(fieldId);
+  }
+
+  public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+    schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+  }
+
+  public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+    schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("MerkleNode(");
+    boolean first = true;
+
+    sb.append("index:");
+    sb.append(this.index);
+    first = false;
+    if (!first) sb.append(", ");
+    sb.append("hash:");
+    sb.append(this.hash);
+    first = false;
+    sb.append(")");
+    return sb.toString();
+  }
+
+  public void validate() throws org.apache.thrift.TException {
+    // check for required fields
+    // alas, we cannot check 'index' because it's a primitive and you chose the non-beans generator.
+    // alas, we cannot check 'hash' because it's a primitive and you chose the non-beans generator.
+    // check for sub-struct validity
+  }
+
+  private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+    try {
+      write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+    } catch (org.apache.thrift.TException te) {
+      throw new java.io.IOException(te);
+    }
+  }
+
+  private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+    try {
+      // it doesn't seem like you should have to do this, but java serialization is wacky, and doesn't call the default constructor.
+      __isset_bitfield = 0;
+      read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+    } catch (org.apache.thrift.TException te) {
+      throw new java.io.IOException(te);
+    }
+  }
+
+  private static class MerkleNodeStandardSchemeFactory implements SchemeFactory {
+    public MerkleNodeStandardScheme getScheme() {
+      return new MerkleNodeStandardScheme();
+    }
+  }
+
+  private static class MerkleNodeStandardScheme extends StandardScheme<MerkleNode> {
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot, MerkleNode struct) throws org.apache.thrift.TException {
+      org.apache.thrift.protocol.TField schemeField;
+      iprot.readStructBegin();
+      while (true)
+      {
+        schemeField = iprot.readFieldBegin();
+        if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+          break;
+        }
+        switch (schemeField.id) {
+          case 1: // INDEX
+            if (schemeField.type == org.apache.thrift.protocol.TType.I32) {
+              struct.index = iprot.readI32();
+              struct.setIndexIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          case 2: // HASH
+            if (schemeField.type == org.apache.thrift.protocol.TType.I64) {
+              struct.hash = iprot.readI64();
+              struct.setHashIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          default:
+            org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      if (!struct.isSetIndex()) {
+        throw new org.apache.thrift.protocol.TProtocolException("Required field 'index' was not found in serialized data! Struct: " + toString());
+      }
+      if (!struct.isSetHash()) {
+        throw new org.apache.thrift.protocol.TProtocolException("Required field 'hash' was not found in serialized data! Struct: " + toString());
+      }
+      struct.validate();
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot, MerkleNode struct) throws org.apache.thrift.TException {
+      struct.validate();
+
+      oprot.writeStructBegin(STRUCT_DESC);
+      oprot.writeFieldBegin(INDEX_FIELD_DESC);
+      oprot.writeI32(struct.index);
+      oprot.writeFieldEnd();
+      oprot.writeFieldBegin(HASH_FIELD_DESC);
+      oprot.writeI64(struct.hash);
+      oprot.writeFieldEnd();
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+  }
+
+  private static class MerkleNodeTupleSchemeFactory implements SchemeFactory {
+    public MerkleNodeTupleScheme getScheme() {
+      return new MerkleNodeTupleScheme();
+    }
+  }
+
+  private static class MerkleNodeTupleScheme extends TupleScheme<MerkleNode> {
+
+    @Override
+    public void write(org.apache.thrift.protocol.TProtocol prot, MerkleNode struct) throws org.apache.thrift.TException {
+      TTupleProtocol oprot = (TTupleProtocol) prot;
+      oprot.writeI32(struct.index);
+      oprot.writeI64(struct.hash);
+    }
+
+    @Override
+    public void read(org.apache.thrift.protocol.TProtocol prot, MerkleNode struct) throws org.apache.thrift.TException {
+      TTupleProtocol iprot = (TTupleProtocol) prot;
+      struct.index = iprot.readI32();
+      struct.setIndexIsSet(true);
+      struct.hash = iprot.readI64();
+      struct.setHashIsSet(true);
+    }
+  }
+
+}
+
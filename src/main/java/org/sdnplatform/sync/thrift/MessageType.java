@@ -32,7 +32,9 @@ import org.apache.thrift.TEnum;
   REGISTER_REQUEST(18),
   REGISTER_RESPONSE(19),
   CLUSTER_JOIN_REQUEST(20),
-  CLUSTER_JOIN_RESPONSE(21);
+  CLUSTER_JOIN_RESPONSE(21),
+  SYNC_DIGEST(22),
+  SYNC_DIGEST_REPLY(23);
 
   private final int value;
 
@@ -95,6 +97,10 @@ import org.apache.thrift.TEnum;
         return CLUSTER_JOIN_REQUEST;
       case 21:
         return CLUSTER_JOIN_RESPONSE;
+      case 22:
+        return SYNC_DIGEST;
+      case 23:
+        return SYNC_DIGEST_REPLY;
       default:
         return null;
     }
@@ -0,0 +1,642 @@
+/**
+ * Autogenerated by Thrift Compiler (0.9.0)
+ *
+ * DO NOT EDIT UNLESS YOU ARE SURE THAT YOU KNOW WHAT YOU ARE DOING
+ *  @generated
+ */
+package org.sdnplatform.sync.thrift;
+
+import org.apache.thrift.scheme.IScheme;
+import org.apache.thrift.scheme.SchemeFactory;
+import org.apache.thrift.scheme.StandardScheme;
+
+import org.apache.thrift.scheme.TupleScheme;
+import org.apache.thrift.protocol.TTupleProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.EncodingUtils;
+import org.apache.thrift.TException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.Collections;
+import java.util.BitSet;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@SuppressWarnings("all") public class SyncDigestMessage implements org.apache.thrift.TBase<SyncDigestMessage, SyncDigestMessage._Fields>, java.io.Serializable, Cloneable {
+  private static final org.apache.thrift.protocol.TStruct STRUCT_DESC = new org.apache.thrift.protocol.TStruct("SyncDigestMessage");
+
+  private static final org.apache.thrift.protocol.TField HEADER_FIELD_DESC = new org.apache.thrift.protocol.TField("header", org.apache.thrift.protocol.TType.STRUCT, (short)1);
+  private static final org.apache.thrift.protocol.TField STORE_FIELD_DESC = new org.apache.thrift.protocol.TField("store", org.apache.thrift.protocol.TType.STRUCT, (short)2);
+  private static final org.apache.thrift.protocol.TField DIGESTS_FIELD_DESC = new org.apache.thrift.protocol.TField("digests", org.apache.thrift.protocol.TType.LIST, (short)3);
+
+  private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
+  static {
+    schemes.put(StandardScheme.class, new SyncDigestMessageStandardSchemeFactory());
+    schemes.put(TupleScheme.class, new SyncDigestMessageTupleSchemeFactory());
+  }
+
+  public AsyncMessageHeader header; // required
+  public Store store; // required
+  public List<MerkleNode> digests; // required
+
+  /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
+  public enum _Fields implements org.apache.thrift.TFieldIdEnum {
+    HEADER((short)1, "header"),
+    STORE((short)2, "store"),
+    DIGESTS((short)3, "digests");
+
+    private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
+
+    static {
+      for (_Fields field : EnumSet.allOf(_Fields.class)) {
+        byName.put(field.getFieldName(), field);
+      }
+    }
+
+    /**
+     * Find the _Fields constant that matches fieldId, or null if its not found.
+     */
+    public static _Fields findByThriftId(int fieldId) {
+      switch(fieldId) {
+        case 1: // HEADER
+          return HEADER;
+        case 2: // STORE
+          return STORE;
+        case 3: // DIGESTS
+          return DIGESTS;
+        default:
+          return null;
+      }
+    }
+
+    /**
+     * Find the _Fields constant that matches fieldId, throwing an exception
+     * if it is not found.
+     */
+    public static _Fields findByThriftIdOrThrow(int fieldId) {
+      _Fields fields = findByThriftId(fieldId);
+      if (fields == null) throw new IllegalArgumentException("Field " + fieldId + " doesn't exist!");
+      return fields;
+    }
+
+    /**
+     * Find the _Fields constant that matches name, or null if its not found.
+     */
+    public static _Fields findByName(String name) {
+      return byName.get(name);
+    }
+
+    private final short _thriftId;
+    private final String _fieldName;
+
+    _Fields(short thriftId, String fieldName) {
+      _thriftId = thriftId;
+      _fieldName = fieldName;
+    }
+
+    public short getThriftFieldId() {
+      return _thriftId;
+    }
+
+    public String getFieldName() {
+      return _fieldName;
+    }
+  }
+
+  // isset id assignments
+  public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
+  static {
+    Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
+    tmpMap.put(_Fields.HEADER, new org.apache.thrift.meta_data.FieldMetaData("header", org.apache.thrift.TFieldRequirementType.REQUIRED, 
+        new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, AsyncMessageHeader.class)));
+    tmpMap.put(_Fields.STORE, new org.apache.thrift.meta_data.FieldMetaData("store", org.apache.thrift.TFieldRequirementType.REQUIRED, 
+        new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, Store.class)));
+    tmpMap.put(_Fields.DIGESTS, new org.apache.thrift.meta_data.FieldMetaData("digests", org.apache.thrift.TFieldRequirementType.DEFAULT, 
+        new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
+            new org.apache.thrift.meta_data.StructMetaData(org.apache.thrift.protocol.TType.STRUCT, MerkleNode.class))));
+    metaDataMap = Collections.unmodifiableMap(tmpMap);
+    org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(SyncDigestMessage.class, metaDataMap);
+  }
+
+  public SyncDigestMessage() {
+  }
+
+  public SyncDigestMessage(
+    AsyncMessageHeader header,
+    Store store,
+    List<MerkleNode> digests)
+  {
+    this();
+    this.header = header;
+    this.store = store;
+    this.digests = digests;
+  }
+
+  /**
+   * Performs a deep copy on <i>other</i>.
+   */
+  public SyncDigestMessage(SyncDigestMessage other) {
+    if (other.isSetHeader()) {
+      this.header = new AsyncMessageHeader(other.header);
+    }
+    if (other.isSetStore()) {
+      this.store = new Store(other.store);
+    }
+    if (other.isSetDigests()) {
+      List<MerkleNode> __this__digests = new ArrayList<MerkleNode>();
+      for (MerkleNode other_element : other.digests) {
+        __this__digests.add(new MerkleNode(other_element));
+      }
+      this.digests = __this__digests;
+    }
+  }
+
+  public SyncDigestMessage deepCopy() {
+    return new SyncDigestMessage(this);
+  }
+
+  @Override
+  public void clear() {
+    this.header = null;
+    this.store = null;
+    this.digests = null;
+  }
+
+  public AsyncMessageHeader getHeader() {
+    return this.header;
+  }
+
+  public SyncDigestMessage setHeader(AsyncMessageHeader header) {
+    this.header = header;
+    return this;
+  }
+
+  public void unsetHeader() {
+    this.header = null;
+  }
+
+  /** Returns true if field header is set (has been assigned a value) and false otherwise */
+  public boolean isSetHeader() {
+    return this.header != null;
+  }
+
+  public void setHeaderIsSet(boolean value) {
+    if (!value) {
+      this.header = null;
+    }
+  }
+
+  public Store getStore() {
+    return this.store;
+  }
+
+  public SyncDigestMessage setStore(Store store) {
+    this.store = store;
+    return this;
+  }
+
+  public void unsetStore() {
+    this.store = null;
+  }
+
+  /** Returns true if field store is set (has been assigned a value) and false otherwise */
+  public boolean isSetStore() {
+    return this.store != null;
+  }
+
+  public void setStoreIsSet(boolean value) {
+    if (!value) {
+      this.store = null;
+    }
+  }
+
+  public int getDigestsSize() {
+    return (this.digests == null) ? 0 : this.digests.size();
+  }
+
+  public java.util.Iterator<MerkleNode> getDigestsIterator() {
+    return (this.digests == null) ? null : this.digests.iterator();
+  }
+
+  public void addToDigests(MerkleNode elem) {
+    if (this.digests == null) {
+      this.digests = new ArrayList<MerkleNode>();
+    }
+    this.digests.add(elem);
+  }
+
+  public List<MerkleNode> getDigests() {
+    return this.digests;
+  }
+
+  public SyncDigestMessage setDigests(List<MerkleNode> digests) {
+    this.digests = digests;
+    return this;
+  }
+
+  public void unsetDigests() {
+    this.digests = null;
+  }
+
+  /** Returns true if field digests is set (has been assigned a value) and false otherwise */
+  public boolean isSetDigests() {
+    return this.digests != null;
+  }
+
+  public void setDigestsIsSet(boolean value) {
+    if (!value) {
+      this.digests = null;
+    }
+  }
+
+  public void setFieldValue(_Fields field, Object value) {
+    switch (field) {
+    case HEADER:
+      if (value == null) {
+        unsetHeader();
+      } else {
+        setHeader((AsyncMessageHeader)value);
+      }
+      break;
+
+    case STORE:
+      if (value == null) {
+        unsetStore();
+      } else {
+        setStore((Store)value);
+      }
+      break;
+
+    case DIGESTS:
+      if (value == null) {
+        unsetDigests();
+      } else {
+        setDigests((List<MerkleNode>)value);
+      }
+      break;
+
+    }
+  }
+
+  public Object getFieldValue(_Fields field) {
+    switch (field) {
+    case HEADER:
+      return getHeader();
+
+    case STORE:
+      return getStore();
+
+    case DIGESTS:
+      return getDigests();
+
+    }
+    throw new IllegalStateException();
+  }
+
+  /** Returns true if field corresponding to fieldID is set (has been assigned a value) and false otherwise */
+  public boolean isSet(_Fields field) {
+    if (field == null) {
+      throw new IllegalArgumentException();
+    }
+
+    switch (field) {
+    case HEADER:
+      return isSetHeader();
+    case STORE:
+      return isSetStore();
+    case DIGESTS:
+      return isSetDigests();
+    }
+    throw new IllegalStateException();
+  }
+
+  @Override
+  public boolean equals(Object that) {
+    if (that == null)
+      return false;
+    if (that instanceof SyncDigestMessage)
+      return this.equals((SyncDigestMessage)that);
+    return false;
+  }
+
+  public boolean equals(SyncDigestMessage that) {
+    if (that == null)
+      return false;
+
+    boolean this_present_header = true && this.isSetHeader();
+    boolean that_present_header = true && that.isSetHeader();
+    if (this_present_header || that_present_header) {
+      if (!(this_present_header && that_present_header))
+        return false;
+      if (!this.header.equals(that.header))
+        return false;
+    }
+
+    boolean this_present_store = true && this.isSetStore();
+    boolean that_present_store = true && that.isSetStore();
+    if (this_present_store || that_present_store) {
+      if (!(this_present_store && that_present_store))
+        return false;
+      if (!this.store.equals(that.store))
+        return false;
+    }
+
+    boolean this_present_digests = true && this.isSetDigests();
+    boolean that_present_digests = true && that.isSetDigests();
+    if (this_present_digests || that_present_digests) {
+      if (!(this_present_digests && that_present_digests))
+        return false;
+      if (!this.digests.equals(that.digests))
+        return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return 0;
+  }
+
+  public int compareTo(SyncDigestMessage other) {
+    if (!getClass().equals(other.getClass())) {
+      return getClass().getName().compareTo(other.getClass().getName());
+    }
+
+    int lastComparison = 0;
+    SyncDigestMessage typedOther = (SyncDigestMessage)other;
+
+    lastComparison = Boolean.valueOf(isSetHeader()).compareTo(typedOther.isSetHeader());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetHeader()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.header, typedOther.header);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    lastComparison = Boolean.valueOf(isSetStore()).compareTo(typedOther.isSetStore());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetStore()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.store, typedOther.store);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    lastComparison = Boolean.valueOf(isSetDigests()).compareTo(typedOther.isSetDigests());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetDigests()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.digests, typedOther.digests);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    return 0;
+  }
+
+  public _Fields fieldForId(int fieldId) {
+    return _Fields.findByThriftId(fieldId);
+  }
+
+  public void read(org.apache.thrift.protocol.TProtocol iprot) throws org.apache.thrift.TException {
+    schemes.get(iprot.getScheme()).getScheme().read(iprot, this);
+  }
+
+  public void write(org.apache.thrift.protocol.TProtocol oprot) throws org.apache.thrift.TException {
+    schemes.get(oprot.getScheme()).getScheme().write(oprot, this);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("SyncDigestMessage(");
+    boolean first = true;
+
+    sb.append("header:");
+    if (this.header == null) {
+      sb.append("null");
+    } else {
+      sb.append(this.header);
+    }
+    first = false;
+    if (!first) sb.append(", ");
+    sb.append("store:");
+    if (this.store == null) {
+      sb.append("null");
+    } else {
+      sb.append(this.store);
+    }
+    first = false;
+    if (!first) sb.append(", ");
+    sb.append("digests:");
+    if (this.digests == null) {
+      sb.append("null");
+    } else {
+      sb.append(this.digests);
+    }
+    first = false;
+    sb.append(")");
+    return sb.toString();
+  }
+
+  public void validate() throws org.apache.thrift.TException {
+    // check for required fields
+    if (header == null) {
+      throw new org.apache.thrift.protocol.TProtocolException("Required field 'header' was not present! Struct: " + toString());
+    }
+    if (store == null) {
+      throw new org.apache.thrift.protocol.TProtocolException("Required field 'store' was not present! Struct: " + toString());
+    }
+    // check for sub-struct validity
+    if (header != null) {
+      header.validate();
+    }
+    if (store != null) {
+      store.validate();
+    }
+  }
+
+  private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException {
+    try {
+      write(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(out)));
+    } catch (org.apache.thrift.TException te) {
+      throw new java.io.IOException(te);
+    }
+  }
+
+  private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+    try {
+      read(new org.apache.thrift.protocol.TCompactProtocol(new org.apache.thrift.transport.TIOStreamTransport(in)));
+    } catch (org.apache.thrift.TException te) {
+      throw new java.io.IOException(te);
+    }
+  }
+
+  private static class SyncDigestMessageStandardSchemeFactory implements SchemeFactory {
+    public SyncDigestMessageStandardScheme getScheme() {
+      return new SyncDigestMessageStandardScheme();
+    }
+  }
+
+  private static class SyncDigestMessageStandardScheme extends StandardScheme<SyncDigestMessage> {
+
+    public void read(org.apache.thrift.protocol.TProtocol iprot, SyncDigestMessage struct) throws org.apache.thrift.TException {
+      org.apache.thrift.protocol.TField schemeField;
+      iprot.readStructBegin();
+      while (true)
+      {
+        schemeField = iprot.readFieldBegin();
+        if (schemeField.type == org.apache.thrift.protocol.TType.STOP) { 
+          break;
+        }
+        switch (schemeField.id) {
+          case 1: // HEADER
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRUCT) {
+              struct.header = new AsyncMessageHeader();
+              struct.header.read(iprot);
+              struct.setHeaderIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          case 2: // STORE
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRUCT) {
+              struct.store = new Store();
+              struct.store.read(iprot);
+              struct.setStoreIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          case 3: // DIGESTS
+            if (schemeField.type == org.apache.thrift.protocol.TType.LIST) {
+              {
+                org.apache.thrift.protocol.TList _list40 = iprot.readListBegin();
+                struct.digests = new ArrayList<MerkleNode>(_list40.size);
+                for (int _i41 = 0; _i41 < _list40.size; ++_i41)
+                {
+                  MerkleNode _elem42; // required
+                  _elem42 = new MerkleNode();
+                  _elem42.read(iprot);
+                  struct.digests.add(_elem42);
+                }
+                iprot.readListEnd();
+              }
+              struct.setDigestsIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          default:
+            org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+        }
+        iprot.readFieldEnd();
+      }
+      iprot.readStructEnd();
+
+      // check for required fields of primitive type, which can't be checked in the validate method
+      struct.validate();
+    }
+
+    public void write(org.apache.thrift.protocol.TProtocol oprot, SyncDigestMessage struct) throws org.apache.thrift.TException {
+      struct.validate();
+
+      oprot.writeStructBegin(STRUCT_DESC);
+      if (struct.header != null) {
+        oprot.writeFieldBegin(HEADER_FIELD_DESC);
+        struct.header.write(oprot);
+        oprot.writeFieldEnd();
+      }
+      if (struct.store != null) {
+        oprot.writeFieldBegin(STORE_FIELD_DESC);
+        struct.store.write(oprot);
+        oprot.writeFieldEnd();
+      }
+      if (struct.digests != null) {
+        oprot.writeFieldBegin(DIGESTS_FIELD_DESC);
+        {
+          oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, struct.digests.size()));
+          for (MerkleNode _iter43 : struct.digests)
+          {
+            _iter43.write(oprot);
+          }
+          oprot.writeListEnd();
+        }
+        oprot.writeFieldEnd();
+      }
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+    }
+
+  }
+
+  private static class SyncDigestMessageTupleSchemeFactory implements SchemeFactory {
+    public SyncDigestMessageTupleScheme getScheme() {
+      return new SyncDigestMessageTupleScheme();
+    }
+  }
+
+  private static class SyncDigestMessageTupleScheme extends TupleScheme<SyncDigestMessage> {
+
+    @Override
+    public void write(org.apache.thrift.protocol.TProtocol prot, SyncDigestMessage struct) throws org.apache.thrift.TException {
+      TTupleProtocol oprot = (TTupleProtocol) prot;
+      struct.header.write(oprot);
+      struct.store.write(oprot);
+      BitSet optionals = new BitSet();
+      if (struct.isSetDigests()) {
+        optionals.set(0);
+      }
+      oprot.writeBitSet(optionals, 1);
+      if (struct.isSetDigests()) {
+        {
+          oprot.writeI32(struct.digests.size());
+          for (MerkleNode _iter44 : struct.digests)
+          {
+            _iter44.write(oprot);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void read(org.apache.thrift.protocol.TProtocol prot, SyncDigestMessage struct) throws org.apache.thrift.TException {
+      TTupleProtocol iprot = (TTupleProtocol) prot;
+      struct.header = new AsyncMessageHeader();
+      struct.header.read(iprot);
+      struct.setHeaderIsSet(true);
+      struct.store = new Store();
+      struct.store.read(iprot);
+      struct.setStoreIsSet(true);
+      BitSet incoming = iprot.readBitSet(1);
+      if (incoming.get(0)) {
+        {
+          org.apache.thrift.protocol.TList _list45 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRUCT, iprot.readI32());
+          struct.digests = new ArrayList<MerkleNode>(_list45.size);
+          for (int _i46 = 0; _i46 < _list45.size; ++_i46)
+          {
+            MerkleNode _elem47; // required
+            _elem47 = new MerkleNode();
+            _elem47.read(iprot);
+            struct.digests.add(_elem47);
+          }
+        }
+        struct.setDigestsIsSet(true);
+      }
+    }
+  }
+
+}
+
@@ -93,6 +93,8 @@ enum MessageType {
   REGISTER_RESPONSE = 19,
   CLUSTER_JOIN_REQUEST = 20,
   CLUSTER_JOIN_RESPONSE = 21,
+  SYNC_DIGEST = 22,
+  SYNC_DIGEST_REPLY = 23,
 }
 
 enum AuthScheme {
@@ -186,6 +188,23 @@ struct SyncRequestMessage {
   3: optional list<binary> keys
 }
 
+struct MerkleNode {
+  1: required i32 index,
+  2: required i64 hash
+}
+
+struct SyncDigestMessage {
+  1: required AsyncMessageHeader header,
+  2: required Store store,
+  3: list<MerkleNode> digests
+}
+
+struct SyncDigestReplyMessage {
+  1: required AsyncMessageHeader header,
+  2: required Store store,
+  3: optional list<i32> nodes
+}
+
 struct FullSyncRequestMessage {
   1: required AsyncMessageHeader header,
 }
@@ -250,4 +269,6 @@ struct SyncMessage {
   20: optional RegisterResponseMessage registerResponse,
   21: optional ClusterJoinRequestMessage clusterJoinRequest,
   22: optional ClusterJoinResponseMessage clusterJoinResponse,
+  23: optional SyncDigestMessage syncDigest,
+  24: optional SyncDigestReplyMessage syncDigestReply,
 }
\ No newline at end of file
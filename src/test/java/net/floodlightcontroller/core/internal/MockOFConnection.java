@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Date;
 
 import net.floodlightcontroller.core.IOFConnectionBackend;
+import net.floodlightcontroller.core.OFWritePolicy;
 
 import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFMessage;
@@ -85,6 +86,11 @@ public class MockOFConnection implements IOFConnectionBackend {
         return Collections.emptyList();
     }
 
+    @Override
+    public Collection<OFMessage> write(Iterable<OFMessage> msglist, OFWritePolicy policy) {
+        return write(msglist);
+    }
+
     static class RequestAndFuture<R extends OFMessage> {
         final OFRequest<R> request;
         final SettableFuture<R> replyFuture;
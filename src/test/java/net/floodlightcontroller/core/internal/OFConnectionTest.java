@@ -6,11 +6,14 @@ import static org.easymock.EasyMock.replay;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
 
@@ -22,6 +25,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import net.floodlightcontroller.core.OFWritePolicy;
 import net.floodlightcontroller.core.SwitchDisconnectedException;
 import net.floodlightcontroller.core.internal.OFConnection;
 import net.floodlightcontroller.core.internal.OFConnectionCounters;
@@ -71,6 +75,7 @@ public class OFConnectionTest {
     private DatapathId switchId;
     private Timer timer;
     private TestEventLoop eventLoop;
+    private IDebugCounterService debugCounterService;
 
     @Before
     public void setUp() throws Exception {
@@ -78,13 +83,18 @@ public class OFConnectionTest {
         switchId = DatapathId.of(1);
         timer = new HashedWheelTimer();
         channel = EasyMock.createMock(Channel.class);        
-        IDebugCounterService debugCounterService = new DebugCounterServiceImpl();
+        debugCounterService = new DebugCounterServiceImpl();
         debugCounterService.registerModule(OFConnectionCounters.COUNTER_MODULE);
         conn = new OFConnection(switchId, factory, channel, OFAuxId.MAIN,
                                 debugCounterService, timer);
         eventLoop = new TestEventLoop();
         
         expect(channel.eventLoop()).andReturn(eventLoop).anyTimes();
+        // nothing waiting in the channel
+        Channel.Unsafe unsafe = EasyMock.createMock(Channel.Unsafe.class);
+        expect(unsafe.outboundBuffer()).andReturn(null).anyTimes();
+        replay(unsafe);
+        expect(channel.unsafe()).andReturn(unsafe).anyTimes();
     }
     
     @After
@@ -164,6 +174,7 @@ public class OFConnectionTest {
 
     private Capture<List<OFMessage>> prepareChannelForWriteList() {
         EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        EasyMock.expect(channel.isWritable()).andReturn(Boolean.TRUE).anyTimes();
         Capture<List<OFMessage>> cMsgList = new Capture<>();
         expect(channel.writeAndFlush(capture(cMsgList))).andReturn(null).once();
         replay(channel);
@@ -278,4 +289,134 @@ public class OFConnectionTest {
                 Matchers.<OFMessage> contains(hello, packetOut));
     }
 
+    /** write messages in separate calls, which are flushed together */
+    @Test(timeout = 5000)
+    public void testMessageWritesCoalesced() throws InterruptedException, ExecutionException {
+        Capture<List<OFMessage>> cMsgList = prepareChannelForWriteList();
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        OFPacketOut packetOut = factory.buildPacketOut()
+                .setData(new byte[] { 0x01, 0x02, 0x03, 0x04 })
+                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
+                .build();
+
+        conn.write(hello);
+        conn.write(packetOut);
+        assertThat("Only one flush should be scheduled",
+                eventLoop.getQueuedTasks().size(), equalTo(1));
+        eventLoop.runTasks();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(hello, packetOut));
+        assertThat("Connection should have no queued messages",
+                conn.getQueuedMessages(), equalTo(0));
+    }
+
+    /** write messages while the switch is not keeping up */
+    @Test(timeout = 5000)
+    public void testMessageWritePolicies() throws InterruptedException, ExecutionException {
+        final boolean[] writable = { false };
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        EasyMock.expect(channel.isWritable()).andAnswer(new IAnswer<Boolean>() {
+            @Override
+            public Boolean answer() throws Throwable {
+                return writable[0];
+            }
+        }).anyTimes();
+        Capture<List<OFMessage>> cMsgList = new Capture<>();
+        expect(channel.writeAndFlush(capture(cMsgList))).andReturn(null).once();
+        replay(channel);
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        OFPacketOut packetOut = factory.buildPacketOut()
+                .setData(new byte[] { 0x01, 0x02, 0x03, 0x04 })
+                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
+                .build();
+        List<OFMessage> msgList = ImmutableList.<OFMessage>of(hello, packetOut);
+
+        Collection<OFMessage> unsent = conn.write(msgList, OFWritePolicy.DROP);
+        assertThat(unsent, Matchers.<OFMessage> containsInAnyOrder(hello, packetOut));
+        unsent = conn.write(msgList, OFWritePolicy.SHED_PACKET_OUT);
+        assertThat(unsent, Matchers.<OFMessage> contains(packetOut));
+        unsent = conn.write(msgList, OFWritePolicy.BLOCK);
+        assertThat(unsent.isEmpty(), equalTo(true));
+
+        // held until the channel drains
+        eventLoop.runTasks();
+        assertThat("Write should have been held", cMsgList.hasCaptured(), equalTo(false));
+        assertThat(conn.getQueuedMessages(), equalTo(3));
+
+        writable[0] = true;
+        conn.writabilityChanged();
+        eventLoop.runTasks();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(hello, hello, packetOut));
+        assertThat(conn.getQueuedMessages(), equalTo(0));
+    }
+
+    /** the bytes waiting in the channel are sampled on each flush */
+    @Test(timeout = 5000)
+    public void testQueuedBytesSampledOnFlush() {
+        final boolean[] writable = { true };
+        final long[] pending = { 0 };
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        EasyMock.expect(channel.isWritable()).andAnswer(new IAnswer<Boolean>() {
+            @Override
+            public Boolean answer() throws Throwable {
+                return writable[0];
+            }
+        }).anyTimes();
+        expect(channel.writeAndFlush(EasyMock.anyObject())).andReturn(null).anyTimes();
+        replay(channel);
+        conn = new OFConnection(switchId, factory, channel, OFAuxId.MAIN,
+                                debugCounterService, timer) {
+            @Override
+            public long getQueuedBytes() {
+                return pending[0];
+            }
+        };
+        String counter = switchId.toString() + ":" + OFAuxId.MAIN.toString() + "/write/queued-bytes";
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+
+        pending[0] = 1000;
+        conn.write(hello);
+        eventLoop.runTasks();
+        assertThat(debugCounterService.getCounterHierarchy(OFConnectionCounters.COUNTER_MODULE, counter)
+                .get(0).getCounterValue(), equalTo(1000L));
+
+        // the gauge follows the channel down, and is sampled while held
+        pending[0] = 300;
+        writable[0] = false;
+        conn.write(hello);
+        eventLoop.runTasks();
+        assertThat(debugCounterService.getCounterHierarchy(OFConnectionCounters.COUNTER_MODULE, counter)
+                .get(0).getCounterValue(), equalTo(300L));
+
+        pending[0] = 0;
+        writable[0] = true;
+        conn.writabilityChanged();
+        eventLoop.runTasks();
+        assertThat(debugCounterService.getCounterHierarchy(OFConnectionCounters.COUNTER_MODULE, counter)
+                .get(0).getCounterValue(), equalTo(0L));
+        assertThat(conn.getQueuedMessages(), equalTo(0));
+    }
+
+    /** a switch that stalls with a full queue is disconnected */
+    @Test(timeout = 5000)
+    public void testStalledSwitchDisconnected() {
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        EasyMock.expect(channel.isWritable()).andReturn(Boolean.FALSE).anyTimes();
+        expect(channel.disconnect()).andReturn(null).once();
+        replay(channel);
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        Collection<OFMessage> unsent = conn.write(
+                Collections.<OFMessage>nCopies(OFConnection.MAX_QUEUED_MESSAGES, hello), OFWritePolicy.BLOCK);
+        assertThat(unsent.isEmpty(), equalTo(true));
+        assertThat(conn.getQueuedMessages(), equalTo(OFConnection.MAX_QUEUED_MESSAGES));
+
+        unsent = conn.write(ImmutableList.<OFMessage>of(hello), OFWritePolicy.BLOCK);
+        assertThat(unsent, Matchers.<OFMessage> contains(hello));
+        assertThat(conn.getQueuedMessages(), equalTo(OFConnection.MAX_QUEUED_MESSAGES));
+        EasyMock.verify(channel);
+    }
 }
@@ -44,6 +44,7 @@ import org.junit.Test;
 import net.floodlightcontroller.core.IOFConnectionBackend;
 import net.floodlightcontroller.core.IOFSwitchBackend;
 import net.floodlightcontroller.core.LogicalOFMessageCategory;
+import net.floodlightcontroller.core.OFWritePolicy;
 import net.floodlightcontroller.core.PortChangeEvent;
 import net.floodlightcontroller.core.PortChangeType;
 import net.floodlightcontroller.core.SwitchDescription;
@@ -147,7 +148,7 @@ public class OFSwitchBaseTest {
 
         IOFConnectionBackend conn = EasyMock.createNiceMock(IOFConnectionBackend.class);
         capturedMessage = new Capture<Iterable<OFMessage>>();
-        expect(conn.write(EasyMock.capture(capturedMessage))).andReturn(Collections.<OFMessage>emptyList()).atLeastOnce();
+        expect(conn.write(EasyMock.capture(capturedMessage), EasyMock.anyObject(OFWritePolicy.class))).andReturn(Collections.<OFMessage>emptyList()).atLeastOnce();
         expect(conn.getOFFactory()).andReturn(factory).anyTimes();
         expect(conn.getAuxId()).andReturn(OFAuxId.MAIN).anyTimes();
         EasyMock.replay(conn);
@@ -155,7 +156,7 @@ public class OFSwitchBaseTest {
         IOFConnectionBackend auxConn = EasyMock.createNiceMock(IOFConnectionBackend.class);
         expect(auxConn.getOFFactory()).andReturn(factory).anyTimes();
         expect(auxConn.getAuxId()).andReturn(OFAuxId.of(1)).anyTimes();
-        expect(auxConn.write(EasyMock.capture(capturedMessage))).andReturn(Collections.<OFMessage>emptyList()).once();
+        expect(auxConn.write(EasyMock.capture(capturedMessage), EasyMock.anyObject(OFWritePolicy.class))).andReturn(Collections.<OFMessage>emptyList()).once();
         EasyMock.replay(auxConn);
 
         sw = new OFSwitchTest(conn, switchManager);
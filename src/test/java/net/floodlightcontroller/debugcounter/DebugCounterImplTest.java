@@ -5,6 +5,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
@@ -78,4 +79,53 @@ public class DebugCounterImplTest {
         assertEquals(ImmutableSet.of(MetaData.WARN, MetaData.DROP),
                      c2.getMetaData());
     }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        final DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        c.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        assertEquals(800000L, c.getCounterValue());
+    }
+
+    @Test
+    public void testRate() {
+        DebugCounterImpl c1 =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        long now = System.nanoTime();
+        c1.sampleRate(now);
+        assertEquals(0L, c1.getCounterRate());
+
+        c1.add(500);
+        now += TimeUnit.MILLISECONDS.toNanos(500);
+        c1.sampleRate(now);
+        assertEquals(1000L, c1.getCounterRate());
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        c1.sampleRate(now);
+        assertEquals(0L, c1.getCounterRate());
+
+        // a reset starts counting from 0
+        c1.reset();
+        c1.add(10);
+        now += TimeUnit.SECONDS.toNanos(1);
+        c1.sampleRate(now);
+        assertEquals(10L, c1.getCounterRate());
+    }
 }
@@ -0,0 +1,64 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+
+public class DeviceAgingWheelTest extends TestCase {
+
+    @Test
+    public void testExpire() {
+        // 10 slots of 1s after time 100s
+        DeviceAgingWheel wheel = new DeviceAgingWheel(1000, 8000, 100000);
+        wheel.schedule(1L, 101500);
+        wheel.schedule(2L, 103000);
+        // in the past, due at the next expiry
+        wheel.schedule(3L, 5000);
+        assertEquals(3, wheel.size());
+
+        assertEquals(Collections.singletonList(3L), wheel.expire(100000));
+        assertEquals(Collections.<Long>emptyList(), wheel.expire(100999));
+        assertEquals(Collections.singletonList(1L), wheel.expire(102999));
+        assertEquals(Collections.singletonList(2L), wheel.expire(103000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testReschedule() {
+        DeviceAgingWheel wheel = new DeviceAgingWheel(1000, 8000, 0);
+        wheel.schedule(1L, 5000);
+        // a later time keeps the earlier one
+        wheel.schedule(1L, 7000);
+        assertEquals(1, wheel.size());
+        assertEquals(Collections.<Long>emptyList(), wheel.expire(4000));
+        assertEquals(Collections.singletonList(1L), wheel.expire(5000));
+
+        // an earlier time moves the device
+        wheel.schedule(2L, 7000);
+        wheel.schedule(2L, 6000);
+        assertEquals(Collections.singletonList(2L), wheel.expire(6000));
+        assertEquals(Collections.<Long>emptyList(), wheel.expire(7000));
+
+        wheel.schedule(3L, 8000);
+        wheel.cancel(3L);
+        assertEquals(0, wheel.size());
+        assertEquals(Collections.<Long>emptyList(), wheel.expire(8000));
+    }
+
+    @Test
+    public void testHorizon() {
+        DeviceAgingWheel wheel = new DeviceAgingWheel(1000, 8000, 0);
+        // beyond the wheel, kept in its last slot
+        wheel.schedule(1L, 1000000);
+        wheel.schedule(2L, 3000);
+        assertEquals(Collections.<Long>emptyList(), wheel.expire(2000));
+        // the wheel turned more than once since the last expiry
+        assertEquals(new HashSet<Long>(Arrays.asList(1L, 2L)),
+                     new HashSet<Long>(wheel.expire(50000)));
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,185 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+
+/**
+ * Learn throughput of the device indices at one million entities.
+ *
+ * Every entity is learned twice the way learnDeviceByEntity() does it: a
+ * primary index lookup on MAC and VLAN, and for an unknown entity a device
+ * key, a primary index update and a secondary IPv4 index update. The first
+ * pass creates the devices, the second one only finds them, which is the
+ * common case of the packet-in path. The indices keyed by
+ * {@link IndexedEntity}, as before packed keys, are the reference.
+ *
+ * Not a unit test, run the main method with the test classpath:
+ * DeviceIndexBenchmark [entities] [threads] [rounds]
+ */
+public class DeviceIndexBenchmark {
+
+    private static final EnumSet<DeviceField> PRIMARY =
+            EnumSet.of(DeviceField.MAC, DeviceField.VLAN);
+    private static final EnumSet<DeviceField> SECONDARY =
+            EnumSet.of(DeviceField.IPv4);
+
+    private interface Indices {
+        Long find(Entity entity);
+        void add(Entity entity, Long deviceKey);
+    }
+
+    /**
+     * The indices as they were, one wrapper allocated per lookup
+     */
+    private static class IndexedEntityIndices implements Indices {
+        private final ConcurrentHashMap<IndexedEntity, Long> primary =
+                new ConcurrentHashMap<IndexedEntity, Long>();
+        private final ConcurrentHashMap<IndexedEntity, Collection<Long>> secondary =
+                new ConcurrentHashMap<IndexedEntity, Collection<Long>>();
+
+        @Override
+        public Long find(Entity entity) {
+            return primary.get(new IndexedEntity(PRIMARY, entity));
+        }
+
+        @Override
+        public void add(Entity entity, Long deviceKey) {
+            primary.put(new IndexedEntity(PRIMARY, entity), deviceKey);
+            IndexedEntity ie = new IndexedEntity(SECONDARY, entity);
+            if (!ie.hasNonZeroOrNonNullKeys()) return;
+            Collection<Long> devices = secondary.get(ie);
+            if (devices == null) {
+                devices = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+                Collection<Long> r = secondary.putIfAbsent(ie, devices);
+                if (r != null)
+                    devices = r;
+            }
+            devices.add(deviceKey);
+        }
+    }
+
+    private static class PackedIndices implements Indices {
+        private final DeviceUniqueIndex primary = new DeviceUniqueIndex(PRIMARY);
+        private final DeviceMultiIndex secondary = new DeviceMultiIndex(SECONDARY);
+
+        @Override
+        public Long find(Entity entity) {
+            return primary.findByEntity(entity);
+        }
+
+        @Override
+        public void add(Entity entity, Long deviceKey) {
+            primary.updateIndex(entity, deviceKey);
+            secondary.updateIndex(entity, deviceKey);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int entities = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) :
+            Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Entity[] workload = new Entity[entities];
+        Date now = new Date();
+        for (int i = 0; i < entities; i++) {
+            workload[i] = new Entity(MacAddress.of(0x020000000000L + i),
+                    VlanVid.ofVlan(1 + i % 4094),
+                    IPv4Address.of(0x0a000000 + i),
+                    IPv6Address.NONE,
+                    DatapathId.of(1 + i % 64),
+                    OFPort.of(1 + i % 48),
+                    now);
+        }
+        // hosts do not send in the order of their addresses
+        Random random = new Random(42);
+        for (int i = entities - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Entity t = workload[i];
+            workload[i] = workload[j];
+            workload[j] = t;
+        }
+
+        System.out.println("entities=" + entities + " threads=" + threads);
+        for (int round = 0; round < rounds; round++) {
+            // the first rounds warm up the JIT
+            report("indexed-entity", round, run(new IndexedEntityIndices(), workload, threads));
+            report("packed", round, run(new PackedIndices(), workload, threads));
+        }
+    }
+
+    private static void report(String name, int round, long[] nanos) {
+        System.out.println(String.format("%-15s round %d  create %8.1f ns/entity  find %8.1f ns/entity",
+                name, round, nanos[0] / (double)nanos[2], nanos[1] / (double)nanos[2]));
+    }
+
+    /**
+     * @return time of the creating and of the finding pass, and the number of entities
+     */
+    private static long[] run(final Indices indices, final Entity[] workload,
+                              int threads) throws InterruptedException {
+        final AtomicLong deviceKeyCounter = new AtomicLong();
+        long start = System.nanoTime();
+        pass(threads, workload, new Pass() {
+            @Override
+            public void learn(Entity entity) {
+                if (indices.find(entity) == null) {
+                    indices.add(entity, deviceKeyCounter.getAndIncrement());
+                }
+            }
+        });
+        long created = System.nanoTime();
+        final AtomicLong missing = new AtomicLong();
+        pass(threads, workload, new Pass() {
+            @Override
+            public void learn(Entity entity) {
+                if (indices.find(entity) == null) {
+                    missing.incrementAndGet();
+                }
+            }
+        });
+        long found = System.nanoTime();
+        if (missing.get() != 0) {
+            throw new IllegalStateException(missing.get() + " entities not found");
+        }
+        return new long[] { created - start, found - created, workload.length };
+    }
+
+    private interface Pass {
+        void learn(Entity entity);
+    }
+
+    private static void pass(final int threads, final Entity[] workload,
+                             final Pass pass) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    // interleaved so that threads learn neighbouring entities
+                    for (int i = first; i < workload.length; i += threads) {
+                        pass.learn(workload[i]);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,75 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+import junit.framework.TestCase;
+
+public class DeviceMultiIndexTest extends TestCase {
+    protected Entity e1;
+    protected Entity e2;
+    protected Entity e3;
+    protected Entity noIp;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // e1 and e2 share an IP address
+        e1 = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(1), new Date());
+        e2 = new Entity(MacAddress.of(2L), VlanVid.ofVlan(1), IPv4Address.of(1), IPv6Address.NONE, DatapathId.of(2L), OFPort.of(2), new Date());
+        e3 = new Entity(MacAddress.of(3L), VlanVid.ofVlan(1), IPv4Address.of(3), IPv6Address.NONE, DatapathId.of(3L), OFPort.of(3), new Date());
+        noIp = new Entity(MacAddress.of(4L), VlanVid.ofVlan(1), IPv4Address.NONE, IPv6Address.NONE, DatapathId.of(4L), OFPort.of(4), new Date());
+    }
+
+    protected void verifyIterator(Set<Long> expected, Iterator<Long> it) {
+        HashSet<Long> actual = new HashSet<Long>();
+        while (it.hasNext()) {
+            actual.add(it.next());
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testDeviceMultiIndex() {
+        DeviceMultiIndex idx = new DeviceMultiIndex(EnumSet.of(DeviceField.IPv4));
+
+        assertEquals(true, idx.updateIndex(e1, 1L));
+        assertEquals(false, idx.updateIndex(noIp, 4L));
+        idx.updateIndex(e3, 3L);
+        verifyIterator(Collections.singleton(1L), idx.queryByEntity(e1));
+        verifyIterator(Collections.singleton(1L), idx.queryByEntity(e2));
+        assertEquals(false, idx.queryByEntity(noIp).hasNext());
+
+        // a second device on the same key, and the same one again
+        idx.updateIndex(e2, 2L);
+        idx.updateIndex(e2, 2L);
+        verifyIterator(new HashSet<Long>(Arrays.asList(1L, 2L)),
+                       idx.queryByEntity(e1));
+        verifyIterator(new HashSet<Long>(Arrays.asList(1L, 2L, 3L)),
+                       idx.getAll());
+
+        idx.removeEntity(e1, 1L);
+        verifyIterator(Collections.singleton(2L), idx.queryByEntity(e2));
+        idx.removeEntity(e3, 42L);
+        verifyIterator(Collections.singleton(3L), idx.queryByEntity(e3));
+        idx.removeEntity(e3, 3L);
+        assertEquals(false, idx.queryByEntity(e3).hasNext());
+        idx.removeEntity(e2);
+        assertEquals(false, idx.queryByEntity(e2).hasNext());
+        assertEquals(false, idx.getAll().hasNext());
+    }
+}
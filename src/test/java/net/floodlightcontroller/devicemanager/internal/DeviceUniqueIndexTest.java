@@ -174,4 +174,41 @@ public class DeviceUniqueIndexTest extends TestCase {
         // anyways. We can now add d1 ;-)
         assertEquals(true, idx3.updateIndex(d1, 1L));
     }
-}
\ No newline at end of file
+    
+    @Test
+    public void testPackedKeys() {
+        // MAC and VLAN fit in a long
+        DeviceUniqueIndex idx1 = new DeviceUniqueIndex(
+                                             EnumSet.of(DeviceField.MAC, 
+                                                        DeviceField.VLAN));
+        Entity untagged = new Entity(MacAddress.of(5L), VlanVid.ZERO, IPv4Address.NONE, IPv6Address.NONE, DatapathId.NONE, OFPort.ZERO, new Date());
+        Entity anyVlan = new Entity(MacAddress.of(5L), null, IPv4Address.NONE, IPv6Address.NONE, DatapathId.NONE, OFPort.ZERO, new Date());
+        Entity vlan4095 = new Entity(MacAddress.of(5L), VlanVid.ofVlan(4095), IPv4Address.NONE, IPv6Address.NONE, DatapathId.NONE, OFPort.ZERO, new Date());
+        Entity otherMac = new Entity(MacAddress.of(0xffffffffffffL), VlanVid.ZERO, IPv4Address.NONE, IPv6Address.NONE, DatapathId.NONE, OFPort.ZERO, new Date());
+        idx1.updateIndex(untagged, 5L);
+        assertEquals(Long.valueOf(5L), idx1.findByEntity(untagged));
+        // a null VLAN is not the untagged VLAN
+        assertEquals(null, idx1.findByEntity(anyVlan));
+        assertEquals(null, idx1.findByEntity(vlan4095));
+        assertEquals(null, idx1.findByEntity(otherMac));
+        idx1.updateIndex(anyVlan, 6L);
+        idx1.updateIndex(otherMac, 7L);
+        assertEquals(Long.valueOf(5L), idx1.findByEntity(untagged));
+        assertEquals(Long.valueOf(6L), idx1.findByEntity(anyVlan));
+        assertEquals(Long.valueOf(7L), idx1.findByEntity(otherMac));
+        
+        // IPv4 and port, 0.0.0.0 is not indexed
+        DeviceUniqueIndex idx2 = new DeviceUniqueIndex(
+                                             EnumSet.of(DeviceField.IPv4,
+                                                        DeviceField.PORT));
+        assertEquals(false, idx2.updateIndex(e4, 4L));
+        assertEquals(true, idx2.updateIndex(e2, 2L));
+        assertEquals(Long.valueOf(2L), idx2.findByEntity(e2));
+        assertEquals(null, idx2.findByEntity(e2alt));
+        Entity highAddress = new Entity(MacAddress.of(2L), VlanVid.ofVlan(2), IPv4Address.of(0xfffffffe), IPv6Address.NONE, DatapathId.of(2L), OFPort.of(2), new Date());
+        assertEquals(null, idx2.findByEntity(highAddress));
+        idx2.updateIndex(highAddress, 8L);
+        assertEquals(Long.valueOf(8L), idx2.findByEntity(highAddress));
+        assertEquals(Long.valueOf(2L), idx2.findByEntity(e2));
+    }
+}
@@ -0,0 +1,137 @@
+package net.floodlightcontroller.linkdiscovery.internal;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import junit.framework.TestCase;
+
+public class DiscoveryPacerTest extends TestCase {
+
+    private static List<OFPort> ports(int n) {
+        List<OFPort> ports = new ArrayList<OFPort>();
+        for (int p = n; p >= 1; p--) {
+            ports.add(OFPort.of(p));
+        }
+        return ports;
+    }
+
+    @Test
+    public void testEvenlySpread() {
+        DiscoveryPacer pacer = new DiscoveryPacer(15000, 1000);
+        DatapathId sw = DatapathId.of(1);
+        List<OFPort> ports = ports(300);
+        Map<OFPort, Integer> probes = new HashMap<OFPort, Integer>();
+
+        // a first call only starts the bucket
+        assertTrue(pacer.getDuePorts(sw, ports, 0).isEmpty());
+        int max = 0;
+        for (long now = 100; now <= 15000; now += 100) {
+            List<OFPort> due = pacer.getDuePorts(sw, ports, now);
+            max = Math.max(max, due.size());
+            for (OFPort p : due) {
+                Integer n = probes.get(p);
+                probes.put(p, n == null ? 1 : n + 1);
+            }
+        }
+        // every port once, two at a time
+        assertEquals(300, probes.size());
+        assertEquals(Collections.singleton(1), new HashSet<Integer>(probes.values()));
+        assertEquals(2, max);
+    }
+
+    @Test
+    public void testBurstBounded() {
+        DiscoveryPacer pacer = new DiscoveryPacer(15000, 1000);
+        DatapathId sw = DatapathId.of(1);
+        List<OFPort> ports = ports(300);
+        pacer.getDuePorts(sw, ports, 0);
+        // a late call gets at most a second of probes
+        List<OFPort> due = pacer.getDuePorts(sw, ports, 10000);
+        assertEquals(20, due.size());
+        assertEquals(OFPort.of(1), due.get(0));
+        // and goes on from the next port
+        due = pacer.getDuePorts(sw, ports, 10100);
+        assertEquals(2, due.size());
+        assertEquals(OFPort.of(21), due.get(0));
+
+        // a switch with few ports still gets its probes
+        DatapathId small = DatapathId.of(2);
+        pacer.getDuePorts(small, ports(2), 0);
+        int sent = 0;
+        for (long now = 1000; now <= 15000; now += 1000) {
+            sent += pacer.getDuePorts(small, ports(2), now).size();
+        }
+        assertEquals(2, sent);
+
+        pacer.removeSwitch(sw);
+        assertTrue(pacer.getDuePorts(sw, ports, 20000).isEmpty());
+    }
+
+    @Test
+    public void testPortsOnlyReadWhenDue() {
+        DiscoveryPacer pacer = new DiscoveryPacer(15000, 1000);
+        DatapathId sw = DatapathId.of(1);
+        // 300 ports earn a probe every 50ms, anything earlier must not
+        // look at the ports
+        Collection<OFPort> unreadable = new AbstractCollection<OFPort>() {
+            @Override
+            public Iterator<OFPort> iterator() {
+                throw new AssertionError("ports read before a probe was due");
+            }
+
+            @Override
+            public int size() {
+                return 300;
+            }
+        };
+        assertTrue(pacer.getDuePorts(sw, unreadable, 0).isEmpty());
+        assertTrue(pacer.getDuePorts(sw, unreadable, 20).isEmpty());
+        assertTrue(pacer.getDuePorts(sw, unreadable, 49).isEmpty());
+        assertEquals(Collections.singletonList(OFPort.of(1)),
+                     pacer.getDuePorts(sw, ports(300), 50));
+    }
+
+    @Test
+    public void testPortsChange() {
+        DiscoveryPacer pacer = new DiscoveryPacer(1000, 1000);
+        DatapathId sw = DatapathId.of(1);
+        pacer.getDuePorts(sw, ports(4), 0);
+        assertEquals(ports(4).subList(2, 4), reversed(pacer.getDuePorts(sw, ports(4), 500)));
+
+        // a new port is sorted in, the cursor goes on from where it was
+        List<OFPort> more = ports(4);
+        more.add(0, OFPort.of(10));
+        List<OFPort> due = pacer.getDuePorts(sw, more, 1000);
+        assertEquals(2, due.size());
+        assertEquals(OFPort.of(3), due.get(0));
+        assertEquals(OFPort.of(4), due.get(1));
+        assertEquals(OFPort.of(10), pacer.getDuePorts(sw, more, 1200).get(0));
+
+        // a port going away is not probed any more
+        List<OFPort> fewer = new ArrayList<OFPort>(more);
+        fewer.remove(OFPort.of(1));
+        Set<OFPort> probed = new HashSet<OFPort>();
+        for (long now = 1400; now <= 3000; now += 100) {
+            probed.addAll(pacer.getDuePorts(sw, fewer, now));
+        }
+        assertEquals(new HashSet<OFPort>(fewer), probed);
+    }
+
+    private static List<OFPort> reversed(List<OFPort> ports) {
+        List<OFPort> r = new ArrayList<OFPort>(ports);
+        Collections.reverse(r);
+        return r;
+    }
+}
@@ -25,7 +25,9 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -38,6 +40,7 @@ import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
@@ -496,7 +499,8 @@ public class LinkDiscoveryManagerTest extends FloodlightTestCase {
         expect(sw1.getPort(OFPort.of(EasyMock.anyInt()))).andReturn(ofpp).anyTimes();
         expect(sw1.getOFFactory()).andReturn(OFFactories.getFactory(OFVersion.OF_13)).anyTimes();
         expect(sw1.getLatency()).andReturn(U64.ZERO).anyTimes();
-        expect(sw1.write(capture(wc))).andReturn(true).anyTimes();
+        expect(sw1.write(capture(wc), EasyMock.eq(LogicalOFMessageCategory.PACKET_OUT)))
+                .andReturn(true).anyTimes();
         replay(sw1);
 
         linkDiscovery.switchActivated(sw1.getId());
@@ -523,6 +527,36 @@ public class LinkDiscoveryManagerTest extends FloodlightTestCase {
         assertTrue(msgList.size() == ports.size() * 2);
     }
 
+    @Test
+    public void testDiscoveryTemplate() throws Exception {
+        LinkDiscoveryManager linkDiscovery = getLinkDiscoveryManager();
+        IOFSwitch sw1 = createMockSwitch(1L);
+        OFPortDesc p1 = OFFactories.getFactory(OFVersion.OF_13).buildPortDesc()
+        .setName("eth1")
+        .setPortNo(OFPort.of(1))
+        .setHwAddr(MacAddress.of("5c:16:c7:00:00:01"))
+        .build();
+        OFPortDesc p2 = OFFactories.getFactory(OFVersion.OF_13).buildPortDesc()
+        .setName("eth2")
+        .setPortNo(OFPort.of(2))
+        .setHwAddr(MacAddress.of("5c:16:c7:00:00:02"))
+        .build();
+        expect(sw1.getPort(OFPort.of(1))).andReturn(p1).anyTimes();
+        expect(sw1.getPort(OFPort.of(2))).andReturn(p2).anyTimes();
+        expect(sw1.getOFFactory()).andReturn(OFFactories.getFactory(OFVersion.OF_13)).anyTimes();
+        expect(sw1.getLatency()).andReturn(U64.ZERO).anyTimes();
+        replay(sw1);
+
+        // a message patched from the template of another port is the generated one
+        for (boolean isStandard : new boolean[] { true, false }) {
+            byte[] template = linkDiscovery.generateLLDPMessage(sw1, OFPort.of(1), isStandard, false).getData();
+            byte[] expected = linkDiscovery.generateLLDPMessage(sw1, OFPort.of(2), isStandard, false).getData();
+            long time = ByteBuffer.wrap(expected).getLong(expected.length - 10);
+            byte[] data = new DiscoveryTemplate(template, isStandard).build(p2.getHwAddr(), OFPort.of(2), time);
+            assertTrue(Arrays.equals(expected, data));
+        }
+    }
+
     private OFPacketIn createPacketIn(String srcMAC, String dstMAC,
                                       String srcIp, String dstIp, short vlan) {
         IPacket testPacket = new Ethernet()
@@ -0,0 +1,80 @@
+package net.floodlightcontroller.linkdiscovery.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import junit.framework.TestCase;
+import net.floodlightcontroller.topology.NodePortTuple;
+
+public class PortQueueTest extends TestCase {
+
+    private static NodePortTuple npt(long sw, int port) {
+        return new NodePortTuple(DatapathId.of(sw), OFPort.of(port));
+    }
+
+    @Test
+    public void testFifoWithoutDuplicates() {
+        PortQueue queue = new PortQueue();
+        assertTrue(queue.add(npt(1, 1)));
+        assertTrue(queue.add(npt(1, 2)));
+        assertFalse(queue.add(npt(1, 1)));
+        assertTrue(queue.add(npt(2, 1)));
+        assertEquals(3, queue.size());
+        assertTrue(queue.contains(npt(1, 2)));
+        assertEquals(2, queue.getPorts(DatapathId.of(1)).size());
+
+        assertEquals(npt(1, 1), queue.poll().getNodePortTuple());
+        assertFalse(queue.contains(npt(1, 1)));
+        assertEquals(npt(1, 2), queue.poll().getNodePortTuple());
+        assertEquals(npt(2, 1), queue.poll().getNodePortTuple());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testRemoveAndFlag() {
+        PortQueue queue = new PortQueue();
+        for (int p = 1; p <= 5; p++) {
+            queue.add(npt(1, p));
+        }
+        assertTrue(queue.remove(npt(1, 1)));
+        assertFalse(queue.remove(npt(1, 1)));
+        assertTrue(queue.remove(npt(1, 3)));
+        // queued again, at the tail
+        assertTrue(queue.add(npt(1, 3)));
+        assertTrue(queue.markDiscovered(npt(1, 4)));
+        assertFalse(queue.markDiscovered(npt(1, 1)));
+        assertEquals(4, queue.size());
+
+        List<PortQueue.Entry> batch = new ArrayList<PortQueue.Entry>();
+        assertEquals(2, queue.drainTo(batch, 2));
+        assertEquals(npt(1, 2), batch.get(0).getNodePortTuple());
+        assertFalse(batch.get(0).isDiscovered());
+        assertEquals(npt(1, 4), batch.get(1).getNodePortTuple());
+        assertTrue(batch.get(1).isDiscovered());
+
+        batch.clear();
+        assertEquals(2, queue.drainTo(batch, 10));
+        assertEquals(npt(1, 5), batch.get(0).getNodePortTuple());
+        assertEquals(npt(1, 3), batch.get(1).getNodePortTuple());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testOldestAge() {
+        PortQueue queue = new PortQueue();
+        assertEquals(0, queue.getOldestAge(System.currentTimeMillis()));
+        queue.add(npt(1, 1));
+        queue.add(npt(1, 2));
+        long now = System.currentTimeMillis() + 1000;
+        assertTrue(queue.getOldestAge(now) >= 1000);
+        queue.remove(npt(1, 1));
+        queue.remove(npt(1, 2));
+        assertEquals(0, queue.getOldestAge(now));
+        assertNull(queue.poll());
+    }
+}
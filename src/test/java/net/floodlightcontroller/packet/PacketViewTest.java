@@ -0,0 +1,97 @@
+package net.floodlightcontroller.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PacketViewTest {
+
+	private static final long SRC_MAC = 0x00163e112233L;
+
+	private static ByteBuffer ethernet(int size, long dst, int etherType, boolean vlan) {
+		ByteBuffer bb = ByteBuffer.allocate(size);
+		bb.putShort((short)(dst >>> 32)).putInt((int)dst);
+		bb.putShort((short)(SRC_MAC >>> 32)).putInt((int)SRC_MAC);
+		if(vlan) {
+			bb.putShort((short)PacketView.TYPE_VLAN).putShort((short)42);
+		}
+		bb.putShort((short)etherType);
+		return bb;
+	}
+
+	private static byte[] dhcpDiscover(boolean vlan) {
+		ByteBuffer bb = ethernet(64, 0xffffffffffffL, Ethernet.TYPE_IPv4, vlan);
+		// IPv4 header, no options
+		bb.put((byte)0x45).put((byte)0).putShort((short)28);
+		bb.putShort((short)1).putShort((short)0);
+		bb.put((byte)64).put((byte)PacketView.PROTO_UDP).putShort((short)0);
+		bb.putInt(0).putInt(0xffffffff);
+		// UDP header
+		bb.putShort((short)68).putShort((short)67).putShort((short)8).putShort((short)0);
+		return bb.array();
+	}
+
+	private static byte[] neighborSolicitation(long srcHigh, long srcLow) {
+		ByteBuffer bb = ethernet(14 + 40 + 24, 0x3333ff000001L, Ethernet.TYPE_IPv6 & 0xffff, false);
+		bb.putInt(0x60000000).putShort((short)24).put((byte)PacketView.PROTO_ICMPv6).put((byte)255);
+		bb.putLong(srcHigh).putLong(srcLow);
+		bb.putLong(0xff02000000000000L).putLong(0x00000001ff000001L);
+		bb.put(ICMPv6.NEIGHBOR_SOLICITATION).put((byte)0).putShort((short)0).putInt(0);
+		bb.putLong(0xfe80000000000000L).putLong(0x02163efffe112233L);
+		return bb.array();
+	}
+
+	@Test
+	public void testDHCP() {
+		for(boolean vlan : new boolean[] { false, true }) {
+			PacketView view = new PacketView().wrap(dhcpDiscover(vlan));
+			assertTrue(view.isIPv4());
+			assertTrue(view.isBroadcast());
+			assertFalse(view.isMulticast());
+			assertEquals(SRC_MAC, view.getSourceMac());
+			assertEquals(0, view.getIPv4Source());
+			assertEquals(0xffffffff, view.getIPv4Destination());
+			assertEquals(PacketView.PROTO_UDP, view.getL4Protocol());
+			assertEquals(68, view.getUDPSourcePort());
+			assertEquals(67, view.getUDPDestinationPort());
+			assertEquals(-1, view.getICMPv6Type());
+		}
+	}
+
+	@Test
+	public void testNeighborSolicitation() {
+		PacketView view = new PacketView().wrap(neighborSolicitation(0, 0));
+		assertTrue(view.isIPv6());
+		assertTrue(view.isMulticast());
+		assertTrue(view.isIPv6SourceUnspecified());
+		assertFalse(view.isIPv6DestinationBroadcast());
+		assertEquals(ICMPv6.NEIGHBOR_SOLICITATION & 0xff, view.getICMPv6Type());
+		assertEquals(0xfe80000000000000L, view.getNDTargetHigh());
+		assertEquals(0x02163efffe112233L, view.getNDTargetLow());
+		assertEquals(-1, view.getUDPDestinationPort());
+
+		// the view is reusable
+		view.wrap(neighborSolicitation(0xfe80000000000000L, 1));
+		assertFalse(view.isIPv6SourceUnspecified());
+		assertEquals(0xfe80000000000000L, view.getIPv6SourceHigh());
+		assertEquals(1, view.getIPv6SourceLow());
+	}
+
+	@Test
+	public void testTruncated() {
+		byte[] frame = neighborSolicitation(0, 0);
+		PacketView view = new PacketView().wrap(frame, 0, 14 + 20);
+		assertTrue(view.isIPv6());
+		assertEquals(-1, view.getL4Protocol());
+		assertEquals(-1, view.getICMPv6Type());
+		assertFalse(view.isIPv6SourceUnspecified());
+
+		view.wrap(frame, 0, 10);
+		assertEquals(-1, view.getEtherType());
+		assertEquals(-1, view.getSourceMac());
+	}
+}
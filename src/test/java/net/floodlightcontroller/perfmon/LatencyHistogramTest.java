@@ -0,0 +1,138 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    private static LatencyHistogram histogram(long... times) {
+        LatencyRecorder r = new LatencyRecorder();
+        for (long t : times) {
+            r.record(t);
+        }
+        LatencyHistogram h = new LatencyHistogram();
+        r.addTo(h);
+        return h;
+    }
+
+    @Test
+    public void testBucketBounds() {
+        // small times are counted exactly
+        for (long ns = 0; ns < LatencyHistogram.SUB_BUCKETS; ns++) {
+            int b = LatencyHistogram.getBucket(ns);
+            assertEquals(ns, b);
+            assertEquals(ns, LatencyHistogram.getLowestValue(b));
+            assertEquals(ns, LatencyHistogram.getHighestValue(b));
+        }
+        assertEquals(0, LatencyHistogram.getBucket(-5));
+
+        // every bucket covers the times mapped to it, with no gaps
+        long expectedLow = 0;
+        for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+            long low = LatencyHistogram.getLowestValue(b);
+            long high = LatencyHistogram.getHighestValue(b);
+            assertEquals("bucket " + b, expectedLow, low);
+            assertTrue(high >= low);
+            if (b < LatencyHistogram.BUCKETS - 1) {
+                assertEquals(b, LatencyHistogram.getBucket(low));
+                assertEquals(b, LatencyHistogram.getBucket(high));
+            }
+            expectedLow = high + 1;
+        }
+        assertEquals(1L << LatencyHistogram.MAX_MAGNITUDE, expectedLow);
+    }
+
+    @Test
+    public void testBucketPrecision() {
+        long[] times = { 33, 100, 1000, 12345, 999999, 123456789, 5000000000L };
+        for (long ns : times) {
+            int b = LatencyHistogram.getBucket(ns);
+            long low = LatencyHistogram.getLowestValue(b);
+            long high = LatencyHistogram.getHighestValue(b);
+            assertTrue(ns + " in bucket", low <= ns && ns <= high);
+            // width within 1/SUB_BUCKETS of the time
+            assertTrue(ns + " precision",
+                       (high - low + 1) * LatencyHistogram.SUB_BUCKETS <= ns);
+        }
+        // beyond the range everything lands in the last bucket
+        assertEquals(LatencyHistogram.BUCKETS - 1,
+                     LatencyHistogram.getBucket(1L << LatencyHistogram.MAX_MAGNITUDE));
+        assertEquals(LatencyHistogram.BUCKETS - 1,
+                     LatencyHistogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getAverage());
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getMax());
+        assertEquals(0, h.getPercentile(50));
+        assertEquals(0, h.getStdDev());
+    }
+
+    @Test
+    public void testPercentiles() {
+        // 1..100 ns; the values below SUB_BUCKETS are exact
+        long[] times = new long[100];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = i + 1;
+        }
+        LatencyHistogram h = histogram(times);
+        assertEquals(100, h.getCount());
+        assertEquals(5050, h.getSum());
+        assertEquals(50, h.getAverage());
+        assertEquals(1, h.getMin());
+        assertEquals(LatencyHistogram.getHighestValue(LatencyHistogram.getBucket(100)),
+                     h.getMax());
+
+        assertEquals(1, h.getPercentile(0));
+        assertEquals(1, h.getPercentile(1));
+        assertEquals(10, h.getPercentile(10));
+        assertEquals(31, h.getPercentile(31));
+        for (double p : new double[] { 50, 90, 99, 99.9, 100 }) {
+            long expected = (long)Math.ceil(p / 100 * 100);
+            long v = h.getPercentile(p);
+            int b = LatencyHistogram.getBucket(expected);
+            assertEquals("p" + p, LatencyHistogram.getHighestValue(b), v);
+        }
+        assertEquals(h.getMax(), h.getPercentile(100));
+    }
+
+    @Test
+    public void testStdDev() {
+        LatencyHistogram h = histogram(10, 10, 10, 10);
+        assertEquals(0, h.getStdDev());
+        h = histogram(2, 4, 4, 4, 5, 5, 7, 9);
+        assertEquals(2, h.getStdDev());
+    }
+
+    @Test
+    public void testAddAndSince() {
+        LatencyHistogram a = histogram(1, 2, 1000);
+        LatencyHistogram b = histogram(3, 1000000);
+
+        LatencyHistogram total = new LatencyHistogram();
+        total.add(a);
+        total.add(b);
+        assertEquals(5, total.getCount());
+        assertEquals(1 + 2 + 1000 + 3 + 1000000, total.getSum());
+        assertEquals(1, total.getMin());
+        assertEquals(LatencyHistogram.getHighestValue(LatencyHistogram.getBucket(1000000)),
+                     total.getMax());
+
+        LatencyHistogram delta = total.since(a);
+        assertEquals(2, delta.getCount());
+        assertEquals(3 + 1000000, delta.getSum());
+        assertEquals(3, delta.getMin());
+        // the histogram itself is left alone
+        assertEquals(5, total.getCount());
+
+        LatencyHistogram copy = total.since(null);
+        assertEquals(total.getCount(), copy.getCount());
+        assertEquals(total.getSum(), copy.getSum());
+        assertEquals(total.getPercentile(50), copy.getPercentile(50));
+    }
+}
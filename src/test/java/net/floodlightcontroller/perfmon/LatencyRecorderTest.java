@@ -0,0 +1,74 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void testRecord() {
+        LatencyRecorder r = new LatencyRecorder();
+        r.record(5);
+        r.record(5);
+        r.record(-1);
+        r.record(1000);
+
+        LatencyHistogram h = new LatencyHistogram();
+        r.addTo(h);
+        assertEquals(4, h.getCount());
+        // negative times count as 0
+        assertEquals(1010, h.getSum());
+        assertEquals(0, h.getMin());
+
+        // adding again doubles the counts, the recorder keeps its totals
+        r.addTo(h);
+        assertEquals(8, h.getCount());
+        assertEquals(2020, h.getSum());
+    }
+
+    /** every thread records into its own recorder, which are merged */
+    @Test(timeout = 10000)
+    public void testMergeThreads() throws Exception {
+        final int threads = 4;
+        final int perThread = 100000;
+        final LatencyRecorder[] recorders = new LatencyRecorder[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final LatencyRecorder r = new LatencyRecorder();
+            final int offset = t;
+            recorders[t] = r;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        r.record((i % 1000) * 1000 + offset);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+
+        LatencyHistogram merged = new LatencyHistogram();
+        LatencyHistogram expected = new LatencyHistogram();
+        long sum = 0;
+        for (int t = 0; t < threads; t++) {
+            recorders[t].addTo(merged);
+            for (int i = 0; i < perThread; i++) {
+                long ns = (i % 1000) * 1000 + t;
+                expected.add(LatencyHistogram.getBucket(ns), 1);
+                sum += ns;
+            }
+        }
+        assertEquals((long)threads * perThread, merged.getCount());
+        assertEquals(sum, merged.getSum());
+        for (double p : new double[] { 1, 25, 50, 75, 99, 100 }) {
+            assertEquals("p" + p, expected.getPercentile(p), merged.getPercentile(p));
+        }
+        assertEquals(expected.getMin(), merged.getMin());
+        assertEquals(expected.getMax(), merged.getMax());
+    }
+}
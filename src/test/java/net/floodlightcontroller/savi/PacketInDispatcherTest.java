@@ -0,0 +1,239 @@
+package net.floodlightcontroller.savi;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.savi.PacketInDispatcher.OverloadPolicy;
+import net.floodlightcontroller.savi.PacketInDispatcher.PacketHandler;
+
+public class PacketInDispatcherTest {
+    private static final String MODULE = "savi-test";
+
+    private IDebugCounterService debugCounterService;
+    private PacketInDispatcher dispatcher;
+
+    private static final PacketHandler IGNORE = new PacketHandler() {
+        @Override
+        public void handlePacket(SwitchPort switchPort, Ethernet eth) {
+        }
+    };
+
+    @Before
+    public void setUp() {
+        debugCounterService = new DebugCounterServiceImpl();
+    }
+
+    @After
+    public void tearDown() {
+        if(dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    private long counter(int shard, String name) {
+        return debugCounterService.getCounterHierarchy(MODULE, "packet-in-shard-" + shard + "/" + name)
+                .get(0).getCounterValue();
+    }
+
+    private static Ethernet packet(long mac) {
+        return new Ethernet().setSourceMACAddress(MacAddress.of(mac))
+                .setDestinationMACAddress(MacAddress.BROADCAST);
+    }
+
+    private static SwitchPort port(long dpid, int port) {
+        return new SwitchPort(DatapathId.of(dpid), OFPort.of(port));
+    }
+
+    @Test
+    public void testSameSwitchInOrder() throws Exception {
+        final int switches = 16;
+        final int packets = 500;
+        final Map<DatapathId, List<Ethernet>> seen = new ConcurrentHashMap<>();
+        final Map<DatapathId, Set<String>> threads = new ConcurrentHashMap<>();
+        final CountDownLatch done = new CountDownLatch(switches * packets);
+        for(int s = 1; s <= switches; s++) {
+            seen.put(DatapathId.of(s), Collections.synchronizedList(new ArrayList<Ethernet>()));
+            threads.put(DatapathId.of(s), Collections.synchronizedSet(new HashSet<String>()));
+        }
+        dispatcher = new PacketInDispatcher(4, switches * packets, OverloadPolicy.DROP, new PacketHandler() {
+            @Override
+            public void handlePacket(SwitchPort switchPort, Ethernet eth) {
+                seen.get(switchPort.getSwitchDPID()).add(eth);
+                threads.get(switchPort.getSwitchDPID()).add(Thread.currentThread().getName());
+                done.countDown();
+            }
+        }, debugCounterService, MODULE);
+        dispatcher.start();
+
+        // interleave the switches and spread each one over several ports
+        Map<DatapathId, List<Ethernet>> sent = new HashMap<>();
+        for(int i = 0; i < packets; i++) {
+            for(int s = 1; s <= switches; s++) {
+                Ethernet eth = packet(i);
+                if(!sent.containsKey(DatapathId.of(s))) {
+                    sent.put(DatapathId.of(s), new ArrayList<Ethernet>());
+                }
+                sent.get(DatapathId.of(s)).add(eth);
+                assertTrue(dispatcher.dispatch(port(s, 1 + i % 4), eth));
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for(int s = 1; s <= switches; s++) {
+            List<Ethernet> expected = sent.get(DatapathId.of(s));
+            List<Ethernet> actual = seen.get(DatapathId.of(s));
+            assertEquals(expected.size(), actual.size());
+            for(int i = 0; i < expected.size(); i++) {
+                assertSame(expected.get(i), actual.get(i));
+            }
+            // one shard serves the switch
+            assertEquals(1, threads.get(DatapathId.of(s)).size());
+        }
+    }
+
+    @Test
+    public void testFullShardRefuses() {
+        // not started, nothing drains the queue
+        dispatcher = new PacketInDispatcher(1, 4, OverloadPolicy.DROP, IGNORE, debugCounterService, MODULE);
+        for(int i = 0; i < 4; i++) {
+            assertTrue(dispatcher.dispatch(port(1, 1), packet(i)));
+        }
+        assertEquals(4, dispatcher.getQueueDepth(0));
+        assertFalse(dispatcher.dispatch(port(1, 1), packet(4)));
+        assertFalse(dispatcher.dispatch(port(2, 1), packet(5)));
+        assertEquals(4, dispatcher.getQueueDepth(0));
+        assertEquals(4, counter(0, "enqueued"));
+        assertEquals(2, counter(0, "dropped"));
+        assertEquals(0, counter(0, "processed"));
+    }
+
+    @Test
+    public void testQueueDepthAndLatency() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch processed = new CountDownLatch(3);
+        dispatcher = new PacketInDispatcher(1, 8, OverloadPolicy.DROP, new PacketHandler() {
+            @Override
+            public void handlePacket(SwitchPort switchPort, Ethernet eth) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                processed.countDown();
+            }
+        }, debugCounterService, MODULE);
+        dispatcher.start();
+
+        for(int i = 0; i < 3; i++) {
+            assertTrue(dispatcher.dispatch(port(1, 1), packet(i)));
+        }
+        // the first packet is held by the handler, the others wait
+        long deadline = System.currentTimeMillis() + 5000;
+        while(dispatcher.getQueueDepth(0) != 2) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals(0, counter(0, "processed"));
+        Thread.sleep(20);
+        release.countDown();
+
+        assertTrue(processed.await(5, TimeUnit.SECONDS));
+        deadline = System.currentTimeMillis() + 5000;
+        while(counter(0, "processed") != 3) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals(0, dispatcher.getQueueDepth(0));
+        assertEquals(3, counter(0, "enqueued"));
+        assertEquals(0, counter(0, "dropped"));
+        // every packet waited at least the 20ms the handler was held
+        assertTrue(counter(0, "latency-us") >= 3 * 20000);
+    }
+
+    /**
+     * Provider with a full single-slot shard that records the flows it adds
+     */
+    private static class OverloadedProvider extends Provider {
+        final List<Match> dropRules = new ArrayList<>();
+
+        OverloadedProvider(OverloadPolicy policy, IDebugCounterService debugCounterService) {
+            packetInDispatcher = new PacketInDispatcher(1, 1, policy, IGNORE, debugCounterService, MODULE);
+            packetInDispatcher.dispatch(port(9, 9), packet(0));
+        }
+
+        @Override
+        protected void doFlowAdd(DatapathId switchId, TableId tableId, Match match, List<OFAction> actions,
+                List<OFInstruction> instructions, int priority, int hardTimeout, int idleTimeout) {
+            assertEquals(OVERLOAD_DROP_PRIORITY, priority);
+            assertEquals(OVERLOAD_DROP_TIMEOUT, hardTimeout);
+            assertTrue(actions.isEmpty());
+            dropRules.add(match);
+        }
+    }
+
+    @Test
+    public void testDropPolicy() {
+        OverloadedProvider provider = new OverloadedProvider(OverloadPolicy.DROP, debugCounterService);
+        provider.dispatchPacketIn(port(1, 1), packet(1));
+        provider.dispatchPacketIn(port(1, 1), packet(1));
+        assertTrue(provider.dropRules.isEmpty());
+        assertTrue(provider.overloadDropRules.isEmpty());
+        assertEquals(2, counter(0, "dropped"));
+    }
+
+    @Test
+    public void testDropRulePolicy() {
+        OverloadedProvider provider = new OverloadedProvider(OverloadPolicy.DROP_RULE, debugCounterService);
+        provider.dispatchPacketIn(port(1, 1), packet(1));
+        assertEquals(1, provider.dropRules.size());
+        Match match = provider.dropRules.get(0);
+        assertEquals(OFPort.of(1), match.get(MatchField.IN_PORT));
+        assertEquals(MacAddress.of(1), match.get(MatchField.ETH_SRC));
+
+        // the rule is already on the switch
+        provider.dispatchPacketIn(port(1, 1), packet(1));
+        assertEquals(1, provider.dropRules.size());
+
+        // another source on the same port needs its own rule
+        provider.dispatchPacketIn(port(1, 1), packet(2));
+        assertEquals(2, provider.dropRules.size());
+        assertEquals(MacAddress.of(2), provider.dropRules.get(1).get(MatchField.ETH_SRC));
+        assertEquals(2, provider.overloadDropRules.size());
+
+        // expired rules are forgotten and installed again
+        for(Map.Entry<Provider.OverloadSource, Long> e : provider.overloadDropRules.entrySet()) {
+            e.setValue(0L);
+        }
+        provider.pruneOverloadDropRules();
+        assertTrue(provider.overloadDropRules.isEmpty());
+        provider.dispatchPacketIn(port(1, 1), packet(1));
+        assertEquals(3, provider.dropRules.size());
+        assertEquals(4, counter(0, "dropped"));
+    }
+}
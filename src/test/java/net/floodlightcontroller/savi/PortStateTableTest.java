@@ -0,0 +1,186 @@
+package net.floodlightcontroller.savi;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.savi.PortStateTable.Mode;
+import net.floodlightcontroller.savi.PortStateTable.State;
+import net.floodlightcontroller.savi.PortStateTable.Transition;
+
+public class PortStateTableTest {
+    private PortStateTable table;
+
+    @Before
+    public void setUp() {
+        table = new PortStateTable();
+    }
+
+    private static SwitchPort port(long dpid, int port) {
+        return new SwitchPort(DatapathId.of(dpid), OFPort.of(port));
+    }
+
+    @Test
+    public void testAddRemove() {
+        SwitchPort p1 = port(1, 1);
+        SwitchPort p2 = port(1, 2);
+
+        assertTrue(table.add(p1, State.NORMAL));
+        assertFalse("duplicate add", table.add(p1, State.ABNORMAL));
+        assertEquals(State.NORMAL, table.getState(p1));
+        table.addAll(Arrays.asList(p2, p1), State.OBSERVE);
+        assertEquals(State.NORMAL, table.getState(p1));
+        assertEquals(State.OBSERVE, table.getState(p2));
+        assertEquals(1, table.size(State.NORMAL));
+        assertEquals(1, table.size(State.OBSERVE));
+
+        assertEquals(State.NORMAL, table.remove(p1));
+        assertNull(table.remove(p1));
+        assertNull(table.getState(p1));
+        assertFalse(table.isInState(p1, State.NORMAL));
+        assertEquals(0, table.size(State.NORMAL));
+        assertTrue(table.getPorts(State.NORMAL).isEmpty());
+
+        // a removed port can be added again
+        assertTrue(table.add(p1, State.ABNORMAL));
+        assertEquals(State.ABNORMAL, table.getState(p1));
+    }
+
+    @Test
+    public void testMove() {
+        SwitchPort p1 = port(1, 1);
+        table.add(p1, State.NORMAL);
+
+        assertFalse("same state", table.setState(p1, State.NORMAL));
+        assertFalse("unknown port", table.setState(port(9, 9), State.OBSERVE));
+
+        assertTrue(table.setState(p1, State.OBSERVE));
+        assertTrue(table.isInState(p1, State.OBSERVE));
+        assertEquals(0, table.size(State.NORMAL));
+        assertEquals(1, table.size(State.OBSERVE));
+
+        assertEquals(1, table.incrementObserveCount(p1));
+        assertEquals(2, table.incrementObserveCount(p1));
+        assertEquals(2, table.getObserveCount(p1));
+        // a transition starts a new observation
+        table.setState(p1, State.ABNORMAL);
+        table.setState(p1, State.OBSERVE);
+        assertEquals(0, table.getObserveCount(p1));
+        assertEquals(0, table.incrementObserveCount(port(9, 9)));
+    }
+
+    @Test
+    public void testIteration() {
+        SwitchPort p11 = port(1, 1);
+        SwitchPort p12 = port(1, 2);
+        SwitchPort p13 = port(1, 3);
+        SwitchPort p21 = port(2, 1);
+        table.add(p11, State.NORMAL);
+        table.add(p12, State.NORMAL);
+        table.add(p13, State.NORMAL);
+        table.add(p21, State.NORMAL);
+
+        // a moved port is appended to the tail of its new list
+        table.setState(p12, State.ABNORMAL);
+        table.setState(p12, State.NORMAL);
+        assertEquals(Arrays.asList(p11, p13, p12), table.getPorts(DatapathId.of(1), State.NORMAL));
+        assertEquals(Collections.singletonList(p21), table.getPorts(DatapathId.of(2), State.NORMAL));
+        assertTrue(table.getPorts(DatapathId.of(3), State.NORMAL).isEmpty());
+
+        List<SwitchPort> normal = table.getPorts(State.NORMAL);
+        assertEquals(4, normal.size());
+        assertEquals(new HashSet<>(Arrays.asList(p11, p12, p13, p21)), new HashSet<>(normal));
+
+        table.remove(p13);
+        assertEquals(Arrays.asList(p11, p12), table.getPorts(DatapathId.of(1), State.NORMAL));
+    }
+
+    @Test
+    public void testSwitchModes() {
+        SwitchPort p11 = port(1, 1);
+        SwitchPort p21 = port(2, 1);
+        table.add(p11, State.NORMAL);
+        table.add(p21, State.ABNORMAL);
+
+        assertEquals(Mode.DYNAMIC, table.getSwitchMode(DatapathId.of(1)));
+        assertEquals(Mode.DYNAMIC, table.getSwitchMode(DatapathId.of(3)));
+        assertEquals(2, table.getDynamicSwitchCount());
+
+        table.setSwitchMode(DatapathId.of(2), Mode.STATIC);
+        assertEquals(1, table.getDynamicSwitchCount());
+        assertEquals(Collections.singletonList(p21), table.getPorts(Mode.STATIC));
+        assertEquals(Collections.singletonList(p11), table.getPorts(Mode.DYNAMIC));
+
+        table.setSwitchMode(DatapathId.of(2), Mode.NONE);
+        assertEquals(1, table.getDynamicSwitchCount());
+        table.setSwitchMode(DatapathId.of(2), Mode.DYNAMIC);
+        assertEquals(2, table.getDynamicSwitchCount());
+    }
+
+    @Test
+    public void testPollNormal() {
+        SwitchPort p11 = port(1, 1);
+        SwitchPort p12 = port(1, 2);
+        SwitchPort p21 = port(2, 1);
+        SwitchPort p31 = port(3, 1);
+        table.add(p11, State.NORMAL);
+        table.add(p12, State.NORMAL);
+        table.add(p21, State.NORMAL);
+        table.add(p31, State.NORMAL);
+        table.setSwitchMode(DatapathId.of(3), Mode.STATIC);
+
+        // one port per dynamic switch, ports of static switches are never picked
+        Set<SwitchPort> skip = Collections.singleton(p11);
+        List<SwitchPort> picked = table.pollNormal(10, skip);
+        assertEquals(new HashSet<>(Arrays.asList(p12, p21)), new HashSet<>(picked));
+        for (SwitchPort p : picked) {
+            assertEquals(State.OBSERVE, table.getState(p));
+        }
+        assertEquals(State.NORMAL, table.getState(p11));
+        assertEquals(State.NORMAL, table.getState(p31));
+
+        // round-robin continues with the switch after the last one visited
+        table.setState(p12, State.NORMAL);
+        table.setState(p21, State.NORMAL);
+        SwitchPort first = table.pollNormal(1, null).get(0);
+        SwitchPort second = table.pollNormal(1, null).get(0);
+        assertFalse(first.getSwitchDPID().equals(second.getSwitchDPID()));
+
+        table.setSwitchMode(DatapathId.of(1), Mode.NONE);
+        table.setSwitchMode(DatapathId.of(2), Mode.NONE);
+        assertTrue(table.pollNormal(10, null).isEmpty());
+    }
+
+    @Test
+    public void testHistory() {
+        SwitchPort p1 = port(1, 1);
+        assertTrue(table.getHistory(p1).isEmpty());
+
+        table.add(p1, State.NORMAL);
+        table.setState(p1, State.OBSERVE);
+        List<Transition> history = table.getHistory(p1);
+        assertEquals(2, history.size());
+        assertNull(history.get(0).getFrom());
+        assertEquals(State.NORMAL, history.get(0).getTo());
+        assertEquals(State.NORMAL, history.get(1).getFrom());
+        assertEquals(State.OBSERVE, history.get(1).getTo());
+        assertTrue(history.get(1).getTime() >= history.get(0).getTime());
+
+        for (int i = 0; i < PortStateTable.HISTORY_SIZE; i++) {
+            table.setState(p1, i % 2 == 0 ? State.ABNORMAL : State.OBSERVE);
+        }
+        history = table.getHistory(p1);
+        assertEquals(PortStateTable.HISTORY_SIZE, history.size());
+        assertEquals(State.OBSERVE, history.get(history.size() - 1).getTo());
+    }
+}
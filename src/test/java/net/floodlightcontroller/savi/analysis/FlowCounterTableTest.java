@@ -0,0 +1,161 @@
+package net.floodlightcontroller.savi.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.savi.analysis.FlowCounterTable.Round;
+import net.floodlightcontroller.savi.analysis.FlowCounterTable.Snapshot;
+
+public class FlowCounterTableTest {
+    private static final double DELTA = 1e-9;
+
+    private static final DatapathId SW1 = DatapathId.of(1);
+    private static final DatapathId SW2 = DatapathId.of(2);
+    private static final SwitchPort P11 = new SwitchPort(SW1, OFPort.of(1));
+    private static final SwitchPort P12 = new SwitchPort(SW1, OFPort.of(2));
+    private static final SwitchPort P21 = new SwitchPort(SW2, OFPort.of(1));
+
+    private FlowCounterTable table;
+
+    @Before
+    public void setUp() {
+        table = new FlowCounterTable();
+    }
+
+    private void commit(DatapathId dpid, int port, long pass, long drop) {
+        Round round = table.newRound();
+        round.add(dpid, port, pass, true);
+        round.add(dpid, port, drop, false);
+        table.commit(round);
+    }
+
+    @Test
+    public void testMissingPorts() {
+        Snapshot empty = table.getSnapshot();
+        assertFalse(empty.contains(P11));
+        assertEquals(0, empty.getPassNum(P11));
+        assertEquals(0, empty.getDropNum(P11));
+        assertEquals(0, empty.getDropRate(P11), DELTA);
+        assertNull(empty.get(SW1, OFPort.of(1)));
+        assertTrue(empty.toMap().isEmpty());
+
+        commit(SW1, 1, 10, 5);
+        Snapshot snapshot = table.getSnapshot();
+        assertTrue(snapshot.contains(P11));
+        // unknown switch and a port beyond the counted range
+        assertFalse(snapshot.contains(P21));
+        assertEquals(0, snapshot.getPassNum(P21));
+        assertEquals(0, snapshot.getDropNum(P21));
+        SwitchPort far = new SwitchPort(SW1, OFPort.of(1000));
+        assertFalse(snapshot.contains(far));
+        assertEquals(0, snapshot.getPassNum(far));
+        assertEquals(0, snapshot.getDropNum(far));
+        // a port without rules inside the counted range reads as zero
+        assertEquals(0, snapshot.getPassNum(P12));
+        assertEquals(0, snapshot.getDropNum(P12));
+        assertEquals(1, snapshot.toMap().size());
+    }
+
+    @Test
+    public void testDeltas() {
+        Round round = table.newRound();
+        // two pass rules of the same port are summed
+        round.add(SW1, 1, 6, true);
+        round.add(SW1, 1, 4, true);
+        round.add(SW1, 1, 5, false);
+        round.add(SW2, 1, 7, true);
+        // reserved ports are not counted
+        round.add(SW2, FlowCounterTable.MAX_PORT + 1, 100, true);
+        table.commit(round);
+
+        Snapshot snapshot = table.getSnapshot();
+        assertEquals(10, snapshot.getPassNum(P11));
+        assertEquals(5, snapshot.getDropNum(P11));
+        assertEquals(5.0 / 15, snapshot.getDropRate(P11), DELTA);
+        assertEquals(7, snapshot.getPassNum(P21));
+
+        commit(SW1, 1, 25, 8);
+        snapshot = table.getSnapshot();
+        assertEquals(15, snapshot.getPassNum(P11));
+        assertEquals(3, snapshot.getDropNum(P11));
+        PacketOfFlow flow = snapshot.get(SW1, OFPort.of(1));
+        assertEquals(25, flow.getAccumulatePassNum());
+        assertEquals(8, flow.getAccumulateDropNum());
+        assertEquals(8.0 / 33, flow.getAccumulateDropRate(), DELTA);
+        // a switch missing from the round keeps its counters
+        assertEquals(7, snapshot.getPassNum(P21));
+
+        // smaller counters come from rules installed again
+        commit(SW1, 1, 4, 1);
+        snapshot = table.getSnapshot();
+        assertEquals(4, snapshot.getPassNum(P11));
+        assertEquals(1, snapshot.getDropNum(P11));
+    }
+
+    @Test
+    public void testSnapshotSwap() {
+        commit(SW1, 1, 10, 5);
+        Snapshot before = table.getSnapshot();
+
+        commit(SW1, 1, 30, 5);
+        Snapshot after = table.getSnapshot();
+        assertNotSame(before, after);
+        // a published snapshot never changes
+        assertEquals(10, before.getPassNum(P11));
+        assertEquals(5, before.getDropNum(P11));
+        assertEquals(20, after.getPassNum(P11));
+        assertEquals(0, after.getDropNum(P11));
+
+        // switches added later are not visible in older snapshots
+        commit(SW2, 1, 3, 0);
+        assertFalse(after.contains(P21));
+        assertTrue(table.getSnapshot().contains(P21));
+    }
+
+    @Test
+    public void testReset() {
+        Round round = table.newRound();
+        round.add(SW1, 1, 10, true);
+        round.add(SW1, 1, 5, false);
+        round.add(SW1, 2, 7, true);
+        round.add(SW1, 2, 1, false);
+        table.commit(round);
+        Snapshot before = table.getSnapshot();
+
+        table.reset(P11);
+        Snapshot after = table.getSnapshot();
+        assertEquals(0, after.getPassNum(P11));
+        assertEquals(0, after.getDropNum(P11));
+        assertEquals(0, after.getPacketRate(P11), DELTA);
+        assertNull(after.toMap().get(P11));
+        assertNotNull(after.toMap().get(P12));
+        assertEquals(7, after.getPassNum(P12));
+        assertEquals(10, before.getPassNum(P11));
+
+        // the rules of the port count from zero again
+        commit(SW1, 1, 3, 2);
+        assertEquals(3, table.getSnapshot().getPassNum(P11));
+        assertEquals(2, table.getSnapshot().getDropNum(P11));
+
+        // unknown ports are ignored
+        table.reset(P21);
+        table.reset(new SwitchPort(SW1, OFPort.of(1000)));
+    }
+
+    @Test
+    public void testToMap() {
+        commit(SW1, 1, 10, 5);
+        commit(SW2, 1, 0, 2);
+        Map<SwitchPort, PacketOfFlow> map = table.getSnapshot().toMap();
+        assertEquals(2, map.size());
+        assertEquals(10, map.get(P11).getPassNum());
+        assertEquals(2, map.get(P21).getDropNum());
+    }
+}
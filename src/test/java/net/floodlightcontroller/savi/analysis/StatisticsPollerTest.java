@@ -0,0 +1,236 @@
+package net.floodlightcontroller.savi.analysis;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.savi.analysis.StatisticsPoller.RequestFactory;
+import net.floodlightcontroller.savi.analysis.StatisticsPoller.StatisticsCallback;
+
+public class StatisticsPollerTest {
+    private static final long TIMEOUT_MS = 200;
+
+    private static final DatapathId SW1 = DatapathId.of(1);
+    private static final DatapathId SW2 = DatapathId.of(2);
+    private static final DatapathId SW3 = DatapathId.of(3);
+
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private final RequestFactory requests = new RequestFactory() {
+        @Override
+        public OFStatsRequest<?> buildRequest(IOFSwitch sw) {
+            return factory.buildPortStatsRequest().setPortNo(OFPort.ANY).build();
+        }
+    };
+
+    private ScheduledExecutorService timer;
+    private IOFSwitchService switchService;
+
+    @Before
+    public void setUp() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+        switchService = createMock(IOFSwitchService.class);
+    }
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void addSwitch(DatapathId dpid, ListenableFuture future) {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(dpid).anyTimes();
+        expect(sw.writeStatsRequest(anyObject(OFStatsRequest.class), eq(LogicalOFMessageCategory.STATS)))
+            .andReturn(future).anyTimes();
+        replay(sw);
+        expect(switchService.getSwitch(dpid)).andReturn(sw).anyTimes();
+    }
+
+    private List<OFStatsReply> reply() {
+        return Collections.<OFStatsReply>singletonList(factory.buildPortStatsReply().build());
+    }
+
+    private StatisticsPoller poller(Executor callbackExecutor, long timeoutMs) {
+        replay(switchService);
+        return new StatisticsPoller(switchService, timer, callbackExecutor, timeoutMs);
+    }
+
+    private static Set<DatapathId> dpids(DatapathId... dpids) {
+        return new HashSet<DatapathId>(Arrays.asList(dpids));
+    }
+
+    @Test
+    public void testRepliesDelivered() throws Exception {
+        SettableFuture<List<OFStatsReply>> f1 = SettableFuture.create();
+        SettableFuture<List<OFStatsReply>> f2 = SettableFuture.create();
+        addSwitch(SW1, f1);
+        addSwitch(SW2, f2);
+        // a switch that is not connected
+        expect(switchService.getSwitch(SW3)).andReturn(null).anyTimes();
+        StatisticsPoller poller = poller(MoreExecutors.sameThreadExecutor(), 10000);
+
+        final AtomicReference<Map<DatapathId, List<OFStatsReply>>> received =
+                new AtomicReference<Map<DatapathId, List<OFStatsReply>>>();
+        ListenableFuture<?> done = poller.poll(dpids(SW1, SW2, SW3), requests, new StatisticsCallback() {
+            @Override
+            public void statisticsReceived(Map<DatapathId, List<OFStatsReply>> replies) {
+                received.set(replies);
+            }
+        });
+        List<OFStatsReply> r1 = reply();
+        List<OFStatsReply> r2 = reply();
+        f1.set(r1);
+        assertFalse(done.isDone());
+        assertNull(received.get());
+        f2.set(r2);
+
+        done.get(1, TimeUnit.SECONDS);
+        Map<DatapathId, List<OFStatsReply>> replies = received.get();
+        assertEquals(2, replies.size());
+        assertSame(r1, replies.get(SW1));
+        assertSame(r2, replies.get(SW2));
+        assertEquals(0, poller.getDroppedRounds());
+    }
+
+    @Test
+    public void testSkippedSwitches() throws Exception {
+        addSwitch(SW1, SettableFuture.create());
+        StatisticsPoller poller = poller(MoreExecutors.sameThreadExecutor(), 10000);
+
+        // the factory skips every switch, nothing is waited for
+        Map<DatapathId, List<OFStatsReply>> replies = poller.poll(dpids(SW1), new RequestFactory() {
+            @Override
+            public OFStatsRequest<?> buildRequest(IOFSwitch sw) {
+                return null;
+            }
+        }).get(1, TimeUnit.SECONDS);
+        assertTrue(replies.isEmpty());
+        assertTrue(poller.poll(dpids(), requests).get(1, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testSilentSwitchTimesOut() throws Exception {
+        SettableFuture<List<OFStatsReply>> f1 = SettableFuture.create();
+        // never replies
+        SettableFuture<List<OFStatsReply>> f2 = SettableFuture.create();
+        addSwitch(SW1, f1);
+        addSwitch(SW2, f2);
+        StatisticsPoller poller = poller(MoreExecutors.sameThreadExecutor(), TIMEOUT_MS);
+
+        long start = System.nanoTime();
+        ListenableFuture<Map<DatapathId, List<OFStatsReply>>> result = poller.poll(dpids(SW1, SW2), requests);
+        List<OFStatsReply> r1 = reply();
+        f1.set(r1);
+        assertFalse(result.isDone());
+
+        Map<DatapathId, List<OFStatsReply>> replies = result.get(10 * TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs >= TIMEOUT_MS);
+        assertEquals(Collections.singletonMap(SW1, r1), replies);
+        assertTrue(f2.isCancelled());
+
+        // a late reply does not change the settled result
+        assertFalse(f2.set(reply()));
+        assertEquals(1, replies.size());
+    }
+
+    @Test
+    public void testSilentSwitchDoesNotHoldCallback() throws Exception {
+        addSwitch(SW1, SettableFuture.create());
+        StatisticsPoller poller = poller(MoreExecutors.sameThreadExecutor(), TIMEOUT_MS);
+
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicReference<Map<DatapathId, List<OFStatsReply>>> received =
+                new AtomicReference<Map<DatapathId, List<OFStatsReply>>>();
+        poller.poll(dpids(SW1), requests, new StatisticsCallback() {
+            @Override
+            public void statisticsReceived(Map<DatapathId, List<OFStatsReply>> replies) {
+                calls.incrementAndGet();
+                received.set(replies);
+            }
+        }).get(10 * TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(1, calls.get());
+        assertTrue(received.get().isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedSwitchLeftOut() throws Exception {
+        SettableFuture<List<OFStatsReply>> f1 = SettableFuture.create();
+        SettableFuture<List<OFStatsReply>> f2 = SettableFuture.create();
+        addSwitch(SW1, f1);
+        addSwitch(SW2, f2);
+        IOFSwitch broken = createMock(IOFSwitch.class);
+        expect(broken.getId()).andReturn(SW3).anyTimes();
+        expect(broken.writeStatsRequest(anyObject(OFStatsRequest.class), eq(LogicalOFMessageCategory.STATS)))
+            .andThrow(new IllegalStateException("not connected"));
+        replay(broken);
+        expect(switchService.getSwitch(SW3)).andReturn(broken).anyTimes();
+        // long timeout: a failure must settle its switch at once
+        StatisticsPoller poller = poller(MoreExecutors.sameThreadExecutor(), 60000);
+
+        ListenableFuture<Map<DatapathId, List<OFStatsReply>>> result = poller.poll(dpids(SW1, SW2, SW3), requests);
+        List<OFStatsReply> r1 = reply();
+        f1.set(r1);
+        f2.setException(new RuntimeException("disconnected"));
+
+        assertEquals(Collections.singletonMap(SW1, r1), result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRoundDroppedWhenExecutorFull() throws Exception {
+        SettableFuture<List<OFStatsReply>> f1 = SettableFuture.create();
+        addSwitch(SW1, f1);
+        StatisticsPoller poller = poller(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        }, 10000);
+
+        final AtomicInteger calls = new AtomicInteger();
+        ListenableFuture<?> done = poller.poll(dpids(SW1), requests, new StatisticsCallback() {
+            @Override
+            public void statisticsReceived(Map<DatapathId, List<OFStatsReply>> replies) {
+                calls.incrementAndGet();
+            }
+        });
+        f1.set(reply());
+
+        // the round completes so the next one can start
+        done.get(1, TimeUnit.SECONDS);
+        assertEquals(0, calls.get());
+        assertEquals(1, poller.getDroppedRounds());
+    }
+}
@@ -0,0 +1,184 @@
+package net.floodlightcontroller.savi.analysis.detector;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+public class AnomalyDetectorTest {
+    private static final SwitchPort A = new SwitchPort(DatapathId.of(1), OFPort.of(1));
+    private static final SwitchPort B = new SwitchPort(DatapathId.of(1), OFPort.of(2));
+    private static final SwitchPort C = new SwitchPort(DatapathId.of(2), OFPort.of(1));
+
+    /** one round with a single port, as DataAnalysis runs it */
+    private static boolean round(IAnomalyDetector d, SwitchPort p, long pass, long drop, double rate) {
+        d.startRound();
+        d.update(p, pass, drop, rate);
+        boolean anomalous = d.isAnomalous(p, pass, drop, rate);
+        d.endRound();
+        return anomalous;
+    }
+
+    @Test
+    public void testLossRate() {
+        LossRateDetector d = new LossRateDetector(0.018, 100);
+        assertFalse(round(d, A, 1000, 10, -1));
+        assertTrue(round(d, A, 100, 10, -1));
+        // a drop rate of 1 only counts by the number of drops
+        assertFalse(round(d, A, 0, 50, -1));
+        assertTrue(round(d, A, 0, 150, -1));
+        assertFalse(round(d, A, -1, -1, -1));
+        assertFalse(round(d, A, 500, 0, -1));
+    }
+
+    @Test
+    public void testEwma() {
+        EwmaDetector d = new EwmaDetector(0.5, 3, 10, 3);
+        // no rate yet, nothing is learned
+        assertFalse(round(d, A, -1, -1, -1));
+        assertEquals(0, d.size());
+
+        // warm up: a burst before the baseline is learned is not judged
+        assertFalse(round(d, A, -1, -1, 100));
+        assertFalse(round(d, A, -1, -1, 1000));
+        // brings the baseline back near 100 with a large variance
+        for (int i = 0; i < 20; i++) {
+            assertFalse(round(d, A, -1, -1, 100));
+        }
+        assertFalse("small rise", round(d, A, -1, -1, 105));
+        assertTrue(round(d, A, -1, -1, 400));
+        // anomalous samples do not move the baseline
+        assertTrue(round(d, A, -1, -1, 400));
+        assertFalse(round(d, A, -1, -1, 100));
+    }
+
+    @Test
+    public void testEwmaFlatBaseline() {
+        EwmaDetector d = new EwmaDetector(0.5, 3, 10, 3);
+        for (int i = 0; i < 4; i++) {
+            assertFalse(round(d, A, -1, -1, 100));
+        }
+        // zero variance, so only minDelta protects small rises
+        assertFalse(round(d, A, -1, -1, 110));
+        assertTrue(round(d, A, -1, -1, 200));
+    }
+
+    @Test
+    public void testZScore() {
+        ZScoreDetector d = new ZScoreDetector(4, 2, 5);
+        assertFalse(round(d, A, 0, -1, -1));
+        assertEquals(0, d.size());
+
+        // mean 11, deviation 1
+        for (long drop : new long[] { 10, 12, 10, 12 }) {
+            assertFalse(round(d, A, 0, drop, -1));
+        }
+        assertTrue(round(d, A, 0, 20, -1));
+        // not added to the window
+        assertTrue(round(d, A, 0, 20, -1));
+        assertFalse(round(d, A, 0, 12, -1));
+        // within minDrop of the mean
+        assertFalse(round(d, A, 0, 15, -1));
+    }
+
+    @Test
+    public void testZScoreFlatWindow() {
+        ZScoreDetector d = new ZScoreDetector(4, 2, 5);
+        for (int i = 0; i < 3; i++) {
+            assertFalse(round(d, A, 0, 0, -1));
+        }
+        // a flat window does not flag a few drops
+        assertFalse(round(d, A, 0, 3, -1));
+        // window 0 0 0 3: mean 0.75, deviation about 1.3
+        assertTrue(round(d, A, 0, 10, -1));
+    }
+
+    @Test
+    public void testPortsPruned() {
+        EwmaDetector ewma = new EwmaDetector();
+        ZScoreDetector zscore = new ZScoreDetector();
+        for (IAnomalyDetector d : new IAnomalyDetector[] { ewma, zscore }) {
+            d.startRound();
+            for (SwitchPort p : new SwitchPort[] { A, B, C }) {
+                d.update(p, 0, 0, 10);
+                d.isAnomalous(p, 0, 0, 10);
+            }
+            d.endRound();
+        }
+        assertEquals(3, ewma.size());
+        assertEquals(3, zscore.size());
+
+        // B and C left the host ports
+        for (IAnomalyDetector d : new IAnomalyDetector[] { ewma, zscore }) {
+            round(d, A, 0, 0, 10);
+        }
+        assertEquals(1, ewma.size());
+        assertEquals(1, zscore.size());
+    }
+
+    private static boolean[] heavyHitterRound(HeavyHitterDetector d, SwitchPort[] ports, long[] drops) {
+        d.startRound();
+        for (int i = 0; i < ports.length; i++) {
+            d.update(ports[i], 0, drops[i], -1);
+        }
+        boolean[] result = new boolean[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            result[i] = d.isAnomalous(ports[i], 0, drops[i], -1);
+        }
+        d.endRound();
+        return result;
+    }
+
+    @Test
+    public void testHeavyHitterOrder() {
+        // the result does not depend on the order of the ports
+        boolean[] r = heavyHitterRound(new HeavyHitterDetector(4, 1024, 100, 0.5, 10),
+                new SwitchPort[] { B, C, A }, new long[] { 10, 10, 100 });
+        assertFalse("first port of the window", r[0]);
+        assertFalse(r[1]);
+        assertTrue(r[2]);
+
+        r = heavyHitterRound(new HeavyHitterDetector(4, 1024, 100, 0.5, 10),
+                new SwitchPort[] { A, B, C }, new long[] { 100, 10, 10 });
+        assertTrue(r[0]);
+        assertFalse(r[1]);
+        assertFalse(r[2]);
+    }
+
+    @Test
+    public void testHeavyHitterThresholds() {
+        HeavyHitterDetector d = new HeavyHitterDetector(4, 1024, 100, 0.5, 10);
+        // equal shares are not above half
+        boolean[] r = heavyHitterRound(d, new SwitchPort[] { A, B }, new long[] { 50, 50 });
+        assertFalse(r[0]);
+        assertFalse(r[1]);
+
+        // alone but below minDrop
+        d = new HeavyHitterDetector(4, 1024, 100, 0.5, 10);
+        r = heavyHitterRound(d, new SwitchPort[] { A, B }, new long[] { 5, 0 });
+        assertFalse(r[0]);
+        assertFalse(r[1]);
+        r = heavyHitterRound(d, new SwitchPort[] { A, B }, new long[] { 20, 0 });
+        assertTrue(r[0]);
+        assertFalse(r[1]);
+    }
+
+    @Test
+    public void testHeavyHitterWindows() {
+        // windows of two rounds
+        HeavyHitterDetector d = new HeavyHitterDetector(4, 1024, 2, 0.5, 10);
+        SwitchPort[] ports = { A, B };
+        assertTrue(heavyHitterRound(d, ports, new long[] { 100, 10 })[0]);
+        // the drops of A in the previous window still count after the rotation:
+        // B has 70 of 170 drops
+        boolean[] r = heavyHitterRound(d, ports, new long[] { 0, 60 });
+        assertFalse(r[0]);
+        assertFalse(r[1]);
+        // B has 170 of 270 drops
+        r = heavyHitterRound(d, ports, new long[] { 0, 100 });
+        assertTrue(r[1]);
+    }
+}
@@ -0,0 +1,211 @@
+package net.floodlightcontroller.savi.binding;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+public class BindingJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private BindingJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File(folder.getRoot(), "bindings");
+        journal = new BindingJournal(dir);
+        assertTrue(journal.load().isEmpty());
+    }
+
+    @After
+    public void tearDown() {
+        journal.close();
+    }
+
+    private List<Binding<?>> reopen() throws Exception {
+        journal.close();
+        journal = new BindingJournal(dir);
+        return journal.load();
+    }
+
+    private static Binding<IPv4Address> ipv4Binding(int i, long switchId) {
+        Binding<IPv4Address> binding = new Binding<>();
+        binding.setAddress(IPv4Address.of(0x0A000000 + i));
+        binding.setMacAddress(MacAddress.of(0x020000000000L + i));
+        binding.setSwitchPort(new SwitchPort(DatapathId.of(switchId), OFPort.of(1 + i % 48)));
+        binding.setStatus(BindingStatus.BOUND);
+        binding.setBindingTime(1000L + i);
+        binding.setLeaseTime(3600L);
+        binding.setTransactionId(i);
+        return binding;
+    }
+
+    private static Binding<IPv6Address> ipv6Binding(int i, long switchId) {
+        Binding<IPv6Address> binding = new Binding<>();
+        binding.setAddress(IPv6Address.of(0xFE80000000000000L, i));
+        binding.setMacAddress(MacAddress.of(0x040000000000L + i));
+        binding.setSwitchPort(new SwitchPort(DatapathId.of(switchId), OFPort.of(2)));
+        binding.setStatus(BindingStatus.BOUND);
+        return binding;
+    }
+
+    private static void assertSameBinding(Binding<?> expected, Binding<?> actual) {
+        assertEquals(expected.getAddress(), actual.getAddress());
+        assertEquals(expected.getMacAddress(), actual.getMacAddress());
+        assertEquals(expected.getSwitchPort(), actual.getSwitchPort());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getBindingTime(), actual.getBindingTime());
+        assertEquals(expected.getLeaseTime(), actual.getLeaseTime());
+        assertEquals(expected.getTransactionId(), actual.getTransactionId());
+    }
+
+    @Test
+    public void testReplayAfterReopen() throws Exception {
+        Binding<IPv4Address> a = ipv4Binding(1, 1);
+        Binding<IPv4Address> b = ipv4Binding(2, 1);
+        Binding<IPv6Address> c = ipv6Binding(3, 2);
+        Binding<IPv4Address> d = ipv4Binding(4, 2);
+        journal.bind(a);
+        journal.bind(b);
+        journal.bind(c);
+        journal.bind(d);
+        journal.unbind(b);
+        // rebinding moves the binding to the end
+        journal.bind(a);
+        journal.clearSwitch(DatapathId.of(2));
+        journal.force();
+        assertEquals(7, journal.getRecordCount());
+
+        List<Binding<?>> bindings = reopen();
+        assertEquals(1, bindings.size());
+        assertSameBinding(a, bindings.get(0));
+        assertEquals(7, journal.getRecordCount());
+
+        // appends continue after the replayed records
+        journal.bind(c);
+        bindings = reopen();
+        assertEquals(2, bindings.size());
+        assertSameBinding(a, bindings.get(0));
+        assertSameBinding(c, bindings.get(1));
+    }
+
+    @Test
+    public void testTornRecordNotReplayed() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            journal.bind(ipv4Binding(i, 1));
+        }
+        journal.close();
+
+        // a record whose op byte did not make it to the disk
+        ByteBuffer torn = ByteBuffer.allocate(BindingJournal.RECORD_SIZE);
+        torn.put(1, (byte)4);
+        torn.putLong(8, 1);
+        torn.putLong(32, 0x0A0000FFL);
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, BindingJournal.JOURNAL_FILE), "rw")) {
+            raf.getChannel().write(torn, 3 * BindingJournal.RECORD_SIZE);
+        }
+
+        journal = new BindingJournal(dir);
+        List<Binding<?>> bindings = journal.load();
+        assertEquals(3, bindings.size());
+        assertEquals(3, journal.getRecordCount());
+
+        // the next record overwrites the torn one
+        Binding<IPv4Address> next = ipv4Binding(10, 1);
+        journal.bind(next);
+        bindings = reopen();
+        assertEquals(4, bindings.size());
+        assertSameBinding(next, bindings.get(3));
+    }
+
+    @Test
+    public void testPartialTailTruncated() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            journal.bind(ipv4Binding(i, 1));
+        }
+        journal.close();
+
+        // the file ends in the middle of the third record
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, BindingJournal.JOURNAL_FILE), "rw")) {
+            raf.setLength(2 * BindingJournal.RECORD_SIZE + 20);
+        }
+
+        journal = new BindingJournal(dir);
+        List<Binding<?>> bindings = journal.load();
+        assertEquals(2, bindings.size());
+        assertEquals(2, journal.getRecordCount());
+
+        Binding<IPv4Address> next = ipv4Binding(10, 1);
+        journal.bind(next);
+        bindings = reopen();
+        assertEquals(3, bindings.size());
+        assertSameBinding(next, bindings.get(2));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        BindingManager manager = new BindingManager();
+        for (int i = 0; i < 10; i++) {
+            Binding<IPv4Address> binding = ipv4Binding(i, 1);
+            manager.addBinding(binding);
+            journal.bind(binding);
+        }
+        manager.delBinding(IPv4Address.of(0x0A000000 + 5));
+        journal.unbind(ipv4Binding(5, 1));
+
+        journal.compact(manager);
+        assertEquals(0, journal.getRecordCount());
+        assertTrue(new File(dir, BindingJournal.SNAPSHOT_FILE).exists());
+        assertFalse(new File(dir, BindingJournal.SNAPSHOT_TMP_FILE).exists());
+
+        // changes after the compaction are replayed over the snapshot
+        Binding<IPv6Address> added = ipv6Binding(20, 1);
+        journal.bind(added);
+        journal.unbind(ipv4Binding(0, 1));
+
+        List<Binding<?>> bindings = reopen();
+        assertEquals(9, bindings.size());
+        assertEquals(2, journal.getRecordCount());
+        for (Binding<?> binding : bindings) {
+            assertFalse(binding.getAddress().equals(IPv4Address.of(0x0A000000)));
+            assertFalse(binding.getAddress().equals(IPv4Address.of(0x0A000000 + 5)));
+        }
+        assertSameBinding(added, bindings.get(bindings.size() - 1));
+    }
+
+    @Test
+    public void testChunkRollover() throws Exception {
+        int count = BindingJournal.CHUNK_SIZE / BindingJournal.RECORD_SIZE + 100;
+        for (int i = 0; i < count; i++) {
+            journal.bind(ipv4Binding(i, 1));
+        }
+        assertEquals(count, journal.getRecordCount());
+
+        List<Binding<?>> bindings = reopen();
+        assertEquals(count, bindings.size());
+        assertSameBinding(ipv4Binding(count - 1, 1), bindings.get(count - 1));
+
+        // appending into the second chunk after a reopen
+        journal.unbind(ipv4Binding(0, 1));
+        bindings = reopen();
+        assertEquals(count - 1, bindings.size());
+        assertEquals(count + 1, journal.getRecordCount());
+    }
+}
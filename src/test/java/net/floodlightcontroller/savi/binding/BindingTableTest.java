@@ -0,0 +1,300 @@
+package net.floodlightcontroller.savi.binding;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BindingTableTest {
+    private BindingTable<String> table;
+
+    @Before
+    public void setUp() {
+        table = new BindingTable<String>();
+    }
+
+    /**
+     * Keys that all start probing at the same slot of a table with the
+     * given capacity
+     */
+    private static long[] collidingKeys(int count, int capacity) {
+        long[] keys = new long[count];
+        int mask = capacity - 1;
+        int bucket = BindingTable.hash(0, 1) & mask;
+        keys[0] = 1;
+        int found = 1;
+        for(long k = 2; found < count; k++) {
+            if((BindingTable.hash(0, k) & mask) == bucket) {
+                keys[found++] = k;
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        assertTrue(table.isEmpty());
+        assertNull(table.get(1));
+        assertNull(table.put(1, "a"));
+        assertEquals("a", table.put(1, "b"));
+        assertEquals("b", table.get(1));
+        assertEquals("b", table.get(0, 1));
+
+        // the high word is part of the key
+        assertNull(table.get(1, 1));
+        assertNull(table.put(1, 1, "c"));
+        assertNull(table.put(Long.MIN_VALUE, -1, "d"));
+        assertEquals("c", table.get(1, 1));
+        assertEquals("d", table.get(Long.MIN_VALUE, -1));
+        assertTrue(table.containsKey(1, 1));
+        assertEquals(3, table.size());
+
+        assertEquals("b", table.putIfAbsent(1, "e"));
+        assertNull(table.putIfAbsent(2, "e"));
+        assertEquals("e", table.get(2));
+
+        assertEquals("c", table.remove(1, 1));
+        assertNull(table.remove(1, 1));
+        assertNull(table.get(1, 1));
+        assertFalse(table.containsKey(1, 1));
+        assertEquals("b", table.get(1));
+        assertEquals(3, table.size());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        table.put(1, null);
+    }
+
+    @Test
+    public void testCollisions() {
+        int capacity = table.capacity();
+        long[] keys = collidingKeys(6, capacity);
+        for(long key : keys) {
+            assertNull(table.put(key, "v" + key));
+        }
+        assertEquals(capacity, table.capacity());
+        for(long key : keys) {
+            assertEquals("v" + key, table.get(key));
+        }
+
+        // removing from the middle of the probe chain keeps the rest reachable
+        assertEquals("v" + keys[1], table.remove(keys[1]));
+        assertEquals("v" + keys[3], table.remove(keys[3]));
+        assertNull(table.get(keys[1]));
+        assertNull(table.get(keys[3]));
+        assertNull(table.remove(keys[3]));
+        for(int i : new int[] { 0, 2, 4, 5 }) {
+            assertEquals("v" + keys[i], table.get(keys[i]));
+        }
+        // a replace past a tombstone updates the live entry, not a copy
+        assertEquals("v" + keys[5], table.put(keys[5], "x"));
+        assertEquals("x", table.get(keys[5]));
+        assertEquals(4, table.size());
+        assertEquals(4, table.values().size());
+
+        // a missing key probes the whole chain
+        long[] more = collidingKeys(7, capacity);
+        assertNull(table.get(more[6]));
+    }
+
+    @Test
+    public void testTombstoneReuse() {
+        long[] keys = collidingKeys(7, table.capacity());
+        for(int i = 0; i < 6; i++) {
+            table.put(keys[i], "v" + i);
+        }
+        assertEquals(6, table.usedSlots());
+
+        table.remove(keys[2]);
+        assertEquals(5, table.size());
+        assertEquals(6, table.usedSlots());
+
+        // a new key on the same chain takes the first tombstone
+        assertNull(table.put(keys[6], "v6"));
+        assertEquals(6, table.size());
+        assertEquals(6, table.usedSlots());
+        assertEquals("v6", table.get(keys[6]));
+        for(int i : new int[] { 0, 1, 3, 4, 5 }) {
+            assertEquals("v" + i, table.get(keys[i]));
+        }
+
+        // churn at a steady size neither grows the table past its working
+        // size nor fills it with tombstones
+        table.clear();
+        assertEquals(BindingTable.MIN_CAPACITY, table.capacity());
+        for(long key = 0; key < 10000; key++) {
+            table.put(key, "v");
+            if(key >= 4) {
+                assertEquals("v", table.remove(key - 4));
+            }
+        }
+        assertEquals(4, table.size());
+        assertTrue(table.capacity() <= 2 * BindingTable.MIN_CAPACITY);
+        assertTrue(table.usedSlots() * 2 <= table.capacity());
+        for(long key = 9996; key < 10000; key++) {
+            assertEquals("v", table.get(key));
+        }
+    }
+
+    @Test
+    public void testResize() {
+        int count = 10000;
+        for(int i = 0; i < count; i++) {
+            assertNull(table.put(i, i, "v" + i));
+            assertTrue(table.size() * 2 <= table.capacity());
+        }
+        assertEquals(count, table.size());
+        assertTrue(table.capacity() >= 2 * count);
+        for(int i = 0; i < count; i++) {
+            assertEquals("v" + i, table.get(i, i));
+        }
+        Set<String> values = new HashSet<String>(table.values());
+        assertEquals(count, values.size());
+
+        // a resize drops the tombstones
+        for(int i = 0; i < count; i += 2) {
+            assertEquals("v" + i, table.remove(i, i));
+        }
+        int capacity = table.capacity();
+        for(int i = count; table.capacity() == capacity; i++) {
+            table.put(i, i, "v" + i);
+        }
+        assertEquals(table.size(), table.usedSlots());
+        for(int i = 1; i < count; i += 2) {
+            assertEquals("v" + i, table.get(i, i));
+        }
+
+        // a presized table does not resize
+        BindingTable<String> presized = new BindingTable<String>(count);
+        capacity = presized.capacity();
+        for(int i = 0; i < count; i++) {
+            presized.put(i, "v");
+        }
+        assertEquals(capacity, presized.capacity());
+
+        table.clear();
+        assertTrue(table.isEmpty());
+        assertEquals(BindingTable.MIN_CAPACITY, table.capacity());
+        assertNull(table.get(1, 1));
+        assertTrue(table.values().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentPutRemove() throws Exception {
+        final int writers = 4;
+        final int keysPerWriter = 2000;
+        final int rounds = 5;
+        // never removed, must stay visible while others resize the table
+        final int stable = 100;
+        for(int i = 0; i < stable; i++) {
+            table.put(-1, i, "stable" + i);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(writers);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for(int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for(int r = 0; r < rounds; r++) {
+                            for(int k = 0; k < keysPerWriter; k++) {
+                                assertNull(table.put(writer, k, "w" + writer + "r" + r));
+                            }
+                            for(int k = 0; k < keysPerWriter; k++) {
+                                assertEquals("w" + writer + "r" + r, table.get(writer, k));
+                            }
+                            // keep the odd keys of the last round
+                            for(int k = 0; k < keysPerWriter; k++) {
+                                if(r < rounds - 1 || k % 2 == 0) {
+                                    assertEquals("w" + writer + "r" + r, table.remove(writer, k));
+                                }
+                            }
+                        }
+                    } catch(Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        // a shared key everybody fights over
+        for(int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for(int i = 0; i < 10000; i++) {
+                            table.put(-2, 0, "shared" + writer);
+                            table.remove(-2, 0);
+                        }
+                    } catch(Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+        }
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                    while(done.getCount() > 0) {
+                        for(int i = 0; i < stable; i++) {
+                            assertEquals("stable" + i, table.get(-1, i));
+                        }
+                    }
+                } catch(Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        };
+        threads.add(reader);
+
+        for(Thread t : threads) {
+            t.start();
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        for(Thread t : threads) {
+            t.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        if(failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        assertNull(table.get(-2, 0));
+        assertEquals(stable + writers * keysPerWriter / 2, table.size());
+        assertEquals(table.size(), table.values().size());
+        for(int w = 0; w < writers; w++) {
+            for(int k = 0; k < keysPerWriter; k++) {
+                if(k % 2 == 0) {
+                    assertNull(table.get(w, k));
+                } else {
+                    assertEquals("w" + w + "r" + (rounds - 1), table.get(w, k));
+                }
+            }
+        }
+        for(int i = 0; i < stable; i++) {
+            assertEquals("stable" + i, table.get(-1, i));
+        }
+        assertEquals(1, Collections.frequency(table.values(), "stable0"));
+    }
+}
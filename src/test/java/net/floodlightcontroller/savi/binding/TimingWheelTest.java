@@ -0,0 +1,148 @@
+package net.floodlightcontroller.savi.binding;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.floodlightcontroller.savi.binding.TimingWheel.Timeout;
+
+public class TimingWheelTest {
+    private static final long TICK = 10;
+    private static final long START = 1000000;
+    // ticks of the lowest level
+    private static final int WHEEL_SIZE = 64;
+
+    private TimingWheel<String> wheel;
+
+    @Before
+    public void setUp() {
+        wheel = new TimingWheel<String>(TICK, START);
+    }
+
+    private static long at(long ticks) {
+        return START + ticks * TICK;
+    }
+
+    @Test
+    public void testExpiryOrder() {
+        wheel.schedule("c", at(30));
+        wheel.schedule("a", at(10));
+        wheel.schedule("b", at(20));
+        // a deadline between two ticks fires at the next one
+        wheel.schedule("d", at(30) + 1);
+        assertEquals(4, wheel.size());
+
+        assertTrue(wheel.advance(at(9)).isEmpty());
+        assertEquals(Arrays.asList("a"), wheel.advance(at(10)));
+        // advancing over several ticks returns them in deadline order
+        assertEquals(Arrays.asList("b", "c"), wheel.advance(at(30) + TICK - 1));
+        assertEquals(Arrays.asList("d"), wheel.advance(at(31)));
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.advance(at(100)).isEmpty());
+    }
+
+    @Test
+    public void testPastDeadline() {
+        wheel.advance(at(5));
+        // already due, fires at the next tick instead of being lost
+        wheel.schedule("late", at(2));
+        wheel.schedule("now", at(5));
+        assertTrue(wheel.advance(at(5)).isEmpty());
+        assertEquals(Arrays.asList("late", "now"), wheel.advance(at(6)));
+    }
+
+    @Test
+    public void testCancel() {
+        Timeout<String> a = wheel.schedule("a", at(10));
+        Timeout<String> b = wheel.schedule("b", at(10));
+        Timeout<String> c = wheel.schedule("c", at(5000));
+        assertEquals("b", b.getItem());
+
+        assertTrue(wheel.cancel(b));
+        assertFalse(wheel.cancel(b));
+        assertEquals(2, wheel.size());
+        assertEquals(Arrays.asList("a"), wheel.advance(at(10)));
+        // fired entries can no longer be cancelled
+        assertFalse(wheel.cancel(a));
+        assertEquals(1, wheel.size());
+
+        // an entry on a higher level is cancelled before it cascades
+        assertTrue(wheel.cancel(c));
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.advance(at(10000)).isEmpty());
+    }
+
+    @Test
+    public void testBeyondOneRevolution() {
+        long[] deadlines = { WHEEL_SIZE - 1, WHEEL_SIZE, WHEEL_SIZE + 1, 2 * WHEEL_SIZE + 7,
+                WHEEL_SIZE * WHEEL_SIZE - 1, WHEEL_SIZE * WHEEL_SIZE, WHEEL_SIZE * WHEEL_SIZE + 3,
+                WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE + 11 };
+        for(long deadline : deadlines) {
+            wheel.schedule("t" + deadline, at(deadline));
+        }
+        // an entry cascaded down must not fire a revolution early or late
+        for(long deadline : deadlines) {
+            assertTrue("t" + deadline, wheel.advance(at(deadline - 1)).isEmpty());
+            assertEquals(Arrays.asList("t" + deadline), wheel.advance(at(deadline)));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testScheduledAfterStart() {
+        // deadlines relative to a wheel that already turned several times
+        wheel.advance(at(3 * WHEEL_SIZE + 17));
+        wheel.schedule("near", at(3 * WHEEL_SIZE + 20));
+        wheel.schedule("far", at(3 * WHEEL_SIZE + 17 + WHEEL_SIZE * WHEEL_SIZE));
+        assertEquals(Arrays.asList("near"), wheel.advance(at(3 * WHEEL_SIZE + 20)));
+        assertTrue(wheel.advance(at(3 * WHEEL_SIZE + 16 + WHEEL_SIZE * WHEEL_SIZE)).isEmpty());
+        assertEquals(Arrays.asList("far"), wheel.advance(at(3 * WHEEL_SIZE + 17 + WHEEL_SIZE * WHEEL_SIZE)));
+    }
+
+    @Test
+    public void testRandomDeadlines() {
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<Long>();
+        List<Timeout<String>> timeouts = new ArrayList<Timeout<String>>();
+        for(int i = 0; i < 2000; i++) {
+            long deadline = 1 + random.nextInt(50000);
+            deadlines.add(deadline);
+            timeouts.add(wheel.schedule(Long.toString(deadline), at(deadline)));
+        }
+        // cancel every third entry
+        List<Long> expected = new ArrayList<Long>();
+        for(int i = 0; i < timeouts.size(); i++) {
+            if(i % 3 == 0) {
+                assertTrue(wheel.cancel(timeouts.get(i)));
+            } else {
+                expected.add(deadlines.get(i));
+            }
+        }
+        Collections.sort(expected);
+
+        List<Long> fired = new ArrayList<Long>();
+        for(long now = at(0); fired.size() < expected.size(); now += 7 * TICK) {
+            for(String item : wheel.advance(now)) {
+                long deadline = Long.parseLong(item);
+                // fired at the first advance that reached the deadline
+                assertTrue(at(deadline) <= now);
+                assertTrue(at(deadline) > now - 7 * TICK);
+                fired.add(deadline);
+            }
+        }
+        assertEquals(expected, fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTick() {
+        new TimingWheel<String>(0);
+    }
+}
@@ -0,0 +1,241 @@
+package net.floodlightcontroller.savi.flow;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.easymock.Capture;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.LogicalOFMessageCategory;
+import net.floodlightcontroller.core.SwitchDisconnectedException;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+public class FlowModBatcherTest {
+    private static final String MODULE = "savi-test";
+
+    private static final DatapathId SW1 = DatapathId.of(1);
+    private static final DatapathId SW2 = DatapathId.of(2);
+    private static final DatapathId SW3 = DatapathId.of(3);
+
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+    private IDebugCounterService debugCounterService;
+    private IOFSwitchService switchService;
+    private FlowModBatcher batcher;
+
+    /**
+     * What a switch received in one batch
+     */
+    private static class Written {
+        final Capture<Iterable<OFMessage>> batch = new Capture<Iterable<OFMessage>>();
+        final Capture<OFBarrierRequest> barrier = new Capture<OFBarrierRequest>();
+        final SettableFuture<OFBarrierReply> ack = SettableFuture.create();
+        IOFSwitch sw;
+    }
+
+    @Before
+    public void setUp() {
+        debugCounterService = new DebugCounterServiceImpl();
+        switchService = createMock(IOFSwitchService.class);
+        batcher = new FlowModBatcher(switchService, debugCounterService, MODULE);
+    }
+
+    private long counter(String name) {
+        return debugCounterService.getCounterHierarchy(MODULE, name).get(0).getCounterValue();
+    }
+
+    private OFMessage flowMod(int priority) {
+        return factory.buildFlowAdd().setPriority(priority).build();
+    }
+
+    /**
+     * A switch that expects exactly one batch followed by its barrier
+     */
+    private Written batchSwitch(DatapathId dpid) {
+        Written w = new Written();
+        w.sw = createStrictMock(IOFSwitch.class);
+        expect(w.sw.write(capture(w.batch), eq(LogicalOFMessageCategory.FLOW_MOD)))
+            .andReturn(Collections.<OFMessage>emptyList());
+        expect(w.sw.getOFFactory()).andReturn(factory);
+        expect(w.sw.writeRequest(capture(w.barrier), eq(LogicalOFMessageCategory.FLOW_MOD)))
+            .andReturn(w.ack);
+        replay(w.sw);
+        expect(switchService.getSwitch(dpid)).andReturn(w.sw).anyTimes();
+        return w;
+    }
+
+    private OFBarrierReply barrierReply(Written w) {
+        return factory.buildBarrierReply().setXid(w.barrier.getValue().getXid()).build();
+    }
+
+    @Test
+    public void testCoalescePerSwitch() throws Exception {
+        Written w1 = batchSwitch(SW1);
+        Written w2 = batchSwitch(SW2);
+        replay(switchService);
+
+        List<OFMessage> sent1 = Arrays.asList(flowMod(1), flowMod(2), flowMod(3));
+        List<OFMessage> sent2 = Arrays.asList(flowMod(4), flowMod(5));
+        batcher.begin();
+        batcher.write(SW1, sent1.get(0));
+        batcher.write(SW2, sent2.get(0));
+        batcher.write(SW1, sent1.get(1));
+        // a nested batch joins the outer one
+        batcher.begin();
+        batcher.write(SW1, sent1.get(2));
+        batcher.write(SW2, sent2.get(1));
+        ListenableFuture<List<OFBarrierReply>> inner = batcher.commit();
+        assertTrue(inner.isDone());
+        assertTrue(inner.get().isEmpty());
+        assertFalse(w1.batch.hasCaptured());
+        assertFalse(w2.batch.hasCaptured());
+
+        batcher.commit();
+        // one write per switch, in order, each followed by a barrier
+        verify(w1.sw, w2.sw);
+        assertEquals(sent1, ImmutableList.copyOf(w1.batch.getValue()));
+        assertEquals(sent2, ImmutableList.copyOf(w2.batch.getValue()));
+        assertTrue(w1.barrier.hasCaptured());
+        assertTrue(w2.barrier.hasCaptured());
+        assertEquals(2, counter("flowmod-batches"));
+        assertEquals(5, counter("flowmod-batched-messages"));
+        assertEquals(0, counter("flowmod-unbatched-messages"));
+    }
+
+    @Test
+    public void testCompletesOnBarrierReplies() throws Exception {
+        Written w1 = batchSwitch(SW1);
+        Written w2 = batchSwitch(SW2);
+        replay(switchService);
+
+        batcher.begin();
+        batcher.write(SW1, flowMod(1));
+        batcher.write(SW2, flowMod(2));
+        ListenableFuture<List<OFBarrierReply>> ack = batcher.commit();
+        assertFalse(ack.isDone());
+
+        OFBarrierReply r1 = barrierReply(w1);
+        OFBarrierReply r2 = barrierReply(w2);
+        w1.ack.set(r1);
+        assertFalse(ack.isDone());
+        assertEquals(1, counter("flowmod-barrier-acks"));
+        w2.ack.set(r2);
+        assertTrue(ack.isDone());
+        assertEquals(Arrays.asList(r1, r2), ack.get());
+        assertEquals(2, counter("flowmod-barrier-acks"));
+        assertEquals(0, counter("flowmod-barrier-failures"));
+    }
+
+    @Test
+    public void testFailsOnDisconnect() throws Exception {
+        Written w1 = batchSwitch(SW1);
+        Written w2 = batchSwitch(SW2);
+        replay(switchService);
+
+        batcher.begin();
+        batcher.write(SW1, flowMod(1));
+        batcher.write(SW2, flowMod(2));
+        ListenableFuture<List<OFBarrierReply>> ack = batcher.commit();
+        w1.ack.set(barrierReply(w1));
+        w2.ack.setException(new SwitchDisconnectedException(SW2));
+
+        try {
+            ack.get();
+            fail("Expected the batch to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SwitchDisconnectedException);
+        }
+        assertEquals(1, counter("flowmod-barrier-acks"));
+        assertEquals(1, counter("flowmod-barrier-failures"));
+    }
+
+    @Test
+    public void testFailsOnTimeout() throws Exception {
+        Written w1 = batchSwitch(SW1);
+        replay(switchService);
+
+        batcher.begin();
+        batcher.write(SW1, flowMod(1));
+        ListenableFuture<List<OFBarrierReply>> ack = batcher.commit();
+        // what the connection delivers when the barrier is not answered in time
+        w1.ack.setException(new TimeoutException("timeout - did not receive answer"));
+
+        try {
+            ack.get();
+            fail("Expected the batch to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(0, counter("flowmod-barrier-acks"));
+        assertEquals(1, counter("flowmod-barrier-failures"));
+    }
+
+    @Test
+    public void testUnsentMessagesDropped() throws Exception {
+        IOFSwitch sw1 = createMock(IOFSwitch.class);
+        List<OFMessage> sent = Arrays.asList(flowMod(1), flowMod(2));
+        expect(sw1.write(sent, LogicalOFMessageCategory.FLOW_MOD))
+            .andReturn(Collections.singletonList(sent.get(1)));
+        replay(sw1);
+        expect(switchService.getSwitch(SW1)).andReturn(sw1).anyTimes();
+        // not connected
+        expect(switchService.getSwitch(SW3)).andReturn(null).anyTimes();
+        replay(switchService);
+
+        batcher.begin();
+        batcher.write(SW1, sent.get(0));
+        batcher.write(SW1, sent.get(1));
+        batcher.write(SW3, flowMod(3));
+        ListenableFuture<List<OFBarrierReply>> ack = batcher.commit();
+
+        // no barrier for a batch the switch did not take
+        verify(sw1);
+        assertTrue(ack.isDone());
+        assertTrue(ack.get().isEmpty());
+        assertEquals(0, counter("flowmod-batches"));
+        assertEquals(2, counter("flowmod-dropped-messages"));
+    }
+
+    @Test
+    public void testWriteThroughOutsideBatch() throws Exception {
+        OFMessage m = flowMod(1);
+        IOFSwitch sw1 = createMock(IOFSwitch.class);
+        expect(sw1.write(m, LogicalOFMessageCategory.FLOW_MOD)).andReturn(true);
+        replay(sw1);
+        expect(switchService.getSwitch(SW1)).andReturn(sw1).anyTimes();
+        expect(switchService.getSwitch(SW3)).andReturn(null).anyTimes();
+        replay(switchService);
+
+        assertTrue(batcher.write(SW1, m));
+        assertFalse(batcher.write(SW3, flowMod(2)));
+        verify(sw1);
+        assertEquals(1, counter("flowmod-unbatched-messages"));
+        assertEquals(1, counter("flowmod-dropped-messages"));
+
+        // empty and unmatched commits have nothing to wait for
+        batcher.begin();
+        assertTrue(batcher.commit().get().isEmpty());
+        assertTrue(batcher.commit().get().isEmpty());
+    }
+}
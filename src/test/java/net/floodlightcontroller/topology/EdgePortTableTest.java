@@ -0,0 +1,78 @@
+package net.floodlightcontroller.topology;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import junit.framework.TestCase;
+import net.floodlightcontroller.routing.Link;
+
+public class EdgePortTableTest extends TestCase {
+
+    private static void addLink(Map<NodePortTuple, Set<Link>> links,
+                                long src, int srcPort, long dst, int dstPort) {
+        Link l = new Link(DatapathId.of(src), OFPort.of(srcPort),
+                          DatapathId.of(dst), OFPort.of(dstPort), U64.ZERO);
+        NodePortTuple s = new NodePortTuple(l.getSrc(), l.getSrcPort());
+        NodePortTuple d = new NodePortTuple(l.getDst(), l.getDstPort());
+        if (!links.containsKey(s)) links.put(s, new HashSet<Link>());
+        if (!links.containsKey(d)) links.put(d, new HashSet<Link>());
+        links.get(s).add(l);
+        links.get(d).add(l);
+    }
+
+    @Test
+    public void testLookup() {
+        Map<NodePortTuple, Set<Link>> allLinks = new HashMap<NodePortTuple, Set<Link>>();
+        Map<NodePortTuple, Set<Link>> domainLinks = new HashMap<NodePortTuple, Set<Link>>();
+        addLink(allLinks, 1, 1, 2, 1);
+        addLink(allLinks, 2, 1, 1, 1);
+        addLink(domainLinks, 1, 1, 2, 1);
+        addLink(domainLinks, 2, 1, 1, 1);
+        // a tunnel, not part of an openflow domain
+        addLink(allLinks, 2, 70000, 3, 4095);
+        // a port whose links were all removed
+        domainLinks.put(new NodePortTuple(DatapathId.of(3), OFPort.of(8)),
+                        Collections.<Link>emptySet());
+
+        EdgePortTable table = new EdgePortTable(allLinks, domainLinks);
+        assertEquals(3, table.getSwitchCount());
+
+        assertFalse(table.isEdge(DatapathId.of(1), OFPort.of(1)));
+        assertTrue(table.isEdge(DatapathId.of(1), OFPort.of(2)));
+        assertTrue(table.isEdge(DatapathId.of(1), OFPort.of(65)));
+        assertFalse(table.isEdge(DatapathId.of(2), OFPort.of(70000)));
+        assertTrue(table.isEdge(DatapathId.of(2), OFPort.of(70001)));
+        assertFalse(table.isEdge(DatapathId.of(3), OFPort.of(4095)));
+        assertTrue(table.isEdge(DatapathId.of(3), OFPort.of(8)));
+        assertTrue(table.isEdge(DatapathId.of(3), OFPort.LOCAL));
+        assertTrue(table.isEdge(DatapathId.of(4), OFPort.of(1)));
+
+        assertFalse(table.isAttachmentPointPort(DatapathId.of(2), OFPort.of(1)));
+        assertTrue(table.isAttachmentPointPort(DatapathId.of(2), OFPort.of(70000)));
+        assertFalse(table.isAttachmentPointPort(DatapathId.of(3), OFPort.of(8)));
+        assertTrue(table.isAttachmentPointPort(DatapathId.of(4), OFPort.of(1)));
+    }
+
+    @Test
+    public void testManySwitches() {
+        Map<NodePortTuple, Set<Link>> allLinks = new HashMap<NodePortTuple, Set<Link>>();
+        for (int i = 1; i < 1000; i++) {
+            addLink(allLinks, i * 0x100000000L, 1 + i % 48, (i + 1) * 0x100000000L, 49);
+        }
+        EdgePortTable table = new EdgePortTable(allLinks, allLinks);
+        for (int i = 1; i < 1000; i++) {
+            DatapathId sw = DatapathId.of(i * 0x100000000L);
+            assertFalse(table.isEdge(sw, OFPort.of(1 + i % 48)));
+            assertTrue(table.isEdge(sw, OFPort.of(50)));
+            assertEquals(i == 1, table.isEdge(sw, OFPort.of(49)));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import junit.framework.TestCase;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.routing.Route;
+import net.floodlightcontroller.routing.RouteId;
+
+public class RouteCacheTest extends TestCase {
+
+    /**
+     * Routes over a line of switches 1, 2, 3, ... from port 2 to port 1
+     */
+    private static class LineLoader implements RouteCache.Loader {
+        int loads;
+
+        @Override
+        public List<Route> load(RouteId id, int maxRoutes) {
+            loads++;
+            List<NodePortTuple> path = new ArrayList<NodePortTuple>();
+            for (long sw = id.getSrc().getLong(); sw < id.getDst().getLong(); sw++) {
+                path.add(new NodePortTuple(DatapathId.of(sw), OFPort.of(2)));
+                path.add(new NodePortTuple(DatapathId.of(sw + 1), OFPort.of(1)));
+            }
+            if (path.isEmpty()) return Collections.emptyList();
+            List<Route> routes = new ArrayList<Route>();
+            for (int i = 0; i < maxRoutes; i++) {
+                routes.add(new Route(id, path));
+            }
+            return routes;
+        }
+    }
+
+    private static RouteId id(long src, long dst) {
+        return new RouteId(DatapathId.of(src), DatapathId.of(dst));
+    }
+
+    private static Link link(long src) {
+        return new Link(DatapathId.of(src), OFPort.of(2), DatapathId.of(src + 1), OFPort.of(1), U64.ZERO);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        RouteCache cache = new RouteCache(1024 * 1024, 3);
+        LineLoader loader = new LineLoader();
+        long g = cache.getGeneration();
+
+        Route r = cache.getRoute(id(1, 3), loader, g);
+        assertEquals(4, r.getPath().size());
+        assertSame(r, cache.getRoute(id(1, 3), loader, g));
+        assertEquals(1, loader.loads);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // no route is cached too
+        assertNull(cache.getRoute(id(3, 1), loader, g));
+        assertNull(cache.getRoute(id(3, 1), loader, g));
+        assertEquals(2, loader.loads);
+
+        // the alternatives are computed when they are asked for
+        assertEquals(3, cache.getRoutes(id(1, 3), 3, loader, g).size());
+        assertEquals(3, loader.loads);
+        assertEquals(2, cache.getRoutes(id(1, 3), 2, loader, g).size());
+        assertEquals(r.getPath(), cache.getRoute(id(1, 3), loader, g).getPath());
+        assertEquals(3, loader.loads);
+
+        // an added link keeps the shortest route, not the alternatives
+        long g2 = cache.invalidate(Collections.<Link>emptyList(), Collections.<DatapathId>emptySet(), true);
+        assertEquals(r.getPath(), cache.getRoute(id(1, 3), loader, g2).getPath());
+        assertEquals(3, loader.loads);
+        assertEquals(3, cache.getRoutes(id(1, 3), 3, loader, g2).size());
+        assertEquals(4, loader.loads);
+    }
+
+    @Test
+    public void testInvalidate() {
+        RouteCache cache = new RouteCache(1024 * 1024, 1);
+        LineLoader loader = new LineLoader();
+        long g = cache.getGeneration();
+        cache.getRoute(id(1, 3), loader, g);
+        cache.getRoute(id(3, 5), loader, g);
+        cache.getRoute(id(1, 5), loader, g);
+        cache.getRoute(id(6, 7), loader, g);
+        assertEquals(4, cache.size());
+
+        // the link 3 -> 4 is gone
+        long g2 = cache.invalidate(Arrays.asList(link(3)), Collections.<DatapathId>emptySet(), false);
+        assertTrue(g2 > g);
+        assertEquals(2, cache.size());
+        cache.getRoute(id(1, 3), loader, g2);
+        cache.getRoute(id(6, 7), loader, g2);
+        assertEquals(4, loader.loads);
+
+        // routes toward 7 changed
+        long g3 = cache.invalidate(Collections.<Link>emptyList(), Collections.singleton(DatapathId.of(7)), false);
+        assertEquals(1, cache.size());
+
+        // an instance of an older generation does not fill the cache
+        cache.getRoute(id(1, 5), loader, g2);
+        assertEquals(1, cache.size());
+        cache.getRoute(id(1, 5), loader, g3);
+        assertEquals(2, cache.size());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void testBoundedByMemory() {
+        long maxBytes = 256 * 1024;
+        RouteCache cache = new RouteCache(maxBytes, 1);
+        LineLoader loader = new LineLoader();
+        long g = cache.getGeneration();
+
+        // a few popular pairs
+        for (int round = 0; round < 5; round++) {
+            for (long dst = 2; dst < 12; dst++) {
+                cache.getRoute(id(1, dst), loader, g);
+            }
+        }
+        // and a scan of many pairs seen once, as cheap to compute
+        for (long src = 100; src < 5000; src++) {
+            cache.getRoute(id(src, src + 1), loader, g);
+        }
+        assertTrue(cache.weight() <= maxBytes);
+        assertTrue(cache.size() > 100);
+
+        int loads = loader.loads;
+        for (long dst = 2; dst < 12; dst++) {
+            cache.getRoute(id(1, dst), loader, g);
+        }
+        assertEquals(loads, loader.loads);
+    }
+}
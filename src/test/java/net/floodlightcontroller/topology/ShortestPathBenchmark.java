@@ -0,0 +1,127 @@
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+/**
+ * Time of computing all destination rooted trees of a topology, by the
+ * map based TopologyInstance.dijkstra() and by {@link ShortestPathEngine}
+ * with one up to the given number of threads.
+ *
+ * The topologies are leaf-spine fabrics of the given number of switches,
+ * one spine per eight leaves and every leaf connected to every spine of
+ * its pod of four spines, with a few random cross links.
+ *
+ * Not a unit test, run the main method with the test classpath:
+ * ShortestPathBenchmark [max threads] [rounds] [switches...]
+ */
+public class ShortestPathBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) :
+            Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (int i = 2; i < args.length; i++) {
+            sizes.add(Integer.parseInt(args[i]));
+        }
+        if (sizes.isEmpty()) {
+            Collections.addAll(sizes, 100, 500, 1000, 2000);
+        }
+
+        for (int size : sizes) {
+            Map<DatapathId, Set<Link>> links = fabric(size, new Random(size));
+            ShortestPathEngine.Graph graph =
+                    new ShortestPathEngine.Graph(links, Collections.<Link, Integer>emptyMap());
+            List<DatapathId> roots = new ArrayList<DatapathId>(links.keySet());
+            System.out.println("switches=" + graph.getNodeCount() + " links=" + graph.getLinkCount());
+
+            // the first rounds warm up the JIT
+            for (int round = 0; round < rounds; round++) {
+                System.out.println(String.format("  round %d  map-dijkstra       %8.1f ms",
+                        round, mapDijkstra(links, roots) / 1e6));
+            }
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                ShortestPathEngine engine = new ShortestPathEngine(threads);
+                for (int round = 0; round < rounds; round++) {
+                    System.out.println(String.format("  round %d  engine %3d threads %8.1f ms",
+                            round, threads, engine(engine, graph, roots) / 1e6));
+                }
+                engine.shutdown();
+            }
+        }
+    }
+
+    private static long mapDijkstra(Map<DatapathId, Set<Link>> links, List<DatapathId> roots) {
+        TopologyInstance ti = new TopologyInstance(new HashMap<DatapathId, Set<OFPort>>(),
+                new HashSet<NodePortTuple>(), new HashMap<NodePortTuple, Set<Link>>(),
+                new HashSet<NodePortTuple>(), new HashSet<NodePortTuple>(),
+                new HashMap<NodePortTuple, Set<Link>>(), new HashMap<DatapathId, Set<OFPort>>());
+        long start = System.nanoTime();
+        for (DatapathId root : roots) {
+            ti.dijkstra(links, root, null, true);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long engine(ShortestPathEngine engine, final ShortestPathEngine.Graph graph,
+                               List<DatapathId> roots) {
+        long start = System.nanoTime();
+        BroadcastTree[] trees = engine.computeAll(roots, new ShortestPathEngine.TreeFunction() {
+            @Override
+            public BroadcastTree computeTree(DatapathId root) {
+                return graph.dstRootedTree(root);
+            }
+        });
+        long time = System.nanoTime() - start;
+        for (BroadcastTree tree : trees) {
+            if (tree == null) throw new IllegalStateException("missing tree");
+        }
+        return time;
+    }
+
+    private static Map<DatapathId, Set<Link>> fabric(int size, Random random) {
+        int spines = Math.max(4, size / 9);
+        int leaves = size - spines;
+        Map<DatapathId, Set<Link>> links = new HashMap<DatapathId, Set<Link>>();
+        int[] ports = new int[size + 1];
+        for (int leaf = 1; leaf <= leaves; leaf++) {
+            // a pod of four spines
+            int pod = (leaf - 1) % (spines / 4);
+            for (int k = 0; k < 4; k++) {
+                connect(links, ports, leaf, leaves + 1 + pod * 4 + k);
+            }
+        }
+        for (int i = 0; i < size / 10; i++) {
+            int a = 1 + random.nextInt(leaves);
+            int b = 1 + random.nextInt(leaves);
+            if (a != b) connect(links, ports, a, b);
+        }
+        return links;
+    }
+
+    private static void connect(Map<DatapathId, Set<Link>> links, int[] ports, int a, int b) {
+        int pa = ++ports[a];
+        int pb = ++ports[b];
+        Link ab = new Link(DatapathId.of(a), OFPort.of(pa), DatapathId.of(b), OFPort.of(pb), U64.ZERO);
+        Link ba = new Link(DatapathId.of(b), OFPort.of(pb), DatapathId.of(a), OFPort.of(pa), U64.ZERO);
+        for (DatapathId sw : new DatapathId[] { ab.getSrc(), ab.getDst() }) {
+            if (!links.containsKey(sw)) links.put(sw, new HashSet<Link>());
+            links.get(sw).add(ab);
+            links.get(sw).add(ba);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import junit.framework.TestCase;
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Link;
+
+public class ShortestPathEngineTest extends TestCase {
+
+    private TopologyInstance emptyInstance() {
+        return new TopologyInstance(new HashMap<DatapathId, Set<OFPort>>(),
+                new HashSet<NodePortTuple>(), new HashMap<NodePortTuple, Set<Link>>(),
+                new HashSet<NodePortTuple>(), new HashSet<NodePortTuple>(),
+                new HashMap<NodePortTuple, Set<Link>>(), new HashMap<DatapathId, Set<OFPort>>());
+    }
+
+    private static void addLink(Map<DatapathId, Set<Link>> links, int[] ports, int a, int b) {
+        Link l = new Link(DatapathId.of(a), OFPort.of(++ports[a]),
+                          DatapathId.of(b), OFPort.of(++ports[b]), U64.ZERO);
+        for (DatapathId sw : new DatapathId[] { l.getSrc(), l.getDst() }) {
+            if (!links.containsKey(sw)) links.put(sw, new HashSet<Link>());
+            links.get(sw).add(l);
+        }
+    }
+
+    @Test
+    public void testSameCostsAsDijkstra() {
+        Random random = new Random(1);
+        TopologyInstance ti = emptyInstance();
+        ShortestPathEngine engine = new ShortestPathEngine(4);
+        try {
+            for (int iter = 0; iter < 20; iter++) {
+                int n = 2 + random.nextInt(60);
+                int[] ports = new int[n + 1];
+                Map<DatapathId, Set<Link>> links = new HashMap<DatapathId, Set<Link>>();
+                Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
+                // unidirectional links, some of them expensive like tunnels
+                for (int i = 0; i < 3 * n; i++) {
+                    int a = 1 + random.nextInt(n);
+                    int b = 1 + random.nextInt(n);
+                    addLink(links, ports, a, b);
+                }
+                for (Set<Link> ls : links.values()) {
+                    for (Link l : ls) {
+                        if (random.nextInt(5) == 0) linkCost.put(l, n + 1);
+                    }
+                }
+
+                final ShortestPathEngine.Graph graph = new ShortestPathEngine.Graph(links, linkCost);
+                List<DatapathId> roots = new ArrayList<DatapathId>(links.keySet());
+                BroadcastTree[] trees = engine.computeAll(roots, new ShortestPathEngine.TreeFunction() {
+                    @Override
+                    public BroadcastTree computeTree(DatapathId root) {
+                        return graph.dstRootedTree(root);
+                    }
+                });
+
+                for (int i = 0; i < trees.length; i++) {
+                    BroadcastTree expected = ti.dijkstra(links, roots.get(i), linkCost, true);
+                    assertEquals(expected.getCosts(), trees[i].getCosts());
+                    assertEquals(expected.getLinks().keySet(), trees[i].getLinks().keySet());
+                    for (Map.Entry<DatapathId, Link> e : trees[i].getLinks().entrySet()) {
+                        Link l = e.getValue();
+                        if (l == null) {
+                            assertTrue(e.getKey().equals(roots.get(i)) ||
+                                    trees[i].getCost(e.getKey()) == TopologyInstance.MAX_PATH_WEIGHT);
+                            continue;
+                        }
+                        int w = linkCost.containsKey(l) ? linkCost.get(l) : 1;
+                        assertEquals(e.getKey(), l.getSrc());
+                        assertEquals(trees[i].getCost(l.getSrc()), trees[i].getCost(l.getDst()) + w);
+                    }
+                }
+            }
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void testUnknownRoot() {
+        Map<DatapathId, Set<Link>> links = new HashMap<DatapathId, Set<Link>>();
+        addLink(links, new int[3], 1, 2);
+        ShortestPathEngine.Graph graph = new ShortestPathEngine.Graph(links, null);
+        assertEquals(2, graph.getNodeCount());
+        assertEquals(1, graph.getLinkCount());
+        assertNull(graph.dstRootedTree(DatapathId.of(3)));
+        BroadcastTree tree = graph.dstRootedTree(DatapathId.of(2));
+        assertEquals(1, tree.getCost(DatapathId.of(1)));
+        tree = graph.dstRootedTree(DatapathId.of(1));
+        assertEquals(TopologyInstance.MAX_PATH_WEIGHT, tree.getCost(DatapathId.of(2)));
+    }
+    @Test
+    public void testShortestPathWithExclusions() {
+        // 1 -> 2 -> 4 and 1 -> 3 -> 4
+        Map<DatapathId, Set<Link>> links = new HashMap<DatapathId, Set<Link>>();
+        int[] ports = new int[5];
+        addLink(links, ports, 1, 2);
+        addLink(links, ports, 2, 4);
+        addLink(links, ports, 1, 3);
+        addLink(links, ports, 3, 4);
+        Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
+        for (Link l : links.get(DatapathId.of(3))) {
+            linkCost.put(l, 2);
+        }
+        ShortestPathEngine.Graph graph = new ShortestPathEngine.Graph(links, linkCost);
+        Set<Link> noLinks = new HashSet<Link>();
+        Set<DatapathId> noNodes = new HashSet<DatapathId>();
+
+        List<Link> path = graph.shortestPath(DatapathId.of(1), DatapathId.of(4), noLinks, noNodes);
+        assertEquals(2, path.size());
+        assertEquals(DatapathId.of(2), path.get(0).getDst());
+        assertEquals(DatapathId.of(4), path.get(1).getDst());
+
+        Set<Link> excludedLinks = new HashSet<Link>();
+        excludedLinks.add(path.get(0));
+        path = graph.shortestPath(DatapathId.of(1), DatapathId.of(4), excludedLinks, noNodes);
+        assertEquals(DatapathId.of(3), path.get(0).getDst());
+
+        Set<DatapathId> excludedNodes = new HashSet<DatapathId>();
+        excludedNodes.add(DatapathId.of(3));
+        assertNull(graph.shortestPath(DatapathId.of(1), DatapathId.of(4), excludedLinks, excludedNodes));
+        assertNull(graph.shortestPath(DatapathId.of(4), DatapathId.of(1), noLinks, noNodes));
+        assertTrue(graph.shortestPath(DatapathId.of(1), DatapathId.of(1), noLinks, noNodes).isEmpty());
+    }
+}
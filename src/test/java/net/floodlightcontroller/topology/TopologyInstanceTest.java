@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -36,6 +37,8 @@ import net.floodlightcontroller.debugevent.MockDebugEventService;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscovery;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.Route;
 import net.floodlightcontroller.topology.NodePortTuple;
 import net.floodlightcontroller.topology.TopologyInstance;
 import net.floodlightcontroller.topology.TopologyManager;
@@ -478,4 +481,111 @@ public class TopologyInstanceTest {
                 verifyClusters(expectedClusters);
         }
     }
+
+    /**
+     * Trees of an instance computed from the previous one must equal the
+     * trees computed from scratch.
+     */
+    protected void verifyIncrementalTrees() {
+        TopologyInstance ti = topologyManager.getCurrentInstance();
+        TopologyInstance full = new TopologyInstance(ti.switchPorts,
+                ti.blockedPorts, ti.switchPortLinks, ti.broadcastDomainPorts,
+                ti.tunnelPorts, ti.allLinks, ti.allPorts);
+        full.compute();
+        verifyTrees(full.destinationRootedFullTrees, ti.destinationRootedFullTrees);
+        verifyTrees(full.destinationRootedTrees, ti.destinationRootedTrees);
+    }
+
+    protected void verifyTrees(Map<DatapathId, BroadcastTree> expected,
+                               Map<DatapathId, BroadcastTree> computed) {
+        assertEquals(expected.keySet(), computed.keySet());
+        for (DatapathId root : expected.keySet()) {
+            assertEquals(expected.get(root).getCosts(), computed.get(root).getCosts());
+        }
+    }
+
+    @Test
+    public void testIncrementalRecomputation() throws Exception {
+        int [][] linkArray = {
+                              {1, 1, 2, 1, DIRECT_LINK},
+                              {2, 1, 1, 1, DIRECT_LINK},
+                              {2, 2, 3, 1, DIRECT_LINK},
+                              {3, 1, 2, 2, DIRECT_LINK},
+                              {3, 2, 4, 1, DIRECT_LINK},
+                              {4, 1, 3, 2, DIRECT_LINK},
+                              {4, 2, 1, 2, DIRECT_LINK},
+                              {1, 2, 4, 2, DIRECT_LINK},
+        };
+        createTopologyFromLinks(linkArray);
+        TopologyInstance ti = topologyManager.getCurrentInstance();
+        assertEquals(2, ti.getCost(DatapathId.of(1), DatapathId.of(3)));
+        verifyIncrementalTrees();
+
+        // a link of the ring goes down, the trees using it are repaired
+        topologyManager.removeLink(DatapathId.of(1), OFPort.of(1), DatapathId.of(2), OFPort.of(1));
+        topologyManager.removeLink(DatapathId.of(2), OFPort.of(1), DatapathId.of(1), OFPort.of(1));
+        topologyManager.createNewInstance();
+        ti = topologyManager.getCurrentInstance();
+        assertEquals(3, ti.getCost(DatapathId.of(1), DatapathId.of(2)));
+        verifyIncrementalTrees();
+
+        // a shortcut comes up
+        int [][] shortcut = {
+                             {1, 3, 3, 3, DIRECT_LINK},
+                             {3, 3, 1, 3, DIRECT_LINK},
+        };
+        createTopologyFromLinks(shortcut);
+        ti = topologyManager.getCurrentInstance();
+        assertEquals(1, ti.getCost(DatapathId.of(1), DatapathId.of(3)));
+        assertEquals(2, ti.getCost(DatapathId.of(1), DatapathId.of(2)));
+        verifyIncrementalTrees();
+
+        // a switch leaves
+        topologyManager.removeLink(DatapathId.of(3), OFPort.of(1), DatapathId.of(2), OFPort.of(2));
+        topologyManager.removeLink(DatapathId.of(2), OFPort.of(2), DatapathId.of(3), OFPort.of(1));
+        topologyManager.createNewInstance();
+        ti = topologyManager.getCurrentInstance();
+        assertFalse(ti.routeExists(DatapathId.of(1), DatapathId.of(2)));
+        verifyIncrementalTrees();
+    }
+    @Test
+    public void testAlternativeRoutes() throws Exception {
+        int [][] linkArray = {
+                              {1, 1, 2, 1, DIRECT_LINK},
+                              {2, 1, 1, 1, DIRECT_LINK},
+                              {2, 2, 3, 1, DIRECT_LINK},
+                              {3, 1, 2, 2, DIRECT_LINK},
+                              {3, 2, 4, 1, DIRECT_LINK},
+                              {4, 1, 3, 2, DIRECT_LINK},
+                              {4, 2, 1, 2, DIRECT_LINK},
+                              {1, 2, 4, 2, DIRECT_LINK},
+        };
+        createTopologyFromLinks(linkArray);
+        TopologyInstance ti = topologyManager.getCurrentInstance();
+
+        // both ways around the ring, then nothing else
+        List<Route> routes = ti.getRoutes(DatapathId.of(1), DatapathId.of(3));
+        assertEquals(2, routes.size());
+        assertEquals(4, routes.get(0).getPath().size());
+        assertEquals(4, routes.get(1).getPath().size());
+        assertFalse(routes.get(0).getPath().equals(routes.get(1).getPath()));
+        assertEquals(routes.get(0), ti.getRoute(DatapathId.of(1), DatapathId.of(3), U64.of(0)));
+
+        // the shortest route first
+        routes = ti.getRoutes(DatapathId.of(1), DatapathId.of(2));
+        assertEquals(2, routes.size());
+        assertEquals(2, routes.get(0).getPath().size());
+        assertEquals(6, routes.get(1).getPath().size());
+
+        // routes over a link that went down are not served again
+        topologyManager.removeLink(DatapathId.of(1), OFPort.of(1), DatapathId.of(2), OFPort.of(1));
+        topologyManager.removeLink(DatapathId.of(2), OFPort.of(1), DatapathId.of(1), OFPort.of(1));
+        topologyManager.createNewInstance();
+        ti = topologyManager.getCurrentInstance();
+        routes = ti.getRoutes(DatapathId.of(1), DatapathId.of(2));
+        assertEquals(1, routes.size());
+        assertEquals(6, routes.get(0).getPath().size());
+        assertEquals(6, ti.getRoute(DatapathId.of(1), DatapathId.of(2), U64.of(0)).getPath().size());
+        assertTrue(ti.getRoutes(DatapathId.of(1), DatapathId.of(1)).isEmpty());
+    }
 }
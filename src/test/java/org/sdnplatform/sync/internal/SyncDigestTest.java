@@ -0,0 +1,181 @@
+package org.sdnplatform.sync.internal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.MockDebugCounterService;
+import net.floodlightcontroller.debugevent.IDebugEventService;
+import net.floodlightcontroller.debugevent.MockDebugEventService;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.threadpool.ThreadPool;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.error.SyncException;
+import org.sdnplatform.sync.internal.config.Node;
+import org.sdnplatform.sync.internal.config.PropertyCCProvider;
+import org.sdnplatform.sync.internal.store.MerkleTree;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.util.CryptoUtil;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+/**
+ * Antientropy between two nodes whose stores differ in a few keys: the
+ * SYNC_DIGEST / SYNC_DIGEST_REPLY exchange must lead to offers of these
+ * keys only
+ */
+public class SyncDigestTest {
+    protected final static ObjectMapper mapper = new ObjectMapper();
+
+    @Rule
+    public TemporaryFolder keyStoreFolder = new TemporaryFolder();
+
+    protected File keyStoreFile;
+    protected String keyStorePassword = "verysecurepassword";
+
+    ThreadPool tp;
+    ArrayList<Node> nodes;
+    OfferRecorder[] syncManagers;
+
+    /**
+     * Records the keys of the global store offered to this node
+     */
+    protected static class OfferRecorder extends SyncManager {
+        final Set<String> offered =
+                Collections.synchronizedSet(new HashSet<String>());
+
+        @Override
+        public boolean handleSyncOffer(String storeName, byte[] key,
+                                       Iterable<VectorClock> versions)
+                throws SyncException {
+            if ("global".equals(storeName))
+                offered.add(new String(key));
+            return super.handleSyncOffer(storeName, key, versions);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        keyStoreFile = new File(keyStoreFolder.getRoot(), "keystore.jceks");
+        CryptoUtil.writeSharedSecret(keyStoreFile.getAbsolutePath(),
+                                     keyStorePassword,
+                                     CryptoUtil.secureRandom(16));
+
+        tp = new ThreadPool();
+
+        nodes = new ArrayList<Node>();
+        nodes.add(new Node("localhost", 40111, (short)1, (short)1));
+        nodes.add(new Node("localhost", 40112, (short)2, (short)1));
+        String nodeString = mapper.writeValueAsString(nodes);
+
+        syncManagers = new OfferRecorder[2];
+        for (int i = 0; i < syncManagers.length; i++) {
+            FloodlightModuleContext fmc = new FloodlightModuleContext();
+            OfferRecorder syncManager = new OfferRecorder();
+            fmc.addService(IThreadPoolService.class, tp);
+            fmc.addService(IDebugCounterService.class,
+                           new MockDebugCounterService());
+            fmc.addService(IDebugEventService.class,
+                           new MockDebugEventService());
+            fmc.addConfigParam(syncManager, "configProviders",
+                               PropertyCCProvider.class.getName());
+            fmc.addConfigParam(syncManager, "nodes", nodeString);
+            fmc.addConfigParam(syncManager, "thisNode",
+                               "" + nodes.get(i).getNodeId());
+            fmc.addConfigParam(syncManager, "persistenceEnabled", "false");
+            fmc.addConfigParam(syncManager, "authScheme", "CHALLENGE_RESPONSE");
+            fmc.addConfigParam(syncManager, "keyStorePath",
+                               keyStoreFile.getAbsolutePath());
+            fmc.addConfigParam(syncManager, "keyStorePassword",
+                               keyStorePassword);
+            tp.init(fmc);
+            syncManager.init(fmc);
+            tp.startUp(fmc);
+            syncManager.startUp(fmc);
+            syncManager.registerStore("global", Scope.GLOBAL);
+            syncManagers[i] = syncManager;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        tp.getScheduledExecutor().shutdownNow();
+        tp = null;
+        for (SyncManager syncManager : syncManagers) {
+            syncManager.shutdown();
+        }
+        syncManagers = null;
+    }
+
+    private static void write(SyncManager syncManager, String key,
+                              String value, VectorClock clock)
+            throws Exception {
+        syncManager.writeSyncValue("global", Scope.GLOBAL, false,
+                                   key.getBytes(),
+                                   Arrays.asList(new Versioned<byte[]>(
+                                           value.getBytes(), clock)));
+    }
+
+    @Test
+    public void testOnlyDivergentKeysOffered() throws Exception {
+        SyncManagerTest.waitForFullMesh(syncManagers, 2000);
+        // let the antientropy run on connection find the stores still empty
+        Thread.sleep(500);
+
+        // a key newer on node 1 and keys only node 1 has
+        Set<String> divergent =
+                new HashSet<String>(Arrays.asList("key5", "new0", "new1"));
+        Set<Integer> divergentLeaves = new HashSet<Integer>();
+        for (String key : divergent) {
+            divergentLeaves.add(MerkleTree.getLeaf(new ByteArray(key.getBytes())));
+        }
+
+        // the same keys on both nodes, keeping the leaves of the divergent
+        // keys to them since whole leaves are offered
+        for (int i = 0; i < 500; i++) {
+            String key = "key" + i;
+            if (!divergent.contains(key) &&
+                divergentLeaves.contains(MerkleTree.getLeaf(
+                        new ByteArray(key.getBytes()))))
+                continue;
+            for (SyncManager syncManager : syncManagers) {
+                write(syncManager, key, "a", TUtils.getClockT(1, 1));
+            }
+        }
+        write(syncManagers[0], "key5", "b", TUtils.getClockT(2, 1, 1));
+        write(syncManagers[0], "new0", "c", TUtils.getClockT(2, 1));
+        write(syncManagers[0], "new1", "c", TUtils.getClockT(2, 1));
+
+        MerkleTree tree0 =
+                syncManagers[0].getStoreInternal("global").getMerkleTree();
+        MerkleTree tree1 =
+                syncManagers[1].getStoreInternal("global").getMerkleTree();
+        assertFalse(Arrays.equals(tree0.getHashes(), tree1.getHashes()));
+
+        syncManagers[1].offered.clear();
+        syncManagers[0].antientropy(nodes.get(1));
+
+        long then = System.currentTimeMillis();
+        while (!Arrays.equals(tree0.getHashes(), tree1.getHashes())) {
+            Thread.sleep(100);
+            assertTrue(then + 5000 > System.currentTimeMillis());
+        }
+        assertEquals(divergent, syncManagers[1].offered);
+        assertTrue(syncManagers[0].offered.isEmpty());
+    }
+}
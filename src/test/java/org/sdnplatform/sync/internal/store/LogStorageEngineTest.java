@@ -0,0 +1,313 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.ConnectionPoolDataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.error.PersistException;
+import org.sdnplatform.sync.internal.TUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.*;
+
+public class LogStorageEngineTest extends AbstractStorageEngineT {
+    protected static Logger logger =
+            LoggerFactory.getLogger(LogStorageEngineTest.class);
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder dbFolder = new TemporaryFolder();
+
+    private File dir;
+    private LogStorageEngine store;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File(dbFolder.getRoot(), "test");
+        store = new LogStorageEngine("test", dir, SEGMENT_SIZE, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.store.truncate();
+        this.store.close();
+        this.store = null;
+    }
+
+    @Override
+    public IStorageEngine<ByteArray, byte[]> getStorageEngine() {
+        return store;
+    }
+
+    @Override
+    public List<ByteArray> getKeys(int numKeys) {
+        List<ByteArray> keys = new ArrayList<ByteArray>(numKeys);
+        for(int i = 0; i < numKeys; i++)
+            keys.add(new ByteArray(TUtils.randomBytes(10)));
+        return keys;
+    }
+
+    private LogStorageEngine reopen() throws Exception {
+        store.close();
+        store = new LogStorageEngine("test", dir, SEGMENT_SIZE, true);
+        return store;
+    }
+
+    private static ByteArray key(int i) {
+        return new ByteArray(("key" + i).getBytes());
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            store.put(key(i), new Versioned<byte[]>(new byte[] { 1 },
+                                                   TUtils.getClock(1)));
+        }
+        // newer versions, concurrent versions and tombstones
+        for (int i = 0; i < 200; i += 2) {
+            store.put(key(i), new Versioned<byte[]>(new byte[] { 2 },
+                                                   TUtils.getClock(1, 1)));
+        }
+        for (int i = 1; i < 200; i += 4) {
+            store.put(key(i), new Versioned<byte[]>(new byte[] { 3 },
+                                                   TUtils.getClock(2)));
+        }
+        for (int i = 0; i < 200; i += 10) {
+            store.put(key(i), new Versioned<byte[]>(null,
+                                                   TUtils.getClock(1, 1, 1)));
+        }
+        assertTrue(store.getSegmentCount() > 1);
+
+        List<List<Versioned<byte[]>>> expected =
+                new ArrayList<List<Versioned<byte[]>>>();
+        for (int i = 0; i < 200; i++) {
+            expected.add(store.get(key(i)));
+        }
+        reopen();
+        for (int i = 0; i < 200; i++) {
+            assertEquals(expected.get(i), store.get(key(i)));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        // overwrite the same keys until most of the log is garbage
+        for (int round = 1; round <= 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                store.put(key(i),
+                          new Versioned<byte[]>(new byte[] { (byte)round },
+                                                TUtils.getClock(new int[round])));
+            }
+        }
+        store.setTombstoneInterval(0);
+        store.put(key(0), new Versioned<byte[]>(null,
+                                               TUtils.getClock(new int[21])));
+        Thread.sleep(5);
+
+        int before = store.getSegmentCount();
+        store.cleanupTask();
+        assertTrue(store.getSegmentCount() < before);
+
+        reopen();
+        assertEquals(0, store.get(key(0)).size());
+        for (int i = 1; i < 50; i++) {
+            List<Versioned<byte[]>> values = store.get(key(i));
+            assertEquals(1, values.size());
+            assertArrayEquals(new byte[] { 20 }, values.get(0).getValue());
+        }
+    }
+
+    private long diskUsage() {
+        long usage = 0;
+        for (File f : dir.listFiles()) {
+            usage += f.length();
+        }
+        return usage;
+    }
+
+    /**
+     * @return the mappings of this process of files of the log that were
+     * deleted, empty where /proc is not available
+     */
+    private List<String> deletedMappings() throws Exception {
+        List<String> deleted = new ArrayList<String>();
+        File maps = new File("/proc/self/maps");
+        if (!maps.canRead()) return deleted;
+        BufferedReader reader = new BufferedReader(new FileReader(maps));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains(dir.getCanonicalPath()) &&
+                    line.endsWith("(deleted)"))
+                    deleted.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return deleted;
+    }
+
+    @Test
+    public void testCompactionReleasesDisk() throws Exception {
+        for (int round = 1; round <= 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                store.put(key(i),
+                          new Versioned<byte[]>(new byte[64],
+                                                TUtils.getClock(new int[round])));
+            }
+        }
+        long before = diskUsage();
+        int segments = store.getSegmentCount();
+        store.cleanupTask();
+        assertTrue(store.getSegmentCount() < segments);
+        assertTrue(diskUsage() < before);
+        // the space of a deleted segment is only freed once it is unmapped
+        assertEquals(new ArrayList<String>(), deletedMappings());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(1, store.get(key(i)).size());
+        }
+
+        store.truncate();
+        assertEquals(new ArrayList<String>(), deletedMappings());
+        assertEquals(1, store.getSegmentCount());
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        store.put(key(0), new Versioned<byte[]>(new byte[] { 1 },
+                                               TUtils.getClock(1)));
+        IClosableIterator<Entry<ByteArray, List<Versioned<byte[]>>>> it =
+                store.entries();
+        store.close();
+        // the segments are unmapped, nothing may read them anymore
+        try {
+            store.get(key(0));
+            fail("Expected PersistException");
+        } catch (PersistException e) {
+            // expected
+        }
+        try {
+            it.next();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            it.close();
+        }
+        reopen();
+        assertEquals(1, store.get(key(0)).size());
+    }
+
+    @Test
+    public void testTornWrite() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            store.put(key(i), new Versioned<byte[]>(new byte[] { 1 },
+                                                   TUtils.getClock(1)));
+        }
+        store.close();
+
+        // corrupt the last record, as if the write had been cut short
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+        try {
+            long end = 0;
+            while (true) {
+                raf.seek(end);
+                int length = raf.readInt();
+                if (length == 0) break;
+                end += length;
+            }
+            raf.seek(end - 1);
+            raf.write(0xff);
+        } finally {
+            raf.close();
+        }
+
+        store = new LogStorageEngine("test", dir, SEGMENT_SIZE, true);
+        for (int i = 0; i < 9; i++) {
+            assertEquals(1, store.get(key(i)).size());
+        }
+        assertEquals(0, store.get(key(9)).size());
+
+        // the log goes on where the torn record was
+        store.put(key(9), new Versioned<byte[]>(new byte[] { 2 },
+                                               TUtils.getClock(1)));
+        reopen();
+        assertArrayEquals(new byte[] { 2 }, store.get(key(9)).get(0).getValue());
+    }
+
+    private static long runPuts(final IStorageEngine<ByteArray, byte[]> engine,
+                                int numThreads, final int numKeys)
+                                        throws Exception {
+        final AtomicInteger next = new AtomicInteger();
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        int i;
+                        while ((i = next.getAndIncrement()) < numKeys) {
+                            engine.put(key(i),
+                                       new Versioned<byte[]>(new byte[64],
+                                                             TUtils.getClock(1)));
+                        }
+                    } catch (Exception e) {
+                        logger.error("Put failed", e);
+                    }
+                }
+            };
+        }
+        long start = System.currentTimeMillis();
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        return System.currentTimeMillis() - start;
+    }
+
+    @Test
+    @Ignore // brain-dead performance test
+    public void testThroughput() throws Exception {
+        int numKeys = 20000;
+        ConnectionPoolDataSource dataSource =
+                JavaDBStorageEngine.getDataSource(null, true);
+        int[] threads = { 1, 8 };
+        for (int numThreads : threads) {
+            JavaDBStorageEngine derby =
+                    new JavaDBStorageEngine("perf" + numThreads, dataSource);
+            LogStorageEngine log =
+                    new LogStorageEngine("perf",
+                                         dbFolder.newFolder("perf" + numThreads));
+            try {
+                long derbyTime = runPuts(derby, numThreads, numKeys);
+                long logTime = runPuts(log, numThreads, numKeys);
+                logger.info("{} threads: derby {} puts/s, log {} puts/s",
+                            new Object[] {numThreads,
+                                          numKeys * 1000 / Math.max(1, derbyTime),
+                                          numKeys * 1000 / Math.max(1, logTime)});
+            } finally {
+                derby.truncate();
+                derby.close();
+                log.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.sdnplatform.sync.internal.store;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.TUtils;
+import org.sdnplatform.sync.internal.util.ByteArray;
+
+public class MerkleTreeTest {
+
+    /**
+     * Write to the store and update the tree as
+     * {@link SynchronizingStorageEngine} does
+     */
+    private static void put(InMemoryStorageEngine<ByteArray, byte[]> store,
+                            MerkleTree tree, ByteArray key,
+                            Versioned<byte[]> value) throws Exception {
+        long oldDigest = MerkleTree.digest(key, store.get(key));
+        store.put(key, value);
+        tree.update(key, oldDigest, MerkleTree.digest(key, store.get(key)));
+    }
+
+    private static ByteArray key(int i) {
+        return new ByteArray(("key" + i).getBytes());
+    }
+
+    @Test
+    public void testIncrementalMatchesRebuild() throws Exception {
+        InMemoryStorageEngine<ByteArray, byte[]> store =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test");
+        MerkleTree tree = new MerkleTree();
+        for (int i = 0; i < 1000; i++) {
+            put(store, tree, key(i),
+                new Versioned<byte[]>("a".getBytes(),
+                                      TUtils.getClockT(1, 1)));
+        }
+        // newer versions, concurrent versions and tombstones
+        for (int i = 0; i < 1000; i += 3) {
+            put(store, tree, key(i),
+                new Versioned<byte[]>("b".getBytes(),
+                                      TUtils.getClockT(2, 1, 1)));
+        }
+        for (int i = 1; i < 1000; i += 7) {
+            put(store, tree, key(i),
+                new Versioned<byte[]>("c".getBytes(),
+                                      TUtils.getClockT(3, 2)));
+        }
+        for (int i = 2; i < 1000; i += 11) {
+            put(store, tree, key(i),
+                new Versioned<byte[]>(null, TUtils.getClockT(4, 1, 1, 1)));
+        }
+
+        MerkleTree rebuilt = new MerkleTree();
+        rebuilt.rebuild(store.entries());
+        assertArrayEquals(rebuilt.getHashes(), tree.getHashes());
+
+        store.truncate();
+        tree.clear();
+        assertArrayEquals(new MerkleTree().getHashes(), tree.getHashes());
+    }
+
+    @Test
+    public void testDivergentRange() throws Exception {
+        InMemoryStorageEngine<ByteArray, byte[]> store0 =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test");
+        InMemoryStorageEngine<ByteArray, byte[]> store1 =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test");
+        MerkleTree tree0 = new MerkleTree();
+        MerkleTree tree1 = new MerkleTree();
+        // the same data, written in a different order
+        for (int i = 0; i < 1000; i++) {
+            put(store0, tree0, key(i),
+                new Versioned<byte[]>("a".getBytes(),
+                                      TUtils.getClockT(1, 1)));
+            put(store1, tree1, key(999 - i),
+                new Versioned<byte[]>("a".getBytes(),
+                                      TUtils.getClockT(1, 1)));
+        }
+        assertArrayEquals(tree0.getHashes(), tree1.getHashes());
+
+        put(store1, tree1, key(42),
+            new Versioned<byte[]>("b".getBytes(), TUtils.getClockT(2, 1, 1)));
+        long[] hashes0 = tree0.getHashes();
+        long[] hashes1 = tree1.getHashes();
+        List<Integer> divergent = new ArrayList<Integer>();
+        for (int n = 0; n < MerkleTree.NODES; n++) {
+            if (hashes0[n] != hashes1[n])
+                divergent.add(n);
+        }
+        // only the path from the root to the leaf of the key
+        assertEquals(MerkleTree.DEPTH + 1, divergent.size());
+        int leaf = MerkleTree.getLeaf(key(42));
+        assertEquals(MerkleTree.FIRST_LEAF + leaf,
+                     (int)divergent.get(MerkleTree.DEPTH));
+        assertEquals(leaf,
+                     MerkleTree.getLeafOfNode(divergent.get(MerkleTree.DEPTH)));
+        assertEquals(MerkleTree.ROOT, (int)divergent.get(0));
+        for (int i = 1; i <= MerkleTree.DEPTH; i++) {
+            int parent = divergent.get(i - 1);
+            int child = divergent.get(i);
+            assertFalse(MerkleTree.isLeaf(parent));
+            assertTrue(child >= MerkleTree.getFirstChild(parent));
+            assertTrue(child < MerkleTree.getFirstChild(parent) +
+                               MerkleTree.FANOUT);
+        }
+    }
+
+    @Test
+    public void testKeyIndex() throws Exception {
+        InMemoryStorageEngine<ByteArray, byte[]> store =
+                new InMemoryStorageEngine<ByteArray, byte[]>("test");
+        MerkleTree tree = new MerkleTree();
+        for (int i = 0; i < 1000; i++) {
+            put(store, tree, key(i),
+                new Versioned<byte[]>("a".getBytes(),
+                                      TUtils.getClockT(1, 1)));
+        }
+        // a tombstone still has a version to offer
+        put(store, tree, key(7),
+            new Versioned<byte[]>(null, TUtils.getClockT(2, 1, 1)));
+
+        Set<ByteArray> indexed = new HashSet<ByteArray>();
+        for (int leaf = 0; leaf < MerkleTree.LEAVES; leaf++) {
+            for (ByteArray k : tree.getKeys(leaf)) {
+                assertEquals(leaf, MerkleTree.getLeaf(k));
+                assertTrue(indexed.add(k));
+            }
+        }
+        assertEquals(1000, indexed.size());
+
+        // a key without versions leaves the index
+        tree.update(key(3), MerkleTree.digest(key(3), store.get(key(3))), 0);
+        assertFalse(tree.getKeys(MerkleTree.getLeaf(key(3))).contains(key(3)));
+
+        MerkleTree rebuilt = new MerkleTree();
+        rebuilt.rebuild(store.entries());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rebuilt.getKeys(MerkleTree.getLeaf(key(i)))
+                              .contains(key(i)));
+        }
+
+        tree.clear();
+        for (int leaf = 0; leaf < MerkleTree.LEAVES; leaf++) {
+            assertTrue(tree.getKeys(leaf).isEmpty());
+        }
+    }
+}